@@ -11,6 +11,7 @@ import sinc.impl.cached.recal.SincWithRecalculateCache;
 public class Main {
 
     public static final int DEFAULT_BEAM_WIDTH = 3;
+    public static final int DEFAULT_THREADS = 1;
     public static final double DEFAULT_FACT_COVERAGE = 0.05;
     public static final double DEFAULT_CONSTANT_COVERAGE = 0.25;
     public static final double DEFAULT_COLUMN_SIMILARITY = 0.1;
@@ -31,6 +32,14 @@ public class Main {
     private static final String SHORT_OPT_DATA_PATH = "d";
     private static final String SHORT_OPT_EVAL_METRIC = "e";
     private static final String SHORT_OPT_MODEL = "m";
+    private static final String SHORT_OPT_OFF_HEAP_PATH = "o";
+    private static final String SHORT_OPT_KB_SNAPSHOT = "k";
+    private static final String SHORT_OPT_THREADS = "t";
+    private static final String SHORT_OPT_SIMILARITY_SKETCH = "n";
+    private static final String SHORT_OPT_SIMILARITY_VERIFICATION = "y";
+    private static final String SHORT_OPT_EVICT_INDICES = "E";
+    private static final String SHORT_OPT_SAMPLING = "a";
+    private static final String SHORT_OPT_CONCURRENT_TARGETS = "C";
     private static final String LONG_OPT_BEAM_WIDTH = "beam-width";
     private static final String LONG_OPT_VALIDATE = "validate";
     private static final String LONG_OPT_FACT_COVERAGE = "fact-coverage";
@@ -44,6 +53,14 @@ public class Main {
     private static final String LONG_OPT_DATASET = "dataset";
     private static final String LONG_OPT_EVAL_METRIC = "eval-metric";
     private static final String LONG_OPT_MODEL = "model";
+    private static final String LONG_OPT_OFF_HEAP_PATH = "off-heap";
+    private static final String LONG_OPT_KB_SNAPSHOT = "kb-snapshot";
+    private static final String LONG_OPT_THREADS = "threads";
+    private static final String LONG_OPT_SIMILARITY_SKETCH = "similarity-sketch";
+    private static final String LONG_OPT_SIMILARITY_VERIFICATION = "similarity-verification";
+    private static final String LONG_OPT_EVICT_INDICES = "evict-indices";
+    private static final String LONG_OPT_SAMPLING = "sampling";
+    private static final String LONG_OPT_CONCURRENT_TARGETS = "concurrent-targets";
 
     private static final Option OPTION_BEAM_WIDTH = Option.builder(SHORT_OPT_BEAM_WIDTH).longOpt(LONG_OPT_BEAM_WIDTH)
             .desc(String.format("Bean search width (Default %d)", DEFAULT_BEAM_WIDTH)).argName("b").hasArg().type(Integer.class).build();
@@ -72,6 +89,22 @@ public class Main {
             .argName("name").hasArg().type(String.class).build();
     private static final Option OPTION_MODEL = Option.builder(SHORT_OPT_MODEL).longOpt(LONG_OPT_MODEL)
             .argName("name").hasArg().type(String.class).build();
+    private static final Option OPTION_OFF_HEAP_PATH = Option.builder(SHORT_OPT_OFF_HEAP_PATH).longOpt(LONG_OPT_OFF_HEAP_PATH)
+            .desc("Store the KB in memory-mapped files under this directory instead of the heap").argName("path").hasArg().type(String.class).build();
+    private static final Option OPTION_KB_SNAPSHOT = Option.builder(SHORT_OPT_KB_SNAPSHOT).longOpt(LONG_OPT_KB_SNAPSHOT)
+            .desc("Load the KB from a binary snapshot next to the data file (created on first use)").build();
+    private static final Option OPTION_THREADS = Option.builder(SHORT_OPT_THREADS).longOpt(LONG_OPT_THREADS)
+            .desc(String.format("Number of worker threads (Default %d)", DEFAULT_THREADS)).argName("t").hasArg().type(Integer.class).build();
+    private static final Option OPTION_SIMILARITY_SKETCH = Option.builder(SHORT_OPT_SIMILARITY_SKETCH).longOpt(LONG_OPT_SIMILARITY_SKETCH)
+            .desc("Detect similar columns with MinHash signatures of this length instead of exact pairwise comparison (Default 0, exact)").argName("n").hasArg().type(Integer.class).build();
+    private static final Option OPTION_SIMILARITY_VERIFICATION = Option.builder(SHORT_OPT_SIMILARITY_VERIFICATION).longOpt(LONG_OPT_SIMILARITY_VERIFICATION)
+            .desc("Verify candidate similar columns found by MinHash with exact similarity").build();
+    private static final Option OPTION_EVICT_INDICES = Option.builder(SHORT_OPT_EVICT_INDICES).longOpt(LONG_OPT_EVICT_INDICES)
+            .desc("Release the column indices of a relation after its rules have been mined, ignored when head relations are mined concurrently").build();
+    private static final Option OPTION_SAMPLING = Option.builder(SHORT_OPT_SAMPLING).longOpt(LONG_OPT_SAMPLING)
+            .desc("Estimate rule evaluations on a sample of facts and bindings with this rate in (0, 1), candidates near the beam cutoff are re-evaluated exactly").argName("rate").hasArg().type(Double.class).build();
+    private static final Option OPTION_CONCURRENT_TARGETS = Option.builder(SHORT_OPT_CONCURRENT_TARGETS).longOpt(LONG_OPT_CONCURRENT_TARGETS)
+            .desc("Mine rules of different head relations concurrently on the worker threads").build();
 
     static {
         OPT_GRP_DATA.addOption(OPTION_DATA_PATH).addOption(OPTION_DATASET);
@@ -138,6 +171,16 @@ public class Main {
             }
         }
 
+        /* Assign Threads */
+        int threads = DEFAULT_THREADS;
+        if (cmd.hasOption(SHORT_OPT_THREADS)) {
+            String value = cmd.getOptionValue(SHORT_OPT_THREADS);
+            if (null != value) {
+                threads = Integer.parseInt(value);
+                System.out.println("Threads set to: " + threads);
+            }
+        }
+
         /* Determine Validation */
         boolean validation = cmd.hasOption(SHORT_OPT_VALIDATE);
 
@@ -184,6 +227,17 @@ public class Main {
             }
         }
 
+        /* Assign Similarity Sketch (n, y) */
+        int similarity_sketch = 0;
+        if (cmd.hasOption(SHORT_OPT_SIMILARITY_SKETCH)) {
+            String value = cmd.getOptionValue(SHORT_OPT_SIMILARITY_SKETCH);
+            if (null != value) {
+                similarity_sketch = Integer.parseInt(value);
+                System.out.println("Similarity sketch set to: " + similarity_sketch);
+            }
+        }
+        boolean similarity_verification = cmd.hasOption(SHORT_OPT_SIMILARITY_VERIFICATION);
+
         /* Assign CS Threshold (s) */
         double scr = DEFAULT_STOP_COMPRESSION_RATE;
         if (cmd.hasOption(OPTION_STOP_COMPRESSION_RATE)) {
@@ -239,9 +293,41 @@ public class Main {
             System.out.println("Model set to: " + model.getName());
         }
 
+        /* Off-heap KB Storage (o) */
+        String off_heap_path = null;
+        if (cmd.hasOption(SHORT_OPT_OFF_HEAP_PATH)) {
+            off_heap_path = cmd.getOptionValue(SHORT_OPT_OFF_HEAP_PATH);
+            System.out.println("Off-heap KB path set to: " + off_heap_path);
+        }
+
+        /* Determine KB Snapshot (k) */
+        boolean kb_snapshot = cmd.hasOption(SHORT_OPT_KB_SNAPSHOT);
+
+        /* Determine Index Eviction (E) */
+        boolean evict_indices = cmd.hasOption(SHORT_OPT_EVICT_INDICES);
+
+        /* Assign Sampling Rate (a) */
+        double sampling = -1.0;
+        boolean estimation = false;
+        if (cmd.hasOption(SHORT_OPT_SAMPLING)) {
+            String value = cmd.getOptionValue(SHORT_OPT_SAMPLING);
+            if (null != value) {
+                sampling = Double.parseDouble(value);
+                if (0 >= sampling || 1 <= sampling) {
+                    throw new SincException("Sampling rate should be in (0, 1): " + value);
+                }
+                estimation = true;
+                System.out.println("Sampling rate set to: " + sampling);
+            }
+        }
+
+        /* Determine Concurrent Targets (C) */
+        boolean concurrent_targets = cmd.hasOption(SHORT_OPT_CONCURRENT_TARGETS);
+
         SincConfig config = new SincConfig(
-                1, validation, false, beam, false, metric, fc, cc, cs, scr, true,
-                -1.0, false, false
+                threads, validation, false, beam, false, metric, fc, cc, cs, scr, true,
+                sampling, estimation, false, off_heap_path, kb_snapshot, similarity_sketch, similarity_verification,
+                evict_indices, concurrent_targets
         );
         return new SincWithRecalculateCache(config, data_path, "", "");
     }
@@ -255,6 +341,9 @@ public class Main {
         /* Beam Assignment (b) */
         options.addOption(OPTION_BEAM_WIDTH);
 
+        /* Thread Assignment (t) */
+        options.addOption(OPTION_THREADS);
+
         /* Validate (v) */
         options.addOption(OPTION_VALIDATE);
 
@@ -270,12 +359,31 @@ public class Main {
         /* CS Threshold Assignment (s) */
         options.addOption(OPTION_COLUMN_SIMILARITY);
 
+        /* Similarity Sketch (n, y) */
+        options.addOption(OPTION_SIMILARITY_SKETCH);
+        options.addOption(OPTION_SIMILARITY_VERIFICATION);
+
         /* CS Threshold Assignment (p) */
         options.addOption(OPTION_STOP_COMPRESSION_RATE);
 
         /* Dataset Selection (d, D) */
         options.addOptionGroup(OPT_GRP_DATA);
 
+        /* Off-heap KB Storage (o) */
+        options.addOption(OPTION_OFF_HEAP_PATH);
+
+        /* KB Snapshot (k) */
+        options.addOption(OPTION_KB_SNAPSHOT);
+
+        /* Index Eviction (E) */
+        options.addOption(OPTION_EVICT_INDICES);
+
+        /* Sampling Rate (a) */
+        options.addOption(OPTION_SAMPLING);
+
+        /* Concurrent Targets (C) */
+        options.addOption(OPTION_CONCURRENT_TARGETS);
+
         /* Dump Path (r) */
         options.addOption(OPTION_RESULT_PATH);
 
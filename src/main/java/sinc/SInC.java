@@ -7,6 +7,7 @@ import sinc.util.graph.Tarjan;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 public abstract class SInC {
 
@@ -25,9 +26,29 @@ public abstract class SInC {
     protected final Set<Predicate> counterExamples = new HashSet<>();
     protected final Set<String> supplementaryConstants = new HashSet<>();
     protected final PerformanceMonitor performanceMonitor = new PerformanceMonitor();
+    protected final RuleMonitor ruleMonitor = new RuleMonitor();
 
     /* 终止执行的flag */
-    protected boolean interrupted = false;
+    protected volatile boolean interrupted = false;
+
+    /**
+     * 一次findRule过程中的状态，并发搜索多个head时每个线程各有一份
+     */
+    protected static class SearchState {
+        /* 分支定界：本轮candidates中最高的beamWidth个得分(小顶堆)，以及当前扩展的规则是否已经有进入candidates的扩展 */
+        final PriorityQueue<Double> beamScores = new PriorityQueue<>();
+        boolean candidateFound = false;
+
+        /* 并行评估：顺序检查扩展时暂存需要评估的修改，由evaluationPool并发执行 */
+        List<RuleOperation> pendingOperations = null;
+    }
+
+    protected final ThreadLocal<SearchState> searchState = ThreadLocal.withInitial(SearchState::new);
+    protected ForkJoinPool evaluationPool = null;
+
+    /* 并发搜索多个head时，对hypothesis、KB以及依赖图的修改都在这个锁内完成 */
+    protected final Object commitLock = new Object();
+    protected boolean targetsConcurrent = false;
 
     protected static class GraphAnalyseResult {
         public int startSetSize = 0;
@@ -49,7 +70,6 @@ public abstract class SInC {
         }
         this.logger = writer;
         Rule.MIN_FACT_COVERAGE = config.minFactCoverage;
-        Rule.monitor = new RuleMonitor();
     }
 
     /**
@@ -65,31 +85,31 @@ public abstract class SInC {
     abstract protected Rule getStartRule(String headFunctor, Set<RuleFingerPrint> cache);
 
     protected Rule findRule(String headFunctor) throws InterruptedSignal {
+        final SearchState state = searchState.get();
         final Set<RuleFingerPrint> cache = new HashSet<>();
         final Rule start_rule = getStartRule(headFunctor, cache);
+        start_rule.setMonitor(ruleMonitor);
 
         /* 初始化beams */
         final Eval.EvalMetric eval_metric = config.evalMetric;
         final int beam_width = config.beamWidth;
-        Set<Rule> beams = new HashSet<>();
+        List<Rule> beams = new ArrayList<>();
         beams.add(start_rule);
-        PriorityQueue<Rule> optimals = new PriorityQueue<>(
-                Comparator.comparingDouble((Rule r) -> r.getEval().value(eval_metric)).reversed()
-        );
+        PriorityQueue<Rule> optimals = new PriorityQueue<>(Rule.beamOrder(eval_metric));
 
         /* 寻找局部最优（只要进入这个循环，一定有局部最优） */
         while (true) {
             /* 根据当前beam遍历下一轮的所有candidates */
-            PriorityQueue<Rule> candidates = new PriorityQueue<>(
-                    Comparator.comparingDouble((Rule r) -> r.getEval().value(eval_metric)).reversed()
-            );
+            PriorityQueue<Rule> candidates = new PriorityQueue<>(Rule.beamOrder(eval_metric));
+            state.beamScores.clear();
             for (Rule r: beams) {
                 logger.printf("Extend: %s\n", r);
                 logger.flush();
 
                 /* 遍历r的邻居 */
                 int existing_candidates = candidates.size();
-                findExtension(r, candidates);
+                state.candidateFound = false;
+                searchExtensions(r, candidates);
                 int extensions_cnt = candidates.size() - existing_candidates;
                 int origins_cnt = 0;
                 if (config.searchOrigins) {
@@ -98,6 +118,7 @@ public abstract class SInC {
                 }
 
                 if (0 == (extensions_cnt + origins_cnt)) {
+                    r.updateExactEval();
                     optimals.add(r);
                 }
 
@@ -108,6 +129,10 @@ public abstract class SInC {
                 performanceMonitor.branchProgress.add(branch_info);
             }
 
+            if (config.estimation) {
+                reevaluateBoundaryCandidates(candidates, beam_width, eval_metric);
+            }
+
             /* 如果有多个optimal，选择最优的返回 */
             final Rule loc_opt = optimals.peek();
             if (null != loc_opt) {
@@ -122,7 +147,7 @@ public abstract class SInC {
             }
 
             /* 找出下一轮的beams */
-            Set<Rule> new_beams = new HashSet<>();
+            List<Rule> new_beams = new ArrayList<>();
             Rule beam_rule;
             while (new_beams.size() < beam_width && (null != (beam_rule = candidates.poll()))) {
                 new_beams.add(beam_rule);
@@ -131,6 +156,31 @@ public abstract class SInC {
         }
     }
 
+    /**
+     * 估计模式下，eval的误差范围跨过beam边界(第beamWidth个candidate的估计值)的规则不能确定是否应该进入下一轮beam，
+     * 对这些规则精确地重新计算eval，然后重新排序
+     */
+    protected void reevaluateBoundaryCandidates(
+            PriorityQueue<Rule> candidates, int beamWidth, Eval.EvalMetric evalMetric
+    ) {
+        if (candidates.size() <= beamWidth) {
+            /* 所有candidate都会进入beam */
+            return;
+        }
+        final List<Rule> sorted_candidates = new ArrayList<>(candidates.size());
+        while (!candidates.isEmpty()) {
+            sorted_candidates.add(candidates.poll());
+        }
+        final double cutoff = sorted_candidates.get(beamWidth - 1).getEval().value(evalMetric);
+        for (Rule candidate: sorted_candidates) {
+            final Eval eval = candidate.getEval();
+            if (eval.lowerBound(evalMetric) <= cutoff && cutoff <= eval.upperBound(evalMetric)) {
+                candidate.updateExactEval();
+            }
+        }
+        candidates.addAll(sorted_candidates);
+    }
+
     /**
      * 遍历extensions，把得分更高的放入candidates列表
      */
@@ -169,31 +219,35 @@ public abstract class SInC {
                 for (VarIndicator var_location: var_locations) {
                     if (columnSimilar(rule.getPredicate(vacant.predIdx).functor, vacant.argIdx, var_location.functor, var_location.idx)) {
                         /* 尝试将已知变量填入空白参数 */
-                        final Rule new_rule = rule.clone();
-                        final Rule.UpdateStatus update_status = new_rule.boundFreeVar2ExistingVar(
-                                vacant.predIdx, vacant.argIdx, var_id
-                        );
-                        checkThenAddRule(update_status, new_rule, rule, candidates);
+                        final int tmp_var_id = var_id;
+                        tryThenAddRule(rule, candidates, r -> r.boundFreeVar2ExistingVar(
+                                vacant.predIdx, vacant.argIdx, tmp_var_id
+                        ));
                         break;
                     }
                 }
             }
 
-            for (Map.Entry<String, Integer> entry: func_2_arity_map.entrySet()) {
-                /* 拓展一个谓词，并尝试一个已知变量 */
-                final String functor = entry.getKey();
-                final int arity = entry.getValue();
-                for (int arg_idx = 0; arg_idx < arity; arg_idx++) {
-                    for (VarIndicator var_location: var_locations) {
-                        if (columnSimilar(functor, arg_idx, var_location.functor, var_location.idx)) {
-                            final Rule new_rule = rule.clone();
-                            final Rule.UpdateStatus update_status = new_rule.boundFreeVar2ExistingVar(
-                                    functor, arity, arg_idx, var_id
-                            );
-                            checkThenAddRule(update_status, new_rule, rule, candidates);
+            /* 拓展一个谓词，并尝试一个已知变量：所有的列共用一次对父规则grounding的扫描 */
+            rule.beginExistingVarBatch(var_id);
+            try {
+                for (Map.Entry<String, Integer> entry: func_2_arity_map.entrySet()) {
+                    final String functor = entry.getKey();
+                    final int arity = entry.getValue();
+                    for (int arg_idx = 0; arg_idx < arity; arg_idx++) {
+                        for (VarIndicator var_location: var_locations) {
+                            if (columnSimilar(functor, arg_idx, var_location.functor, var_location.idx)) {
+                                final int tmp_arg_idx = arg_idx;
+                                final int tmp_var_id = var_id;
+                                tryThenAddRule(rule, candidates, r -> r.boundFreeVar2ExistingVar(
+                                        functor, arity, tmp_arg_idx, tmp_var_id
+                                ));
+                            }
                         }
                     }
                 }
+            } finally {
+                rule.endExistingVarBatch();
             }
         }
 
@@ -203,15 +257,18 @@ public abstract class SInC {
             final ArgPos first_vacant = vacant_list.get(i);
             final String functor1 = rule.getPredicate(first_vacant.predIdx).functor;
 
-            /* 拓展一个常量 */
+            /* 拓展一个常量：同一个空位上的所有常量共用一次按该参数分组的cache */
             final Predicate predicate = rule.getPredicate(first_vacant.predIdx);
             final List<String> const_list = func_2_promising_const_map.get(predicate.functor)[first_vacant.argIdx];
-            for (String const_symbol: const_list) {
-                final Rule new_rule = rule.clone();
-                final Rule.UpdateStatus update_status = new_rule.boundFreeVar2Constant(
-                        first_vacant.predIdx, first_vacant.argIdx, const_symbol
-                );
-                checkThenAddRule(update_status, new_rule, rule, candidates);
+            rule.beginConstantBatch(first_vacant.predIdx, first_vacant.argIdx, const_list);
+            try {
+                for (String const_symbol: const_list) {
+                    tryThenAddRule(rule, candidates, r -> r.boundFreeVar2Constant(
+                            first_vacant.predIdx, first_vacant.argIdx, const_symbol
+                    ));
+                }
+            } finally {
+                rule.endConstantBatch();
             }
 
             /* 找到两个位置尝试同一个新变量 */
@@ -219,11 +276,9 @@ public abstract class SInC {
                 /* 新变量的第二个位置可以是当前rule中的其他空位 */
                 final ArgPos second_vacant = vacant_list.get(j);
                 if (columnSimilar(functor1, first_vacant.argIdx,rule.getPredicate(second_vacant.predIdx).functor, second_vacant.argIdx)) {
-                    final Rule new_rule = rule.clone();
-                    final Rule.UpdateStatus update_status = new_rule.boundFreeVars2NewVar(
+                    tryThenAddRule(rule, candidates, r -> r.boundFreeVars2NewVar(
                             first_vacant.predIdx, first_vacant.argIdx, second_vacant.predIdx, second_vacant.argIdx
-                    );
-                    checkThenAddRule(update_status, new_rule, rule, candidates);
+                    ));
                 }
             }
             for (Map.Entry<String, Integer> entry: func_2_arity_map.entrySet()) {
@@ -232,11 +287,10 @@ public abstract class SInC {
                 final int arity = entry.getValue();
                 for (int arg_idx = 0; arg_idx < arity; arg_idx++) {
                     if (columnSimilar(functor1, first_vacant.argIdx, functor, arg_idx)) {
-                        final Rule new_rule = rule.clone();
-                        final Rule.UpdateStatus update_status = new_rule.boundFreeVars2NewVar(
-                                functor, arity, arg_idx, first_vacant.predIdx, first_vacant.argIdx
-                        );
-                        checkThenAddRule(update_status, new_rule, rule, candidates);
+                        final int tmp_arg_idx = arg_idx;
+                        tryThenAddRule(rule, candidates, r -> r.boundFreeVars2NewVar(
+                                functor, arity, tmp_arg_idx, first_vacant.predIdx, first_vacant.argIdx
+                        ));
                     }
                 }
             }
@@ -420,7 +474,7 @@ public abstract class SInC {
 
     protected void showMonitor() {
         performanceMonitor.show(logger);
-        Rule.monitor.show(logger);
+        ruleMonitor.show(logger);
         logger.flush();
     }
 
@@ -446,26 +500,211 @@ public abstract class SInC {
         return performanceMonitor;
     }
 
+    /**
+     * 对规则的一次修改
+     */
+    protected interface RuleOperation {
+        Rule.UpdateStatus apply(Rule rule);
+    }
+
+    /**
+     * 在rule上试探性地执行修改并评估，然后撤销修改。只有能进入candidates的结果才会clone出来，重复、不合法以及覆盖率
+     * 不足的扩展不需要复制规则。不支持撤销的规则仍然先clone再修改
+     */
+    protected void tryThenAddRule(Rule rule, Queue<Rule> candidates, RuleOperation operation) throws InterruptedSignal {
+        if (null != searchState.get().pendingOperations) {
+            screenOperation(rule, candidates, operation);
+            return;
+        }
+        final double pruning_threshold = pruningThreshold(rule.getEval());
+        if (!rule.rollbackSupported()) {
+            final Rule new_rule = rule.clone();
+            new_rule.setPruningThreshold(config.evalMetric, pruning_threshold);
+            final Rule.UpdateStatus update_status = operation.apply(new_rule);
+            new_rule.setPruningThreshold(null, Double.NEGATIVE_INFINITY);
+            checkThenAddRule(update_status, new_rule, rule, candidates);
+            return;
+        }
+        final Eval original_eval = rule.getEval();
+        rule.checkpoint();
+        rule.setPruningThreshold(config.evalMetric, pruning_threshold);
+        try {
+            final Rule.UpdateStatus update_status = operation.apply(rule);
+            checkThenAddRule(update_status, rule, original_eval, candidates, true);
+        } finally {
+            rule.setPruningThreshold(null, Double.NEGATIVE_INFINITY);
+            rule.rollback();
+        }
+    }
+
+    /**
+     * 遍历rule的所有扩展。规则支持并发修改副本且配置了多个线程时，先在rule上顺序地完成重复与合法性检查(fingerprint
+     * 的记录顺序与单线程相同)，再把剩下的修改分配到各个线程上评估，结果按修改的顺序加入candidates
+     */
+    protected void searchExtensions(Rule rule, PriorityQueue<Rule> candidates) throws InterruptedSignal {
+        if (1 >= config.threads || targetsConcurrent || !rule.concurrentEvaluationSupported()
+                || !rule.rollbackSupported()) {
+            findExtension(rule, candidates);
+            return;
+        }
+        final SearchState state = searchState.get();
+        final List<RuleOperation> operations = new ArrayList<>();
+        state.pendingOperations = operations;
+        try {
+            findExtension(rule, candidates);
+        } finally {
+            state.pendingOperations = null;
+        }
+        evaluateConcurrently(rule, operations, candidates);
+    }
+
+    /**
+     * 在rule上执行修改，与顺序评估一样按当前的阈值剪枝(规则在扩展过程中可用的上界，例如批量统计，副本上没有)，但不
+     * 更新cache，然后撤销修改。通过检查的修改留待并发评估
+     */
+    protected void screenOperation(Rule rule, Queue<Rule> candidates, RuleOperation operation) throws InterruptedSignal {
+        final Eval original_eval = rule.getEval();
+        rule.checkpoint();
+        rule.setPruningThreshold(config.evalMetric, pruningThreshold(original_eval));
+        rule.setDeferEvaluation(true);
+        try {
+            final Rule.UpdateStatus update_status = operation.apply(rule);
+            if (rule.evaluationDeferred()) {
+                searchState.get().pendingOperations.add(operation);
+            } else {
+                checkThenAddRule(update_status, rule, original_eval, candidates, true);
+            }
+        } finally {
+            rule.setDeferEvaluation(false);
+            rule.setPruningThreshold(null, Double.NEGATIVE_INFINITY);
+            rule.rollback();
+        }
+    }
+
+    /**
+     * 每个修改在rule的一个副本上执行。clone会修改rule的监测数据，所以副本都在当前线程中创建。修改按config.threads个
+     * 一批提交，每一批开始前与顺序评估一样按本轮已有的得分计算剪枝阈值，副本也只为当前一批创建
+     */
+    protected void evaluateConcurrently(Rule rule, List<RuleOperation> operations, Queue<Rule> candidates)
+            throws InterruptedSignal {
+        if (operations.isEmpty()) {
+            return;
+        }
+        if (null == evaluationPool) {
+            evaluationPool = new ForkJoinPool(config.threads);
+        }
+        final Eval original_eval = rule.getEval();
+        final List<Rule> new_rules = new ArrayList<>(config.threads);
+        final List<Callable<Rule.UpdateStatus>> tasks = new ArrayList<>(config.threads);
+        for (int begin = 0; begin < operations.size(); begin += config.threads) {
+            final double pruning_threshold = pruningThreshold(original_eval);
+            new_rules.clear();
+            tasks.clear();
+            for (RuleOperation operation: operations.subList(begin, Math.min(begin + config.threads, operations.size()))) {
+                final Rule new_rule = rule.clone();
+                new_rule.setConcurrentEvaluation(true);
+                new_rule.setPruningThreshold(config.evalMetric, pruning_threshold);
+                new_rules.add(new_rule);
+                tasks.add(() -> operation.apply(new_rule));
+            }
+
+            final List<Future<Rule.UpdateStatus>> futures = evaluationPool.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                final Rule.UpdateStatus update_status = resultOf(futures.get(i));
+                final Rule new_rule = new_rules.get(i);
+                new_rule.setPruningThreshold(null, Double.NEGATIVE_INFINITY);
+                new_rule.setConcurrentEvaluation(false);
+                checkThenAddRule(update_status, new_rule, original_eval, candidates, false);
+            }
+        }
+    }
+
+    /**
+     * 等待任务结束，任务中的异常原样抛出
+     */
+    protected static <T> T resultOf(Future<T> future) throws InterruptedSignal {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedSignal("Interrupted");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof InterruptedSignal) {
+                throw (InterruptedSignal) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * 扩展的乐观得分不超过这个阈值时不会进入candidates或者下一轮的beam：不超过原规则，或者严格低于本轮已有的第
+     * beamWidth高的得分。
+     *
+     * 只有原规则已经有扩展进入candidates(因此不是局部最优)之后才和beam比较，否则被剪掉的扩展可能决定原规则是否是局部
+     * 最优。估计模式下candidates的得分有误差，只和原规则比较
+     */
+    protected double pruningThreshold(Eval originalEval) {
+        final SearchState state = searchState.get();
+        final double original_score = originalEval.value(config.evalMetric);
+        if (config.estimation || !state.candidateFound || state.beamScores.size() < config.beamWidth) {
+            return original_score;
+        }
+        /* 得分相同的扩展仍然保留，不改变candidates中的排序结果 */
+        return Math.max(original_score, Math.nextDown(state.beamScores.peek()));
+    }
+
+    protected void recordBeamScore(double score) {
+        final PriorityQueue<Double> beamScores = searchState.get().beamScores;
+        beamScores.add(score);
+        if (beamScores.size() > config.beamWidth) {
+            beamScores.poll();
+        }
+    }
+
     protected void checkThenAddRule(Rule.UpdateStatus updateStatus, Rule extendedRule, Rule originalRule, Queue<Rule> candidates)
             throws InterruptedSignal {
+        checkThenAddRule(updateStatus, extendedRule, originalRule.getEval(), candidates, false);
+    }
+
+    /**
+     * @param materialize extendedRule是否会被撤销，如果是，需要clone一份放入candidates
+     */
+    protected void checkThenAddRule(
+            Rule.UpdateStatus updateStatus, Rule extendedRule, Eval originalEval, Queue<Rule> candidates,
+            boolean materialize
+    ) throws InterruptedSignal {
+        if (Rule.UpdateStatus.NORMAL == updateStatus) {
+            /* 估计的eval按上界比较，避免误差把实际更好的扩展排除 */
+            if (extendedRule.getEval().upperBound(config.evalMetric) > originalEval.value(config.evalMetric)
+            && extendedRule.length() < 4) {
+                candidates.add(materialize ? extendedRule.clone() : extendedRule);
+                recordBeamScore(extendedRule.getEval().value(config.evalMetric));
+                searchState.get().candidateFound = true;
+            }
+        }
         switch (updateStatus) {
             case NORMAL:
-                if (extendedRule.getEval().value(config.evalMetric) > originalRule.getEval().value(config.evalMetric)
-                && extendedRule.length() < 4) {
-                    candidates.add(extendedRule);
-                }
                 break;
             case INVALID:
-                performanceMonitor.invalidSearches++;
+                performanceMonitor.invalidSearches.increment();
                 break;
             case DUPLICATED:
-                performanceMonitor.duplications++;
+                performanceMonitor.duplications.increment();
                 break;
             case INSUFFICIENT_COVERAGE:
-                performanceMonitor.fcFilteredRules++;
+                performanceMonitor.fcFilteredRules.increment();
                 break;
             case TABU_PRUNED:
-                performanceMonitor.tabuPruned++;
+                performanceMonitor.tabuPruned.increment();
+                break;
+            case BOUND_PRUNED:
+                performanceMonitor.boundPruned.increment();
                 break;
             default:
                 throw new Error("Unknown Update Status of Rule: " + updateStatus.name());
@@ -476,12 +715,102 @@ public abstract class SInC {
         }
     }
 
+    /**
+     * 并发评估扩展或者搜索多个head时会在多个线程中同时调用
+     */
     protected abstract void recordRuleStatus(Rule rule, Rule.UpdateStatus updateStatus);
 
     protected void targetDone(String functor) {
         /* 这里什么也不做，给后续处理留空间 */
     }
 
+    /**
+     * @return 能否在多个线程中同时搜索不同head functor的规则
+     */
+    protected boolean concurrentTargetsSupported() {
+        return false;
+    }
+
+    /**
+     * 在config.threads个线程上同时搜索不同head functor的规则，同一个head的规则仍然在一个线程中依次搜索。
+     * 全部结束后hypothesis按顺序搜索时的顺序排列
+     */
+    protected void mineTargetsConcurrently(List<String> targetHeadFunctors) throws InterruptedSignal {
+        final int total_targets = targetHeadFunctors.size();
+        final Map<String, List<Rule>> functor_2_rules = new HashMap<>();
+        final int[] done_targets = new int[]{0};
+        final List<Callable<Void>> tasks = new ArrayList<>(total_targets);
+        for (int i = total_targets - 1; i >= 0; i--) {
+            /* 顺序搜索从列表的末尾开始 */
+            final String functor = targetHeadFunctors.get(i);
+            final List<Rule> rules = new ArrayList<>();
+            functor_2_rules.put(functor, rules);
+            tasks.add(() -> {
+                mineTarget(functor, rules, total_targets, done_targets);
+                return null;
+            });
+        }
+
+        final ExecutorService pool = Executors.newFixedThreadPool(config.threads);
+        targetsConcurrent = true;
+        final long time_mining_start = System.currentTimeMillis();
+        final long dependency_analysis_time = performanceMonitor.dependencyAnalysisTime;
+        try {
+            for (Future<Void> future: pool.invokeAll(tasks)) {
+                resultOf(future);
+            }
+
+            /* 挖掘时间按墙上时间计，扣除在commitLock内提交规则的时间 */
+            performanceMonitor.hypothesisMiningTime += System.currentTimeMillis() - time_mining_start -
+                    (performanceMonitor.dependencyAnalysisTime - dependency_analysis_time);
+        } catch (InterruptedException e) {
+            throw new InterruptedSignal("Interrupted");
+        } finally {
+            pool.shutdownNow();
+            targetsConcurrent = false;
+            synchronized (commitLock) {
+                hypothesis.clear();
+                for (int i = total_targets - 1; i >= 0; i--) {
+                    hypothesis.addAll(functor_2_rules.get(targetHeadFunctors.get(i)));
+                }
+            }
+        }
+        targetHeadFunctors.clear();
+    }
+
+    /**
+     * 反复搜索一个head functor的规则直到没有有用的规则。找到的规则在commitLock内提交：更新KB、counter example以及
+     * 依赖图。规则的eval只依赖head上已经被证明的事实，而这些事实只在提交head为functor的规则时改变，这样的规则只由
+     * 本线程提交，所以其他线程的提交不会使这里找到的规则过时
+     */
+    protected void mineTarget(String functor, List<Rule> rules, int totalTargets, int[] doneTargets)
+            throws InterruptedSignal {
+        while (true) {
+            final Rule rule = findRule(functor);
+
+            synchronized (commitLock) {
+                if (null == rule || !rule.getEval().useful(config.evalMetric)) {
+                    doneTargets[0]++;
+                    logger.printf("Target Done: %d/%d\n", doneTargets[0], totalTargets);
+                    targetDone(functor);
+                    return;
+                }
+                logger.printf("Found: %s\n", rule);
+                hypothesis.add(rule);
+                rules.add(rule);
+                performanceMonitor.hypothesisSize += rule.size();
+
+                /* 更新grpah和counter example */
+                final long time_commit_start = System.currentTimeMillis();
+                UpdateResult update_result = updateKb(rule);
+                counterExamples.addAll(update_result.counterExamples);
+                updateGraph(update_result.groundings);
+                final long time_kb_updated = System.currentTimeMillis();
+                performanceMonitor.dependencyAnalysisTime += time_kb_updated - time_commit_start;
+            }
+        }
+    }
+
     public abstract String getModelName();
 
     protected abstract boolean columnSimilar(String functor1, int idx1, String functor2, int idx2);
@@ -498,35 +827,40 @@ public abstract class SInC {
             performanceMonitor.actualConstantSubstitutions = kb_stat.actualConstantSubstitutions;
             final long time_kb_loaded = System.currentTimeMillis();
             performanceMonitor.kbLoadTime = time_kb_loaded - time_start;
+            performanceMonitor.kbLoadThroughput = kb_stat.facts * 1000.0 / Math.max(1, performanceMonitor.kbLoadTime);
 
             /* 逐个functor找rule */
             final List<String> target_head_functors = getTargetFunctors();
             final int total_targets = target_head_functors.size();
-            do {
-                final long time_rule_finding_start = System.currentTimeMillis();
-                final int last_idx = target_head_functors.size() - 1;
-                final String functor = target_head_functors.get(last_idx);
-                final Rule rule = findRule(functor);
-                final long time_rule_found = System.currentTimeMillis();
-                performanceMonitor.hypothesisMiningTime += time_rule_found - time_rule_finding_start;
-
-                if (null != rule && rule.getEval().useful(config.evalMetric)) {
-                    logger.printf("Found: %s\n", rule);
-                    hypothesis.add(rule);
-                    performanceMonitor.hypothesisSize += rule.size();
-
-                    /* 更新grpah和counter example */
-                    UpdateResult update_result = updateKb(rule);
-                    counterExamples.addAll(update_result.counterExamples);
-                    updateGraph(update_result.groundings);
-                    final long time_kb_updated = System.currentTimeMillis();
-                    performanceMonitor.dependencyAnalysisTime += time_kb_updated - time_rule_found;
-                } else {
-                    target_head_functors.remove(last_idx);
-                    logger.printf("Target Done: %d/%d\n", total_targets - target_head_functors.size(), total_targets);
-                    targetDone(functor);
-                }
-            } while (!target_head_functors.isEmpty());
+            if (1 < config.threads && config.concurrentTargets && concurrentTargetsSupported()) {
+                mineTargetsConcurrently(target_head_functors);
+            } else {
+                do {
+                    final long time_rule_finding_start = System.currentTimeMillis();
+                    final int last_idx = target_head_functors.size() - 1;
+                    final String functor = target_head_functors.get(last_idx);
+                    final Rule rule = findRule(functor);
+                    final long time_rule_found = System.currentTimeMillis();
+                    performanceMonitor.hypothesisMiningTime += time_rule_found - time_rule_finding_start;
+
+                    if (null != rule && rule.getEval().useful(config.evalMetric)) {
+                        logger.printf("Found: %s\n", rule);
+                        hypothesis.add(rule);
+                        performanceMonitor.hypothesisSize += rule.size();
+
+                        /* 更新grpah和counter example */
+                        UpdateResult update_result = updateKb(rule);
+                        counterExamples.addAll(update_result.counterExamples);
+                        updateGraph(update_result.groundings);
+                        final long time_kb_updated = System.currentTimeMillis();
+                        performanceMonitor.dependencyAnalysisTime += time_kb_updated - time_rule_found;
+                    } else {
+                        target_head_functors.remove(last_idx);
+                        logger.printf("Target Done: %d/%d\n", total_targets - target_head_functors.size(), total_targets);
+                        targetDone(functor);
+                    }
+                } while (!target_head_functors.isEmpty());
+            }
             performanceMonitor.hypothesisRuleNumber = hypothesis.size();
             performanceMonitor.counterExampleSize = counterExamples.size();
 
@@ -640,6 +974,11 @@ public abstract class SInC {
             showMonitor();
 
             logger.println("!!! The Result is Reserved Before EXCEPTION !!!");
+        } finally {
+            if (null != evaluationPool) {
+                evaluationPool.shutdownNow();
+                evaluationPool = null;
+            }
         }
     }
 
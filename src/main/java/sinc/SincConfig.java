@@ -15,6 +15,8 @@ public class SincConfig {
     public final double minFactCoverage;
     public final double minConstantCoverage;
     public final double minColumnSimilarity;
+    public final int columnSimilaritySketch;  // 相似列检测中MinHash签名的长度，不大于0时两两精确计算
+    public final boolean columnSimilarityVerification;  // 对MinHash找到的候选列对计算精确的相似度
     public final double stopCompressionRate;
 
     /* Optimization Config */
@@ -22,11 +24,29 @@ public class SincConfig {
     public final double sampling;  // 0.0 <= sampling < 1.0, 其他值表示不采样
     public final boolean estimation;
     public final boolean kbBlocking;
+    public final String offHeapPath;  // 不为null时，KB中的事实与索引存储在该目录下的内存映射文件中
+    public final boolean kbSnapshot;  // 加载KB时优先读取二进制快照，快照不存在或失效时解析原文件并写入快照
+    public final boolean evictFinishedIndices;  // 一个head functor搜索结束后释放其relation上的列索引，并发搜索多个head时不释放
+    public final boolean concurrentTargets;  // 多个线程时，同时搜索不同head functor的规则
 
     public SincConfig(
             int threads, boolean validation, boolean debug, int beamWidth, boolean searchOrigins,
             Eval.EvalMetric evalMetric, double minFactCoverage, double minConstantCoverage, double minColumnSimilarity,
             double stopCompressionRate, boolean ruleCache, double sampling, boolean estimation, boolean kbBlocking
+    ) {
+        this(
+                threads, validation, debug, beamWidth, searchOrigins, evalMetric, minFactCoverage, minConstantCoverage,
+                minColumnSimilarity, stopCompressionRate, ruleCache, sampling, estimation, kbBlocking, null, false, 0, false, false,
+                false
+        );
+    }
+
+    public SincConfig(
+            int threads, boolean validation, boolean debug, int beamWidth, boolean searchOrigins,
+            Eval.EvalMetric evalMetric, double minFactCoverage, double minConstantCoverage, double minColumnSimilarity,
+            double stopCompressionRate, boolean ruleCache, double sampling, boolean estimation, boolean kbBlocking,
+            String offHeapPath, boolean kbSnapshot, int columnSimilaritySketch, boolean columnSimilarityVerification,
+            boolean evictFinishedIndices, boolean concurrentTargets
     ) {
         this.threads = threads;
         this.validation = validation;
@@ -37,10 +57,16 @@ public class SincConfig {
         this.minFactCoverage = minFactCoverage;
         this.minConstantCoverage = minConstantCoverage;
         this.minColumnSimilarity = minColumnSimilarity;
+        this.columnSimilaritySketch = columnSimilaritySketch;
+        this.columnSimilarityVerification = columnSimilarityVerification;
         this.stopCompressionRate = stopCompressionRate;
         this.ruleCache = ruleCache;
         this.sampling = sampling;
         this.estimation = estimation;
         this.kbBlocking = kbBlocking;
+        this.offHeapPath = offHeapPath;
+        this.kbSnapshot = kbSnapshot;
+        this.evictFinishedIndices = evictFinishedIndices;
+        this.concurrentTargets = concurrentTargets;
     }
 }
@@ -24,6 +24,11 @@ public class BareRule extends Rule {
         return new BareRule(this);
     }
 
+    @Override
+    public boolean rollbackSupported() {
+        return true;
+    }
+
     @Override
     protected double factCoverage() {
         /* 不需要 */
@@ -0,0 +1,60 @@
+package sinc.common;
+
+/**
+ * 在采样上估计得到的eval。posCnt与allCnt是估计值，同时记录它们的误差范围，指标的上下界取误差范围四个角上的最值。
+ * 同时保留计算时作为基准的上一个eval，以便之后精确地重新计算
+ */
+public class EstimatedEval extends Eval {
+    public final Eval previousEval;
+    private final double posError;
+    private final double allError;
+    private final Eval[] corners;
+
+    public EstimatedEval(
+            Eval previousEval, double posCnt, double allCnt, int ruleSize, double posError, double allError
+    ) {
+        super(previousEval, posCnt, allCnt, ruleSize);
+        this.previousEval = previousEval;
+        this.posError = posError;
+        this.allError = allError;
+        final double pos_low = Math.max(0, posCnt - posError);
+        final double pos_high = posCnt + posError;
+        this.corners = new Eval[]{
+                new Eval(previousEval, pos_low, Math.max(pos_low, allCnt - allError), ruleSize),
+                new Eval(previousEval, pos_low, allCnt + allError, ruleSize),
+                new Eval(previousEval, pos_high, Math.max(pos_high, allCnt - allError), ruleSize),
+                new Eval(previousEval, pos_high, Math.max(pos_high, allCnt + allError), ruleSize)
+        };
+    }
+
+    @Override
+    public double lowerBound(EvalMetric type) {
+        double bound = value(type);
+        for (Eval corner: corners) {
+            bound = Math.min(bound, corner.value(type));
+        }
+        return bound;
+    }
+
+    @Override
+    public double upperBound(EvalMetric type) {
+        double bound = value(type);
+        for (Eval corner: corners) {
+            bound = Math.max(bound, corner.value(type));
+        }
+        return bound;
+    }
+
+    public double getPosError() {
+        return posError;
+    }
+
+    public double getAllError() {
+        return allError;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + String.format("; ±(+)%f; ±(all)%f", posError, allError);
+    }
+}
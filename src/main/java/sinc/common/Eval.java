@@ -135,6 +135,46 @@ public class Eval {
         }
     }
 
+    /**
+     * @return 指标可能取到的最小值，精确计算的eval就是value
+     */
+    public double lowerBound(EvalMetric type) {
+        return value(type);
+    }
+
+    /**
+     * @return 指标可能取到的最大值，精确计算的eval就是value
+     */
+    public double upperBound(EvalMetric type) {
+        return value(type);
+    }
+
+    /**
+     * 特化操作不会增加正例，在正例数量不超过maxPosCnt时，由previousEval特化得到的规则在type上得分的上界
+     */
+    public static double specializationUpperBound(Eval previousEval, double maxPosCnt, EvalMetric type) {
+        final double info_gain_bound;
+        if (0 >= maxPosCnt || null == previousEval || 0 == previousEval.posCnt) {
+            /* 没有前一个eval时信息增益不为正 */
+            info_gain_bound = 0;
+        } else {
+            info_gain_bound = maxPosCnt * Math.log(previousEval.allCnt / previousEval.posCnt);
+        }
+        switch (type) {
+            case CompressionRate:
+                /* 带stms的计算方式不能确定上界 */
+                return (0 < maxPosCnt) ? Double.POSITIVE_INFINITY : 0;
+            case CompressionCapacity:
+                return maxPosCnt;
+            case InfoGain:
+                return info_gain_bound;
+            case CumulatedInfo:
+                return ((null == previousEval) ? 0 : previousEval.cumulatedInfo) + info_gain_bound;
+            default:
+                return 0;
+        }
+    }
+
     public boolean useful(EvalMetric type) {
         return compCapacity > COMP_CAPACITY_USEFUL_THRESHOLD;
     }
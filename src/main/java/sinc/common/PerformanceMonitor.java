@@ -1,10 +1,12 @@
 package sinc.common;
 
+import sinc.util.ThreadLocalBuffer;
+
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
 
 public class PerformanceMonitor {
     public static class BranchInfo {
@@ -44,6 +46,7 @@ public class PerformanceMonitor {
     public long validationTime = 0;
     public long dumpTime = 0;
     public long totalTime = 0;
+    public double kbLoadThroughput = 0;  // facts/s
 
     /* Mining Statics Monitor */
     public int kbFunctors = 0;
@@ -59,14 +62,15 @@ public class PerformanceMonitor {
     public int sccVertices = 0;
     public int fvsVertices = 0;
 
-    /* Other Statistics Monitor */
-    public int invalidSearches = 0;
-    public int duplications = 0;
-    public int fcFilteredRules = 0;
+    /* Other Statistics Monitor (搜索过程中可能被多个线程同时记录) */
+    public final LongAdder invalidSearches = new LongAdder();
+    public final LongAdder duplications = new LongAdder();
+    public final LongAdder fcFilteredRules = new LongAdder();
     public int totalConstantSubstitutions = 0;
     public int actualConstantSubstitutions = 0;
-    public int tabuPruned = 0;
-    public List<BranchInfo> branchProgress = new ArrayList<>();
+    public final LongAdder tabuPruned = new LongAdder();
+    public final LongAdder boundPruned = new LongAdder();
+    public final ThreadLocalBuffer<BranchInfo> branchProgress = new ThreadLocalBuffer<>();
 
     public void show(PrintWriter writer) {
         writer.println("### Monitored Performance Info ###\n");
@@ -76,9 +80,10 @@ public class PerformanceMonitor {
                 "Load", "Hypo", "Dep", "Validate", "Dump", "Total"
         );
         writer.printf(
-                "     %10d %10d %10d %10d %10d %10d\n\n",
+                "     %10d %10d %10d %10d %10d %10d\n",
                 kbLoadTime, hypothesisMiningTime, dependencyAnalysisTime, validationTime, dumpTime, totalTime
         );
+        writer.printf("- Load Throughput: %.2f facts/s\n\n", kbLoadThroughput);
 
         writer.println("--- Statistics ---");
         writer.printf(
@@ -103,6 +108,7 @@ public class PerformanceMonitor {
         );
 
         writer.println("--- Other Statistics ---");
+        final List<BranchInfo> branch_progress = branchProgress.snapshot();
         int executed_evaluations = 0;
         int max_branches = 0;
         int max_rule_size = 0;
@@ -111,11 +117,11 @@ public class PerformanceMonitor {
         int total_ext = 0;
         int max_org = 0;
         int total_org = 0;
-        int[] rule_size_arr = new int[branchProgress.size()];
-        int[] ext_num_arr = new int[branchProgress.size()];
-        int[] org_num_arr = new int[branchProgress.size()];
-        for (int i = 0; i < branchProgress.size(); i++) {
-            BranchInfo branches = branchProgress.get(i);
+        int[] rule_size_arr = new int[branch_progress.size()];
+        int[] ext_num_arr = new int[branch_progress.size()];
+        int[] org_num_arr = new int[branch_progress.size()];
+        for (int i = 0; i < branch_progress.size(); i++) {
+            BranchInfo branches = branch_progress.get(i);
             rule_size_arr[i] = branches.ruleSize;
             ext_num_arr[i] = branches.extNum;
             org_num_arr[i] = branches.orgNum;
@@ -131,27 +137,28 @@ public class PerformanceMonitor {
             total_org += branches.orgNum;
         }
         writer.printf(
-                "# %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s\n",
-                "#Tabu", "#Invalid", "#Dup", "#FC", "#Eval", "#+Subs", "#Subs", "max(Brh)", "avg(Brh)",
+                "# %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s %10s\n",
+                "#Tabu", "#Bound", "#Invalid", "#Dup", "#FC", "#Eval", "#+Subs", "#Subs", "max(Brh)", "avg(Brh)",
                 "max(|r|)", "avg(|r|)", "max(Ext)", "avg(Ext)", "max(Org)", "avg(Org)"
         );
         writer.printf(
-                "  %10d %10d %10d %10d %10d %10d %10d %10d %10.2f %10d %10.2f %10d %10.2f %10d %10.2f\n\n",
-                tabuPruned,
-                invalidSearches,
-                duplications,
-                fcFilteredRules,
+                "  %10d %10d %10d %10d %10d %10d %10d %10d %10d %10.2f %10d %10.2f %10d %10.2f %10d %10.2f\n\n",
+                tabuPruned.sum(),
+                boundPruned.sum(),
+                invalidSearches.sum(),
+                duplications.sum(),
+                fcFilteredRules.sum(),
                 executed_evaluations,
                 actualConstantSubstitutions,
                 totalConstantSubstitutions,
                 max_branches,
-                (double) executed_evaluations / branchProgress.size(),
+                (double) executed_evaluations / branch_progress.size(),
                 max_rule_size,
-                (double) total_rule_size / branchProgress.size(),
+                (double) total_rule_size / branch_progress.size(),
                 max_ext,
-                (double) total_ext / branchProgress.size(),
+                (double) total_ext / branch_progress.size(),
                 max_org,
-                (double) total_org / branchProgress.size()
+                (double) total_org / branch_progress.size()
         );
         writer.print("- Rule Sizes: ");
         writer.println(Arrays.toString(rule_size_arr));
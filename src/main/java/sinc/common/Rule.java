@@ -10,10 +10,9 @@ public abstract class Rule {
     public static final int CONSTANT_ARG_ID = -1;
 
     public static double MIN_FACT_COVERAGE = 0.0;
-    public static RuleMonitor monitor = new RuleMonitor();
 
     public enum UpdateStatus {
-        NORMAL, DUPLICATED, INVALID, INSUFFICIENT_COVERAGE, TABU_PRUNED
+        NORMAL, DUPLICATED, INVALID, INSUFFICIENT_COVERAGE, TABU_PRUNED, BOUND_PRUNED
     }
 
     protected final List<Predicate> structure;
@@ -23,6 +22,45 @@ public abstract class Rule {
     protected int equivConds;
     protected Eval eval;
     protected final Set<RuleFingerPrint> searchedFingerprints;
+    protected RuleMonitor monitor;  // clone出的规则共享，通常由SInC设置为其所有的monitor
+    protected Checkpoint checkpoint = null;
+    /* 分支定界的阈值，只对当前这一次扩展有效，不会被复制 */
+    protected Eval.EvalMetric pruningMetric = null;
+    protected double pruningThreshold = Double.NEGATIVE_INFINITY;
+    /* 并行评估扩展时，重复检查已经在原规则上完成，副本不再检查fingerprint */
+    protected boolean fingerprintChecked = false;
+    /* 只检查而不评估扩展：通过剪枝检查的修改不更新cache，标记为推迟评估。只对当前这一次扩展有效，不会被复制 */
+    protected boolean deferEvaluation = false;
+    protected boolean evaluationDeferred = false;
+
+    /**
+     * 试探性修改之前的规则状态(undo log)。规则最多只有几个predicate，所以直接记录修改前各个predicate的参数以及变量表，
+     * 撤销时原样写回；cache的状态由子类记录在cacheState中
+     */
+    protected static class Checkpoint {
+        final List<Predicate> structure;
+        final Argument[][] args;
+        final List<Variable> boundedVars;
+        final List<Integer> boundedVarCnts;
+        final RuleFingerPrint fingerPrint;
+        final int equivConds;
+        final Eval eval;
+        final Object cacheState;
+
+        Checkpoint(Rule rule, Object cacheState) {
+            structure = new ArrayList<>(rule.structure);
+            args = new Argument[structure.size()][];
+            for (int pred_idx = 0; pred_idx < args.length; pred_idx++) {
+                args[pred_idx] = structure.get(pred_idx).args.clone();
+            }
+            boundedVars = new ArrayList<>(rule.boundedVars);
+            boundedVarCnts = new ArrayList<>(rule.boundedVarCnts);
+            fingerPrint = rule.fingerPrint;
+            equivConds = rule.equivConds;
+            eval = rule.eval;
+            this.cacheState = cacheState;
+        }
+    }
 
     public Rule(String headFunctor, int arity, Set<RuleFingerPrint> searchedFingerprints) {
         structure = new ArrayList<>();
@@ -38,6 +76,7 @@ public abstract class Rule {
 
         this.searchedFingerprints = searchedFingerprints;
         this.searchedFingerprints.add(fingerPrint);
+        this.monitor = new RuleMonitor();
     }
 
     public Rule(List<Predicate> structure, Set<RuleFingerPrint> searchedFingerprints) {
@@ -75,6 +114,7 @@ public abstract class Rule {
         this.fingerPrint = new RuleFingerPrint(this.structure);
         this.searchedFingerprints = searchedFingerprints;
         this.searchedFingerprints.add(fingerPrint);
+        this.monitor = new RuleMonitor();
     }
 
     public Rule(Rule another) {
@@ -88,10 +128,70 @@ public abstract class Rule {
         this.equivConds = another.equivConds;
         this.eval = another.eval;
         this.searchedFingerprints = another.searchedFingerprints;
+        this.monitor = another.monitor;
     }
 
     public abstract Rule clone();
 
+    /**
+     * @return 是否支持在原规则上试探性地修改然后撤销(checkpoint/rollback)。修改过程中把自身引用保存到外部的规则不能支持
+     */
+    public boolean rollbackSupported() {
+        return false;
+    }
+
+    /**
+     * 记录当前状态，之后的一次修改可以用rollback撤销。在撤销之前不能再次调用
+     */
+    public void checkpoint() {
+        if (null != checkpoint) {
+            throw new IllegalStateException("Checkpoint already exists");
+        }
+        checkpoint = new Checkpoint(this, checkpointCache());
+    }
+
+    /**
+     * 撤销checkpoint之后的修改。新的fingerprint仍然保留在searchedFingerprints中，与clone之后修改的效果相同
+     */
+    public void rollback() {
+        if (null == checkpoint) {
+            throw new IllegalStateException("No checkpoint to roll back");
+        }
+        structure.clear();
+        structure.addAll(checkpoint.structure);
+        for (int pred_idx = 0; pred_idx < checkpoint.args.length; pred_idx++) {
+            final Argument[] args = checkpoint.args[pred_idx];
+            System.arraycopy(args, 0, structure.get(pred_idx).args, 0, args.length);
+        }
+        boundedVars.clear();
+        boundedVars.addAll(checkpoint.boundedVars);
+        boundedVarCnts.clear();
+        boundedVarCnts.addAll(checkpoint.boundedVarCnts);
+        fingerPrint = checkpoint.fingerPrint;
+        equivConds = checkpoint.equivConds;
+        eval = checkpoint.eval;
+        rollbackCache(checkpoint.cacheState);
+        checkpoint = null;
+    }
+
+    /**
+     * @return 当前checkpoint中记录的cache状态，没有checkpoint时返回null
+     */
+    protected Object checkpointedCacheState() {
+        return (null == checkpoint) ? null : checkpoint.cacheState;
+    }
+
+    /**
+     * @return 撤销时恢复cache所需的状态
+     */
+    protected Object checkpointCache() {
+        return null;
+    }
+
+    protected void rollbackCache(Object cacheState) {
+        /* 没有cache的规则什么也不做 */
+    }
+
     public Predicate getPredicate(int idx) {
         return structure.get(idx);
     }
@@ -112,10 +212,119 @@ public abstract class Rule {
         return equivConds;
     }
 
+    /**
+     * 之后将在predIdx, argIdx处依次试探性地绑定constantSymbols中的常量(每次都用checkpoint/rollback撤销)，子类可以
+     * 一次性准备这些扩展共用的中间结果。endConstantBatch之前不能对规则做其他修改
+     */
+    public void beginConstantBatch(int predIdx, int argIdx, List<String> constantSymbols) {
+    }
+
+    public void endConstantBatch() {
+    }
+
+    /**
+     * 之后将依次试探性地增加新谓词并把其中一个参数绑定为varId(每次都用checkpoint/rollback撤销)，子类可以一次性准备
+     * 这些扩展共用的中间结果。endExistingVarBatch之前不能对规则做其他修改
+     */
+    public void beginExistingVarBatch(int varId) {
+    }
+
+    public void endExistingVarBatch() {
+    }
+
     public Eval getEval() {
         return eval;
     }
 
+    /**
+     * @return 当前的eval是否是在采样上估计的
+     */
+    public boolean evalEstimated() {
+        return eval instanceof EstimatedEval;
+    }
+
+    /**
+     * 如果当前的eval是估计值，以估计时的基准eval为前一个eval，精确地重新计算
+     */
+    public void updateExactEval() {
+        if (eval instanceof EstimatedEval) {
+            eval = ((EstimatedEval) eval).previousEval;
+            eval = calculateExactEval();
+        }
+    }
+
+    /**
+     * 设置分支定界的阈值：之后的特化操作如果乐观估计的得分不超过threshold，不再更新cache和计算eval，直接返回
+     * BOUND_PRUNED。metric为null时不剪枝
+     */
+    public void setPruningThreshold(Eval.EvalMetric metric, double threshold) {
+        pruningMetric = metric;
+        pruningThreshold = threshold;
+    }
+
+    /**
+     * 在更新cache之前调用时，返回当前规则在metric上能取得的最高得分。特化不会增加正例，所以以父规则的eval为基准
+     */
+    public double evalUpperBound(Eval.EvalMetric metric) {
+        return Eval.specializationUpperBound(eval, posUpperBound(), metric);
+    }
+
+    /**
+     * @return 修改结构之后、更新cache之前，规则能蕴含的正例数量的上界
+     */
+    protected double posUpperBound() {
+        return eval.getPosCnt();
+    }
+
+    /**
+     * 推迟评估时，没有被阈值剪掉的扩展也在更新cache之前返回，并标记为推迟评估
+     */
+    protected boolean boundPruned() {
+        if (null != pruningMetric && null != eval && !evalEstimated()
+                && evalUpperBound(pruningMetric) <= pruningThreshold) {
+            return true;
+        }
+        evaluationDeferred = deferEvaluation;
+        return deferEvaluation;
+    }
+
+    /**
+     * 设置之后的修改是否只检查而不评估：通过重复、合法性以及剪枝检查的修改返回BOUND_PRUNED，且evaluationDeferred()
+     * 为true
+     */
+    public void setDeferEvaluation(boolean defer) {
+        deferEvaluation = defer;
+        evaluationDeferred = false;
+    }
+
+    /**
+     * @return 上一次修改是否通过了所有检查，留待之后评估
+     */
+    public boolean evaluationDeferred() {
+        return evaluationDeferred;
+    }
+
+    /**
+     * @return 能否在其他线程中并发地修改clone出的多个副本
+     */
+    public boolean concurrentEvaluationSupported() {
+        return false;
+    }
+
+    /**
+     * 设置为并发评估的副本：之后的修改不再检查和记录fingerprint(已经在原规则上检查过)
+     */
+    public void setConcurrentEvaluation(boolean concurrent) {
+        this.fingerprintChecked = concurrent;
+    }
+
+    /**
+     * 之后的修改以及clone出的规则把开销记录在monitor中
+     */
+    public void setMonitor(RuleMonitor monitor) {
+        this.monitor = monitor;
+    }
+
     /**
      * 以下几种情况为Invalid：
      *   1. Trivial
@@ -212,12 +421,12 @@ public abstract class Rule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVar2ExistingVarUpdateStructure(predIdx, argIdx, varId);
         long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        monitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
+        boolean cache_hit = !fingerprintChecked && !searchedFingerprints.add(fingerPrint);
         long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        monitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (cache_hit) {
             return UpdateStatus.DUPLICATED;
         }
@@ -225,15 +434,20 @@ public abstract class Rule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        monitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVar2ExistingVarHandler(predIdx, argIdx, varId);
         long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
+        monitor.updateHandlerTimeNano.add(time_updated_nano - time_valid_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -241,7 +455,7 @@ public abstract class Rule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        monitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -276,12 +490,12 @@ public abstract class Rule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVar2ExistingVarUpdateStructure(functor, arity, argIdx, varId);
         long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        monitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
+        boolean cache_hit = !fingerprintChecked && !searchedFingerprints.add(fingerPrint);
         long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        monitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (cache_hit) {
             return UpdateStatus.DUPLICATED;
         }
@@ -289,15 +503,20 @@ public abstract class Rule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        monitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVar2ExistingVarHandler(structure.get(structure.size() - 1), argIdx, varId);
         long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
+        monitor.updateHandlerTimeNano.add(time_updated_nano - time_valid_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -305,7 +524,7 @@ public abstract class Rule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        monitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -341,12 +560,12 @@ public abstract class Rule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVars2NewVarUpdateStructure(predIdx1, argIdx1, predIdx2, argIdx2);
         long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        monitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
+        boolean cache_hit = !fingerprintChecked && !searchedFingerprints.add(fingerPrint);
         long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        monitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (cache_hit) {
             return UpdateStatus.DUPLICATED;
         }
@@ -354,15 +573,20 @@ public abstract class Rule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        monitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVars2NewVarHandler(predIdx1, argIdx1, predIdx2, argIdx2);
         long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
+        monitor.updateHandlerTimeNano.add(time_updated_nano - time_valid_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -370,7 +594,7 @@ public abstract class Rule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        monitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -409,12 +633,12 @@ public abstract class Rule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVars2NewVarUpdateStructure(functor, arity, argIdx1, predIdx2, argIdx2);
         long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        monitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
+        boolean cache_hit = !fingerprintChecked && !searchedFingerprints.add(fingerPrint);
         long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        monitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (cache_hit) {
             return UpdateStatus.DUPLICATED;
         }
@@ -422,17 +646,22 @@ public abstract class Rule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        monitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVars2NewVarHandler(
                 structure.get(structure.size() - 1), argIdx1, predIdx2, argIdx2
         );
         long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
+        monitor.updateHandlerTimeNano.add(time_updated_nano - time_valid_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -440,7 +669,7 @@ public abstract class Rule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        monitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -478,12 +707,12 @@ public abstract class Rule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVar2ConstantUpdateStructure(predIdx, argIdx, constantSymbol);
         long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        monitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
+        boolean cache_hit = !fingerprintChecked && !searchedFingerprints.add(fingerPrint);
         long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        monitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (cache_hit) {
             return UpdateStatus.DUPLICATED;
         }
@@ -491,15 +720,20 @@ public abstract class Rule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        monitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVar2ConstantHandler(predIdx, argIdx, constantSymbol);
         long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
+        monitor.updateHandlerTimeNano.add(time_updated_nano - time_valid_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -507,7 +741,7 @@ public abstract class Rule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        monitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -531,12 +765,12 @@ public abstract class Rule {
         long time_start_nano = System.nanoTime();
         fingerPrint = removeBoundedArgUpdateStructure(predIdx, argIdx);
         long time_fp_updated_nano = System.nanoTime();
-        monitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        monitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
-        boolean cache_hit = !searchedFingerprints.add(fingerPrint);
+        boolean cache_hit = !fingerprintChecked && !searchedFingerprints.add(fingerPrint);
         long time_cache_checked_nano = System.nanoTime();
-        monitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        monitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (cache_hit) {
             return UpdateStatus.DUPLICATED;
         }
@@ -544,7 +778,7 @@ public abstract class Rule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        monitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        monitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
@@ -552,7 +786,7 @@ public abstract class Rule {
         /* 执行handler */
         final UpdateStatus status = removeBoundedArgHandler(predIdx, argIdx);
         long time_updated_nano = System.nanoTime();
-        monitor.updateHandlerTimeNano += time_updated_nano - time_valid_checked_nano;
+        monitor.updateHandlerTimeNano.add(time_updated_nano - time_valid_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -560,7 +794,7 @@ public abstract class Rule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        monitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        monitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -642,6 +876,23 @@ public abstract class Rule {
      */
     protected abstract Eval calculateEval();
 
+    /**
+     * 不采样，精确地计算eval。默认的calculateEval就是精确的
+     */
+    protected Eval calculateExactEval() {
+        return calculateEval();
+    }
+
+    /**
+     * beam search中candidate的顺序：得分高的在前；得分相同时较短的在前，再按照fingerprint的规范形式排序。
+     * 顺序与hash无关，因此搜索结果不依赖于集合的遍历顺序
+     */
+    public static Comparator<Rule> beamOrder(Eval.EvalMetric evalMetric) {
+        return Comparator.comparingDouble((Rule r) -> r.getEval().value(evalMetric)).reversed()
+                .thenComparingInt(Rule::size)
+                .thenComparing(Rule::getFingerPrint);
+    }
+
     public RuleFingerPrint getFingerPrint() {
         return fingerPrint;
     }
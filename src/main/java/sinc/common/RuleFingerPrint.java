@@ -5,7 +5,17 @@ import sinc.util.MultiSet;
 import java.util.*;
 
 /**
- * Todo: 当前的fingerprint会有误判，使得本来不同的rule判定为相同，例如：
+ * 规则的规范形式(canonical form)，用于判断两条规则是否相同(变量重命名、body中predicate重排后一致)。
+ *
+ * 规范形式固定head在最前面，按照下面的顺序排列body：每一步在剩余的predicate中选择编码最小的一个(见compareUnder)，
+ * 变量按照第一次出现的顺序编号。只有编码相同的predicate(通常是多个相同functor的predicate)需要分支，
+ * 此时取所有分支中编码最小的结果。规范形式记录为：
+ *
+ *   - codes: 每个predicate依次记录arity以及各参数的编码，0表示'?'，正数表示变量编号，-1表示常量
+ *   - symbols: 每个predicate依次记录functor以及其中常量的名称
+ *   - hash: 以上两部分的64位hash
+ *
+ * 两条规则相同当且仅当它们的规范形式相同，因此不会像原来基于等价类的fingerprint一样把下面的规则判定为相同：
  *
  *   1. p(X,Y) :- f(X,X), f(?,Y)
  *   2. p(X,Y) :- f(X,Y), f(?,X)
@@ -13,111 +23,311 @@ import java.util.*;
  *   3. p(X,Y) :- f(X,?), f(Z,Y), f(?,Z)
  *   4. p(X,Y) :- f(X,Z), f(?,Y), f(Z,?)
  *
- * 上面两组rule在当前Fingerprint框架下会被判定为相同，但是这种情况比较特殊，只会在rule中出现多个相同functor的predicate时出现
+ * tabu剪枝使用的等价类(predecessorOf)在第一次使用时由规范形式构造。
  */
-public class RuleFingerPrint {
+public class RuleFingerPrint implements Comparable<RuleFingerPrint> {
+    private static final int FREE_VAR_CODE = 0;
+    private static final int CONSTANT_CODE = -1;
+    private static final long HASH_OFFSET = 0xcbf29ce484222325L;
+    private static final long HASH_PRIME = 0x100000001b3L;
+
     private final String headFunctor;
-    private final MultiSet<ArgIndicator>[] headEquivClasses;
+    private final long[] codes;
+    private final String[] symbols;
+    private final long hash;
+
+    /* 等价类只在tabu剪枝中使用，延迟构造 */
+    private MultiSet<ArgIndicator>[] headEquivClasses = null;
     /* 'otherEquivClasses'可以不必是Multiset，可以用Set代替，因为Extension操作中不会引入Independent Fragment */
-    private final MultiSet<MultiSet<ArgIndicator>> otherEquivClasses;
+    private MultiSet<MultiSet<ArgIndicator>> otherEquivClasses = null;
 
     public final List<Predicate> rule;
 
     public RuleFingerPrint(List<Predicate> rule) {
         this.rule = rule;
-        final Predicate head_predicate = rule.get(0);
-        headFunctor = head_predicate.functor;
-        headEquivClasses = new MultiSet[head_predicate.arity()];
-        otherEquivClasses = new MultiSet<>();
-        final Map<Integer, MultiSet<ArgIndicator>> bounded_equiv_classes = new HashMap<>();
-        final Set<Integer> body_bv_ids = new HashSet<>();
-
-        /* 先处理Head */
-        for (int arg_idx = 0; arg_idx < head_predicate.arity(); arg_idx++) {
-            final Argument argument = head_predicate.args[arg_idx];
-            if (null == argument) {
-                /* Free Var */
-                headEquivClasses[arg_idx] = new MultiSet<>();
-                headEquivClasses[arg_idx].add(new VarIndicator(head_predicate.functor, arg_idx));
-            } else {
-                if (argument.isVar) {
-                    final int tmp_idx = arg_idx;
-                    bounded_equiv_classes.compute(argument.id, (id, mset) -> {
-                        if (null == mset) {
-                            mset = new MultiSet<>();
+        headFunctor = rule.get(0).functor;
+
+        final Canonicalizer canonicalizer = new Canonicalizer(rule);
+        canonicalizer.search(1);
+        codes = canonicalizer.bestCodes;
+        symbols = canonicalizer.bestSymbols;
+
+        long h = HASH_OFFSET;
+        for (long code: codes) {
+            h = (h ^ code) * HASH_PRIME;
+        }
+        for (String symbol: symbols) {
+            h = (h ^ symbol.hashCode()) * HASH_PRIME;
+        }
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        hash = h ^ (h >>> 31);
+    }
+
+    /**
+     * 按照规范形式中的predicate顺序搜索最小的编码
+     */
+    private static class Canonicalizer {
+        final List<Predicate> rule;
+        final int[] labels;  // 变量id -> 编号，0表示尚未编号
+        int nextLabel = 1;
+        final boolean[] used;
+        final int[] order;
+        long[] bestCodes = null;
+        String[] bestSymbols = null;
+
+        Canonicalizer(List<Predicate> rule) {
+            this.rule = rule;
+            int max_var_id = -1;
+            for (Predicate predicate: rule) {
+                for (Argument argument: predicate.args) {
+                    if (null != argument && argument.isVar) {
+                        max_var_id = Math.max(max_var_id, argument.id);
+                    }
+                }
+            }
+            labels = new int[max_var_id + 1];
+            used = new boolean[rule.size()];
+            order = new int[rule.size()];
+            order[0] = 0;
+            used[0] = true;
+            assignLabels(rule.get(0), null);
+        }
+
+        void search(int depth) {
+            if (rule.size() == depth) {
+                recordLeaf();
+                return;
+            }
+
+            /* 只有编码最小的predicate可以作为下一个 */
+            final List<Integer> candidates = new ArrayList<>();
+            for (int pred_idx = 1; pred_idx < rule.size(); pred_idx++) {
+                if (used[pred_idx]) {
+                    continue;
+                }
+                if (candidates.isEmpty()) {
+                    candidates.add(pred_idx);
+                    continue;
+                }
+                final Predicate predicate = rule.get(pred_idx);
+                final int cmp = compareUnder(predicate, rule.get(candidates.get(0)));
+                if (0 > cmp) {
+                    candidates.clear();
+                    candidates.add(pred_idx);
+                } else if (0 == cmp) {
+                    /* 完全相同的predicate得到的结果也相同，不必重复分支 */
+                    boolean duplicated = false;
+                    for (int candidate_idx: candidates) {
+                        if (predicate.equals(rule.get(candidate_idx))) {
+                            duplicated = true;
+                            break;
                         }
-                        mset.add(new VarIndicator(head_predicate.functor, tmp_idx));
-                        headEquivClasses[tmp_idx] = mset;
-                        return mset;
-                    });
-                } else {
-                    /* Constant */
-                    headEquivClasses[arg_idx] = new MultiSet<>();
-                    headEquivClasses[arg_idx].add(new VarIndicator(head_predicate.functor, arg_idx));
-                    headEquivClasses[arg_idx].add(new ConstIndicator(argument.name));
+                    }
+                    if (!duplicated) {
+                        candidates.add(pred_idx);
+                    }
+                }
+            }
+
+            for (int pred_idx: candidates) {
+                final List<Integer> assigned = new ArrayList<>();
+                assignLabels(rule.get(pred_idx), assigned);
+                used[pred_idx] = true;
+                order[depth] = pred_idx;
+                search(depth + 1);
+                used[pred_idx] = false;
+                for (int var_id: assigned) {
+                    labels[var_id] = 0;
                 }
+                nextLabel -= assigned.size();
             }
         }
 
-        /* 再处理剩余的Body */
-        for (int pred_idx = 1; pred_idx < rule.size(); pred_idx++) {
-            Predicate body_predicate = rule.get(pred_idx);
-            for (int arg_idx = 0; arg_idx < body_predicate.arity(); arg_idx++) {
-                final Argument argument = body_predicate.args[arg_idx];
-                if (null == argument) {
-                    /* Free Var */
-                    final MultiSet<ArgIndicator> new_equiv_class = new MultiSet<>();
-                    new_equiv_class.add(new VarIndicator(body_predicate.functor, arg_idx));
-                    otherEquivClasses.add(new_equiv_class);
+        void assignLabels(Predicate predicate, List<Integer> assigned) {
+            for (Argument argument: predicate.args) {
+                if (null != argument && argument.isVar && 0 == labels[argument.id]) {
+                    labels[argument.id] = nextLabel;
+                    nextLabel++;
+                    if (null != assigned) {
+                        assigned.add(argument.id);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 比较在当前编号下两个predicate的编码，尚未编号的变量按照在predicate中出现的顺序临时编号
+         */
+        int compareUnder(Predicate p1, Predicate p2) {
+            int cmp = p1.functor.compareTo(p2.functor);
+            if (0 != cmp) {
+                return cmp;
+            }
+            cmp = Integer.compare(p1.arity(), p2.arity());
+            if (0 != cmp) {
+                return cmp;
+            }
+            final Map<Integer, Integer> tmp_labels1 = new HashMap<>();
+            final Map<Integer, Integer> tmp_labels2 = new HashMap<>();
+            for (int arg_idx = 0; arg_idx < p1.arity(); arg_idx++) {
+                final Argument arg1 = p1.args[arg_idx];
+                final Argument arg2 = p2.args[arg_idx];
+                cmp = Integer.compare(kindOf(arg1), kindOf(arg2));
+                if (0 != cmp) {
+                    return cmp;
+                }
+                if (null == arg1) {
+                    continue;
+                }
+                if (arg1.isVar) {
+                    cmp = Integer.compare(labelOf(arg1, tmp_labels1), labelOf(arg2, tmp_labels2));
                 } else {
-                    if (argument.isVar) {
-                        final int tmp_idx = arg_idx;
-                        bounded_equiv_classes.compute(argument.id, (id, mset) -> {
-                            if (null == mset) {
-                                mset = new MultiSet<>();
-                                // otherEquivClasses.add(mset);
-                                /* 这里不能直接添加mest，因为这个mest中的元素后面可能会变，导致其hash改变，从而使得equal()函数
-                                 * 的结果错误。
-                                 * Body中的所有BV对应的等价类应该等到完全构造完毕之后统一加入Multiset
-                                 */
-                                body_bv_ids.add(id);  // 标记body bv
-                            }
-                            mset.add(new VarIndicator(body_predicate.functor, tmp_idx));
-                            return mset;
-                        });
+                    cmp = arg1.name.compareTo(arg2.name);
+                }
+                if (0 != cmp) {
+                    return cmp;
+                }
+            }
+            return 0;
+        }
+
+        int kindOf(Argument argument) {
+            return (null == argument) ? 0 : (argument.isVar ? 1 : 2);
+        }
+
+        int labelOf(Argument variable, Map<Integer, Integer> tmpLabels) {
+            final int label = labels[variable.id];
+            if (0 != label) {
+                return label;
+            }
+            return tmpLabels.computeIfAbsent(variable.id, k -> nextLabel + tmpLabels.size());
+        }
+
+        void recordLeaf() {
+            int codes_len = 0;
+            int symbols_len = 0;
+            for (Predicate predicate: rule) {
+                codes_len += predicate.arity() + 1;
+                symbols_len++;
+                for (Argument argument: predicate.args) {
+                    if (null != argument && !argument.isVar) {
+                        symbols_len++;
+                    }
+                }
+            }
+            final long[] leaf_codes = new long[codes_len];
+            final String[] leaf_symbols = new String[symbols_len];
+            int code_idx = 0;
+            int symbol_idx = 0;
+            for (int pred_idx: order) {
+                final Predicate predicate = rule.get(pred_idx);
+                leaf_codes[code_idx++] = predicate.arity();
+                leaf_symbols[symbol_idx++] = predicate.functor;
+                for (Argument argument: predicate.args) {
+                    if (null == argument) {
+                        leaf_codes[code_idx++] = FREE_VAR_CODE;
+                    } else if (argument.isVar) {
+                        leaf_codes[code_idx++] = labels[argument.id];
                     } else {
-                        /* Constant */
-                        MultiSet<ArgIndicator> new_equiv_class = new MultiSet<>();
-                        new_equiv_class.add(new VarIndicator(body_predicate.functor, arg_idx));
-                        new_equiv_class.add(new ConstIndicator(argument.name));
-                        otherEquivClasses.add(new_equiv_class);
+                        leaf_codes[code_idx++] = CONSTANT_CODE;
+                        leaf_symbols[symbol_idx++] = argument.name;
                     }
                 }
             }
+
+            if (null == bestCodes || 0 > compareEncodings(leaf_codes, leaf_symbols, bestCodes, bestSymbols)) {
+                bestCodes = leaf_codes;
+                bestSymbols = leaf_symbols;
+            }
         }
 
-        for (int id : body_bv_ids) {
-            otherEquivClasses.add(bounded_equiv_classes.get(id));
+        static int compareEncodings(long[] codes1, String[] symbols1, long[] codes2, String[] symbols2) {
+            final int cmp = Arrays.compare(codes1, codes2);
+            if (0 != cmp) {
+                return cmp;
+            }
+            return Arrays.compare(symbols1, symbols2);
         }
     }
 
+    /**
+     * 由规范形式构造等价类
+     */
+    private synchronized void buildEquivClasses() {
+        if (null != otherEquivClasses) {
+            return;
+        }
+        final MultiSet<ArgIndicator>[] head_equiv_classes = new MultiSet[(int) codes[0]];
+        final MultiSet<MultiSet<ArgIndicator>> other_equiv_classes = new MultiSet<>();
+        final Map<Long, MultiSet<ArgIndicator>> bounded_equiv_classes = new HashMap<>();
+        final List<MultiSet<ArgIndicator>> body_bv_classes = new ArrayList<>();
+        int code_idx = 0;
+        int symbol_idx = 0;
+        boolean is_head = true;
+        while (code_idx < codes.length) {
+            final int arity = (int) codes[code_idx++];
+            final String functor = symbols[symbol_idx++];
+            for (int arg_idx = 0; arg_idx < arity; arg_idx++) {
+                final long code = codes[code_idx++];
+                MultiSet<ArgIndicator> equiv_class;
+                if (FREE_VAR_CODE == code) {
+                    equiv_class = new MultiSet<>();
+                    equiv_class.add(new VarIndicator(functor, arg_idx));
+                    if (!is_head) {
+                        other_equiv_classes.add(equiv_class);
+                    }
+                } else if (CONSTANT_CODE == code) {
+                    equiv_class = new MultiSet<>();
+                    equiv_class.add(new VarIndicator(functor, arg_idx));
+                    equiv_class.add(new ConstIndicator(symbols[symbol_idx++]));
+                    if (!is_head) {
+                        other_equiv_classes.add(equiv_class);
+                    }
+                } else {
+                    equiv_class = bounded_equiv_classes.get(code);
+                    if (null == equiv_class) {
+                        equiv_class = new MultiSet<>();
+                        bounded_equiv_classes.put(code, equiv_class);
+                        if (!is_head) {
+                            /* Body中的BV对应的等价类应该等到完全构造完毕之后统一加入Multiset，否则其hash会改变 */
+                            body_bv_classes.add(equiv_class);
+                        }
+                    }
+                    equiv_class.add(new VarIndicator(functor, arg_idx));
+                }
+                if (is_head) {
+                    head_equiv_classes[arg_idx] = equiv_class;
+                }
+            }
+            is_head = false;
+        }
+        for (MultiSet<ArgIndicator> equiv_class: body_bv_classes) {
+            other_equiv_classes.add(equiv_class);
+        }
+        headEquivClasses = head_equiv_classes;
+        otherEquivClasses = other_equiv_classes;
+    }
+
     public String getHeadFunctor() {
         return headFunctor;
     }
 
     public MultiSet<ArgIndicator>[] getHeadEquivClasses() {
+        buildEquivClasses();
         return headEquivClasses;
     }
 
     public MultiSet<MultiSet<ArgIndicator>> getOtherEquivClasses() {
+        buildEquivClasses();
         return otherEquivClasses;
     }
 
     public boolean predecessorOf(RuleFingerPrint another) {
-        final Set<MultiSet<ArgIndicator>> this_eqv_classes = new HashSet<>(Arrays.asList(headEquivClasses));
-        this_eqv_classes.addAll(otherEquivClasses.distinctValues());
-        final Set<MultiSet<ArgIndicator>> another_eqv_classes = new HashSet<>(Arrays.asList(another.headEquivClasses));
-        another_eqv_classes.addAll(another.otherEquivClasses.distinctValues());
+        final Set<MultiSet<ArgIndicator>> this_eqv_classes = new HashSet<>(Arrays.asList(getHeadEquivClasses()));
+        this_eqv_classes.addAll(getOtherEquivClasses().distinctValues());
+        final Set<MultiSet<ArgIndicator>> another_eqv_classes = new HashSet<>(Arrays.asList(another.getHeadEquivClasses()));
+        another_eqv_classes.addAll(another.getOtherEquivClasses().distinctValues());
         for (MultiSet<ArgIndicator> this_eqv_class: this_eqv_classes) {
             boolean found_superset = false;
             for (MultiSet<ArgIndicator> another_eqv_class: another_eqv_classes) {
@@ -133,20 +343,31 @@ public class RuleFingerPrint {
         return true;
     }
 
+    /**
+     * @return 规范形式的64位hash
+     */
+    public long longHash() {
+        return hash;
+    }
+
+    /**
+     * 按照规范形式比较，与hash无关。用于确定性地打破beam search中得分相同的平局
+     */
+    @Override
+    public int compareTo(RuleFingerPrint another) {
+        return Canonicalizer.compareEncodings(codes, symbols, another.codes, another.symbols);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         RuleFingerPrint that = (RuleFingerPrint) o;
-        return Objects.equals(headFunctor, that.headFunctor) &&
-                Arrays.equals(headEquivClasses, that.headEquivClasses) &&
-                Objects.equals(otherEquivClasses, that.otherEquivClasses);
+        return hash == that.hash && Arrays.equals(codes, that.codes) && Arrays.equals(symbols, that.symbols);
     }
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(headFunctor, otherEquivClasses);
-        result = 31 * result + Arrays.hashCode(headEquivClasses);
-        return result;
+        return (int) (hash ^ (hash >>> 32));
     }
 }
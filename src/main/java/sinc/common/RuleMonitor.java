@@ -1,16 +1,20 @@
 package sinc.common;
 
 import java.io.PrintWriter;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * 规则修改的时间开销。由一个SInC对象所有，多个线程中的规则可以同时记录
+ */
 public class RuleMonitor {
     private static final int NANOS_PER_MILLI = 1000000;
 
     /* Rule Update Cost */
-    public long updateFingerPrintTimeNano = 0;
-    public long dupCheckTimeNano = 0;
-    public long validCheckTimeNano = 0;
-    public long updateHandlerTimeNano = 0;
-    public long evalTimeNano = 0;
+    public final LongAdder updateFingerPrintTimeNano = new LongAdder();
+    public final LongAdder dupCheckTimeNano = new LongAdder();
+    public final LongAdder validCheckTimeNano = new LongAdder();
+    public final LongAdder updateHandlerTimeNano = new LongAdder();
+    public final LongAdder evalTimeNano = new LongAdder();
 
     public void show(PrintWriter writer) {
         writer.println("### Monitored Rule Info ###\n");
@@ -21,11 +25,11 @@ public class RuleMonitor {
         );
         writer.printf(
                 "     %10d %10d %10d %10d %10d\n\n",
-                updateFingerPrintTimeNano / NANOS_PER_MILLI,
-                dupCheckTimeNano / NANOS_PER_MILLI,
-                validCheckTimeNano / NANOS_PER_MILLI,
-                updateHandlerTimeNano / NANOS_PER_MILLI,
-                evalTimeNano / NANOS_PER_MILLI
+                updateFingerPrintTimeNano.sum() / NANOS_PER_MILLI,
+                dupCheckTimeNano.sum() / NANOS_PER_MILLI,
+                validCheckTimeNano.sum() / NANOS_PER_MILLI,
+                updateHandlerTimeNano.sum() / NANOS_PER_MILLI,
+                evalTimeNano.sum() / NANOS_PER_MILLI
         );
     }
 }
@@ -4,8 +4,9 @@ import sinc.common.Argument;
 import sinc.common.Constant;
 import sinc.common.Dataset;
 import sinc.common.Predicate;
+import sinc.impl.cached.KbRelation;
 import sinc.impl.cached.MemKB;
-import sinc.util.MultiSet;
+import sinc.impl.cached.ValueCounts;
 import sinc.util.graph.BaseGraphNode;
 import sinc.util.graph.Tarjan;
 
@@ -108,17 +109,23 @@ public class SplitDataset extends MemKB {
             }
         }
         List<SimInfo> similarities = new ArrayList<>();
-        Map.Entry<String, MultiSet<String>[]>[] entries = functor2ArgSetsMap.entrySet().toArray(new Map.Entry[0]);
-        for (int i = 0; i < entries.length; i++) {
-            String functor1 = entries[i].getKey();
-            MultiSet<String>[] arg_sets1 = entries[i].getValue();
-            for (int j = i + 1; j < entries.length; j++) {
-                String functor2 = entries[j].getKey();
-                MultiSet<String>[] arg_sets2 = entries[j].getValue();
+        String[] functors = functor2ArityMap.keySet().toArray(new String[0]);
+        ValueCounts[][] value_counts = new ValueCounts[functors.length][];
+        for (int i = 0; i < functors.length; i++) {
+            KbRelation relation = getRelation(functors[i]);
+            value_counts[i] = new ValueCounts[relation.arity];
+            for (int col = 0; col < relation.arity; col++) {
+                value_counts[i][col] = relation.valueCounts(col);
+            }
+        }
+        for (int i = 0; i < functors.length; i++) {
+            String functor1 = functors[i];
+            for (int j = i + 1; j < functors.length; j++) {
+                String functor2 = functors[j];
                 double max_sim = 0;
-                for (MultiSet<String> art_set1 : arg_sets1) {
-                    for (MultiSet<String> arg_set2 : arg_sets2) {
-                        double similarity = art_set1.jaccardSimilarity(arg_set2);
+                for (ValueCounts arg_counts1 : value_counts[i]) {
+                    for (ValueCounts arg_counts2 : value_counts[j]) {
+                        double similarity = arg_counts1.jaccardSimilarity(arg_counts2);
 //                        max_sim = Math.max(max_sim, similarity);
                         max_sim = (max_sim >= similarity) ? max_sim : similarity;
                     }
@@ -251,7 +258,7 @@ public class SplitDataset extends MemKB {
             Set<String> scc = ci.sccs[scc_idx];
             PrintWriter writer = new PrintWriter(String.format("%s_split_%d.tsv", fnamePrefix, scc_idx));
             for (String functor : scc) {
-                Set<Predicate> facts = functor2Facts.get(functor);
+                Set<Predicate> facts = getAllFacts(functor);
                 remaining_functors.remove(functor);
                 for (Predicate fact: facts) {
                     writer.print(fact.functor);
@@ -269,7 +276,7 @@ public class SplitDataset extends MemKB {
         for (String functor : remaining_functors) {
             PrintWriter writer = new PrintWriter(String.format("%s_split_%d.tsv", fnamePrefix, scc_idx));
             scc_idx++;
-            Set<Predicate> facts = functor2Facts.get(functor);
+            Set<Predicate> facts = getAllFacts(functor);
             for (Predicate fact: facts) {
                 writer.print(fact.functor);
                 for (Argument argument: fact.args) {
@@ -59,7 +59,6 @@ public class SInCWithGraph {
         }
         this.logger = writer;
         Rule.MIN_FACT_COVERAGE = config.minFactCoverage;
-        Rule.monitor = new RuleMonitor();
     }
 
     /**
@@ -90,22 +89,19 @@ public class SInCWithGraph {
     protected Rule findRule(String headFunctor) throws InterruptedSignal {
         final Set<RuleFingerPrint> cache = new HashSet<>();
         final Rule start_rule = getStartRule(headFunctor, 2, cache); //triple's arity is 2
+        start_rule.setMonitor(ruleMonitor);
 
         /* 初始化beams */
         final Eval.EvalMetric eval_metric = config.evalMetric;
         final int beam_width = config.beamWidth;
-        Set<Rule> beams = new HashSet<>();
+        List<Rule> beams = new ArrayList<>();
         beams.add(start_rule);
-        PriorityQueue<Rule> optimals = new PriorityQueue<>(
-                Comparator.comparingDouble((Rule r) -> r.getEval().value(eval_metric)).reversed()
-        );
+        PriorityQueue<Rule> optimals = new PriorityQueue<>(Rule.beamOrder(eval_metric));
 
         /* 寻找局部最优（只要进入这个循环，一定有局部最优） */
         while (true) {
             /* 根据当前beam遍历下一轮的所有candidates */
-            PriorityQueue<Rule> candidates = new PriorityQueue<>(
-                    Comparator.comparingDouble((Rule r) -> r.getEval().value(eval_metric)).reversed()
-            );
+            PriorityQueue<Rule> candidates = new PriorityQueue<>(Rule.beamOrder(eval_metric));
             for (Rule r: beams) {
                 logger.printf("Extend: %s\n", r);
                 logger.flush();
@@ -145,7 +141,7 @@ public class SInCWithGraph {
             }
 
             /* 找出下一轮的beams */
-            Set<Rule> new_beams = new HashSet<>();
+            List<Rule> new_beams = new ArrayList<>();
             Rule beam_rule;
             while (new_beams.size() < beam_width && (null != (beam_rule = candidates.poll()))) {
                 new_beams.add(beam_rule);
@@ -310,7 +306,7 @@ public class SInCWithGraph {
 
     protected void showMonitor() {
         performanceMonitor.show(logger);
-        Rule.monitor.show(logger);
+        ruleMonitor.show(logger);
         logger.flush();
     }
 
@@ -345,16 +341,19 @@ public class SInCWithGraph {
                 }
                 break;
             case INVALID:
-                performanceMonitor.invalidSearches++;
+                performanceMonitor.invalidSearches.increment();
                 break;
             case DUPLICATED:
-                performanceMonitor.duplications++;
+                performanceMonitor.duplications.increment();
                 break;
             case INSUFFICIENT_COVERAGE:
-                performanceMonitor.fcFilteredRules++;
+                performanceMonitor.fcFilteredRules.increment();
                 break;
             case TABU_PRUNED:
-                performanceMonitor.tabuPruned++;
+                performanceMonitor.tabuPruned.increment();
+                break;
+            case BOUND_PRUNED:
+                performanceMonitor.boundPruned.increment();
                 break;
             default:
                 throw new Error("Unknown Update Status of Rule: " + updateStatus.name());
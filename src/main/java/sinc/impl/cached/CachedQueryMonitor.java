@@ -1,27 +1,31 @@
 package sinc.impl.cached;
 
 import sinc.common.Eval;
+import sinc.util.ThreadLocalBuffer;
 
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * 由一个CachedSinc对象所有，汇总所有规则的CachedRuleMonitor，多个线程可以同时记录
+ */
 public class CachedQueryMonitor {
     private static final int DENOMINATOR = 1000000;
+    private static final int KB_BYTES = 1024;
 
-    public long preComputingCostInNano = 0;
-    public long allEntailQueryCostInNano = 0;
-    public long posEntailQueryCostInNano = 0;
+    public final LongAdder preComputingCostInNano = new LongAdder();
+    public final LongAdder allEntailQueryCostInNano = new LongAdder();
+    public final LongAdder posEntailQueryCostInNano = new LongAdder();
 
-    public long boundExistVarCostInNano = 0;
-    public long boundExistVarInNewPredCostInNano = 0;
-    public long boundNewVarCostInNano = 0;
-    public long boundNewVarInNewPredCostInNano = 0;
-    public long boundConstCostInNano = 0;
+    public final LongAdder boundExistVarCostInNano = new LongAdder();
+    public final LongAdder boundExistVarInNewPredCostInNano = new LongAdder();
+    public final LongAdder boundNewVarCostInNano = new LongAdder();
+    public final LongAdder boundNewVarInNewPredCostInNano = new LongAdder();
+    public final LongAdder boundConstCostInNano = new LongAdder();
 
-    public long cloneCostInNano = 0;
-    public int totalClones = 0;
+    public final LongAdder cloneCostInNano = new LongAdder();
+    public final LongAdder totalClones = new LongAdder();
 
     public static class CacheStat {
         public final int headCachedEntries;
@@ -34,8 +38,31 @@ public class CachedQueryMonitor {
             this.cartesianOperations = cartesianOperations;
         }
     }
-    public final List<CacheStat> cacheStats = new ArrayList<>();
-    public final List<Eval> evalStats = new ArrayList<>();
+    public final ThreadLocalBuffer<CacheStat> cacheStats = new ThreadLocalBuffer<>();
+    public final ThreadLocalBuffer<Eval> evalStats = new ThreadLocalBuffer<>();
+
+    public static class MemoryStat {
+        public final long timeInMillis;  // 距离开始运行的时间
+        public final long kbBytes;
+        public final long ruleCacheBytes;  // 采样时正在记录的规则的cache大小
+        public final long heapUsedBytes;
+
+        public MemoryStat(long timeInMillis, long kbBytes, long ruleCacheBytes, long heapUsedBytes) {
+            this.timeInMillis = timeInMillis;
+            this.kbBytes = kbBytes;
+            this.ruleCacheBytes = ruleCacheBytes;
+            this.heapUsedBytes = heapUsedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "(%d,%d,%d,%d)", timeInMillis, kbBytes / KB_BYTES, ruleCacheBytes / KB_BYTES, heapUsedBytes / KB_BYTES
+            );
+        }
+    }
+    public final ThreadLocalBuffer<MemoryStat> memoryStats = new ThreadLocalBuffer<>();
+    public volatile Map<String, Long> kbFootprint = new LinkedHashMap<>();  // KB中各部分的大小，见MemKB.memoryFootprint()
 
     public void show(PrintWriter writer) {
         writer.println("### Cached Query Monitored Info ###\n");
@@ -46,27 +73,28 @@ public class CachedQueryMonitor {
         );
         writer.printf(
                 "      %10d %10d %10d %10d %10d %10d %10d %10d %10d %10d\n\n",
-                preComputingCostInNano / DENOMINATOR,
-                allEntailQueryCostInNano / DENOMINATOR,
-                posEntailQueryCostInNano / DENOMINATOR,
-                boundExistVarCostInNano / DENOMINATOR,
-                boundExistVarInNewPredCostInNano / DENOMINATOR,
-                boundNewVarCostInNano / DENOMINATOR,
-                boundNewVarInNewPredCostInNano / DENOMINATOR,
-                boundConstCostInNano / DENOMINATOR,
-                totalClones,
-                cloneCostInNano / DENOMINATOR
+                preComputingCostInNano.sum() / DENOMINATOR,
+                allEntailQueryCostInNano.sum() / DENOMINATOR,
+                posEntailQueryCostInNano.sum() / DENOMINATOR,
+                boundExistVarCostInNano.sum() / DENOMINATOR,
+                boundExistVarInNewPredCostInNano.sum() / DENOMINATOR,
+                boundNewVarCostInNano.sum() / DENOMINATOR,
+                boundNewVarInNewPredCostInNano.sum() / DENOMINATOR,
+                boundConstCostInNano.sum() / DENOMINATOR,
+                totalClones.sum(),
+                cloneCostInNano.sum() / DENOMINATOR
         );
 
         writer.println("--- Cache Entry Statistics ---");
-        CacheStat max_head = cacheStats.get(0);
-        CacheStat max_body = cacheStats.get(0);
-        CacheStat max_cart_opt = cacheStats.get(0);
-        int[] head_entries = new int[cacheStats.size()];
-        int[] body_entries = new int[cacheStats.size()];
-        int[] cartesian_operations = new int[cacheStats.size()];
-        for (int i = 0; i < cacheStats.size(); i++) {
-            CacheStat cache_stat = cacheStats.get(i);
+        final List<CacheStat> cache_stats = cacheStats.snapshot();
+        CacheStat max_head = cache_stats.get(0);
+        CacheStat max_body = cache_stats.get(0);
+        CacheStat max_cart_opt = cache_stats.get(0);
+        int[] head_entries = new int[cache_stats.size()];
+        int[] body_entries = new int[cache_stats.size()];
+        int[] cartesian_operations = new int[cache_stats.size()];
+        for (int i = 0; i < cache_stats.size(); i++) {
+            CacheStat cache_stat = cache_stats.get(i);
             head_entries[i] = cache_stat.headCachedEntries;
             body_entries[i] = cache_stat.bodyCachedEntries;
             cartesian_operations[i] = cache_stat.cartesianOperations;
@@ -95,13 +123,14 @@ public class CachedQueryMonitor {
         writer.println();
 
         writer.println("--- Evaluation Statistics ---");
+        final List<Eval> eval_stats = evalStats.snapshot();
         double max_pos_ent = 0;
         double total_pos_ent = 0;
         double max_neg_ent = 0;
         double total_neg_ent = 0;
         double max_ent = 0;
         double total_ent = 0;
-        for (Eval eval: evalStats) {
+        for (Eval eval: eval_stats) {
             max_pos_ent = Math.max(max_pos_ent, eval.getPosCnt());
             total_pos_ent += eval.getPosCnt();
             max_neg_ent = Math.max(max_neg_ent, eval.getNegCnt());
@@ -115,9 +144,34 @@ public class CachedQueryMonitor {
         );
         writer.printf(
                 "  %10.0f %10.0f %10.0f %10.0f %10.0f %10.0f\n\n",
-                max_pos_ent, total_pos_ent / evalStats.size(),
-                max_neg_ent, total_neg_ent / evalStats.size(),
-                max_ent, total_ent / evalStats.size()
+                max_pos_ent, total_pos_ent / eval_stats.size(),
+                max_neg_ent, total_neg_ent / eval_stats.size(),
+                max_ent, total_ent / eval_stats.size()
         );
+
+        writer.println("--- Memory Statistics ---");
+        final Map<String, Long> kb_footprint = kbFootprint;
+        final List<MemoryStat> memory_stats = memoryStats.snapshot();
+        writer.print("(KB)");
+        for (String component: kb_footprint.keySet()) {
+            writer.printf(" %14s", component);
+        }
+        writer.println();
+        writer.print("    ");
+        for (long bytes: kb_footprint.values()) {
+            writer.printf(" %14d", bytes / KB_BYTES);
+        }
+        writer.println();
+        long max_rule_cache = 0;
+        long max_heap_used = 0;
+        for (MemoryStat memory_stat: memory_stats) {
+            max_rule_cache = Math.max(max_rule_cache, memory_stat.ruleCacheBytes);
+            max_heap_used = Math.max(max_heap_used, memory_stat.heapUsedBytes);
+        }
+        writer.printf("- Max Rule Cache: %d KB\n", max_rule_cache / KB_BYTES);
+        writer.printf("- Max Heap Used: %d KB\n", max_heap_used / KB_BYTES);
+        writer.print("- Memory Samples (ms,KB,Cache,Heap in KB): ");
+        writer.println(memory_stats);
+        writer.println();
     }
 }
@@ -9,7 +9,7 @@ import java.util.List;
 import java.util.Set;
 
 public abstract class CachedRule extends Rule  {
-    public final CachedQueryMonitor cacheMonitor = new CachedQueryMonitor();
+    public CachedRuleMonitor cacheMonitor = new CachedRuleMonitor();  // 试探性修改时临时替换，撤销时恢复
 
     public CachedRule(String headFunctor, int arity, Set<RuleFingerPrint> searchedFingerprints) {
         super(headFunctor, arity, searchedFingerprints);
@@ -32,6 +32,11 @@ public abstract class CachedRule extends Rule  {
 
     protected abstract void releaseCache();
 
+    /**
+     * @return groundings与groundingsBody占用的堆内存(字节)的估计值，共享的inclusion只计算一次
+     */
+    public abstract long cacheBytes();
+
     @Override
     public final UpdateStatus removeBoundedArg(int predIdx, int argIdx) {
         /* Cached Rule 不支持向前做cache */
@@ -0,0 +1,26 @@
+package sinc.impl.cached;
+
+import sinc.common.Eval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单条规则(及其clone)上的cache查询开销。只被持有该规则的线程修改，规则结束更新后由CachedSinc合并到CachedQueryMonitor中
+ */
+public class CachedRuleMonitor {
+    public long preComputingCostInNano = 0;
+    public long allEntailQueryCostInNano = 0;
+    public long posEntailQueryCostInNano = 0;
+
+    public long boundExistVarCostInNano = 0;
+    public long boundExistVarInNewPredCostInNano = 0;
+    public long boundNewVarCostInNano = 0;
+    public long boundNewVarInNewPredCostInNano = 0;
+    public long boundConstCostInNano = 0;
+
+    public long cloneCostInNano = 0;
+
+    public final List<CachedQueryMonitor.CacheStat> cacheStats = new ArrayList<>();
+    public final List<Eval> evalStats = new ArrayList<>();
+}
@@ -5,17 +5,21 @@ import sinc.SincConfig;
 import sinc.common.*;
 import sinc.impl.cached.recal.RecalculateCachedRule;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class CachedSinc extends SInC {
 
-    protected final MemKB kb = new MemKB();
+    protected MemKB kb;
+    protected static final long MEMORY_SAMPLE_INTERVAL = 1000;  // 记录内存占用的最小间隔(ms)
+
     protected final CachedQueryMonitor cacheMonitor = new CachedQueryMonitor();
+    protected final long startTime = System.currentTimeMillis();
+    protected final AtomicLong lastMemorySampleTime = new AtomicLong(0);
 
     public CachedSinc(SincConfig config, String kbPath, String dumpPath, String logPath) {
         super(
@@ -31,31 +35,63 @@ public abstract class CachedSinc extends SInC {
                         config.minColumnSimilarity,
                         config.stopCompressionRate,
                         true,
-                        -1.0,
+                        config.sampling,
+                        config.estimation,
                         false,
-                        false
+                        config.offHeapPath,
+                        config.kbSnapshot,
+                        config.columnSimilaritySketch,
+                        config.columnSimilarityVerification,
+                        config.evictFinishedIndices,
+                        config.concurrentTargets
                 ),
                 kbPath,
                 dumpPath,
                 logPath
         );
+        this.kb = newKb();
+    }
+
+    protected MemKB newKb() {
+        return (null == config.offHeapPath) ? new MemKB() : new MemKB(new File(config.offHeapPath));
+    }
+
+    /**
+     * 加载有效的快照。快照损坏导致读取失败时，丢弃已经读入一部分的kb并返回false
+     */
+    protected boolean loadSnapshot(File snapshotFile, long checksum) {
+        try {
+            return KbSnapshot.read(
+                    kb, snapshotFile, checksum, config.minConstantCoverage, config.minColumnSimilarity,
+                    config.columnSimilaritySketch, config.columnSimilarityVerification
+            );
+        } catch (IOException | RuntimeException e) {
+            System.err.printf("[WARNING] Snapshot %s is corrupted and will be rebuilt: %s\n", snapshotFile, e);
+            kb = newKb();
+            return false;
+        }
     }
 
     @Override
     protected KbStatistics loadKb() {
         try {
-            BufferedReader reader = new BufferedReader(new FileReader(kbPath));
-            String line;
-            while (null != (line = reader.readLine())) {
-                final String[] components = line.split("\t");
-                final Predicate predicate = new Predicate(components[0], components.length - 1);
-                for (int i = 1; i < components.length; i++) {
-                    predicate.args[i - 1] = new Constant(CONST_ID, components[i]);
+            /* 快照有效时直接加载快照，否则解析原文件并写入快照 */
+            final File snapshot_file = new File(kbPath + KbSnapshot.SUFFIX);
+            final long checksum = config.kbSnapshot ? KbSnapshot.checksum(new File(kbPath)) : 0;
+            if (!config.kbSnapshot || !loadSnapshot(snapshot_file, checksum)) {
+                kb.enableConstantSketch(config.minConstantCoverage);
+                ParallelKbLoader.load(kb, new File(kbPath), config.threads);
+                kb.calculatePromisingConstants(config.minConstantCoverage);
+                kb.calculateSimilarColumnPairs(
+                        config.minColumnSimilarity, config.columnSimilaritySketch, config.columnSimilarityVerification
+                );
+                if (config.kbSnapshot) {
+                    KbSnapshot.write(
+                            kb, snapshot_file, checksum, config.minConstantCoverage, config.minColumnSimilarity,
+                            config.columnSimilaritySketch, config.columnSimilarityVerification
+                    );
                 }
-                kb.addFact(predicate);
             }
-            kb.calculatePromisingConstants(config.minConstantCoverage);
-            kb.calculateSimilarColumnPairs(config.minColumnSimilarity);
 
             return new KbStatistics(
                     kb.totalFacts(),
@@ -72,6 +108,16 @@ public abstract class CachedSinc extends SInC {
         return new KbStatistics(-1, -1, -1, -1, -1, -1, -1);
     }
 
+    /**
+     * 并发搜索多个head时，其他线程的规则仍然可能以该relation为body，所以此时不释放索引
+     */
+    @Override
+    protected void targetDone(String functor) {
+        if (config.evictFinishedIndices && !targetsConcurrent) {
+            kb.evictIndices(functor);
+        }
+    }
+
     @Override
     protected List<String> getTargetFunctors() {
         return kb.getAllFunctors();
@@ -105,23 +151,45 @@ public abstract class CachedSinc extends SInC {
     @Override
     protected void recordRuleStatus(Rule rule, Rule.UpdateStatus updateStatus) {
         CachedRule r = (CachedRule) rule;
-        cacheMonitor.totalClones++;
-        cacheMonitor.cloneCostInNano += r.cacheMonitor.cloneCostInNano;
+        cacheMonitor.totalClones.increment();
+        cacheMonitor.cloneCostInNano.add(r.cacheMonitor.cloneCostInNano);
 
         /* 下列参数只在正常Update的Rule中记录 */
         if (Rule.UpdateStatus.NORMAL != updateStatus) {
             return;
         }
-        cacheMonitor.preComputingCostInNano += r.cacheMonitor.preComputingCostInNano;
-        cacheMonitor.allEntailQueryCostInNano += r.cacheMonitor.allEntailQueryCostInNano;
-        cacheMonitor.posEntailQueryCostInNano += r.cacheMonitor.posEntailQueryCostInNano;
-        cacheMonitor.boundExistVarCostInNano += r.cacheMonitor.boundExistVarCostInNano;
-        cacheMonitor.boundExistVarInNewPredCostInNano += r.cacheMonitor.boundExistVarInNewPredCostInNano;
-        cacheMonitor.boundNewVarCostInNano += r.cacheMonitor.boundNewVarCostInNano;
-        cacheMonitor.boundNewVarInNewPredCostInNano += r.cacheMonitor.boundNewVarInNewPredCostInNano;
-        cacheMonitor.boundConstCostInNano += r.cacheMonitor.boundConstCostInNano;
+        cacheMonitor.preComputingCostInNano.add(r.cacheMonitor.preComputingCostInNano);
+        cacheMonitor.allEntailQueryCostInNano.add(r.cacheMonitor.allEntailQueryCostInNano);
+        cacheMonitor.posEntailQueryCostInNano.add(r.cacheMonitor.posEntailQueryCostInNano);
+        cacheMonitor.boundExistVarCostInNano.add(r.cacheMonitor.boundExistVarCostInNano);
+        cacheMonitor.boundExistVarInNewPredCostInNano.add(r.cacheMonitor.boundExistVarInNewPredCostInNano);
+        cacheMonitor.boundNewVarCostInNano.add(r.cacheMonitor.boundNewVarCostInNano);
+        cacheMonitor.boundNewVarInNewPredCostInNano.add(r.cacheMonitor.boundNewVarInNewPredCostInNano);
+        cacheMonitor.boundConstCostInNano.add(r.cacheMonitor.boundConstCostInNano);
         cacheMonitor.cacheStats.addAll(r.cacheMonitor.cacheStats);
         cacheMonitor.evalStats.addAll(r.cacheMonitor.evalStats);
+
+        /* 定期记录KB与规则cache的内存占用 */
+        final long now = System.currentTimeMillis();
+        final long last_sample_time = lastMemorySampleTime.get();
+        if (MEMORY_SAMPLE_INTERVAL <= now - last_sample_time
+                && lastMemorySampleTime.compareAndSet(last_sample_time, now)) {
+            sampleMemory(r.cacheBytes());
+        }
+    }
+
+    protected void sampleMemory(long ruleCacheBytes) {
+        final Map<String, Long> kb_footprint = kb.memoryFootprint();
+        cacheMonitor.kbFootprint = kb_footprint;
+        long kb_bytes = 0;
+        for (long bytes: kb_footprint.values()) {
+            kb_bytes += bytes;
+        }
+        final Runtime runtime = Runtime.getRuntime();
+        cacheMonitor.memoryStats.add(new CachedQueryMonitor.MemoryStat(
+                System.currentTimeMillis() - startTime, kb_bytes, ruleCacheBytes,
+                runtime.totalMemory() - runtime.freeMemory()
+        ));
     }
 
     @Override
@@ -132,6 +200,8 @@ public abstract class CachedSinc extends SInC {
 
     @Override
     protected void showMonitor() {
+        /* 出现OutOfMemoryError时也会输出，最后再记录一次KB的占用 */
+        sampleMemory(0);
         super.showMonitor();
         cacheMonitor.show(logger);
     }
@@ -0,0 +1,134 @@
+package sinc.impl.cached;
+
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * 列式存储中一列上的索引，以Map<Integer, Set<Record>>的形式只读访问。
+ *
+ * sortedRowIds是按该列的值排序后的行号，values是该列中出现的不同值（升序），offsets[k]到offsets[k+1]是values[k]
+ * 对应的行号在sortedRowIds中的范围。按值查找是一次二分查找，取到的是一个RecordRange。
+ */
+public class ColumnIndex extends AbstractMap<Integer, Set<Record>> {
+    protected final IntBuffer[] columns;
+    protected final int col;
+    protected final IntBuffer sortedRowIds;
+    protected final IntBuffer values;
+    protected final IntBuffer offsets;
+
+    public ColumnIndex(IntBuffer[] columns, int col, IntBuffer sortedRowIds, IntBuffer values, IntBuffer offsets) {
+        this.columns = columns;
+        this.col = col;
+        this.sortedRowIds = sortedRowIds;
+        this.values = values;
+        this.offsets = offsets;
+    }
+
+    /**
+     * @return 索引占用的堆内存(字节)的估计值，不包括列存储
+     */
+    public long estimatedBytes() {
+        return MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + Integer.BYTES + 5 * MemoryEstimator.REFERENCE) +
+                MemoryEstimator.bufferBytes(sortedRowIds) +
+                MemoryEstimator.bufferBytes(values) +
+                MemoryEstimator.bufferBytes(offsets);
+    }
+
+    public int totalValues() {
+        return values.limit();
+    }
+
+    /**
+     * @return 第valueIdx小的值
+     */
+    public int valueAt(int valueIdx) {
+        return values.get(valueIdx);
+    }
+
+    /**
+     * @return 第valueIdx小的值出现的次数
+     */
+    public int count(int valueIdx) {
+        return offsets.get(valueIdx + 1) - offsets.get(valueIdx);
+    }
+
+    public RecordRange rangeAt(int valueIdx) {
+        return new RecordRange(
+                columns, sortedRowIds, offsets.get(valueIdx), offsets.get(valueIdx + 1), col, values.get(valueIdx)
+        );
+    }
+
+    public RecordRange range(int value) {
+        final int idx = indexOf(value);
+        return (0 > idx) ? null : rangeAt(idx);
+    }
+
+    /**
+     * 在values中二分查找
+     *
+     * @return 值的位置，不存在时返回负数
+     */
+    public int indexOf(int value) {
+        int low = 0;
+        int high = values.limit() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int mid_value = values.get(mid);
+            if (mid_value < value) {
+                low = mid + 1;
+            } else if (mid_value > value) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Set<Record> get(Object key) {
+        return (key instanceof Integer) ? range((Integer) key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (key instanceof Integer) && 0 <= indexOf((Integer) key);
+    }
+
+    @Override
+    public int size() {
+        return values.limit();
+    }
+
+    @Override
+    public Set<Entry<Integer, Set<Record>>> entrySet() {
+        return new AbstractSet<Entry<Integer, Set<Record>>>() {
+            @Override
+            public Iterator<Entry<Integer, Set<Record>>> iterator() {
+                return new Iterator<Entry<Integer, Set<Record>>>() {
+                    int idx = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return idx < values.limit();
+                    }
+
+                    @Override
+                    public Entry<Integer, Set<Record>> next() {
+                        if (idx >= values.limit()) {
+                            throw new NoSuchElementException();
+                        }
+                        final Entry<Integer, Set<Record>> entry = new SimpleImmutableEntry<>(values.get(idx), rangeAt(idx));
+                        idx++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.limit();
+            }
+        };
+    }
+}
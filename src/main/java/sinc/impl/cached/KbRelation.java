@@ -0,0 +1,730 @@
+package sinc.impl.cached;
+
+import sinc.common.Predicate;
+import sinc.util.RoaringBitmap;
+
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 一个functor对应的所有编号后的事实以及其上的索引。
+ *
+ * 事实按列存储：每一列是一个int数组，所有行按字典序排序并去重。每一列上的索引是按该列值排序后的行号以及每个值的
+ * 起止位置，按值选择是一次二分查找加一段顺序扫描。新添加的事实先放在pendingRecords中，在下一次查询时合并进列存储。
+ *
+ * 列与索引都以IntBuffer存储，默认分配在堆上，子类可以通过allocate()将其放到堆外(见MappedKbRelation)。
+ *
+ * 列索引在第一次查询该列时才构建，可以用evictIndices()释放，之后再查询时重新构建。统计常量出现次数时使用
+ * valueCounts()，不会留下索引。TrieJoin使用的trie由trieLevels()从列存储构造，没有常量条件的trie与列索引一样缓存。
+ *
+ * 列存储中的行号就是事实在该relation中的编号，已经被证明的事实以行号的压缩位图记录。新的事实合并进列存储时行号会
+ * 变化，位图随之重新编号。
+ *
+ * 并发：合并后的列、索引与位图作为不可变的Storage通过volatile引用发布，查询只读取当前的Storage，不加锁。只有
+ * 添加事实、合并、加载与证明这些写操作持有对象锁。索引与trie缓存在Storage中按列以CAS填入，多个线程同时构建同一列时
+ * 只保留先完成的一个。证明的事实先写入一个私有的位图，在下一次需要已证明数量时整体发布；在那之前的hasProved()会
+ * 加锁读取这个私有位图。
+ */
+public class KbRelation {
+    public final String name;
+    public final int id;
+    public final int arity;
+
+    /**
+     * 一次合并之后的列存储。columns与provedRows发布之后不再修改，argIndices与trieCache只会从无到有地填入
+     */
+    protected static class Storage {
+        public final IntBuffer[] columns;  // columns[col].get(row)
+        public final AtomicReferenceArray<ColumnIndex> argIndices;  // 没有构建的列为null
+        public final ConcurrentMap<List<Integer>, int[][]> trieCache;  // 没有常量条件的trie，key为每列所在的层
+        public final RoaringBitmap provedRows;  // 已经被证明的事实的行号
+
+        public Storage(IntBuffer[] columns, ColumnIndex[] argIndices, RoaringBitmap provedRows) {
+            this.columns = columns;
+            this.argIndices = (null == argIndices) ?
+                    new AtomicReferenceArray<>(columns.length) : new AtomicReferenceArray<>(argIndices);
+            this.trieCache = new ConcurrentHashMap<>();
+            this.provedRows = provedRows;
+        }
+
+        /**
+         * 列不变，只替换已证明的行，索引与trie缓存共享
+         */
+        protected Storage(Storage another, RoaringBitmap provedRows) {
+            this.columns = another.columns;
+            this.argIndices = another.argIndices;
+            this.trieCache = another.trieCache;
+            this.provedRows = provedRows;
+        }
+    }
+
+    protected volatile Storage storage;
+    protected final Set<Record> pendingRecords = new HashSet<>();  // 还没有合并进列存储的事实，由锁保护
+    protected volatile boolean hasPending = false;  // 是否有还没有合并进列存储的事实
+    protected volatile RoaringBitmap provedRows = null;  // 还没有发布的已证明行，由锁保护，与storage中的相同时为null
+
+    /* 以Predicate形式访问时使用的视图，在第一次访问时构建，添加新的事实后失效 */
+    protected volatile Set<Predicate> factView = null;
+    protected volatile Map<String, Set<Predicate>>[] argIndicesView = null;
+
+    public KbRelation(String name, int id, int arity) {
+        this.name = name;
+        this.id = id;
+        this.arity = arity;
+        final IntBuffer[] columns = new IntBuffer[arity];
+        for (int col = 0; col < arity; col++) {
+            columns[col] = IntBuffer.allocate(0);
+        }
+        this.storage = new Storage(columns, null, new RoaringBitmap());
+    }
+
+    /**
+     * 为列或索引分配长度为length的存储空间
+     */
+    protected IntBuffer allocate(int length) {
+        return IntBuffer.allocate(length);
+    }
+
+    /**
+     * 直接使用已经排好序的列与对应的索引，用于从快照中加载
+     */
+    protected synchronized void load(IntBuffer[] columns, ColumnIndex[] argIndices) {
+        storage = new Storage(columns, argIndices, new RoaringBitmap());
+        provedRows = null;
+        pendingRecords.clear();
+        hasPending = false;
+        factView = null;
+        argIndicesView = null;
+    }
+
+    /**
+     * @return 合并了所有pendingRecords的存储，只有存在没有合并的事实时才加锁
+     */
+    protected Storage current() {
+        if (hasPending) {
+            synchronized (this) {
+                mergePending();
+            }
+        }
+        return storage;
+    }
+
+    /**
+     * @return 合并了所有pendingRecords并且包含所有已证明的行的存储，只有存在没有合并的事实或没有发布的证明时才加锁
+     */
+    protected Storage published() {
+        if (hasPending || null != provedRows) {
+            synchronized (this) {
+                mergePending();
+                if (null != provedRows) {
+                    storage = new Storage(storage, provedRows);
+                    provedRows = null;
+                }
+            }
+        }
+        return storage;
+    }
+
+    public synchronized boolean addRecord(Record record) {
+        if (0 <= findRow(storage.columns, record.args) || hasPendingRecord(record) || !pendingRecords.add(record)) {
+            return false;
+        }
+        hasPending = true;
+        factView = null;
+        argIndicesView = null;
+        return true;
+    }
+
+    public boolean hasRecord(Record record) {
+        if (hasPending) {
+            synchronized (this) {
+                return 0 <= findRow(storage.columns, record.args) || hasPendingRecord(record);
+            }
+        }
+        return 0 <= findRow(storage.columns, record.args);
+    }
+
+    /**
+     * @return 还没有合并的事实中是否有record，调用时需持有锁
+     */
+    protected boolean hasPendingRecord(Record record) {
+        return pendingRecords.contains(record);
+    }
+
+    /**
+     * @return 还没有合并的事实数量，调用时需持有锁
+     */
+    protected int pendingCount() {
+        return pendingRecords.size();
+    }
+
+    public RecordRange getRecords() {
+        final IntBuffer[] columns = current().columns;
+        return new RecordRange(columns, null, 0, rows(columns), -1, 0);
+    }
+
+    public ColumnIndex getArgIndices(int argIdx) {
+        return index(current(), argIdx);
+    }
+
+    /**
+     * 取出storage中某列的索引，没有时构建并以CAS填入
+     */
+    protected ColumnIndex index(Storage storage, int col) {
+        final ColumnIndex index = storage.argIndices.get(col);
+        if (null != index) {
+            return index;
+        }
+        final ColumnIndex built_index = buildIndex(storage.columns, col);
+        return storage.argIndices.compareAndSet(col, null, built_index) ? built_index : storage.argIndices.get(col);
+    }
+
+    /**
+     * @return 已经构建的列索引数量
+     */
+    public int builtIndices() {
+        final AtomicReferenceArray<ColumnIndex> arg_indices = storage.argIndices;
+        int cnt = 0;
+        for (int col = 0; col < arg_indices.length(); col++) {
+            if (null != arg_indices.get(col)) {
+                cnt++;
+            }
+        }
+        return cnt;
+    }
+
+    /**
+     * 释放所有列索引，之后查询时重新构建
+     */
+    public synchronized void evictIndices() {
+        storage = new Storage(storage.columns, null, storage.provedRows);
+    }
+
+    /**
+     * 把满足条件的事实投影成按层存储的trie。
+     *
+     * @param layers layers[col]为该列所在的层，不参与的列为-1，同一层的多个列取值必须相同，层号从0开始连续
+     * @param constants constants[col]不为NULL_NUM时该列只能取这个值
+     * @return columns[depth][row]，按行的字典序排列且没有重复。有常量条件时只扫描一个常量在列索引中对应的行，没有
+     * 常量条件的结果只与layers有关，会被缓存，返回的数组不能修改
+     */
+    public int[][] trieLevels(int[] layers, int[] constants) {
+        final Storage storage = current();
+        boolean constrained = false;
+        for (int constant: constants) {
+            constrained |= NumerationMap.NULL_NUM != constant;
+        }
+        if (constrained) {
+            return buildTrieLevels(storage, layers, constants);
+        }
+        final List<Integer> key = new ArrayList<>(arity);
+        for (int layer: layers) {
+            key.add(layer);
+        }
+        final int[][] levels = storage.trieCache.get(key);
+        if (null != levels) {
+            return levels;
+        }
+        final int[][] built_levels = buildTrieLevels(storage, layers, constants);
+        final int[][] existing_levels = storage.trieCache.putIfAbsent(key, built_levels);
+        return (null == existing_levels) ? built_levels : existing_levels;
+    }
+
+    protected int[][] buildTrieLevels(Storage storage, int[] layers, int[] constants) {
+        final IntBuffer[] columns = storage.columns;
+        int depths = 0;
+        for (int layer: layers) {
+            depths = Math.max(depths, layer + 1);
+        }
+
+        /* 有常量条件时，从常量对应行数最少的一列的索引中取出候选行(行号递增) */
+        RecordRange candidate_rows = null;
+        for (int col = 0; col < arity; col++) {
+            if (NumerationMap.NULL_NUM != constants[col]) {
+                final RecordRange range = index(storage, col).range(constants[col]);
+                if (null == range) {
+                    return new int[depths][0];
+                }
+                if (null == candidate_rows || range.size() < candidate_rows.size()) {
+                    candidate_rows = range;
+                }
+            }
+        }
+        final int total_rows = (null == candidate_rows) ? rows(columns) : candidate_rows.size();
+
+        /* 过滤并投影，列存储按字典序排列，投影之后常常仍然有序，这时只需要去掉相邻的重复 */
+        final int[][] tuples = new int[depths][total_rows];
+        int tuple_cnt = 0;
+        boolean sorted = true;
+        for (int i = 0; i < total_rows; i++) {
+            final int row = (null == candidate_rows) ? i : candidate_rows.rowId(i);
+            boolean matched = true;
+            for (int col = 0; col < arity && matched; col++) {
+                final int value = columns[col].get(row);
+                if (NumerationMap.NULL_NUM != constants[col]) {
+                    matched = constants[col] == value;
+                } else if (0 <= layers[col]) {
+                    final int[] level = tuples[layers[col]];
+                    if (isFirstOfLayer(layers, col)) {
+                        level[tuple_cnt] = value;
+                    } else {
+                        matched = level[tuple_cnt] == value;
+                    }
+                }
+            }
+            if (matched) {
+                if (sorted && 0 < tuple_cnt) {
+                    sorted = 0 <= compareTuples(tuples, tuple_cnt - 1, tuple_cnt);
+                }
+                tuple_cnt++;
+            }
+        }
+        if (!sorted) {
+            sortTuples(tuples, tuple_cnt);
+        }
+
+        /* 去重 */
+        int rows = 0;
+        for (int i = 0; i < tuple_cnt; i++) {
+            if (0 == rows || 0 != compareTuples(tuples, rows - 1, i)) {
+                for (int[] level: tuples) {
+                    level[rows] = level[i];
+                }
+                rows++;
+            }
+        }
+        final int[][] levels = new int[depths][];
+        for (int depth = 0; depth < depths; depth++) {
+            levels[depth] = Arrays.copyOf(tuples[depth], rows);
+        }
+        return levels;
+    }
+
+    protected static boolean isFirstOfLayer(int[] layers, int col) {
+        for (int i = 0; i < col; i++) {
+            if (layers[i] == layers[col]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 第i2行减去第i1行的符号
+     */
+    protected static int compareTuples(int[][] tuples, int i1, int i2) {
+        for (int[] level: tuples) {
+            final int cmp = Integer.compare(level[i2], level[i1]);
+            if (0 != cmp) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 对前cnt行按字典序排序，两层以内时拼接成long排序
+     */
+    protected static void sortTuples(int[][] tuples, int cnt) {
+        if (2 >= tuples.length) {
+            final long[] keys = new long[cnt];
+            for (int i = 0; i < cnt; i++) {
+                long key = 0;
+                for (int[] level: tuples) {
+                    key = (key << Integer.SIZE) | level[i];
+                }
+                keys[i] = key;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < cnt; i++) {
+                long key = keys[i];
+                for (int depth = tuples.length - 1; depth >= 0; depth--) {
+                    tuples[depth][i] = (int) key;
+                    key >>>= Integer.SIZE;
+                }
+            }
+            return;
+        }
+        final Integer[] order = new Integer[cnt];
+        for (int i = 0; i < cnt; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i1, i2) -> compareTuples(tuples, i2, i1));
+        final int[][] sorted_tuples = new int[tuples.length][];
+        for (int depth = 0; depth < tuples.length; depth++) {
+            sorted_tuples[depth] = new int[cnt];
+            for (int i = 0; i < cnt; i++) {
+                sorted_tuples[depth][i] = tuples[depth][order[i]];
+            }
+            System.arraycopy(sorted_tuples[depth], 0, tuples[depth], 0, cnt);
+        }
+    }
+
+    /**
+     * 统计一列中每个值出现的次数。如果该列的索引已经构建则直接使用，否则对该列的副本排序，不会留下索引
+     */
+    public ValueCounts valueCounts(int argIdx) {
+        final Storage storage = current();
+        final ColumnIndex index = storage.argIndices.get(argIdx);
+        if (null != index) {
+            final int[] values = new int[index.totalValues()];
+            final int[] counts = new int[values.length];
+            for (int k = 0; k < values.length; k++) {
+                values[k] = index.valueAt(k);
+                counts[k] = index.count(k);
+            }
+            return new ValueCounts(values, counts);
+        }
+        final IntBuffer column = storage.columns[argIdx];
+        final int[] sorted_values = new int[column.limit()];
+        for (int row = 0; row < sorted_values.length; row++) {
+            sorted_values[row] = column.get(row);
+        }
+        Arrays.sort(sorted_values);
+        return ValueCounts.ofSorted(sorted_values);
+    }
+
+    /**
+     * 统计一列中指定的几个值出现的次数。如果该列的索引已经构建则直接查索引，否则扫描一遍该列
+     */
+    public Map<Integer, Integer> countValues(int argIdx, Set<Integer> values) {
+        final Storage storage = current();
+        final Map<Integer, Integer> counts = new HashMap<>();
+        for (int value: values) {
+            counts.put(value, 0);
+        }
+        final ColumnIndex index = storage.argIndices.get(argIdx);
+        if (null != index) {
+            for (int value: values) {
+                final int k = index.indexOf(value);
+                if (0 <= k) {
+                    counts.put(value, index.count(k));
+                }
+            }
+            return counts;
+        }
+        final IntBuffer column = storage.columns[argIdx];
+        for (int row = 0; row < column.limit(); row++) {
+            counts.computeIfPresent(column.get(row), (k, v) -> v + 1);
+        }
+        return counts;
+    }
+
+    /* 以下估计各部分占用的堆内存(字节)，见MemoryEstimator */
+    public long columnBytes() {
+        long bytes = 0;
+        for (IntBuffer column: storage.columns) {
+            bytes += MemoryEstimator.bufferBytes(column);
+        }
+        return bytes;
+    }
+
+    public long indexBytes() {
+        final Storage storage = this.storage;
+        final Map<List<Integer>, int[][]> trie_cache = storage.trieCache;
+        long bytes = 0;
+        for (int col = 0; col < storage.argIndices.length(); col++) {
+            final ColumnIndex index = storage.argIndices.get(col);
+            if (null != index) {
+                bytes += index.estimatedBytes();
+            }
+        }
+        if (!trie_cache.isEmpty()) {
+            bytes += MemoryEstimator.hashTableBytes(trie_cache.size());
+        }
+        for (int[][] levels: trie_cache.values()) {
+            bytes += MemoryEstimator.referenceArrayBytes(levels.length);
+            for (int[] level: levels) {
+                bytes += MemoryEstimator.intArrayBytes(level.length);
+            }
+        }
+        return bytes;
+    }
+
+    public synchronized long pendingBytes() {
+        return MemoryEstimator.recordSetBytes(pendingRecords, arity);
+    }
+
+    public synchronized long provedBytes() {
+        return storage.provedRows.estimatedBytes() + ((null == provedRows) ? 0 : provedRows.estimatedBytes());
+    }
+
+    /**
+     * Predicate形式的视图中，Predicate只在factView中计算一次
+     */
+    public long viewBytes() {
+        final Set<Predicate> fact_view = factView;
+        final Map<String, Set<Predicate>>[] arg_indices_view = argIndicesView;
+        long bytes = 0;
+        if (null != fact_view) {
+            final long predicate_bytes = MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 2 * MemoryEstimator.REFERENCE) +
+                    MemoryEstimator.referenceArrayBytes(arity) +
+                    arity * MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + Integer.BYTES + 1 + MemoryEstimator.REFERENCE);
+            bytes += MemoryEstimator.hashTableBytes(fact_view.size()) + fact_view.size() * predicate_bytes;
+        }
+        if (null != arg_indices_view) {
+            for (Map<String, Set<Predicate>> arg_index: arg_indices_view) {
+                bytes += MemoryEstimator.hashTableBytes(arg_index.size());
+                for (Set<Predicate> predicates: arg_index.values()) {
+                    bytes += MemoryEstimator.hashTableBytes(predicates.size());
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return 事实在列存储中的行号，不存在时返回负数
+     */
+    public int rowOf(Record record) {
+        return findRow(current().columns, record.args);
+    }
+
+    /**
+     * 不在该relation中的记录不会被标记。被证明的行先写入私有的位图，第一次写入时从已发布的位图复制
+     */
+    public synchronized void proveRecord(Record record) {
+        final Storage storage = current();
+        final int row = findRow(storage.columns, record.args);
+        if (0 > row || (null == provedRows && storage.provedRows.contains(row))) {
+            return;
+        }
+        if (null == provedRows) {
+            final RoaringBitmap proved_rows = new RoaringBitmap(storage.provedRows);
+            proved_rows.add(row);
+            provedRows = proved_rows;
+        } else {
+            provedRows.add(row);
+        }
+    }
+
+    public boolean hasProved(Record record) {
+        if (null != provedRows) {
+            synchronized (this) {
+                final Storage storage = current();
+                final int row = findRow(storage.columns, record.args);
+                return 0 <= row && ((null == provedRows) ? storage.provedRows : provedRows).contains(row);
+            }
+        }
+        final Storage storage = current();
+        final int row = findRow(storage.columns, record.args);
+        return 0 <= row && storage.provedRows.contains(row);
+    }
+
+    /**
+     * @return rows中已经被证明的事实数量
+     */
+    public int countProved(RoaringBitmap rows) {
+        return published().provedRows.andCardinality(rows);
+    }
+
+    public int totalProved() {
+        return published().provedRows.cardinality();
+    }
+
+    public int totalRecords() {
+        if (hasPending) {
+            synchronized (this) {
+                return rows(storage.columns) + pendingCount();
+            }
+        }
+        return rows(storage.columns);
+    }
+
+    /**
+     * 将pendingRecords与已有的列存储归并，发布新的存储(其中没有任何索引)，并重新编号已经被证明的行
+     */
+    protected synchronized void mergePending() {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+        final int[][] pending_rows = sortedPendingRows();
+        final IntBuffer[] pending_columns = new IntBuffer[arity];
+        for (int col = 0; col < arity; col++) {
+            pending_columns[col] = IntBuffer.allocate(pending_rows.length);
+        }
+        fillColumns(pending_rows, pending_columns);
+        mergeRuns(Collections.singletonList(pending_columns));
+    }
+
+    /**
+     * @return 按字典序排列的pendingRecords
+     */
+    protected int[][] sortedPendingRows() {
+        final int[][] pending_rows = new int[pendingRecords.size()][];
+        int i = 0;
+        for (Record record: pendingRecords) {
+            pending_rows[i] = record.args;
+            i++;
+        }
+        Arrays.sort(pending_rows, KbRelation::compareRows);
+        return pending_rows;
+    }
+
+    protected static void fillColumns(int[][] rows, IntBuffer[] columns) {
+        for (int row = 0; row < rows.length; row++) {
+            for (int col = 0; col < columns.length; col++) {
+                columns[col].put(row, rows[row][col]);
+            }
+        }
+    }
+
+    /**
+     * 将若干按字典序排列、互不相交且与列存储也不相交的行一次归并进列存储，发布新的存储(其中没有任何索引)，重新编号
+     * 已经被证明的行，并清空pendingRecords。调用时需持有锁
+     */
+    protected void mergeRuns(List<IntBuffer[]> runs) {
+        final List<IntBuffer[]> sources = new ArrayList<>(runs.size() + 1);
+        sources.add(storage.columns);
+        sources.addAll(runs);
+        int total_rows = 0;
+        for (IntBuffer[] source: sources) {
+            total_rows += rows(source);
+        }
+        final IntBuffer[] new_columns = new IntBuffer[arity];
+        for (int col = 0; col < arity; col++) {
+            new_columns[col] = allocate(total_rows);
+        }
+        final RoaringBitmap proved_rows = (null == provedRows) ? storage.provedRows : provedRows;
+        final RoaringBitmap new_proved_rows = mergeRows(sources, new_columns, proved_rows);
+        storage = new Storage(new_columns, null, new_proved_rows);
+        provedRows = null;
+        pendingRecords.clear();
+        hasPending = false;
+    }
+
+    /**
+     * 多路归并若干按字典序排列且互不相交的列存储
+     *
+     * @param firstProvedRows sources[0]中被证明的行，为null时不记录
+     * @return 这些行在target中的行号，firstProvedRows为null时返回null
+     */
+    protected static RoaringBitmap mergeRows(List<IntBuffer[]> sources, IntBuffer[] target, RoaringBitmap firstProvedRows) {
+        final int[] positions = new int[sources.size()];
+        final int[] ends = new int[sources.size()];
+        int total_rows = 0;
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = rows(sources.get(i));
+            total_rows += ends[i];
+        }
+        final RoaringBitmap new_proved_rows = (null == firstProvedRows) ? null : new RoaringBitmap();
+        for (int row = 0; row < total_rows; row++) {
+            int min_idx = -1;
+            for (int i = 0; i < positions.length; i++) {
+                if (positions[i] < ends[i] && (0 > min_idx ||
+                        0 > compareRows(sources.get(i), positions[i], sources.get(min_idx), positions[min_idx]))) {
+                    min_idx = i;
+                }
+            }
+            final IntBuffer[] source = sources.get(min_idx);
+            for (int col = 0; col < target.length; col++) {
+                target[col].put(row, source[col].get(positions[min_idx]));
+            }
+            if (0 == min_idx && null != firstProvedRows && firstProvedRows.contains(positions[0])) {
+                new_proved_rows.add(row);
+            }
+            positions[min_idx]++;
+        }
+        return new_proved_rows;
+    }
+
+    protected ColumnIndex buildIndex(IntBuffer[] columns, int col) {
+        /* 按(值, 行号)排序，高32位是值，低32位是行号 */
+        final int total_rows = rows(columns);
+        final IntBuffer column = columns[col];
+        final long[] keys = new long[total_rows];
+        for (int row = 0; row < total_rows; row++) {
+            keys[row] = (((long) column.get(row)) << 32) | row;
+        }
+        Arrays.sort(keys);
+        final IntBuffer sorted_row_ids = allocate(total_rows);
+        int distinct_values = 0;
+        for (int i = 0; i < total_rows; i++) {
+            sorted_row_ids.put(i, (int) keys[i]);
+            if (0 == i || (keys[i] >>> 32) != (keys[i - 1] >>> 32)) {
+                distinct_values++;
+            }
+        }
+        final IntBuffer values = allocate(distinct_values);
+        final IntBuffer offsets = allocate(distinct_values + 1);
+        int k = -1;
+        for (int i = 0; i < total_rows; i++) {
+            final int value = (int) (keys[i] >>> 32);
+            if (0 > k || values.get(k) != value) {
+                k++;
+                values.put(k, value);
+                offsets.put(k, i);
+            }
+        }
+        offsets.put(distinct_values, total_rows);
+        return new ColumnIndex(columns, col, sorted_row_ids, values, offsets);
+    }
+
+    protected static int rows(IntBuffer[] columns) {
+        return (0 == columns.length) ? 0 : columns[0].limit();
+    }
+
+    /**
+     * 在按字典序排序的列存储中二分查找一行
+     *
+     * @return 行号，不存在时返回负数
+     */
+    protected static int findRow(IntBuffer[] columns, int[] args) {
+        return findRow(columns, 0, rows(columns), args);
+    }
+
+    /**
+     * 在[begin, end)范围内二分查找一行
+     *
+     * @return 行号，不存在时返回负数
+     */
+    protected static int findRow(IntBuffer[] columns, int begin, int end, int[] args) {
+        int low = begin;
+        int high = end - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final int cmp = compareRow(columns, mid, args);
+            if (0 > cmp) {
+                low = mid + 1;
+            } else if (0 < cmp) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    protected static int compareRow(IntBuffer[] columns, int row, int[] args) {
+        for (int col = 0; col < columns.length; col++) {
+            final int cmp = Integer.compare(columns[col].get(row), args[col]);
+            if (0 != cmp) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    protected static int compareRows(IntBuffer[] columns1, int row1, IntBuffer[] columns2, int row2) {
+        for (int col = 0; col < columns1.length; col++) {
+            final int cmp = Integer.compare(columns1[col].get(row1), columns2[col].get(row2));
+            if (0 != cmp) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    protected static int compareRows(int[] args1, int[] args2) {
+        for (int i = 0; i < args1.length; i++) {
+            final int cmp = Integer.compare(args1[i], args2[i]);
+            if (0 != cmp) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,299 @@
+package sinc.impl.cached;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * MemKB的二进制快照。
+ *
+ * 快照中保存编号表、每个relation的列与列索引、promising constants以及相似列，加载时列与索引直接映射为文件中的
+ * IntBuffer，不需要重新解析与排序。文件头记录格式版本、原始KB文件的CRC32以及计算promising constants与相似列
+ * 时使用的参数，任何一项不一致时快照都视为失效。文件尾记录trailer之前的长度，与文件实际长度不一致时(写入中断)
+ * 快照同样视为失效。
+ *
+ * 快照先写入同一目录下的临时文件，完成后原子地替换目标文件，所以目标文件要么是旧的快照，要么是完整的新快照。
+ *
+ * 文件格式(所有整数均为大端序，字符串按4字节对齐)：
+ *   Header: magic(int) version(int) checksum(long) minConstantCoverage(double) minColumnSimilarity(double)
+ *           columnSimilaritySketch(int) columnSimilarityVerification(int)
+ *   Dictionary: bytes(long) cnt(int) [len(int) utf8 padding]*cnt  -- 第i个名称的编号为i+1
+ *   Relations: cnt(int) [
+ *       len(int) utf8 padding arity(int) rows(int) distinct_values(int)*arity
+ *       columns(int*rows)*arity [sorted_row_ids(int*rows) values(int*distinct) offsets(int*(distinct+1))]*arity
+ *       [cnt(int) promising_constants(int*cnt)]*arity
+ *   ]*cnt
+ *   Similar Columns: cnt(int) [functor1(int) idx1(int) functor2(int) idx2(int)]*cnt
+ *   Trailer: bytes(long) magic(int)  -- bytes为Trailer之前的文件长度
+ */
+public class KbSnapshot {
+    public static final int MAGIC = 0x534B4253;  // "SKBS"
+    public static final int VERSION = 3;
+    public static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES;
+    public static final String SUFFIX = ".snapshot";
+
+    /**
+     * 计算原始KB文件的CRC32
+     */
+    public static long checksum(File kbFile) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[1 << 20];
+        try (InputStream in = new FileInputStream(kbFile)) {
+            int len;
+            while (0 < (len = in.read(buffer))) {
+                crc.update(buffer, 0, len);
+            }
+        }
+        return crc.getValue();
+    }
+
+    public static void write(
+            MemKB kb, File snapshotFile, long checksum, double minConstantCoverage, double minColumnSimilarity,
+            int columnSimilaritySketch, boolean columnSimilarityVerification
+    ) throws IOException {
+        final File tmp_file = File.createTempFile(
+                snapshotFile.getName(), ".tmp", snapshotFile.getAbsoluteFile().getParentFile()
+        );
+        try {
+            try (FileOutputStream file_out = new FileOutputStream(tmp_file);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file_out))) {
+                writeContent(
+                        out, kb, checksum, minConstantCoverage, minColumnSimilarity, columnSimilaritySketch,
+                        columnSimilarityVerification
+                );
+
+                /* Trailer */
+                out.flush();
+                out.writeLong(file_out.getChannel().position());
+                out.writeInt(MAGIC);
+                out.flush();
+                file_out.getFD().sync();
+            }
+            Files.move(tmp_file.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp_file.toPath());
+        }
+    }
+
+    protected static void writeContent(
+            DataOutputStream out, MemKB kb, long checksum, double minConstantCoverage, double minColumnSimilarity,
+            int columnSimilaritySketch, boolean columnSimilarityVerification
+    ) throws IOException {
+        /* Header */
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(checksum);
+        out.writeDouble(minConstantCoverage);
+        out.writeDouble(minColumnSimilarity);
+        out.writeInt(columnSimilaritySketch);
+        out.writeInt(columnSimilarityVerification ? 1 : 0);
+
+        /* Dictionary */
+        final NumerationMap num_map = kb.numMap;
+        long dictionary_bytes = Integer.BYTES;
+        for (int num = 1; num <= num_map.maxNum(); num++) {
+            dictionary_bytes += Integer.BYTES + paddedLength(num_map.num2Name(num).getBytes(StandardCharsets.UTF_8).length);
+        }
+        out.writeLong(dictionary_bytes);
+        out.writeInt(num_map.maxNum());
+        for (int num = 1; num <= num_map.maxNum(); num++) {
+            writeString(out, num_map.num2Name(num));
+        }
+
+        /* Relations */
+        out.writeInt(kb.relations.size() - 1);
+        for (int i = 1; i < kb.relations.size(); i++) {
+            final KbRelation relation = kb.relations.get(i);
+            final KbRelation.Storage storage = relation.current();
+            writeString(out, relation.name);
+            out.writeInt(relation.arity);
+            out.writeInt(KbRelation.rows(storage.columns));
+            final ColumnIndex[] indices = new ColumnIndex[relation.arity];
+            for (int col = 0; col < relation.arity; col++) {
+                indices[col] = relation.index(storage, col);
+                out.writeInt(indices[col].totalValues());
+            }
+            for (IntBuffer column: storage.columns) {
+                writeInts(out, column);
+            }
+            for (ColumnIndex index: indices) {
+                writeInts(out, index.sortedRowIds);
+                writeInts(out, index.values);
+                writeInts(out, index.offsets);
+            }
+            for (List<String> promising_constants: kb.functor2PromisingConstMap.get(relation.name)) {
+                out.writeInt(promising_constants.size());
+                for (String constant: promising_constants) {
+                    out.writeInt(num_map.name2Num(constant));
+                }
+            }
+        }
+
+        /* Similar Columns */
+        out.writeInt(kb.similarColumnPairs.size());
+        for (MemKB.ColumnPairInfo pair: kb.similarColumnPairs) {
+            out.writeInt(kb.functorNumMap.name2Num(pair.functor1));
+            out.writeInt(pair.idx1);
+            out.writeInt(kb.functorNumMap.name2Num(pair.functor2));
+            out.writeInt(pair.idx2);
+        }
+    }
+
+    /**
+     * 将快照加载到一个空的MemKB中
+     *
+     * @return 快照不存在或者失效时返回false，此时kb没有被修改
+     * @throws IOException 快照的内容损坏时可能在读取过程中抛出，此时kb可能已经被部分修改，不能再使用
+     */
+    public static boolean read(
+            MemKB kb, File snapshotFile, long checksum, double minConstantCoverage, double minColumnSimilarity,
+            int columnSimilaritySketch, boolean columnSimilarityVerification
+    ) throws IOException {
+        if (!snapshotFile.isFile()) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(snapshotFile, "r"); FileChannel channel = raf.getChannel()) {
+            /* Trailer */
+            final long content_bytes = channel.size() - TRAILER_BYTES;
+            if (0 > content_bytes) {
+                return false;
+            }
+            final ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, content_bytes, TRAILER_BYTES);
+            if (content_bytes != trailer.getLong() || MAGIC != trailer.getInt()) {
+                return false;
+            }
+            final Reader reader = new Reader(channel, content_bytes);
+
+            /* Header */
+            final ByteBuffer header = reader.map(Integer.BYTES * 4 + Long.BYTES + Double.BYTES * 2);
+            if (MAGIC != header.getInt() || VERSION != header.getInt() || checksum != header.getLong() ||
+                    minConstantCoverage != header.getDouble() || minColumnSimilarity != header.getDouble() ||
+                    columnSimilaritySketch != header.getInt() || (columnSimilarityVerification ? 1 : 0) != header.getInt()) {
+                return false;
+            }
+
+            /* Dictionary */
+            final ByteBuffer dictionary = reader.map(reader.map(Long.BYTES).getLong());
+            final int total_names = dictionary.getInt();
+            for (int i = 0; i < total_names; i++) {
+                kb.numMap.mapName(readString(dictionary));
+            }
+
+            /* Relations */
+            final int total_relations = reader.map(Integer.BYTES).getInt();
+            for (int i = 0; i < total_relations; i++) {
+                final String name = readString(reader.map(Integer.BYTES + paddedLength(reader.peekInt())));
+                final ByteBuffer shape = reader.map(Integer.BYTES * 2);
+                final int arity = shape.getInt();
+                final int rows = shape.getInt();
+                final ByteBuffer distinct_buffer = reader.map((long) Integer.BYTES * arity);
+                final int[] distinct_values = new int[arity];
+                for (int col = 0; col < arity; col++) {
+                    distinct_values[col] = distinct_buffer.getInt();
+                }
+                final IntBuffer[] columns = new IntBuffer[arity];
+                for (int col = 0; col < arity; col++) {
+                    columns[col] = reader.mapInts(rows);
+                }
+                final ColumnIndex[] indices = new ColumnIndex[arity];
+                for (int col = 0; col < arity; col++) {
+                    final IntBuffer sorted_row_ids = reader.mapInts(rows);
+                    final IntBuffer values = reader.mapInts(distinct_values[col]);
+                    final IntBuffer offsets = reader.mapInts(distinct_values[col] + 1);
+                    indices[col] = new ColumnIndex(columns, col, sorted_row_ids, values, offsets);
+                }
+                final KbRelation relation = kb.declareRelation(name, arity);
+                relation.load(columns, indices);
+                kb.totalFacts += rows;
+
+                final List<String>[] const_lists = new List[arity];
+                for (int col = 0; col < arity; col++) {
+                    final IntBuffer constants = reader.mapInts(reader.map(Integer.BYTES).getInt());
+                    const_lists[col] = new ArrayList<>(constants.limit());
+                    for (int k = 0; k < constants.limit(); k++) {
+                        const_lists[col].add(kb.numMap.num2Name(constants.get(k)));
+                    }
+                }
+                kb.functor2PromisingConstMap.put(name, const_lists);
+            }
+
+            /* Similar Columns */
+            final IntBuffer pairs = reader.mapInts(reader.map(Integer.BYTES).getInt() * 4);
+            while (pairs.hasRemaining()) {
+                kb.similarColumnPairs.add(new MemKB.ColumnPairInfo(
+                        kb.functorNumMap.num2Name(pairs.get()), pairs.get(),
+                        kb.functorNumMap.num2Name(pairs.get()), pairs.get()
+                ));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按顺序映射文件中的各段
+     */
+    static class Reader {
+        final FileChannel channel;
+        final long limit;
+        long position = 0;
+
+        Reader(FileChannel channel, long limit) {
+            this.channel = channel;
+            this.limit = limit;
+        }
+
+        ByteBuffer map(long length) throws IOException {
+            if (0 > length || position + length > limit) {
+                throw new IOException("Snapshot section exceeds the content: " + position + '+' + length + '>' + limit);
+            }
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            position += length;
+            return buffer;
+        }
+
+        IntBuffer mapInts(int length) throws IOException {
+            return map((long) Integer.BYTES * length).asIntBuffer();
+        }
+
+        int peekInt() throws IOException {
+            if (position + Integer.BYTES > limit) {
+                throw new IOException("Snapshot section exceeds the content: " + position + '>' + limit);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, position, Integer.BYTES).getInt();
+        }
+    }
+
+    static int paddedLength(int length) {
+        return (length + 3) & ~3;
+    }
+
+    static void writeString(DataOutputStream out, String str) throws IOException {
+        final byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        for (int i = bytes.length; i < paddedLength(bytes.length); i++) {
+            out.writeByte(0);
+        }
+    }
+
+    static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        buffer.position(buffer.position() + paddedLength(length) - length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeInts(DataOutputStream out, IntBuffer buffer) throws IOException {
+        for (int i = 0; i < buffer.limit(); i++) {
+            out.writeInt(buffer.get(i));
+        }
+    }
+}
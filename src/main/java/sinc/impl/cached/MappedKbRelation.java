@@ -0,0 +1,270 @@
+package sinc.impl.cached;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 将列与索引存储在内存映射文件中的relation，数据不占用堆空间，也不参与GC。
+ *
+ * 每次分配都在dir下创建一个临时文件并映射，映射之后文件立即删除，映射释放时磁盘空间才被回收。
+ *
+ * 加载过程中未合并的事实超过spillThreshold条时，排序后写入一段只追加的映射文件(spill run)，不与列存储合并。最后
+ * 两段长度相同时归并成一段(类似二进制计数)，所以写入的总量是O(N log N)，段数保持在对数级别，判断重复时每段只需一次
+ * 二分查找。第一次查询时所有的段与列存储一次归并。spill run只在持有锁时访问，不再使用时立即释放映射；被合并替换的
+ * 列存储可能仍被不加锁的查询使用，只能由GC释放。
+ */
+public class MappedKbRelation extends KbRelation {
+    public static final int DEFAULT_SPILL_THRESHOLD = 1 << 20;
+
+    /* 主动释放映射的方法，不可用时为null，此时交给GC */
+    protected static final Object UNSAFE;
+    protected static final Method INVOKE_CLEANER;
+    static {
+        Object unsafe;
+        Method invoke_cleaner;
+        try {
+            final Class<?> unsafe_class = Class.forName("sun.misc.Unsafe");
+            final Field field = unsafe_class.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invoke_cleaner = unsafe_class.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invoke_cleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invoke_cleaner;
+    }
+
+    /* spill run中每隔FENCE_STRIDE行在堆上保存一行，查找时先在堆上定位，再在映射文件中查找一小段 */
+    protected static final int FENCE_STRIDE = 64;
+
+    /**
+     * 一段按字典序排列、去重的事实，与列存储以及其他段都不相交
+     */
+    protected static class SpillRun {
+        public final IntBuffer[] columns;
+        public final MappedByteBuffer[] buffers;
+        protected IntBuffer[] fences = null;  // fences[col].get(k)是第k * FENCE_STRIDE行，写入完成后构建
+
+        public SpillRun(IntBuffer[] columns, MappedByteBuffer[] buffers) {
+            this.columns = columns;
+            this.buffers = buffers;
+        }
+
+        public int rows() {
+            return KbRelation.rows(columns);
+        }
+
+        public void buildFences() {
+            final int total_fences = (rows() + FENCE_STRIDE - 1) / FENCE_STRIDE;
+            fences = new IntBuffer[columns.length];
+            for (int col = 0; col < columns.length; col++) {
+                fences[col] = IntBuffer.allocate(total_fences);
+                for (int k = 0; k < total_fences; k++) {
+                    fences[col].put(k, columns[col].get(k * FENCE_STRIDE));
+                }
+            }
+        }
+
+        /**
+         * @return 行号，不存在时返回负数
+         */
+        public int findRow(int[] args) {
+            /* 最后一个不大于args的fence所在的一段 */
+            int low = 0;
+            int high = KbRelation.rows(fences) - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (0 >= compareRow(fences, mid, args)) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (0 > high) {
+                return -1;
+            }
+            final int begin = high * FENCE_STRIDE;
+            return KbRelation.findRow(columns, begin, Math.min(begin + FENCE_STRIDE, rows()), args);
+        }
+
+        public void release() {
+            for (MappedByteBuffer buffer: buffers) {
+                unmap(buffer);
+            }
+            Arrays.fill(buffers, null);
+        }
+    }
+
+    protected final File dir;
+    protected final int spillThreshold;
+    protected final List<SpillRun> spillRuns = new ArrayList<>();  // 由锁保护
+
+    public MappedKbRelation(String name, int id, int arity, File dir) {
+        this(name, id, arity, dir, DEFAULT_SPILL_THRESHOLD);
+    }
+
+    public MappedKbRelation(String name, int id, int arity, File dir, int spillThreshold) {
+        super(name, id, arity);
+        this.dir = dir;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    protected synchronized void load(IntBuffer[] columns, ColumnIndex[] argIndices) {
+        releaseSpillRuns();
+        super.load(columns, argIndices);
+    }
+
+    @Override
+    public synchronized boolean addRecord(Record record) {
+        if (!super.addRecord(record)) {
+            return false;
+        }
+        if (pendingRecords.size() >= spillThreshold) {
+            spill();
+        }
+        return true;
+    }
+
+    @Override
+    protected boolean hasPendingRecord(Record record) {
+        for (SpillRun run: spillRuns) {
+            if (0 <= run.findRow(record.args)) {
+                return true;
+            }
+        }
+        return super.hasPendingRecord(record);
+    }
+
+    @Override
+    protected int pendingCount() {
+        int cnt = super.pendingCount();
+        for (SpillRun run: spillRuns) {
+            cnt += run.rows();
+        }
+        return cnt;
+    }
+
+    /**
+     * spill run在映射文件中，只有fence占用堆空间
+     */
+    @Override
+    public synchronized long pendingBytes() {
+        long bytes = super.pendingBytes();
+        for (SpillRun run: spillRuns) {
+            for (IntBuffer fence: run.fences) {
+                bytes += MemoryEstimator.bufferBytes(fence);
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    protected synchronized void mergePending() {
+        if (spillRuns.isEmpty()) {
+            super.mergePending();
+            return;
+        }
+        if (!pendingRecords.isEmpty()) {
+            spill();
+        }
+        final List<IntBuffer[]> runs = new ArrayList<>(spillRuns.size());
+        for (SpillRun run: spillRuns) {
+            runs.add(run.columns);
+        }
+        mergeRuns(runs);
+        releaseSpillRuns();
+    }
+
+    /**
+     * 把pendingRecords排序后写成新的一段，最后两段长度相同时归并
+     */
+    protected void spill() {
+        final int[][] pending_rows = sortedPendingRows();
+        final SpillRun run = newSpillRun(pending_rows.length);
+        fillColumns(pending_rows, run.columns);
+        run.buildFences();
+        pendingRecords.clear();
+        spillRuns.add(run);
+        while (2 <= spillRuns.size() &&
+                spillRuns.get(spillRuns.size() - 2).rows() <= spillRuns.get(spillRuns.size() - 1).rows()) {
+            final SpillRun last = spillRuns.remove(spillRuns.size() - 1);
+            final SpillRun second_last = spillRuns.remove(spillRuns.size() - 1);
+            final SpillRun merged_run = newSpillRun(second_last.rows() + last.rows());
+            mergeRows(Arrays.asList(second_last.columns, last.columns), merged_run.columns, null);
+            merged_run.buildFences();
+            second_last.release();
+            last.release();
+            spillRuns.add(merged_run);
+        }
+    }
+
+    protected SpillRun newSpillRun(int rows) {
+        final IntBuffer[] columns = new IntBuffer[arity];
+        final MappedByteBuffer[] buffers = new MappedByteBuffer[arity];
+        for (int col = 0; col < arity; col++) {
+            buffers[col] = map(rows);
+            columns[col] = buffers[col].order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return new SpillRun(columns, buffers);
+    }
+
+    protected void releaseSpillRuns() {
+        for (SpillRun run: spillRuns) {
+            run.release();
+        }
+        spillRuns.clear();
+    }
+
+    @Override
+    protected IntBuffer allocate(int length) {
+        return map(length).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    /**
+     * 映射一个可以存放length个int的临时文件
+     */
+    protected MappedByteBuffer map(int length) {
+        try {
+            final File file = File.createTempFile("rel" + id + '_', ".col", dir);
+            final MappedByteBuffer buffer;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, ((long) length) * Integer.BYTES);
+            }
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 立即释放映射，之后不能再访问该buffer以及由它产生的视图
+     */
+    protected static void unmap(MappedByteBuffer buffer) {
+        if (null == buffer || null == INVOKE_CLEANER) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            /* 无法主动释放时交给GC */
+        }
+    }
+}
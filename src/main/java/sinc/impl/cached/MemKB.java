@@ -1,8 +1,13 @@
 package sinc.impl.cached;
 
+import sinc.common.Constant;
 import sinc.common.Predicate;
-import sinc.util.MultiSet;
+import sinc.common.Rule;
+import sinc.util.MinHash;
+import sinc.util.RoaringBitmap;
+import sinc.util.SpaceSaving;
 
+import java.io.File;
 import java.util.*;
 
 public class MemKB {
@@ -33,118 +38,189 @@ public class MemKB {
         }
     }
 
-    protected final Set<Predicate> originalKB = new HashSet<>();
-    protected final Map<String, Set<Predicate>> functor2Facts = new HashMap<>();
+    protected static final long SKETCH_SEED = 0x5EED5EEDL;  // 相似列检测中MinHash的随机种子，固定以保证结果可复现
+
+    /* 常量与functor都被编号，事实以Record(int[])的形式存储在对应的relation中 */
+    protected final NumerationMap numMap = new NumerationMap();
+    protected final NumerationMap functorNumMap = new NumerationMap();
+    protected final List<KbRelation> relations = new ArrayList<>(Collections.singleton(null));  // 按functor编号索引
     protected final Map<String, Integer> functor2ArityMap = new HashMap<>();
-    protected final Map<String, Map<String, Set<Predicate>>[]> functor2ArgIdx = new HashMap<>();
-    protected final Set<String> constants = new HashSet<>();
-    protected final Set<Predicate> provedFacts = new HashSet<>();
-    protected final Map<String, MultiSet<String>[]> functor2ArgSetsMap = new HashMap<>();
+    protected final Map<String, SpaceSaving[]> functor2ConstSketchMap = new HashMap<>();  // 加载时统计每列的高频常量
+    protected double constantSketchThreshold = -1;  // 不大于0时不使用高频常量的统计
     protected final Map<String, List<String>[]> functor2PromisingConstMap = new HashMap<>();
     protected final Set<ColumnPairInfo> similarColumnPairs = new HashSet<>();
+    protected int totalFacts = 0;
+    protected Set<Predicate> originalKbView = null;  // 以Predicate形式访问时的视图，在第一次访问时构建
+    protected final File offHeapDir;  // 不为null时，relation存储在该目录下的内存映射文件中
 
-    public void declareFunctor(String functor, int arity) {
-        functor2Facts.computeIfAbsent(functor, k -> new HashSet<>());
-        functor2ArityMap.putIfAbsent(functor, arity);
-        functor2ArgIdx.computeIfAbsent(functor, k -> {
-            Map<String, Set<Predicate>>[] _arg_indices = new Map[arity];
+    public MemKB() {
+        this(null);
+    }
+
+    public MemKB(File offHeapDir) {
+        this.offHeapDir = offHeapDir;
+    }
+
+    protected KbRelation declareRelation(String functor, int arity) {
+        final int functor_num = functorNumMap.mapName(functor);
+        if (functor_num < relations.size()) {
+            return relations.get(functor_num);
+        }
+        final KbRelation relation = (null == offHeapDir) ?
+                new KbRelation(functor, functor_num, arity) : new MappedKbRelation(functor, functor_num, arity, offHeapDir);
+        relations.add(relation);
+        functor2ArityMap.put(functor, arity);
+        if (0 < constantSketchThreshold) {
+            final SpaceSaving[] sketches = new SpaceSaving[arity];
             for (int i = 0; i < arity; i++) {
-                _arg_indices[i] = new HashMap<>();
-            }
-            return _arg_indices;
-        });
-        functor2ArgSetsMap.computeIfAbsent(functor, k -> {
-            MultiSet<String>[] _arg_set_list = new MultiSet[arity];
-            for (int i = 0; i < _arg_set_list.length; i++) {
-                _arg_set_list[i] = new MultiSet<>();
+                sketches[i] = new SpaceSaving(SpaceSaving.capacityFor(constantSketchThreshold));
             }
-            return _arg_set_list;
-        });
-        functor2PromisingConstMap.computeIfAbsent(functor, k -> {
-            List<String>[] _const_lists = new List[arity];
-            for (int i = 0; i < _const_lists.length; i++) {
-                _const_lists[i] = new ArrayList<>();
-            }
-            return _const_lists;
-        });
+            functor2ConstSketchMap.put(functor, sketches);
+        }
+        final List<String>[] const_lists = new List[arity];
+        for (int i = 0; i < arity; i++) {
+            const_lists[i] = new ArrayList<>();
+        }
+        functor2PromisingConstMap.put(functor, const_lists);
+        return relation;
+    }
+
+    /**
+     * 在加载过程中用SpaceSaving统计每列的高频常量，calculatePromisingConstants只需验证这些候选，不用遍历所有常量。
+     * 需要在添加事实之前调用，之后calculatePromisingConstants的阈值不小于threshold时使用这些统计
+     */
+    public void enableConstantSketch(double threshold) {
+        constantSketchThreshold = threshold;
+    }
+
+    public void declareFunctor(String functor, int arity) {
+        declareRelation(functor, arity);
     }
 
     public boolean addFact(Predicate predicate) {
-        /* 添加到functor索引 */
-        if (!originalKB.add(predicate)) {
+        final String[] arg_names = new String[predicate.arity()];
+        for (int i = 0; i < arg_names.length; i++) {
+            arg_names[i] = predicate.args[i].name;
+        }
+        return addFact(predicate.functor, arg_names);
+    }
+
+    /**
+     * 直接以符号形式添加事实，不需要构造Predicate。参数个数与该functor第一次出现时不一致的事实会被忽略
+     */
+    public boolean addFact(String functor, String[] argNames) {
+        final KbRelation relation = declareRelation(functor, argNames.length);
+        if (relation.arity != argNames.length) {
             return false;
         }
-        functor2Facts.compute(predicate.functor, (func, set) -> {
-            if (null == set) {
-                set = new HashSet<>();
-                functor2ArityMap.put(func, predicate.arity());
-            }
-            set.add(predicate);
-            return set;
-        });
-
-        /* 添加到argument索引 */
-        final Map<String, Set<Predicate>>[] arg_indices = functor2ArgIdx.computeIfAbsent(
-                predicate.functor, k -> {
-                    Map<String, Set<Predicate>>[] _arg_indices = new Map[predicate.arity()];
-                    for (int i = 0; i < predicate.arity(); i++) {
-                        _arg_indices[i] = new HashMap<>();
-                    }
-                    return _arg_indices;
-                }
-        );
-        final MultiSet<String>[] arg_sets =  functor2ArgSetsMap.computeIfAbsent(
-                predicate.functor, k -> {
-                    MultiSet<String>[] _arg_set_list = new MultiSet[predicate.arity()];
-                    for (int i = 0; i < _arg_set_list.length; i++) {
-                        _arg_set_list[i] = new MultiSet<>();
-                    }
-                    return _arg_set_list;
-                }
-        );
-        for (int i = 0; i < predicate.arity(); i++) {
-            final String constant_symbol = predicate.args[i].name;
-            arg_indices[i].compute(constant_symbol, (const_sym, set) -> {
-                if (null == set) {
-                    set = new HashSet<>();
-                }
-                set.add(predicate);
-                return set;
-            });
-            arg_sets[i].add(constant_symbol);
-            constants.add(constant_symbol);
+        final int[] args = new int[argNames.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = numMap.mapName(argNames[i]);
+        }
+        if (!relation.addRecord(new Record(args))) {
+            return false;
         }
+        totalFacts++;
+        originalKbView = null;
+        updateConstantSketches(functor, args);
         return true;
     }
 
+    /**
+     * 批量添加编号后的事实，其中的编号必须已经在numMap中分配
+     *
+     * @return 实际添加(不重复)的事实数量
+     */
+    public int addRecords(String functor, Collection<Record> records) {
+        final KbRelation relation = getRelation(functor);
+        int added = 0;
+        for (Record record: records) {
+            if (relation.addRecord(record)) {
+                added++;
+                updateConstantSketches(functor, record.args);
+            }
+        }
+        totalFacts += added;
+        originalKbView = null;
+        return added;
+    }
+
+    protected void updateConstantSketches(String functor, int[] args) {
+        final SpaceSaving[] sketches = functor2ConstSketchMap.get(functor);
+        if (null != sketches) {
+            for (int i = 0; i < args.length; i++) {
+                sketches[i].add(args[i]);
+            }
+        }
+    }
+
+    /**
+     * 找出每列中出现比例超过threshold的常量。加载时统计过高频常量并且阈值不低于统计时的阈值时，只验证统计得到的候选，
+     * 否则统计该列所有值的出现次数。验证候选时扫描一遍列(已构建索引时直接查索引)，不会构建列索引。结果按常量编号排序
+     */
     public void calculatePromisingConstants(double threshold) {
         functor2PromisingConstMap.clear();
-        for (Map.Entry<String, MultiSet<String>[]> entry: functor2ArgSetsMap.entrySet()) {
-            MultiSet<String>[] arg_sets = entry.getValue();
-            List<String>[] arg_const_lists = new List[arg_sets.length];
-            for (int i = 0; i < arg_sets.length; i++) {
-                arg_const_lists[i] = arg_sets[i].elementsAboveProportion(threshold);
+        final boolean use_sketch = 0 < constantSketchThreshold && constantSketchThreshold <= threshold;
+        for (int i = 1; i < relations.size(); i++) {
+            final KbRelation relation = relations.get(i);
+            final int min_count = (int) (relation.totalRecords() * threshold);
+            final SpaceSaving[] sketches = functor2ConstSketchMap.get(relation.name);
+            final List<String>[] arg_const_lists = new List[relation.arity];
+            for (int col = 0; col < relation.arity; col++) {
+                final List<String> const_list = new ArrayList<>();
+                if (use_sketch && null != sketches) {
+                    final List<Integer> candidates = new ArrayList<>();
+                    for (int candidate: sketches[col].candidates()) {
+                        if (sketches[col].estimate(candidate) > min_count) {
+                            candidates.add(candidate);
+                        }
+                    }
+                    Collections.sort(candidates);
+
+                    /* 验证候选常量的实际出现次数 */
+                    final Map<Integer, Integer> counts = relation.countValues(col, new HashSet<>(candidates));
+                    for (int candidate: candidates) {
+                        if (counts.get(candidate) > min_count) {
+                            const_list.add(numMap.num2Name(candidate));
+                        }
+                    }
+                } else {
+                    final ValueCounts value_counts = relation.valueCounts(col);
+                    for (int k = 0; k < value_counts.distinctValues(); k++) {
+                        if (value_counts.counts[k] > min_count) {
+                            const_list.add(numMap.num2Name(value_counts.values[k]));
+                        }
+                    }
+                }
+                arg_const_lists[col] = const_list;
             }
-            functor2PromisingConstMap.put(entry.getKey(), arg_const_lists);
+            functor2PromisingConstMap.put(relation.name, arg_const_lists);
         }
     }
 
     public void calculateSimilarColumnPairs(double threshold) {
         similarColumnPairs.clear();
-        Map.Entry<String, MultiSet<String>[]>[] entries = functor2ArgSetsMap.entrySet().toArray(new Map.Entry[0]);
-
-        for (int i = 0; i < entries.length; i++) {
-            String functor1 = entries[i].getKey();
-            MultiSet<String>[] arg_sets1 = entries[i].getValue();
-            for (int j = i; j < entries.length; j++) {
-                String functor2 = entries[j].getKey();
-                MultiSet<String>[] arg_sets2 = entries[j].getValue();
-                for (int ii = 0; ii < arg_sets1.length; ii++) {
-                    for (int jj = 0; jj < arg_sets2.length; jj++) {
-                        double similarity = arg_sets1[ii].jaccardSimilarity(arg_sets2[jj]);
+
+        /* 每列的统计只在这里使用，不构建列索引 */
+        final ValueCounts[][] value_counts = new ValueCounts[relations.size()][];
+        for (int i = 1; i < relations.size(); i++) {
+            final KbRelation relation = relations.get(i);
+            value_counts[i] = new ValueCounts[relation.arity];
+            for (int col = 0; col < relation.arity; col++) {
+                value_counts[i][col] = relation.valueCounts(col);
+            }
+        }
+
+        for (int i = 1; i < relations.size(); i++) {
+            final KbRelation relation1 = relations.get(i);
+            for (int j = i; j < relations.size(); j++) {
+                final KbRelation relation2 = relations.get(j);
+                for (int ii = 0; ii < relation1.arity; ii++) {
+                    for (int jj = 0; jj < relation2.arity; jj++) {
+                        double similarity = value_counts[i][ii].jaccardSimilarity(value_counts[j][jj]);
                         if (similarity >= threshold) {
-                            similarColumnPairs.add(new ColumnPairInfo(functor1,ii,functor2,jj));
-                            similarColumnPairs.add(new ColumnPairInfo(functor2,jj,functor1,ii));
+                            similarColumnPairs.add(new ColumnPairInfo(relation1.name, ii, relation2.name, jj));
+                            similarColumnPairs.add(new ColumnPairInfo(relation2.name, jj, relation1.name, ii));
                         }
                     }
                 }
@@ -152,16 +228,134 @@ public class MemKB {
         }
     }
 
+    /**
+     * 用MinHash签名与LSH分段找出候选的列对，只计算候选列对的相似度
+     *
+     * @param sketchHashes 签名长度，不大于0时退化为两两精确计算
+     * @param verification 是否对候选列对计算精确的相似度，否则使用签名估计的相似度
+     */
+    public void calculateSimilarColumnPairs(double threshold, int sketchHashes, boolean verification) {
+        if (0 >= sketchHashes) {
+            calculateSimilarColumnPairs(threshold);
+            return;
+        }
+        similarColumnPairs.clear();
+
+        /* 计算每一列的签名，只有需要验证时才保留每列的统计 */
+        final MinHash min_hash = new MinHash(sketchHashes, SKETCH_SEED);
+        final List<KbRelation> column_relations = new ArrayList<>();
+        final List<Integer> column_indices = new ArrayList<>();
+        final List<long[]> signatures = new ArrayList<>();
+        final List<ValueCounts> column_value_counts = new ArrayList<>();
+        for (int i = 1; i < relations.size(); i++) {
+            final KbRelation relation = relations.get(i);
+            if (0 == relation.totalRecords()) {
+                continue;
+            }
+            for (int col = 0; col < relation.arity; col++) {
+                final ValueCounts value_counts = relation.valueCounts(col);
+                final long[] signature = min_hash.newSignature();
+                for (int k = 0; k < value_counts.distinctValues(); k++) {
+                    min_hash.update(signature, value_counts.values[k], value_counts.counts[k]);
+                }
+                column_relations.add(relation);
+                column_indices.add(col);
+                signatures.add(signature);
+                column_value_counts.add(verification ? value_counts : null);
+            }
+        }
+
+        /* LSH: 任意一段签名相同的两列作为候选 */
+        final int[] banding = MinHash.chooseBands(sketchHashes, threshold);
+        final int bands = banding[0];
+        final int rows = banding[1];
+        final int total_columns = signatures.size();
+        final Set<Long> candidates = new HashSet<>();
+        for (int band = 0; band < bands; band++) {
+            final Map<Long, List<Integer>> buckets = new HashMap<>();
+            for (int i = 0; i < total_columns; i++) {
+                buckets.computeIfAbsent(MinHash.bandKey(signatures.get(i), band, rows), k -> new ArrayList<>()).add(i);
+            }
+            for (List<Integer> bucket: buckets.values()) {
+                for (int i = 0; i < bucket.size(); i++) {
+                    for (int j = i; j < bucket.size(); j++) {
+                        candidates.add(((long) bucket.get(i)) * total_columns + bucket.get(j));
+                    }
+                }
+            }
+        }
+
+        for (long candidate: candidates) {
+            final int i = (int) (candidate / total_columns);
+            final int j = (int) (candidate % total_columns);
+            final String functor1 = column_relations.get(i).name;
+            final int idx1 = column_indices.get(i);
+            final String functor2 = column_relations.get(j).name;
+            final int idx2 = column_indices.get(j);
+            final double similarity = verification ?
+                    column_value_counts.get(i).jaccardSimilarity(column_value_counts.get(j)) :
+                    MinHash.estimate(signatures.get(i), signatures.get(j));
+            if (similarity >= threshold) {
+                similarColumnPairs.add(new ColumnPairInfo(functor1, idx1, functor2, idx2));
+                similarColumnPairs.add(new ColumnPairInfo(functor2, idx2, functor1, idx1));
+            }
+        }
+    }
+
     public boolean columnsSimilar(String functor1, int idx1, String functor2, int idx2) {
         return similarColumnPairs.contains(new ColumnPairInfo(functor1, idx1, functor2, idx2));
     }
 
+    /**
+     * 估计KB中各部分占用的堆内存(字节)：列存储、列索引、尚未合并的事实、已证明的事实、Predicate形式的视图、相似列以及
+     * 常量编号表
+     */
+    public Map<String, Long> memoryFootprint() {
+        long columns = 0;
+        long indices = 0;
+        long pending = 0;
+        long proved = 0;
+        long views = 0;
+        for (KbRelation relation: relations) {
+            if (null != relation) {
+                columns += relation.columnBytes();
+                indices += relation.indexBytes();
+                pending += relation.pendingBytes();
+                proved += relation.provedBytes();
+                views += relation.viewBytes();
+            }
+        }
+        if (null != originalKbView) {
+            views += MemoryEstimator.hashTableBytes(originalKbView.size());
+        }
+        final long column_pair_bytes = MemoryEstimator.align(
+                MemoryEstimator.OBJECT_HEADER + 2 * Integer.BYTES + 2 * MemoryEstimator.REFERENCE
+        );
+        long dictionary = 0;
+        for (String name: numMap.allNames()) {
+            /* 名称本身、HashMap节点以及编号列表中的引用 */
+            dictionary += MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + Integer.BYTES + 1 + MemoryEstimator.REFERENCE) +
+                    MemoryEstimator.align(MemoryEstimator.ARRAY_HEADER + name.length()) +
+                    MemoryEstimator.HASH_ENTRY + MemoryEstimator.REFERENCE;
+        }
+        final Map<String, Long> footprint = new LinkedHashMap<>();
+        footprint.put("Columns", columns);
+        footprint.put("Indices", indices);
+        footprint.put("Pending", pending);
+        footprint.put("Proved", proved);
+        footprint.put("Views", views);
+        footprint.put("Similar Pairs", MemoryEstimator.hashTableBytes(similarColumnPairs.size()) +
+                similarColumnPairs.size() * column_pair_bytes);
+        footprint.put("Dictionary", dictionary);
+        return footprint;
+    }
+
     public int totalConstants() {
-        return constants.size();
+        return numMap.totalMappings();
     }
 
     public int totalFacts() {
-        return originalKB.size();
+        return totalFacts;
     }
 
     public long totalColumnPairs() {
@@ -181,45 +375,168 @@ public class MemKB {
         return functor2ArityMap.get(functor);
     }
 
+    public KbRelation getRelation(String functor) {
+        return relations.get(functorNumMap.name2Num(functor));
+    }
+
+    public NumerationMap getNumerationMap() {
+        return numMap;
+    }
+
+    public int name2Num(String name) {
+        return numMap.name2Num(name);
+    }
+
+    public String num2Name(int num) {
+        return numMap.num2Name(num);
+    }
+
+    /**
+     * 将Predicate转为Record，如果其中有KB中不存在的常量则返回null
+     */
+    public Record toRecord(Predicate predicate) {
+        final int[] args = new int[predicate.arity()];
+        for (int i = 0; i < args.length; i++) {
+            if (null == predicate.args[i] || NumerationMap.NULL_NUM == (args[i] = numMap.name2Num(predicate.args[i].name))) {
+                return null;
+            }
+        }
+        return new Record(args);
+    }
+
+    /**
+     * 将Record中的编号还原为常量符号
+     */
+    public Predicate toPredicate(String functor, Record record) {
+        final Predicate predicate = new Predicate(functor, record.args.length);
+        for (int i = 0; i < record.args.length; i++) {
+            predicate.args[i] = new Constant(Rule.CONSTANT_ARG_ID, numMap.num2Name(record.args[i]));
+        }
+        return predicate;
+    }
+
+    public RecordRange getAllRecords(String functor) {
+        /* 这里不做错误处理，有问题直接抛异常 */
+        return getRelation(functor).getRecords();
+    }
+
+    public ColumnIndex getRecordIndices(String functor, int argIdx) {
+        return getRelation(functor).getArgIndices(argIdx);
+    }
+
+    /**
+     * 释放functor对应relation的所有列索引，之后查询时重新构建
+     */
+    public void evictIndices(String functor) {
+        final KbRelation relation = getRelation(functor);
+        if (null != relation) {
+            relation.evictIndices();
+        }
+    }
+
+    public void proveRecord(String functor, Record record) {
+        getRelation(functor).proveRecord(record);
+    }
+
+    public boolean hasProved(String functor, Record record) {
+        return getRelation(functor).hasProved(record);
+    }
+
+    /**
+     * @return 事实在functor对应relation中的编号，不存在时返回负数
+     */
+    public int recordId(String functor, Record record) {
+        return getRelation(functor).rowOf(record);
+    }
+
+    /**
+     * @param recordIds recordId()返回的编号
+     * @return 其中已经被证明的事实数量
+     */
+    public int countProved(String functor, RoaringBitmap recordIds) {
+        return getRelation(functor).countProved(recordIds);
+    }
+
+    public boolean containsRecord(String functor, Record record) {
+        final KbRelation relation = getRelation(functor);
+        return null != relation && relation.hasRecord(record);
+    }
+
     public Set<Predicate> getAllFacts(String functor) {
         /* 这里不做错误处理，有问题直接抛异常 */
-        return functor2Facts.get(functor);
+        final KbRelation relation = getRelation(functor);
+        Set<Predicate> fact_view = relation.factView;
+        if (null == fact_view) {
+            fact_view = new HashSet<>();
+            for (Record record: relation.getRecords()) {
+                fact_view.add(toPredicate(functor, record));
+            }
+            relation.factView = fact_view;
+        }
+        return fact_view;
     }
 
     public Set<String> getValueSet(String functor, int argIdx) {
-        return functor2ArgIdx.get(functor)[argIdx].keySet();
+        return getArgIndices(functor, argIdx).keySet();
     }
 
     public Map<String, Set<Predicate>> getArgIndices(String functor, int argIdx) {
-        return functor2ArgIdx.get(functor)[argIdx];
+        return getAllArgIndices(functor)[argIdx];
     }
 
     public Map<String, Set<Predicate>>[] getAllArgIndices(String functor) {
-        return functor2ArgIdx.get(functor);
+        final KbRelation relation = getRelation(functor);
+        Map<String, Set<Predicate>>[] arg_indices_view = relation.argIndicesView;
+        if (null == arg_indices_view) {
+            arg_indices_view = new Map[relation.arity];
+            for (int i = 0; i < relation.arity; i++) {
+                arg_indices_view[i] = new HashMap<>();
+            }
+            for (Predicate predicate: getAllFacts(functor)) {
+                for (int i = 0; i < relation.arity; i++) {
+                    arg_indices_view[i].computeIfAbsent(predicate.args[i].name, k -> new HashSet<>()).add(predicate);
+                }
+            }
+            relation.argIndicesView = arg_indices_view;
+        }
+        return arg_indices_view;
     }
 
     public void proveFact(Predicate fact) {
-        provedFacts.add(fact);
+        final Record record = toRecord(fact);
+        if (null != record) {
+            getRelation(fact.functor).proveRecord(record);
+        }
     }
 
     public boolean hasProved(Predicate predicate) {
-        return provedFacts.contains(predicate);
+        final KbRelation relation = getRelation(predicate.functor);
+        final Record record = toRecord(predicate);
+        return null != relation && null != record && relation.hasProved(record);
     }
 
     public boolean containsFact(Predicate predicate) {
-        return originalKB.contains(predicate);
+        final Record record = toRecord(predicate);
+        return null != record && containsRecord(predicate.functor, record);
     }
 
     public Set<String> allConstants() {
-        return constants;
+        return numMap.allNames();
     }
 
     public Iterator<Predicate> factIterator() {
-        return originalKB.iterator();
+        return getOriginalKB().iterator();
     }
 
     public Set<Predicate> getOriginalKB() {
-        return originalKB;
+        if (null == originalKbView) {
+            final Set<Predicate> original_kb_view = new HashSet<>();
+            for (int i = 1; i < relations.size(); i++) {
+                original_kb_view.addAll(getAllFacts(relations.get(i).name));
+            }
+            originalKbView = original_kb_view;
+        }
+        return originalKbView;
     }
 
     public Map<String, List<String>[]> getFunctor2PromisingConstantMap() {
@@ -236,9 +553,10 @@ public class MemKB {
 
     public int getTotalConstantSubstitutions() {
         int cnt = 0;
-        for (MultiSet<String>[] constant_sets: functor2ArgSetsMap.values()) {
-            for (MultiSet<String> constant_set: constant_sets) {
-                cnt += constant_set.differentValues();
+        for (int i = 1; i < relations.size(); i++) {
+            final KbRelation relation = relations.get(i);
+            for (int col = 0; col < relation.arity; col++) {
+                cnt += relation.valueCounts(col).distinctValues();
             }
         }
         return cnt;
@@ -255,6 +573,6 @@ public class MemKB {
     }
 
     public Set<String> getAllConstants() {
-        return constants;
+        return numMap.allNames();
     }
 }
@@ -0,0 +1,73 @@
+package sinc.impl.cached;
+
+import java.nio.IntBuffer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 粗略估计常用结构占用的堆内存(字节)。
+ *
+ * 按64位JVM开启压缩指针时的布局计算：对象头12字节，引用4字节，对象按8字节对齐。只用于观察各结构的规模与增长趋势，
+ * 不追求精确。
+ */
+public class MemoryEstimator {
+    public static final int OBJECT_HEADER = 12;
+    public static final int ARRAY_HEADER = 16;
+    public static final int REFERENCE = 4;
+    public static final int HASH_ENTRY = 32;  // HashMap.Node
+    public static final int HASH_SET = 64;  // HashSet以及其中的HashMap
+
+    public static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    public static long intArrayBytes(int length) {
+        return align(ARRAY_HEADER + (long) Integer.BYTES * length);
+    }
+
+    public static long referenceArrayBytes(int length) {
+        return align(ARRAY_HEADER + (long) REFERENCE * length);
+    }
+
+    public static long recordBytes(int arity) {
+        return align(OBJECT_HEADER + REFERENCE) + intArrayBytes(arity);
+    }
+
+    /**
+     * @return 堆上IntBuffer的大小，堆外的buffer只计算对象本身
+     */
+    public static long bufferBytes(IntBuffer buffer) {
+        final long object_bytes = align(OBJECT_HEADER + 4 * Integer.BYTES + 8 + REFERENCE);
+        return buffer.isDirect() ? object_bytes : object_bytes + intArrayBytes(buffer.capacity());
+    }
+
+    /**
+     * @return HashMap/HashSet的表与节点占用的大小，不包括其中的元素
+     */
+    public static long hashTableBytes(int size) {
+        int capacity = 16;
+        while (capacity * 0.75 < size) {
+            capacity <<= 1;
+        }
+        return HASH_SET + referenceArrayBytes(capacity) + (long) HASH_ENTRY * size;
+    }
+
+    /**
+     * @return Record集合的大小，RecordRange是KB存储上的视图，只计算视图对象本身
+     */
+    public static long recordSetBytes(Set<Record> records, int arity) {
+        if (records instanceof RecordRange) {
+            return align(OBJECT_HEADER + 4 * Integer.BYTES + 2 * REFERENCE);
+        }
+        return hashTableBytes(records.size()) + records.size() * recordBytes(arity);
+    }
+
+    public static long collectionBytes(Collection<?> collection, long elementBytes) {
+        return hashTableBytes(collection.size()) + collection.size() * elementBytes;
+    }
+
+    public static long mapBytes(Map<?, ?> map, long entryBytes) {
+        return hashTableBytes(map.size()) + map.size() * entryBytes;
+    }
+}
@@ -0,0 +1,60 @@
+package sinc.impl.cached;
+
+import java.util.*;
+
+/**
+ * 符号名称与整数编号之间的双向映射。编号从1开始连续分配，0保留为空值(NULL_NUM)
+ */
+public class NumerationMap {
+    public static final int NULL_NUM = 0;
+
+    protected final Map<String, Integer> name2NumMap = new HashMap<>();
+    protected final List<String> num2NameList = new ArrayList<>();
+
+    public NumerationMap() {
+        num2NameList.add(null);  // 编号0不对应任何名称
+    }
+
+    /**
+     * 为名称分配编号，如果已经存在则返回原有编号
+     */
+    public int mapName(String name) {
+        Integer num = name2NumMap.get(name);
+        if (null == num) {
+            num = num2NameList.size();
+            name2NumMap.put(name, num);
+            num2NameList.add(name);
+        }
+        return num;
+    }
+
+    /**
+     * @return 名称对应的编号，如果名称不存在则返回NULL_NUM
+     */
+    public int name2Num(String name) {
+        final Integer num = name2NumMap.get(name);
+        return (null == num) ? NULL_NUM : num;
+    }
+
+    /**
+     * @return 编号对应的名称，如果编号不存在则返回null
+     */
+    public String num2Name(int num) {
+        return (NULL_NUM < num && num < num2NameList.size()) ? num2NameList.get(num) : null;
+    }
+
+    public int totalMappings() {
+        return name2NumMap.size();
+    }
+
+    /**
+     * @return 已分配的最大编号，所有编号都在[1, maxNum()]中
+     */
+    public int maxNum() {
+        return num2NameList.size() - 1;
+    }
+
+    public Set<String> allNames() {
+        return Collections.unmodifiableSet(name2NumMap.keySet());
+    }
+}
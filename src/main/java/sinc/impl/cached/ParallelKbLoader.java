@@ -0,0 +1,264 @@
+package sinc.impl.cached;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 多线程加载TSV格式的KB文件。
+ *
+ * 文件按字节切分为若干段(边界对齐到行首)，每段由一个线程解析。每个线程使用自己的编号表对常量编号，并把事实按
+ * functor存成连续的int数组。所有线程结束后按段的顺序合并：先按首次出现的顺序为常量与functor分配全局编号(与单线程
+ * 加载的编号完全相同)，再把局部编号翻译成全局编号批量加入MemKB。
+ *
+ * 与单线程加载(loadSequentially)一样，参数个数与该functor第一次出现时不一致的事实会被忽略，其中的常量也不会编号。
+ * 如果某个functor出现了不同的参数个数，各段无法独立判断哪些事实需要忽略，此时退回到单线程加载。
+ */
+public class ParallelKbLoader {
+
+    /**
+     * 一个线程解析出的某个functor的所有事实，按行连续存放局部编号
+     */
+    static class PartialRelation {
+        final int arity;
+        int[] args = new int[1024];
+        int rows = 0;
+
+        PartialRelation(int arity) {
+            this.arity = arity;
+        }
+
+        void add(int[] row) {
+            if (args.length < (rows + 1) * arity) {
+                args = Arrays.copyOf(args, Math.max(args.length * 2, (rows + 1) * arity));
+            }
+            System.arraycopy(row, 0, args, rows * arity, arity);
+            rows++;
+        }
+    }
+
+    /**
+     * 一个线程的解析结果
+     */
+    static class Partial {
+        final NumerationMap numMap = new NumerationMap();
+        final Map<String, PartialRelation> relations = new LinkedHashMap<>();  // 按首次出现的顺序
+        boolean arityConflict = false;  // 段内出现了参数个数不一致的事实
+    }
+
+    public static void load(MemKB kb, File kbFile, int threads) throws IOException {
+        if (1 >= threads) {
+            loadSequentially(kb, kbFile);
+            return;
+        }
+        final long[] boundaries = splitChunks(kbFile, Math.max(1, threads));
+        final int chunks = boundaries.length - 1;
+        final Partial[] partials = new Partial[chunks];
+        if (1 == chunks) {
+            partials[0] = parseChunk(kbFile, boundaries[0], boundaries[1]);
+        } else {
+            final ExecutorService pool = Executors.newFixedThreadPool(chunks);
+            try {
+                final List<Future<Partial>> futures = new ArrayList<>();
+                for (int i = 0; i < chunks; i++) {
+                    final long start = boundaries[i];
+                    final long end = boundaries[i + 1];
+                    futures.add(pool.submit(() -> parseChunk(kbFile, start, end)));
+                }
+                for (int i = 0; i < chunks; i++) {
+                    partials[i] = futures.get(i).get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        if (hasArityConflict(partials)) {
+            loadSequentially(kb, kbFile);
+            return;
+        }
+        merge(kb, partials);
+    }
+
+    /**
+     * 逐行加载，忽略空行以及参数个数与该functor第一次出现时不一致的事实
+     */
+    public static void loadSequentially(MemKB kb, File kbFile) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(kbFile, StandardCharsets.UTF_8))) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final String[] components = line.split("\t");
+                kb.addFact(components[0], Arrays.copyOfRange(components, 1, components.length));
+            }
+        }
+    }
+
+    static boolean hasArityConflict(Partial[] partials) {
+        final Map<String, Integer> functor_arities = new HashMap<>();
+        for (Partial partial: partials) {
+            if (partial.arityConflict) {
+                return true;
+            }
+            for (Map.Entry<String, PartialRelation> entry: partial.relations.entrySet()) {
+                final Integer arity = functor_arities.putIfAbsent(entry.getKey(), entry.getValue().arity);
+                if (null != arity && arity != entry.getValue().arity) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 将文件按字节均分为chunks段，除第一段外每段的起点都移动到下一行的行首
+     *
+     * @return 各段的边界，长度为段数+1，空的段会被去掉
+     */
+    static long[] splitChunks(File kbFile, int chunks) throws IOException {
+        final long size = kbFile.length();
+        if (size < chunks) {
+            /* 文件太小时每段的起点都是0，不再切分 */
+            return new long[]{0, size};
+        }
+        final List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        try (RandomAccessFile raf = new RandomAccessFile(kbFile, "r")) {
+            for (int i = 1; i < chunks; i++) {
+                long position = Math.max(Math.max(size / chunks * i, 1), boundaries.get(boundaries.size() - 1));
+                if (position >= size) {
+                    break;
+                }
+                raf.seek(position - 1);
+                int b;
+                while (-1 != (b = raf.read()) && '\n' != b) {
+                    position++;
+                }
+                if (position >= size) {
+                    break;
+                }
+                if (position > boundaries.get(boundaries.size() - 1)) {
+                    boundaries.add(position);
+                }
+            }
+        }
+        boundaries.add(size);
+        final long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    static Partial parseChunk(File kbFile, long start, long end) throws IOException {
+        final Partial partial = new Partial();
+        try (RandomAccessFile raf = new RandomAccessFile(kbFile, "r"); FileChannel channel = raf.getChannel()) {
+            channel.position(start);
+            final InputStream in = Channels.newInputStream(channel);
+            final byte[] buffer = new byte[1 << 16];
+            long remaining = end - start;
+            byte[] line = new byte[256];
+            int length = 0;
+            while (0 < remaining) {
+                final int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (0 > read) {
+                    break;
+                }
+                remaining -= read;
+                for (int i = 0; i < read; i++) {
+                    final byte b = buffer[i];
+                    if ('\n' == b) {
+                        parseLine(partial, line, length);
+                        length = 0;
+                    } else {
+                        if (length == line.length) {
+                            line = Arrays.copyOf(line, length * 2);
+                        }
+                        line[length++] = b;
+                    }
+                }
+            }
+            parseLine(partial, line, length);
+        }
+        return partial;
+    }
+
+    static void parseLine(Partial partial, byte[] line, int length) {
+        if (0 < length && '\r' == line[length - 1]) {
+            length--;
+        }
+        if (0 == length) {
+            return;
+        }
+        final String[] components = new String(line, 0, length, StandardCharsets.UTF_8).split("\t");
+        final int arity = components.length - 1;
+        final PartialRelation relation = partial.relations.computeIfAbsent(
+                components[0], k -> new PartialRelation(arity)
+        );
+        if (relation.arity != arity) {
+            partial.arityConflict = true;  // 由load()退回单线程加载
+            return;
+        }
+        final int[] row = new int[arity];
+        for (int i = 0; i < arity; i++) {
+            row[i] = partial.numMap.mapName(components[i + 1]);
+        }
+        relation.add(row);
+    }
+
+    static void merge(MemKB kb, Partial[] partials) {
+        /* 按段的顺序分配全局编号，与单线程加载时首次出现的顺序一致 */
+        final int[][] local_to_global = new int[partials.length][];
+        for (int i = 0; i < partials.length; i++) {
+            final NumerationMap local_map = partials[i].numMap;
+            final int[] translation = new int[local_map.maxNum() + 1];
+            for (int num = 1; num <= local_map.maxNum(); num++) {
+                translation[num] = kb.numMap.mapName(local_map.num2Name(num));
+            }
+            local_to_global[i] = translation;
+        }
+        final Set<String> functors = new LinkedHashSet<>();
+        for (Partial partial: partials) {
+            for (Map.Entry<String, PartialRelation> entry: partial.relations.entrySet()) {
+                kb.declareFunctor(entry.getKey(), entry.getValue().arity);
+                functors.add(entry.getKey());
+            }
+        }
+
+        /* 翻译编号后按functor批量加入 */
+        for (String functor: functors) {
+            final int arity = kb.getArity(functor);
+            final List<Record> records = new ArrayList<>();
+            for (int i = 0; i < partials.length; i++) {
+                final PartialRelation relation = partials[i].relations.get(functor);
+                if (null == relation) {
+                    continue;
+                }
+                final int[] translation = local_to_global[i];
+                for (int row = 0; row < relation.rows; row++) {
+                    final int[] args = new int[arity];
+                    for (int j = 0; j < arity; j++) {
+                        args[j] = translation[relation.args[row * arity + j]];
+                    }
+                    records.add(new Record(args));
+                }
+            }
+            kb.addRecords(functor, records);
+        }
+    }
+}
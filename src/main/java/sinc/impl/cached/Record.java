@@ -0,0 +1,36 @@
+package sinc.impl.cached;
+
+import java.util.Arrays;
+
+/**
+ * 编号后的事实，只记录参数的编号，functor由所在的relation确定
+ */
+public class Record {
+    public final int[] args;
+
+    public Record(int[] args) {
+        this.args = args;
+    }
+
+    public int arity() {
+        return args.length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Record record = (Record) o;
+        return Arrays.equals(args, record.args);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(args);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(args);
+    }
+}
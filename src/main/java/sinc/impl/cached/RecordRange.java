@@ -0,0 +1,91 @@
+package sinc.impl.cached;
+
+import java.nio.IntBuffer;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 列式存储中一段连续的行号，以Set<Record>的形式只读访问。
+ *
+ * 这里只记录列数组与行号数组的引用以及起止位置，遍历时才按行构造Record。列数组在合并新事实时会被整体替换，
+ * 所以已经创建的Range看到的始终是创建时的快照。
+ */
+public class RecordRange extends AbstractSet<Record> {
+    protected final IntBuffer[] columns;
+    protected final IntBuffer rowIds;  // null表示行号就是位置本身
+    protected final int from;
+    protected final int to;
+    protected final int col;  // 该Range是某列上一个值对应的行时，记录列号与值，否则col为-1
+    protected final int value;
+
+    public RecordRange(IntBuffer[] columns, IntBuffer rowIds, int from, int to, int col, int value) {
+        this.columns = columns;
+        this.rowIds = rowIds;
+        this.from = from;
+        this.to = to;
+        this.col = col;
+        this.value = value;
+    }
+
+    public int rowId(int idx) {
+        return (null == rowIds) ? from + idx : rowIds.get(from + idx);
+    }
+
+    public int value(int idx, int argIdx) {
+        return columns[argIdx].get(rowId(idx));
+    }
+
+    public Record get(int idx) {
+        final int row = rowId(idx);
+        final int[] args = new int[columns.length];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = columns[i].get(row);
+        }
+        return new Record(args);
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof Record)) {
+            return false;
+        }
+        final Record record = (Record) o;
+        if (record.args.length != columns.length || (0 <= col && value != record.args[col])) {
+            return false;
+        }
+        final int row = KbRelation.findRow(columns, record.args);
+        if (0 > row) {
+            return false;
+        }
+        if (null == rowIds) {
+            return from <= row && row < to;
+        }
+        return true;  // 同一值对应的行一定都在这个Range中
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return new Iterator<Record>() {
+            int idx = 0;
+
+            @Override
+            public boolean hasNext() {
+                return idx < to - from;
+            }
+
+            @Override
+            public Record next() {
+                if (idx >= to - from) {
+                    throw new NoSuchElementException();
+                }
+                return get(idx++);
+            }
+        };
+    }
+}
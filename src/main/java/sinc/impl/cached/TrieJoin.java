@@ -0,0 +1,344 @@
+package sinc.impl.cached;
+
+import sinc.common.Argument;
+import sinc.common.Predicate;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * 基于Leapfrog Triejoin的多路连接，用于计算规则body的所有满足赋值在部分变量上的投影。
+ *
+ * 每个body predicate按全局变量顺序把KB中符合常量条件的记录投影并排序，构成一棵按列存储的trie(由KbRelation从列存储
+ * 构造，有常量时只读取列索引中对应的行，没有常量的trie在relation中缓存，同一个模式的predicate不会重复构造)。连接时逐个变量确定
+ * 取值：包含该变量的所有trie在当前层上做leapfrog求交(轮流seek到当前最大值)，得到的每个值再递归确定下一个变量。
+ * 投影的变量排在最前面，剩余的变量只需要判断是否存在一组满足的赋值，找到第一组就返回，所以不会产生逐对展开时的
+ * 中间结果，计算量受输出规模约束(worst-case optimal)。
+ */
+public class TrieJoin {
+
+    /**
+     * body predicate对应的trie：columns[depth][row]，按行的字典序排列且没有重复
+     */
+    protected static class AtomTrie {
+        final int[][] columns;
+        final int[] vars;  // 每层对应的变量在全局顺序中的位置，递增
+        final int rows;
+
+        AtomTrie(int[][] columns, int[] vars, int rows) {
+            this.columns = columns;
+            this.vars = vars;
+            this.rows = rows;
+        }
+    }
+
+    protected static class TrieIterator {
+        final AtomTrie trie;
+        final int[] positions;
+        final int[] ends;
+        int depth = -1;
+        boolean atEnd = false;
+
+        TrieIterator(AtomTrie trie) {
+            this.trie = trie;
+            this.positions = new int[trie.vars.length];
+            this.ends = new int[trie.vars.length];
+        }
+
+        /**
+         * 进入下一层，范围是当前key对应的所有行
+         */
+        void open() {
+            final int begin;
+            final int end;
+            if (0 > depth) {
+                begin = 0;
+                end = trie.rows;
+            } else {
+                begin = positions[depth];
+                end = upperBound(trie.columns[depth], begin, ends[depth], key());
+            }
+            depth++;
+            positions[depth] = begin;
+            ends[depth] = end;
+            atEnd = begin >= end;
+        }
+
+        void up() {
+            depth--;
+            atEnd = false;
+        }
+
+        int key() {
+            return trie.columns[depth][positions[depth]];
+        }
+
+        void next() {
+            positions[depth] = upperBound(trie.columns[depth], positions[depth], ends[depth], key());
+            atEnd = positions[depth] >= ends[depth];
+        }
+
+        /**
+         * 移动到第一个不小于value的位置
+         */
+        void seek(int value) {
+            positions[depth] = lowerBound(trie.columns[depth], positions[depth], ends[depth], value);
+            atEnd = positions[depth] >= ends[depth];
+        }
+    }
+
+    protected final int[] varIds;  // 全局顺序中每个位置的变量编号
+    protected final Map<Integer, Integer> var2Order;
+    protected final int projectionSize;
+    protected final TrieIterator[][] iteratorsOfVars;  // 每个变量相关的trie
+    protected final boolean empty;  // 某个predicate没有符合条件的记录
+    protected final int[] binding;
+
+    /**
+     * @param body 规则的body，null参数为自由变量，同一个编号的变量需要取相同的值
+     * @param projection 投影的变量编号，必须都在body中出现
+     */
+    public TrieJoin(MemKB kb, List<Predicate> body, int[] projection) {
+        /* 确定变量顺序：先投影的变量，再按出现的顺序排列其余变量 */
+        final Map<Integer, Integer> var_2_order = new LinkedHashMap<>();
+        for (int var_id: projection) {
+            var_2_order.putIfAbsent(var_id, var_2_order.size());
+        }
+        projectionSize = var_2_order.size();
+        for (Predicate predicate: body) {
+            for (Argument argument: predicate.args) {
+                if (null != argument && argument.isVar) {
+                    var_2_order.putIfAbsent(argument.id, var_2_order.size());
+                }
+            }
+        }
+        var2Order = var_2_order;
+        varIds = new int[var_2_order.size()];
+        for (Map.Entry<Integer, Integer> entry: var_2_order.entrySet()) {
+            varIds[entry.getValue()] = entry.getKey();
+        }
+        binding = new int[varIds.length];
+
+        /* 为每个predicate构造trie */
+        final List<List<TrieIterator>> iterators = new ArrayList<>();
+        for (int i = 0; i < varIds.length; i++) {
+            iterators.add(new ArrayList<>());
+        }
+        boolean empty = false;
+        for (Predicate predicate: body) {
+            final AtomTrie trie = buildTrie(kb, predicate, var_2_order);
+            if (0 == trie.rows) {
+                empty = true;
+                break;
+            }
+            if (0 < trie.vars.length) {
+                final TrieIterator iterator = new TrieIterator(trie);
+                for (int var_order: trie.vars) {
+                    iterators.get(var_order).add(iterator);
+                }
+            }
+        }
+        for (int i = 0; i < projectionSize && !empty; i++) {
+            if (iterators.get(i).isEmpty()) {
+                throw new IllegalArgumentException("Projected variable not in body: " + varIds[i]);
+            }
+        }
+        this.empty = empty;
+        iteratorsOfVars = new TrieIterator[varIds.length][];
+        for (int i = 0; i < varIds.length; i++) {
+            iteratorsOfVars[i] = iterators.get(i).toArray(new TrieIterator[0]);
+        }
+    }
+
+    protected static AtomTrie buildTrie(MemKB kb, Predicate predicate, Map<Integer, Integer> var2Order) {
+        /* 常量条件，以及每列对应的变量在全局顺序中的位置 */
+        final int arity = predicate.arity();
+        final int[] constants = new int[arity];
+        final int[] var_orders = new int[arity];
+        final SortedSet<Integer> orders = new TreeSet<>();
+        for (int arg_idx = 0; arg_idx < arity; arg_idx++) {
+            final Argument argument = predicate.args[arg_idx];
+            var_orders[arg_idx] = -1;
+            if (null == argument) {
+                continue;
+            }
+            if (argument.isVar) {
+                var_orders[arg_idx] = var2Order.get(argument.id);
+                orders.add(var_orders[arg_idx]);
+            } else {
+                constants[arg_idx] = kb.name2Num(argument.name);
+                if (NumerationMap.NULL_NUM == constants[arg_idx]) {
+                    return new AtomTrie(new int[0][], new int[0], 0);
+                }
+            }
+        }
+        final int[] vars = new int[orders.size()];
+        {
+            int depth = 0;
+            for (int order: orders) {
+                vars[depth++] = order;
+            }
+        }
+        if (0 == vars.length) {
+            /* 没有变量时只需要判断是否存在满足常量条件的记录 */
+            return new AtomTrie(new int[0][], vars, matchesAny(kb, predicate.functor, constants) ? 1 : 0);
+        }
+
+        /* 每个变量在trie中的层就是它在该predicate的变量中的排名，同一个变量的多次出现位于同一层 */
+        final int[] layers = new int[arity];
+        for (int arg_idx = 0; arg_idx < arity; arg_idx++) {
+            layers[arg_idx] = (0 > var_orders[arg_idx]) ? -1 : Arrays.binarySearch(vars, var_orders[arg_idx]);
+        }
+        final int[][] columns = kb.getRelation(predicate.functor).trieLevels(layers, constants);
+        return new AtomTrie(columns, vars, columns[0].length);
+    }
+
+    protected static boolean matchesAny(MemKB kb, String functor, int[] constants) {
+        for (int arg_idx = 0; arg_idx < constants.length; arg_idx++) {
+            if (NumerationMap.NULL_NUM != constants[arg_idx]) {
+                final RecordRange range = kb.getRecordIndices(functor, arg_idx).range(constants[arg_idx]);
+                if (null == range) {
+                    return false;
+                }
+                for (int i = 0; i < range.size(); i++) {
+                    boolean matched = true;
+                    for (int col = 0; col < constants.length && matched; col++) {
+                        matched = NumerationMap.NULL_NUM == constants[col] || constants[col] == range.value(i, col);
+                    }
+                    if (matched) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+        return !kb.getAllRecords(functor).isEmpty();
+    }
+
+    /**
+     * @return [begin, end)中第一个不小于value的位置
+     */
+    protected static int lowerBound(int[] column, int begin, int end, int value) {
+        /* 先按指数步长前进，再二分，连续seek较近的值时代价较小 */
+        int step = 1;
+        int low = begin;
+        int high = begin;
+        while (high < end && column[high] < value) {
+            low = high + 1;
+            high = begin + step;
+            step <<= 1;
+        }
+        high = Math.min(high, end);
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (column[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return [begin, end)中第一个大于value的位置
+     */
+    protected static int upperBound(int[] column, int begin, int end, int value) {
+        return (Integer.MAX_VALUE == value) ? end : lowerBound(column, begin, end, value + 1);
+    }
+
+    /**
+     * @return 投影后不同赋值的数量
+     */
+    public int countProjections() {
+        final int[] count = new int[]{0};
+        forEachProjection(binding -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * 对投影后的每个不同赋值调用consumer，参数按构造时projection的顺序排列(去掉重复的编号)，调用之后数组会被修改
+     */
+    public void forEachProjection(Consumer<int[]> consumer) {
+        if (empty) {
+            return;
+        }
+        final int[] projected = new int[projectionSize];
+        if (0 == projectionSize) {
+            if (search(0, consumer, projected)) {
+                consumer.accept(projected);
+            }
+        } else {
+            search(0, consumer, projected);
+        }
+    }
+
+    /**
+     * 在forEachProjection的consumer中调用：当前投影赋值可以扩展成的一组满足赋值中，变量varId的取值
+     */
+    public int witnessValue(int varId) {
+        return binding[var2Order.get(varId)];
+    }
+
+    /**
+     * @return 从第varOrder个变量开始是否存在满足的赋值
+     */
+    protected boolean search(int varOrder, Consumer<int[]> consumer, int[] projected) {
+        if (varOrder >= varIds.length) {
+            return true;
+        }
+        final TrieIterator[] iterators = iteratorsOfVars[varOrder];
+        for (TrieIterator iterator: iterators) {
+            iterator.open();
+        }
+        boolean found = false;
+        if (!anyAtEnd(iterators)) {
+            /* Leapfrog：按当前key排序，然后轮流把最小的seek到最大值 */
+            Arrays.sort(iterators, Comparator.comparingInt(TrieIterator::key));
+            int p = 0;
+            int max_key = iterators[iterators.length - 1].key();
+            while (true) {
+                final TrieIterator iterator = iterators[p];
+                final int key = iterator.key();
+                if (key == max_key) {
+                    /* 所有trie都在同一个值上 */
+                    binding[varOrder] = key;
+                    final boolean sub_found = search(varOrder + 1, consumer, projected);
+                    if (sub_found) {
+                        found = true;
+                        if (varOrder == projectionSize - 1) {
+                            for (int i = 0; i < projectionSize; i++) {
+                                projected[i] = binding[i];
+                            }
+                            consumer.accept(projected);
+                        } else if (varOrder >= projectionSize) {
+                            /* 投影以外的变量只需要存在一组赋值 */
+                            break;
+                        }
+                    }
+                    iterator.next();
+                } else {
+                    iterator.seek(max_key);
+                }
+                if (iterator.atEnd) {
+                    break;
+                }
+                max_key = iterator.key();
+                p = (p + 1) % iterators.length;
+            }
+        }
+        for (TrieIterator iterator: iterators) {
+            iterator.up();
+        }
+        return found;
+    }
+
+    protected static boolean anyAtEnd(TrieIterator[] iterators) {
+        for (TrieIterator iterator: iterators) {
+            if (iterator.atEnd) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
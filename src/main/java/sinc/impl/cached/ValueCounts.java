@@ -0,0 +1,84 @@
+package sinc.impl.cached;
+
+import java.util.Arrays;
+
+/**
+ * 一列中每个值出现的次数，values升序排列，counts[k]是values[k]出现的次数。用于统计常量与列的相似度，不需要构建列索引。
+ */
+public class ValueCounts {
+    public final int[] values;
+    public final int[] counts;
+    public final int total;
+
+    public ValueCounts(int[] values, int[] counts) {
+        this.values = values;
+        this.counts = counts;
+        int total = 0;
+        for (int count: counts) {
+            total += count;
+        }
+        this.total = total;
+    }
+
+    /**
+     * 由排好序的值序列统计
+     */
+    public static ValueCounts ofSorted(int[] sortedValues) {
+        int distinct_values = 0;
+        for (int i = 0; i < sortedValues.length; i++) {
+            if (0 == i || sortedValues[i] != sortedValues[i - 1]) {
+                distinct_values++;
+            }
+        }
+        final int[] values = new int[distinct_values];
+        final int[] counts = new int[distinct_values];
+        int k = -1;
+        for (int i = 0; i < sortedValues.length; i++) {
+            if (0 > k || values[k] != sortedValues[i]) {
+                k++;
+                values[k] = sortedValues[i];
+            }
+            counts[k]++;
+        }
+        return new ValueCounts(values, counts);
+    }
+
+    public int distinctValues() {
+        return values.length;
+    }
+
+    /**
+     * @return value出现的次数，不存在时返回0
+     */
+    public int count(int value) {
+        final int idx = Arrays.binarySearch(values, value);
+        return (0 > idx) ? 0 : counts[idx];
+    }
+
+    /**
+     * 两列作为多重集的Jaccard相似度：交集取较小次数，并集取较大次数
+     */
+    public double jaccardSimilarity(ValueCounts another) {
+        long intersection = 0;
+        long union = 0;
+        int i = 0;
+        int j = 0;
+        while (i < values.length && j < another.values.length) {
+            if (values[i] < another.values[j]) {
+                union += counts[i++];
+            } else if (values[i] > another.values[j]) {
+                union += another.counts[j++];
+            } else {
+                intersection += Math.min(counts[i], another.counts[j]);
+                union += Math.max(counts[i++], another.counts[j++]);
+            }
+        }
+        while (i < values.length) {
+            union += counts[i++];
+        }
+        while (j < another.values.length) {
+            union += another.counts[j++];
+        }
+        return ((double) intersection) / union;
+    }
+}
@@ -0,0 +1,366 @@
+package sinc.impl.cached.recal;
+
+import sinc.impl.cached.MemoryEstimator;
+import sinc.impl.cached.Record;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * 按列存储的grounding cache。
+ *
+ * 每一行是一个grounding，每个predicate的每个参数是一个int列(NULL_NUM表示尚未确定)，每个predicate还有一列记录符合
+ * 条件的记录集合(InclusionSet)的引用。inclusion集合只能读取或整体替换，不能修改，多行之间可以共享同一个集合(copy on
+ * write)。只缓存body的表中head的位置没有任何列。
+ *
+ * 过滤时将保留的行依次前移(copyRow)再截断(truncate)；展开时把新行追加到同结构的空表(emptyCopy)中再替换(assign)，
+ * 这样行的顺序与原来按链表逐个替换时一致。
+ *
+ * 每一列按行分为长度为CHUNK_SIZE的块(行数较少时只有一个较短的块)。复制表时只复制块的目录，块本身由两个表共享，
+ * 之后任何一方要修改某个块时才把该predicate在这个块上的所有列复制一份(copy on write)。这样clone规则的代价只与块的
+ * 数量有关，过滤时没有变化的前缀部分也不会被复制。
+ */
+class GroundingTable {
+    protected static final int INITIAL_CAPACITY = 16;
+    protected static final int CHUNK_BITS = 10;
+    protected static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    protected static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    protected int[] arities = new int[0];
+    protected boolean[] present = new boolean[0];  // head位置在只缓存body的表中为false
+    protected int[][][][] argChunks = new int[0][][][];  // argChunks[pred][arg][chunk][offset]
+    protected InclusionSet[][][] inclusionChunks = new InclusionSet[0][][];  // inclusionChunks[pred][chunk][offset]
+    protected boolean[][] owned = new boolean[0][];  // owned[pred][chunk]: 该块是否只属于当前表，可以直接修改
+    protected int capacity = INITIAL_CAPACITY;  // 不超过CHUNK_SIZE时只有一个块，否则是CHUNK_SIZE的整数倍
+    protected int rows = 0;
+
+    GroundingTable() {}
+
+    /**
+     * 复制表，所有的块由两个表共享，之后由各自在修改时复制
+     */
+    GroundingTable(GroundingTable another) {
+        synchronized (another) {
+            arities = another.arities.clone();
+            present = another.present.clone();
+            capacity = another.capacity;
+            rows = another.rows;
+            argChunks = new int[arities.length][][][];
+            inclusionChunks = new InclusionSet[arities.length][][];
+            owned = new boolean[arities.length][];
+            for (int pred_idx = 0; pred_idx < arities.length; pred_idx++) {
+                if (present[pred_idx]) {
+                    final int[][][] arg_chunks = another.argChunks[pred_idx];
+                    argChunks[pred_idx] = new int[arg_chunks.length][][];
+                    for (int arg_idx = 0; arg_idx < arg_chunks.length; arg_idx++) {
+                        argChunks[pred_idx][arg_idx] = arg_chunks[arg_idx].clone();
+                    }
+                    inclusionChunks[pred_idx] = another.inclusionChunks[pred_idx].clone();
+                    owned[pred_idx] = new boolean[inclusionChunks[pred_idx].length];
+                    Arrays.fill(another.owned[pred_idx], false);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 结构相同的空表
+     */
+    GroundingTable emptyCopy() {
+        final GroundingTable table = new GroundingTable();
+        for (int pred_idx = 0; pred_idx < arities.length; pred_idx++) {
+            if (present[pred_idx]) {
+                table.addPredicate(arities[pred_idx]);
+            } else {
+                table.addPlaceholder();
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 用another的内容替换当前表，another之后不再使用
+     */
+    void assign(GroundingTable another) {
+        arities = another.arities;
+        present = another.present;
+        argChunks = another.argChunks;
+        inclusionChunks = another.inclusionChunks;
+        owned = another.owned;
+        capacity = another.capacity;
+        rows = another.rows;
+    }
+
+    /**
+     * 增加一个predicate，已有的行中其参数都未确定，inclusion为null
+     */
+    void addPredicate(int arity) {
+        final int pred_idx = arities.length;
+        grow(pred_idx + 1);
+        arities[pred_idx] = arity;
+        present[pred_idx] = true;
+        final int chunks = chunkCount(capacity);
+        final int chunk_length = Math.min(capacity, CHUNK_SIZE);
+        argChunks[pred_idx] = new int[arity][chunks][chunk_length];
+        inclusionChunks[pred_idx] = new InclusionSet[chunks][chunk_length];
+        owned[pred_idx] = new boolean[chunks];
+        Arrays.fill(owned[pred_idx], true);
+    }
+
+    /**
+     * 增加一个没有任何列的predicate位置
+     */
+    void addPlaceholder() {
+        grow(arities.length + 1);
+    }
+
+    protected void grow(int predicates) {
+        arities = Arrays.copyOf(arities, predicates);
+        present = Arrays.copyOf(present, predicates);
+        argChunks = Arrays.copyOf(argChunks, predicates);
+        inclusionChunks = Arrays.copyOf(inclusionChunks, predicates);
+        owned = Arrays.copyOf(owned, predicates);
+    }
+
+    protected static int chunkCount(int capacity) {
+        return (capacity + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+    }
+
+    /**
+     * 准备修改某个predicate在某个块上的列，如果该块与其他表共享则先复制
+     */
+    protected void writable(int predIdx, int chunkIdx) {
+        final boolean[] pred_owned = owned[predIdx];
+        if (pred_owned[chunkIdx]) {
+            return;
+        }
+        for (int[][] arg_chunks: argChunks[predIdx]) {
+            arg_chunks[chunkIdx] = arg_chunks[chunkIdx].clone();
+        }
+        inclusionChunks[predIdx][chunkIdx] = inclusionChunks[predIdx][chunkIdx].clone();
+        pred_owned[chunkIdx] = true;
+    }
+
+    int predicates() {
+        return arities.length;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    int arg(int row, int predIdx, int argIdx) {
+        return argChunks[predIdx][argIdx][row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    void setArg(int row, int predIdx, int argIdx, int value) {
+        final int chunk_idx = row >>> CHUNK_BITS;
+        writable(predIdx, chunk_idx);
+        argChunks[predIdx][argIdx][chunk_idx][row & CHUNK_MASK] = value;
+    }
+
+    /**
+     * @return 一行中某个predicate的所有参数
+     */
+    int[] args(int row, int predIdx) {
+        final int[][][] arg_chunks = argChunks[predIdx];
+        final int chunk_idx = row >>> CHUNK_BITS;
+        final int offset = row & CHUNK_MASK;
+        final int[] args = new int[arg_chunks.length];
+        for (int arg_idx = 0; arg_idx < args.length; arg_idx++) {
+            args[arg_idx] = arg_chunks[arg_idx][chunk_idx][offset];
+        }
+        return args;
+    }
+
+    Set<Record> inclusion(int row, int predIdx) {
+        return inclusionSet(row, predIdx).records;
+    }
+
+    InclusionSet inclusionSet(int row, int predIdx) {
+        return inclusionChunks[predIdx][row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    void setInclusion(int row, int predIdx, InclusionSet inclusion) {
+        final int chunk_idx = row >>> CHUNK_BITS;
+        writable(predIdx, chunk_idx);
+        inclusionChunks[predIdx][chunk_idx][row & CHUNK_MASK] = inclusion;
+    }
+
+    /**
+     * 将所有行中某个predicate的inclusion设置为同一个集合
+     */
+    void fillInclusion(int predIdx, InclusionSet inclusion) {
+        for (int chunk_idx = 0; chunk_idx < chunkCount(rows); chunk_idx++) {
+            writable(predIdx, chunk_idx);
+            Arrays.fill(
+                    inclusionChunks[predIdx][chunk_idx], 0, Math.min(CHUNK_SIZE, rows - (chunk_idx << CHUNK_BITS)),
+                    inclusion
+            );
+        }
+    }
+
+    /**
+     * 追加一行，参数都未确定，inclusion为null
+     *
+     * @return 新行的行号
+     */
+    int appendRow() {
+        ensureCapacity(rows + 1);
+        final int chunk_idx = rows >>> CHUNK_BITS;
+        final int offset = rows & CHUNK_MASK;
+        for (int pred_idx = 0; pred_idx < arities.length; pred_idx++) {
+            if (present[pred_idx]) {
+                writable(pred_idx, chunk_idx);
+                for (int[][] arg_chunks: argChunks[pred_idx]) {
+                    arg_chunks[chunk_idx][offset] = 0;
+                }
+                inclusionChunks[pred_idx][chunk_idx][offset] = null;
+            }
+        }
+        return rows++;
+    }
+
+    /**
+     * 将结构相同的表source中的一行复制到末尾
+     *
+     * @return 新行的行号
+     */
+    int appendRow(GroundingTable source, int sourceRow) {
+        ensureCapacity(rows + 1);
+        final int chunk_idx = rows >>> CHUNK_BITS;
+        final int offset = rows & CHUNK_MASK;
+        final int source_chunk_idx = sourceRow >>> CHUNK_BITS;
+        final int source_offset = sourceRow & CHUNK_MASK;
+        for (int pred_idx = 0; pred_idx < arities.length; pred_idx++) {
+            if (present[pred_idx]) {
+                writable(pred_idx, chunk_idx);
+                final int[][][] arg_chunks = argChunks[pred_idx];
+                final int[][][] source_arg_chunks = source.argChunks[pred_idx];
+                for (int arg_idx = 0; arg_idx < arg_chunks.length; arg_idx++) {
+                    arg_chunks[arg_idx][chunk_idx][offset] = source_arg_chunks[arg_idx][source_chunk_idx][source_offset];
+                }
+                inclusionChunks[pred_idx][chunk_idx][offset] =
+                        source.inclusionChunks[pred_idx][source_chunk_idx][source_offset];
+            }
+        }
+        return rows++;
+    }
+
+    /**
+     * 在表内将一行复制到另一行，过滤时用于前移保留的行
+     */
+    void copyRow(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        final int from_chunk_idx = from >>> CHUNK_BITS;
+        final int from_offset = from & CHUNK_MASK;
+        final int to_chunk_idx = to >>> CHUNK_BITS;
+        final int to_offset = to & CHUNK_MASK;
+        for (int pred_idx = 0; pred_idx < arities.length; pred_idx++) {
+            if (present[pred_idx]) {
+                writable(pred_idx, to_chunk_idx);
+                for (int[][] arg_chunks: argChunks[pred_idx]) {
+                    arg_chunks[to_chunk_idx][to_offset] = arg_chunks[from_chunk_idx][from_offset];
+                }
+                final InclusionSet[][] inclusion_chunks = inclusionChunks[pred_idx];
+                inclusion_chunks[to_chunk_idx][to_offset] = inclusion_chunks[from_chunk_idx][from_offset];
+            }
+        }
+    }
+
+    /**
+     * 只保留前rows行
+     */
+    void truncate(int rows) {
+        for (int pred_idx = 0; pred_idx < arities.length; pred_idx++) {
+            if (present[pred_idx]) {
+                /* 释放引用，共享的块中的引用仍被其他表使用，不需要复制 */
+                for (int row = rows; row < this.rows; row = ((row >>> CHUNK_BITS) + 1) << CHUNK_BITS) {
+                    final int chunk_idx = row >>> CHUNK_BITS;
+                    if (owned[pred_idx][chunk_idx]) {
+                        Arrays.fill(
+                                inclusionChunks[pred_idx][chunk_idx], row & CHUNK_MASK,
+                                Math.min(CHUNK_SIZE, this.rows - (chunk_idx << CHUNK_BITS)), null
+                        );
+                    }
+                }
+            }
+        }
+        this.rows = rows;
+    }
+
+    protected void ensureCapacity(int minCapacity) {
+        if (minCapacity <= capacity) {
+            return;
+        }
+        int new_capacity = Math.max(minCapacity, capacity * 2);
+        if (CHUNK_SIZE < new_capacity) {
+            /* 超过一个块之后每次按块增长，已有的块不需要复制 */
+            new_capacity = chunkCount(minCapacity) << CHUNK_BITS;
+        }
+        final int old_chunks = chunkCount(capacity);
+        final int new_chunks = chunkCount(new_capacity);
+        final int first_chunk_length = Math.min(new_capacity, CHUNK_SIZE);
+        for (int pred_idx = 0; pred_idx < arities.length; pred_idx++) {
+            if (present[pred_idx]) {
+                final int[][][] arg_chunks = argChunks[pred_idx];
+                for (int arg_idx = 0; arg_idx < arg_chunks.length; arg_idx++) {
+                    arg_chunks[arg_idx] = Arrays.copyOf(arg_chunks[arg_idx], new_chunks);
+                    if (capacity < CHUNK_SIZE) {
+                        arg_chunks[arg_idx][0] = Arrays.copyOf(arg_chunks[arg_idx][0], first_chunk_length);
+                    }
+                    for (int chunk_idx = old_chunks; chunk_idx < new_chunks; chunk_idx++) {
+                        arg_chunks[arg_idx][chunk_idx] = new int[CHUNK_SIZE];
+                    }
+                }
+                final InclusionSet[][] inclusion_chunks = Arrays.copyOf(inclusionChunks[pred_idx], new_chunks);
+                if (capacity < CHUNK_SIZE) {
+                    inclusion_chunks[0] = Arrays.copyOf(inclusion_chunks[0], first_chunk_length);
+                }
+                for (int chunk_idx = old_chunks; chunk_idx < new_chunks; chunk_idx++) {
+                    inclusion_chunks[chunk_idx] = new InclusionSet[CHUNK_SIZE];
+                }
+                inclusionChunks[pred_idx] = inclusion_chunks;
+                final boolean[] pred_owned = Arrays.copyOf(owned[pred_idx], new_chunks);
+                Arrays.fill(pred_owned, (capacity < CHUNK_SIZE) ? 0 : old_chunks, new_chunks, true);
+                owned[pred_idx] = pred_owned;
+            }
+        }
+        capacity = new_capacity;
+    }
+
+    /**
+     * @param countedObjects 已经计算过的对象(按引用)，共享的块、集合以及索引只计算一次
+     * @return 占用的堆内存(字节)的估计值
+     */
+    long estimatedBytes(Set<Object> countedObjects) {
+        long bytes = MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 2 * Integer.BYTES + 5 * MemoryEstimator.REFERENCE);
+        final int chunks = chunkCount(capacity);
+        for (int pred_idx = 0; pred_idx < arities.length; pred_idx++) {
+            if (present[pred_idx]) {
+                bytes += (arities[pred_idx] + 1) * MemoryEstimator.referenceArrayBytes(chunks) + chunks;
+                for (int[][] arg_chunks: argChunks[pred_idx]) {
+                    for (int[] chunk: arg_chunks) {
+                        if (countedObjects.add(chunk)) {
+                            bytes += MemoryEstimator.intArrayBytes(chunk.length);
+                        }
+                    }
+                }
+                for (InclusionSet[] chunk: inclusionChunks[pred_idx]) {
+                    if (countedObjects.add(chunk)) {
+                        bytes += MemoryEstimator.referenceArrayBytes(chunk.length);
+                    }
+                }
+                for (int row = 0; row < rows; row++) {
+                    final InclusionSet inclusion = inclusionSet(row, pred_idx);
+                    if (null != inclusion) {
+                        bytes += inclusion.estimatedBytes(countedObjects);
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,133 @@
+package sinc.impl.cached.recal;
+
+import sinc.impl.cached.MemoryEstimator;
+import sinc.impl.cached.Record;
+
+import java.util.*;
+
+/**
+ * grounding cache中某个predicate符合条件的记录集合，以及按参数值对其分组的索引。
+ *
+ * 集合本身不可修改，多个grounding以及clone出的规则共享同一个对象(copy on write)，所以某一列上的索引只在第一次按该列
+ * 过滤或连接时构建一次，之后都是一次哈希查找。索引中按值分出的子集也是InclusionSet，后续可以继续在其上建立索引。
+ * 分组时按原集合的迭代顺序加入，得到的子集与逐条扫描过滤的结果完全相同(包括迭代顺序)。
+ */
+class InclusionSet {
+    final Set<Record> records;
+    private final Map<Integer, InclusionSet>[] argIndices;  // 没有构建的列为null
+
+    InclusionSet(Set<Record> records, int arity) {
+        this.records = records;
+        this.argIndices = new Map[arity];
+    }
+
+    int size() {
+        return records.size();
+    }
+
+    /**
+     * @return 按第argIdx个参数的值分组的子集
+     */
+    synchronized Map<Integer, InclusionSet> index(int argIdx) {
+        Map<Integer, InclusionSet> index = argIndices[argIdx];
+        if (null == index) {
+            index = new HashMap<>();
+            for (Record record: records) {
+                index.computeIfAbsent(
+                        record.args[argIdx], k -> new InclusionSet(new HashSet<>(), argIndices.length)
+                ).records.add(record);
+            }
+            argIndices[argIdx] = index;
+        }
+        return index;
+    }
+
+    /**
+     * @return 第argIdx个参数值为value的子集，不存在时返回null
+     */
+    InclusionSet select(int argIdx, int value) {
+        return index(argIdx).get(value);
+    }
+
+    /**
+     * 将KB中的列索引包装为按值分组的InclusionSet，迭代顺序与列索引相同。同一个值只包装一次，包装后的子集在grounding
+     * 之间共享
+     */
+    static Map<Integer, InclusionSet> view(Map<Integer, Set<Record>> kbIndex, int arity) {
+        return new AbstractMap<Integer, InclusionSet>() {
+            final Map<Integer, InclusionSet> wrapped = new HashMap<>();
+
+            InclusionSet wrap(Integer value, Set<Record> records) {
+                return wrapped.computeIfAbsent(value, k -> new InclusionSet(records, arity));
+            }
+
+            @Override
+            public InclusionSet get(Object key) {
+                final InclusionSet inclusion = wrapped.get(key);
+                if (null != inclusion) {
+                    return inclusion;
+                }
+                final Set<Record> records = kbIndex.get(key);
+                return (null == records) ? null : wrap((Integer) key, records);
+            }
+
+            @Override
+            public int size() {
+                return kbIndex.size();
+            }
+
+            @Override
+            public Set<Entry<Integer, InclusionSet>> entrySet() {
+                return new AbstractSet<Entry<Integer, InclusionSet>>() {
+                    @Override
+                    public Iterator<Entry<Integer, InclusionSet>> iterator() {
+                        final Iterator<Entry<Integer, Set<Record>>> itr = kbIndex.entrySet().iterator();
+                        return new Iterator<Entry<Integer, InclusionSet>>() {
+                            @Override
+                            public boolean hasNext() {
+                                return itr.hasNext();
+                            }
+
+                            @Override
+                            public Entry<Integer, InclusionSet> next() {
+                                final Entry<Integer, Set<Record>> entry = itr.next();
+                                return new SimpleImmutableEntry<>(
+                                        entry.getKey(), wrap(entry.getKey(), entry.getValue())
+                                );
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return kbIndex.size();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * @param countedSets 已经计算过的集合(按引用)，共享的集合只计算一次
+     * @return 集合以及已经构建的索引占用的堆内存(字节)的估计值
+     */
+    synchronized long estimatedBytes(Set<Object> countedSets) {
+        if (!countedSets.add(this)) {
+            return 0;
+        }
+        long bytes = MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 2 * MemoryEstimator.REFERENCE) +
+                MemoryEstimator.referenceArrayBytes(argIndices.length);
+        if (countedSets.add(records)) {
+            bytes += MemoryEstimator.recordSetBytes(records, argIndices.length);
+        }
+        for (Map<Integer, InclusionSet> index: argIndices) {
+            if (null != index) {
+                bytes += MemoryEstimator.hashTableBytes(index.size());
+                for (InclusionSet subset: index.values()) {
+                    bytes += subset.estimatedBytes(countedSets);
+                }
+            }
+        }
+        return bytes;
+    }
+}
@@ -3,34 +3,19 @@ package sinc.impl.cached.recal;
 import sinc.common.*;
 import sinc.impl.cached.CachedQueryMonitor;
 import sinc.impl.cached.CachedRule;
+import sinc.impl.cached.CachedRuleMonitor;
+import sinc.impl.cached.ColumnIndex;
 import sinc.impl.cached.MemKB;
+import sinc.impl.cached.Record;
+import sinc.impl.cached.TrieJoin;
 import sinc.util.ComparableArray;
+import sinc.util.LongHashSet;
+import sinc.util.RoaringBitmap;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 
 public class RecalculateCachedRule extends CachedRule {
-    /* 记录符合条件的grounding的中间结果 */
-    private static class PredicateCache {
-        public final Predicate predicate;
-        public Set<Predicate> inclusion;  /* 对这个Set的操作仅限于读取以及替换，不要向其中添加或删除元素，
-                                             这样可以做到copy on write */ // Todo: 这里可以改为map，按arg值索引
-
-        public PredicateCache(Predicate predicate) {
-            this.predicate = predicate;
-            this.inclusion = new HashSet<>();
-        }
-
-        public PredicateCache(Predicate predicate, Set<Predicate> inclusion) {
-            this.predicate = predicate;
-            this.inclusion = inclusion;
-        }
-
-        public PredicateCache(PredicateCache another) {
-            this.predicate = new Predicate(another.predicate);
-            this.inclusion = another.inclusion;  // copy on write
-        }
-    }
-
     /* Body FV 位置信息 */
     private static class BodyFvPos {
         final int bodyPredIdx;
@@ -45,24 +30,318 @@ public class RecalculateCachedRule extends CachedRule {
     }
 
     private final MemKB kb;
-    private List<List<PredicateCache>> groundings = new LinkedList<>();
-    private List<List<PredicateCache>> groundingsBody = new LinkedList<>();
-    private final Map<Integer, BodyFvPos> bodyFreeVars;  // 排除head时，在body中变成FV的BV及其位置
+    private GroundingTable groundings = new GroundingTable();
+    private GroundingTable groundingsBody = new GroundingTable();
+    private Map<Integer, BodyFvPos> bodyFreeVars;  // 排除head时，在body中变成FV的BV及其位置
+    private boolean joinBody = false;  // body成环之后不再维护groundings与groundingsBody，改用TrieJoin直接在KB上计算
+    private double samplingRate = 0;  // 估计模式下head事实与body binding的采样率，不大于0时精确计算
+    private ConstantBatch constantBatch = null;  // 不会被复制
+    private ExistingVarBatch existingVarBatch = null;  // 不会被复制
+
+    /* 估计值误差范围对应的标准差倍数 */
+    protected static final double ESTIMATION_Z = 3.0;
+
+    /* 试探性修改之前的cache，修改在表的copy on write副本上进行，撤销时直接换回原来的表 */
+    private static class CacheState {
+        final GroundingTable groundings;
+        final GroundingTable groundingsBody;
+        final Map<Integer, BodyFvPos> bodyFreeVars;
+        final boolean joinBody;
+        final CachedRuleMonitor cacheMonitor;
+
+        CacheState(RecalculateCachedRule rule) {
+            groundings = rule.groundings;
+            groundingsBody = rule.groundingsBody;
+            bodyFreeVars = rule.bodyFreeVars;
+            joinBody = rule.joinBody;
+            cacheMonitor = rule.cacheMonitor;
+        }
+    }
+
+    /**
+     * 在同一个空位上批量绑定常量时，父规则的两张表按该参数的值一次性分组，之后每个常量直接取出对应的行，不需要再扫描
+     * 整张表。分组在第一次用到时构建，只记录需要尝试的常量
+     */
+    private static class ConstantBatch {
+        final int predIdx;
+        final int argIdx;
+        final Set<Integer> constants;
+        final GroundingTable groundings;
+        final GroundingTable groundingsBody;
+        Map<Integer, int[]> groundingsRows = null;
+        Map<Integer, int[]> groundingsBodyRows = null;
+
+        ConstantBatch(int predIdx, int argIdx, Set<Integer> constants, RecalculateCachedRule rule) {
+            this.predIdx = predIdx;
+            this.argIdx = argIdx;
+            this.constants = constants;
+            this.groundings = rule.groundings;
+            this.groundingsBody = rule.groundingsBody;
+        }
+
+        /**
+         * @return table中参数值为constant的所有行号(递增)，没有时返回null
+         */
+        int[] rowsOf(GroundingTable table, int constant) {
+            if (table == groundings) {
+                if (null == groundingsRows) {
+                    groundingsRows = partition(table);
+                }
+                return groundingsRows.get(constant);
+            }
+            if (null == groundingsBodyRows) {
+                groundingsBodyRows = partition(table);
+            }
+            return groundingsBodyRows.get(constant);
+        }
+
+        private Map<Integer, int[]> partition(GroundingTable table) {
+            /* 第一遍统计每个常量的行数，第二遍填入行号 */
+            final Map<Integer, int[]> row_counts = new HashMap<>();
+            for (int row = 0; row < table.rows(); row++) {
+                for (int constant: constantsIn(table, row)) {
+                    row_counts.computeIfAbsent(constant, k -> new int[1])[0]++;
+                }
+            }
+            final Map<Integer, int[]> rows_of_constants = new HashMap<>();
+            for (Map.Entry<Integer, int[]> entry: row_counts.entrySet()) {
+                rows_of_constants.put(entry.getKey(), new int[entry.getValue()[0]]);
+                entry.getValue()[0] = 0;
+            }
+            for (int row = 0; row < table.rows(); row++) {
+                for (int constant: constantsIn(table, row)) {
+                    rows_of_constants.get(constant)[row_counts.get(constant)[0]++] = row;
+                }
+            }
+            return rows_of_constants;
+        }
+
+        /**
+         * @return 一行中可以绑定的常量，按inclusion的索引与常量集合中较小的一方查找
+         */
+        private List<Integer> constantsIn(GroundingTable table, int row) {
+            final Map<Integer, InclusionSet> index = table.inclusionSet(row, predIdx).index(argIdx);
+            final List<Integer> constants_in_row = new ArrayList<>();
+            if (index.size() < constants.size()) {
+                for (Integer value: index.keySet()) {
+                    if (constants.contains(value)) {
+                        constants_in_row.add(value);
+                    }
+                }
+            } else {
+                for (Integer constant: constants) {
+                    if (index.containsKey(constant)) {
+                        constants_in_row.add(constant);
+                    }
+                }
+            }
+            return constants_in_row;
+        }
+    }
+
+    /**
+     * 对同一个变量批量尝试"新谓词+已知变量"的扩展时，在父规则的两张表上各扫描一次，按该变量的取值记录对应的head事实
+     * 以及body中GV的binding。之后每个候选列只需要查看哪些取值在该列中出现，就能得到扩展之后的正例数量与all
+     * entailment的数量，覆盖率不足或者得分不够的扩展不再更新cache，保留的扩展也不需要重新计算eval
+     */
+    private static class ExistingVarBatch {
+        /* 一个候选列的统计结果 */
+        static class ColumnStat {
+            final int newlyProved;
+            final int alreadyProved;
+            final int bodyBindings;  // body中GV binding的数量，不能批量计算时为-1
+
+            ColumnStat(int newlyProved, int alreadyProved, int bodyBindings) {
+                this.newlyProved = newlyProved;
+                this.alreadyProved = alreadyProved;
+                this.bodyBindings = bodyBindings;
+            }
+        }
+
+        final int varId;
+        final int ruleLength;
+        final int varPredIdx;  // 变量在父规则中第一次出现的位置，与更新cache时比较的位置相同
+        final int varArgIdx;
+        final GroundingTable groundings;
+        Map<Integer, int[]> headRecordsOfValues = null;  // 变量取值 -> 对应的head事实编号，第一次用到时构建
+        final Map<String, ColumnStat[]> statsOfColumns = new HashMap<>();  // functor -> 每一列的结果，null为未计算
+
+        /*
+         * 变量已经在body中出现，除了该变量没有其他Body FV，并且GV binding可以拼接成long时，新谓词只按该变量过滤
+         * groundingsBody(该变量是Body FV时按它的每个取值展开)，head only的变量不变，all entailment的数量可以直接由
+         * 过滤之后不同GV binding的数量得到
+         */
+        final GroundingTable groundingsBody;
+        final int bodyVarPredIdx;  // 变量在父规则body中第一次出现的位置，不能批量计算时为-1
+        final int bodyVarArgIdx;
+        final boolean bodyFreeVar;  // 变量是Body FV，扩展之后成为GV
+        final boolean headVar;  // 变量在head中出现时是GV之一，不同取值对应的binding互不相同
+        final int[][] bodyGvPos;
+        final int constBits;
+        final double headOnlyCombinations;
+        Map<Integer, LongHashSet> bodyBindingsOfValues = null;  // 变量取值 -> 对应的GV binding，第一次用到时构建
+
+        ExistingVarBatch(int varId, RecalculateCachedRule rule) {
+            this.varId = varId;
+            this.ruleLength = rule.structure.size();
+            this.groundings = rule.groundings;
+            this.groundingsBody = rule.groundingsBody;
+            int var_pred_idx = -1;
+            int var_arg_idx = -1;
+            for (int pred_idx = HEAD_PRED_IDX; pred_idx < ruleLength && 0 > var_pred_idx; pred_idx++) {
+                final Argument[] args = rule.structure.get(pred_idx).args;
+                for (int arg_idx = 0; arg_idx < args.length; arg_idx++) {
+                    if (null != args[arg_idx] && args[arg_idx].isVar && varId == args[arg_idx].id) {
+                        var_pred_idx = pred_idx;
+                        var_arg_idx = arg_idx;
+                        break;
+                    }
+                }
+            }
+            this.varPredIdx = var_pred_idx;
+            this.varArgIdx = var_arg_idx;
+
+            /* 与calculateEval相同地统计head中的变量与body中GV的位置 */
+            final Set<Integer> head_vars = new HashSet<>();
+            int head_fv_cnt = 0;
+            for (Argument argument: rule.getHead().args) {
+                if (null == argument) {
+                    head_fv_cnt++;
+                } else if (argument.isVar) {
+                    head_vars.add(argument.id);
+                }
+            }
+            this.headVar = head_vars.contains(varId);
+            this.bodyFreeVar = rule.bodyFreeVars.containsKey(varId);
+            final List<int[]> body_gv_pos = new ArrayList<>();
+            int body_var_pred_idx = -1;
+            int body_var_arg_idx = -1;
+            for (int pred_idx = FIRST_BODY_PRED_IDX; pred_idx < ruleLength; pred_idx++) {
+                final Argument[] args = rule.structure.get(pred_idx).args;
+                for (int arg_idx = 0; arg_idx < args.length; arg_idx++) {
+                    if (null != args[arg_idx] && args[arg_idx].isVar) {
+                        if (head_vars.remove(args[arg_idx].id) && !rule.bodyFreeVars.containsKey(args[arg_idx].id)) {
+                            body_gv_pos.add(new int[]{pred_idx, arg_idx});
+                        }
+                        if (0 > body_var_pred_idx && varId == args[arg_idx].id) {
+                            body_var_pred_idx = pred_idx;
+                            body_var_arg_idx = arg_idx;
+                        }
+                    }
+                }
+            }
+            this.bodyGvPos = body_gv_pos.toArray(new int[0][]);
+            this.constBits = Integer.SIZE - Integer.numberOfLeadingZeros(rule.kb.totalConstants());
+            this.headOnlyCombinations = Math.pow(rule.kb.totalConstants(), head_fv_cnt + head_vars.size());
+            final boolean countable = !rule.joinBody && rule.bodyFreeVars.size() == (bodyFreeVar ? 1 : 0)
+                    && bodyGvPos.length * constBits < Long.SIZE;
+            this.bodyVarPredIdx = countable ? body_var_pred_idx : -1;
+            this.bodyVarArgIdx = countable ? body_var_arg_idx : -1;
+        }
+
+        /**
+         * @return 新谓词functor的第argIdx个参数绑定为该变量之后的统计结果
+         */
+        ColumnStat columnStat(MemKB kb, String headFunctor, String functor, int arity, int argIdx) {
+            final ColumnStat[] stats = statsOfColumns.computeIfAbsent(functor, k -> new ColumnStat[arity]);
+            if (null == stats[argIdx]) {
+                if (null == headRecordsOfValues) {
+                    headRecordsOfValues = partition(kb, headFunctor);
+                }
+
+                /* 保留的grounding是变量取值在该列中出现的行 */
+                final ColumnIndex column_index = kb.getRecordIndices(functor, argIdx);
+                final RoaringBitmap entailed_head = new RoaringBitmap();
+                for (Map.Entry<Integer, int[]> entry: headRecordsOfValues.entrySet()) {
+                    if (0 <= column_index.indexOf(entry.getKey())) {
+                        for (int record_id: entry.getValue()) {
+                            entailed_head.add(record_id);
+                        }
+                    }
+                }
+                final int already_proved = kb.countProved(headFunctor, entailed_head);
+                stats[argIdx] = new ColumnStat(
+                        entailed_head.cardinality() - already_proved, already_proved, bodyBindings(column_index)
+                );
+            }
+            return stats[argIdx];
+        }
+
+        private int bodyBindings(ColumnIndex columnIndex) {
+            if (0 > bodyVarPredIdx) {
+                return -1;
+            }
+            if (null == bodyBindingsOfValues) {
+                bodyBindingsOfValues = new HashMap<>();
+                for (int row = 0; row < groundingsBody.rows(); row++) {
+                    long binding = 0;
+                    for (int[] pos: bodyGvPos) {
+                        binding = (binding << constBits) | groundingsBody.arg(row, pos[0], pos[1]);
+                    }
+                    if (bodyFreeVar) {
+                        final Map<Integer, InclusionSet> index = groundingsBody.inclusionSet(row, bodyVarPredIdx)
+                                .index(bodyVarArgIdx);
+                        for (Integer value: index.keySet()) {
+                            bodyBindingsOfValues.computeIfAbsent(value, k -> new LongHashSet()).add(binding);
+                        }
+                    } else {
+                        bodyBindingsOfValues.computeIfAbsent(
+                                groundingsBody.arg(row, bodyVarPredIdx, bodyVarArgIdx), k -> new LongHashSet()
+                        ).add(binding);
+                    }
+                }
+            }
+            if (headVar) {
+                /* 变量本身是GV(或者扩展之后成为GV)，不同取值的binding没有重复 */
+                int bindings_cnt = 0;
+                for (Map.Entry<Integer, LongHashSet> entry: bodyBindingsOfValues.entrySet()) {
+                    if (0 <= columnIndex.indexOf(entry.getKey())) {
+                        bindings_cnt += entry.getValue().size();
+                    }
+                }
+                return bindings_cnt;
+            }
+            final LongHashSet bindings = new LongHashSet();
+            for (Map.Entry<Integer, LongHashSet> entry: bodyBindingsOfValues.entrySet()) {
+                if (0 <= columnIndex.indexOf(entry.getKey())) {
+                    for (long binding: entry.getValue().toArray()) {
+                        bindings.add(binding);
+                    }
+                }
+            }
+            return bindings.size();
+        }
+
+        private Map<Integer, int[]> partition(MemKB kb, String headFunctor) {
+            final Map<Integer, RoaringBitmap> records_of_values = new HashMap<>();
+            for (int row = 0; row < groundings.rows(); row++) {
+                final RoaringBitmap records = records_of_values.computeIfAbsent(
+                        groundings.arg(row, varPredIdx, varArgIdx), k -> new RoaringBitmap()
+                );
+                for (Record record: groundings.inclusion(row, HEAD_PRED_IDX)) {
+                    records.add(kb.recordId(headFunctor, record));
+                }
+            }
+            final Map<Integer, int[]> head_records_of_values = new HashMap<>();
+            for (Map.Entry<Integer, RoaringBitmap> entry: records_of_values.entrySet()) {
+                head_records_of_values.put(entry.getKey(), entry.getValue().toArray());
+            }
+            return head_records_of_values;
+        }
+    }
 
     public RecalculateCachedRule(String headFunctor, Set<RuleFingerPrint> cache, MemKB kb) {
         super(headFunctor, kb.getArity(headFunctor), cache);
         this.kb = kb;
 
         /* 把无BV的head加入 */
-        final PredicateCache head_cache = new PredicateCache(new Predicate(headFunctor, getHead().arity()));
-        head_cache.inclusion = kb.getAllFacts(headFunctor);
-        final List<PredicateCache> grounding = new ArrayList<>();
-        grounding.add(head_cache);
-        groundings.add(grounding);
+        groundings.addPredicate(getHead().arity());
+        groundings.setInclusion(
+                groundings.appendRow(), HEAD_PRED_IDX, new InclusionSet(kb.getAllRecords(headFunctor), getHead().arity())
+        );
 
-        final List<PredicateCache> grounding_body = new ArrayList<>();
-        grounding_body.add(null);  // 保持两种cache的index一致
-        groundingsBody.add(grounding_body);
+        groundingsBody.addPlaceholder();  // 保持两种cache的index一致
+        groundingsBody.appendRow();
 
         bodyFreeVars = new HashMap<>();
 
@@ -72,13 +351,52 @@ public class RecalculateCachedRule extends CachedRule {
     public RecalculateCachedRule(RecalculateCachedRule another) {
         super(another);
         this.kb = another.kb;
-        for (final List<PredicateCache> grounding: another.groundings) {
-            this.groundings.add(dupGrounding(grounding, false));
-        }
-        for (final List<PredicateCache> grounding_body: another.groundingsBody) {
-            this.groundingsBody.add(dupGrounding(grounding_body, true));
-        }
+        this.groundings = (null == another.groundings) ? null : new GroundingTable(another.groundings);
+        this.groundingsBody = (null == another.groundingsBody) ? null : new GroundingTable(another.groundingsBody);
         this.bodyFreeVars = new HashMap<>(another.bodyFreeVars);
+        this.joinBody = another.joinBody;
+        this.samplingRate = another.samplingRate;
+    }
+
+    /**
+     * 开启估计模式：之后的扩展中，head事实与body binding按哈希值以samplingRate的概率采样，calculateEval与
+     * factCoverage在样本上计算并按比例放大，得到带误差范围的EstimatedEval
+     *
+     * @param samplingRate 0 < samplingRate < 1，其他值表示精确计算
+     */
+    public void enableEstimation(double samplingRate) {
+        this.samplingRate = (0 < samplingRate && 1 > samplingRate) ? samplingRate : 0;
+    }
+
+    /**
+     * 按哈希值决定一个事实编号或binding是否在样本中。同一个值在所有规则中的结果相同，所以不同规则的估计使用同一个
+     * 样本，每个不同的值独立地以samplingRate的概率被选中，不同值的数量可以无偏地估计
+     */
+    private boolean sampled(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (key >>> 11) * 0x1.0p-53 < samplingRate;
+    }
+
+    /**
+     * @return 样本中有sampledCnt个不同值时，总数估计值的标准差
+     */
+    private double estimationStdDev(int sampledCnt) {
+        return Math.sqrt((sampledCnt + 1) * (1 - samplingRate)) / samplingRate;
+    }
+
+    @Override
+    protected Eval calculateExactEval() {
+        final double sampling_rate = samplingRate;
+        samplingRate = 0;
+        try {
+            return calculateEval();
+        } finally {
+            samplingRate = sampling_rate;
+        }
     }
 
     @Override
@@ -90,10 +408,124 @@ public class RecalculateCachedRule extends CachedRule {
         return r;
     }
 
+    @Override
+    public boolean rollbackSupported() {
+        return true;
+    }
+
+    /**
+     * 副本之间只共享只读的KB与copy on write的表
+     */
+    @Override
+    public boolean concurrentEvaluationSupported() {
+        return true;
+    }
+
+    @Override
+    protected Object checkpointCache() {
+        final CacheState state = new CacheState(this);
+        groundings = (null == state.groundings) ? null : new GroundingTable(state.groundings);
+        groundingsBody = (null == state.groundingsBody) ? null : new GroundingTable(state.groundingsBody);
+        bodyFreeVars = new HashMap<>(state.bodyFreeVars);
+        cacheMonitor = new CachedRuleMonitor();  // 与clone出的规则一样，只记录本次修改的开销
+        return state;
+    }
+
+    @Override
+    protected void rollbackCache(Object cacheState) {
+        final CacheState state = (CacheState) cacheState;
+        groundings = state.groundings;
+        groundingsBody = state.groundingsBody;
+        bodyFreeVars = state.bodyFreeVars;
+        joinBody = state.joinBody;
+        cacheMonitor = state.cacheMonitor;
+    }
+
+    @Override
+    public void beginConstantBatch(int predIdx, int argIdx, List<String> constantSymbols) {
+        final Set<Integer> constants = new HashSet<>();
+        for (String constant_symbol: constantSymbols) {
+            constants.add(kb.name2Num(constant_symbol));
+        }
+        constantBatch = new ConstantBatch(predIdx, argIdx, constants, this);
+    }
+
+    @Override
+    public void endConstantBatch() {
+        constantBatch = null;
+    }
+
+    @Override
+    public void beginExistingVarBatch(int varId) {
+        existingVarBatch = new ExistingVarBatch(varId, this);
+    }
+
+    @Override
+    public void endExistingVarBatch() {
+        existingVarBatch = null;
+    }
+
+    /**
+     * @return 当前的修改是在existingVarBatch的父规则上增加一个只绑定了该变量的新谓词时，返回批量计算的统计结果，
+     * 否则返回null。估计模式下不使用
+     */
+    private ExistingVarBatch.ColumnStat existingVarBatchStat() {
+        final CacheState state = (CacheState) checkpointedCacheState();
+        if (null == existingVarBatch || null == state || state.joinBody || 0 < samplingRate
+                || 0 > existingVarBatch.varPredIdx
+                || state.groundings != existingVarBatch.groundings
+                || state.groundingsBody != existingVarBatch.groundingsBody
+                || structure.size() != existingVarBatch.ruleLength + 1) {
+            return null;
+        }
+        final Predicate new_pred = structure.get(structure.size() - 1);
+        int var_arg_idx = -1;
+        for (int arg_idx = 0; arg_idx < new_pred.arity(); arg_idx++) {
+            final Argument argument = new_pred.args[arg_idx];
+            if (null != argument) {
+                if (0 <= var_arg_idx || !argument.isVar || existingVarBatch.varId != argument.id) {
+                    return null;
+                }
+                var_arg_idx = arg_idx;
+            }
+        }
+        return (0 > var_arg_idx) ? null : existingVarBatch.columnStat(
+                kb, getHead().functor, new_pred.functor, new_pred.arity(), var_arg_idx
+        );
+    }
+
+    /**
+     * @return 批量计算得到了all entailment的数量时，返回当前修改之后精确的eval，否则返回null
+     */
+    Eval existingVarBatchEval() {
+        final ExistingVarBatch.ColumnStat stat = existingVarBatchStat();
+        if (null == stat || 0 > stat.bodyBindings) {
+            return null;
+        }
+        final double all_entails = stat.bodyBindings * existingVarBatch.headOnlyCombinations;
+        return new Eval(eval, stat.newlyProved, all_entails - stat.alreadyProved, size());
+    }
+
+    /**
+     * @return 当前的修改可以使用constantBatch时，返回修改前(checkpoint中)对应的表，否则返回null
+     */
+    private GroundingTable constantBatchSource(int predIdx, int argIdx, boolean bodyOnly) {
+        final CacheState state = (CacheState) checkpointedCacheState();
+        if (null == constantBatch || null == state || state.joinBody || predIdx != constantBatch.predIdx
+                || argIdx != constantBatch.argIdx || state.groundings != constantBatch.groundings
+                || state.groundingsBody != constantBatch.groundingsBody) {
+            return null;
+        }
+        return bodyOnly ? state.groundingsBody : state.groundings;
+    }
+
     @Override
     protected UpdateStatus boundFreeVar2ExistingVarHandler(int predIdx, int argIdx, int varId) {
         final long time_start = System.nanoTime();
-        boundFreeVar2ExistingVarUpdateCache(predIdx, argIdx, varId, false);
+        final boolean maintain_cache = maintainCache();
+        if (maintain_cache) {
+            boundFreeVar2ExistingVarUpdateCache(predIdx, argIdx, varId, false);
+        }
 
         if (MIN_FACT_COVERAGE >= factCoverage()) {
             final long time_done = System.nanoTime();
@@ -101,7 +533,9 @@ public class RecalculateCachedRule extends CachedRule {
             return UpdateStatus.INSUFFICIENT_COVERAGE;
         }
 
-        boundFreeVar2ExistingVarUpdateCache(predIdx, argIdx, varId, true);
+        if (maintain_cache) {
+            boundFreeVar2ExistingVarUpdateCache(predIdx, argIdx, varId, true);
+        }
         final long time_done = System.nanoTime();
         cacheMonitor.boundExistVarCostInNano += time_done - time_start;
         return UpdateStatus.NORMAL;
@@ -116,17 +550,17 @@ public class RecalculateCachedRule extends CachedRule {
             final int predIdx, final int argIdx, final int varId, boolean bodyOnly
     ) {
         final int pred_idx_start;
-        final List<List<PredicateCache>> grounding_list;
+        final GroundingTable table;
         if (bodyOnly) {
             if (HEAD_PRED_IDX == predIdx) {
                 /* 修改不涉及body的时候，body的cache不需要更新 */
                 return;
             }
             pred_idx_start = FIRST_BODY_PRED_IDX;
-            grounding_list = groundingsBody;
+            table = groundingsBody;
         } else {
             pred_idx_start = HEAD_PRED_IDX;
-            grounding_list = groundings;
+            table = groundings;
         }
 
         if (bodyOnly && bodyFreeVars.containsKey(varId)) {
@@ -136,7 +570,6 @@ public class RecalculateCachedRule extends CachedRule {
         } else {
             /* 新绑定的BV不对应body FV，需要遍历找到其他的出现 */
             boolean found = false;
-            final ListIterator<List<PredicateCache>> grounding_itr = grounding_list.listIterator();
             for (int pred_idx = pred_idx_start; pred_idx < structure.size() && !found; pred_idx++) {
                 final Predicate predicate = structure.get(pred_idx);
 
@@ -147,29 +580,24 @@ public class RecalculateCachedRule extends CachedRule {
                             (pred_idx != predIdx || arg_idx != argIdx)) {  // 不要和刚设置的变量比较
                         found = true;
 
-                        /* 根据当前pred和新绑定的参数列过滤grounding */
-                        while (grounding_itr.hasNext()) {
-                            final List<PredicateCache> grounding = grounding_itr.next();
-                            final PredicateCache compared_pred_cache = grounding.get(pred_idx);
-                            final Argument compared_argument = compared_pred_cache.predicate.args[arg_idx];
-                            final PredicateCache target_pred_cache = grounding.get(predIdx);
-                            final Set<Predicate> filtered_predicates = new HashSet<>();
-                            for (Predicate fv_pred: target_pred_cache.inclusion) {
-                                final Argument fv_arg = fv_pred.args[argIdx];
-                                if (compared_argument.name.equals(fv_arg.name)) {
-                                    filtered_predicates.add(fv_pred);
-                                }
-                            }
+                        /* 根据当前pred和新绑定的参数列过滤grounding，保留的行依次前移 */
+                        int kept_rows = 0;
+                        for (int row = 0; row < table.rows(); row++) {
+                            final int compared_value = table.arg(row, pred_idx, arg_idx);
+                            final InclusionSet filtered_records = table.inclusionSet(row, predIdx).select(
+                                    argIdx, compared_value
+                            );
 
-                            if (filtered_predicates.isEmpty()) {
-                                /* 如果过滤之后FV集合为空，那么说明当前的grounding不能用 */
-                                grounding_itr.remove();
-                            } else {
+                            /* 如果过滤之后FV集合为空，那么说明当前的grounding不能用 */
+                            if (null != filtered_records) {
                                 /* 如果当前grounding仍然满足要求，则更新对应参数 */
-                                target_pred_cache.predicate.args[argIdx] = compared_argument;
-                                target_pred_cache.inclusion = filtered_predicates;  // copy on write
+                                table.copyRow(row, kept_rows);
+                                table.setArg(kept_rows, predIdx, argIdx, compared_value);
+                                table.setInclusion(kept_rows, predIdx, filtered_records);  // copy on write
+                                kept_rows++;
                             }
                         }
+                        table.truncate(kept_rows);
                         break;
                     }
                 }
@@ -192,15 +620,27 @@ public class RecalculateCachedRule extends CachedRule {
     @Override
     protected UpdateStatus boundFreeVar2ExistingVarHandler(Predicate newPredicate, int argIdx, int varId) {
         final long time_start = System.nanoTime();
-        boundFreeVar2ExistingVarUpdateCache(newPredicate, argIdx, varId, false);
+        final ExistingVarBatch.ColumnStat batch_stat = existingVarBatchStat();
+        if (null != batch_stat && MIN_FACT_COVERAGE >= factCoverage(batch_stat.newlyProved)) {
+            /* 批量计算的覆盖率不足，不需要更新cache */
+            final long time_done = System.nanoTime();
+            cacheMonitor.boundExistVarInNewPredCostInNano += time_done - time_start;
+            return UpdateStatus.INSUFFICIENT_COVERAGE;
+        }
+        final boolean maintain_cache = maintainCache();
+        if (maintain_cache) {
+            boundFreeVar2ExistingVarUpdateCache(newPredicate, argIdx, varId, false);
+        }
 
-        if (MIN_FACT_COVERAGE >= factCoverage()) {
+        if (null == batch_stat && MIN_FACT_COVERAGE >= factCoverage()) {
             final long time_done = System.nanoTime();
             cacheMonitor.boundExistVarInNewPredCostInNano += time_done - time_start;
             return UpdateStatus.INSUFFICIENT_COVERAGE;
         }
 
-        boundFreeVar2ExistingVarUpdateCache(newPredicate, argIdx, varId, true);
+        if (maintain_cache) {
+            boundFreeVar2ExistingVarUpdateCache(newPredicate, argIdx, varId, true);
+        }
         final long time_done = System.nanoTime();
         cacheMonitor.boundExistVarInNewPredCostInNano += time_done - time_start;
         return UpdateStatus.NORMAL;
@@ -215,14 +655,14 @@ public class RecalculateCachedRule extends CachedRule {
             final Predicate newPredicate, final int argIdx, final int varId, boolean bodyOnly
     ) {
         final int pred_idx_start;
-        final List<List<PredicateCache>> grounding_list;
+        final GroundingTable table;
         if (bodyOnly) {
             /* 修改肯定在body内，不需要额外判断 */
             pred_idx_start = FIRST_BODY_PRED_IDX;
-            grounding_list = groundingsBody;
+            table = groundingsBody;
         } else {
             pred_idx_start = HEAD_PRED_IDX;
-            grounding_list = groundings;
+            table = groundings;
         }
 
         if (bodyOnly && bodyFreeVars.containsKey(varId)) {
@@ -230,9 +670,14 @@ public class RecalculateCachedRule extends CachedRule {
             final BodyFvPos arg_pos = bodyFreeVars.remove(varId);
             boundFreeVars2NewVarUpdateCache(newPredicate, argIdx, arg_pos.bodyPredIdx, arg_pos.bodyArgIdx, true);
         } else {
-            final Map<String, Set<Predicate>> arg_indices_map = kb.getArgIndices(newPredicate.functor, argIdx);
+            /* Cache中增加新的谓词 */
+            final int new_pred_idx = table.predicates();
+            table.addPredicate(newPredicate.arity());
+
+            final Map<Integer, InclusionSet> arg_indices_map = InclusionSet.view(
+                    kb.getRecordIndices(newPredicate.functor, argIdx), newPredicate.arity()
+            );
             boolean found = false;
-            final ListIterator<List<PredicateCache>> grounding_itr = grounding_list.listIterator();
             for (int pred_idx = pred_idx_start; pred_idx < structure.size() - 1 && !found; pred_idx++) {  // 不要和刚设置的变量比较
                 final Predicate predicate = structure.get(pred_idx);
 
@@ -243,25 +688,21 @@ public class RecalculateCachedRule extends CachedRule {
                         found = true;
 
                         /* 根据当前pred过滤grounding */
-                        while (grounding_itr.hasNext()) {
-                            final List<PredicateCache> grounding = grounding_itr.next();
-                            final PredicateCache compared_pred_cache = grounding.get(pred_idx);
-                            final Argument compared_argument = compared_pred_cache.predicate.args[arg_idx];
-                            final Set<Predicate> inclusion = arg_indices_map.get(compared_argument.name);
-
-                            if (null == inclusion) {
-                                /* 对应变量在新参数中没有，删除grounding */
-                                grounding_itr.remove();
-                            } else {
-                                /* 将对应的值添加在grounding末尾 */
-                                final PredicateCache new_pred_cache = new PredicateCache(
-                                        new Predicate(newPredicate.functor, newPredicate.arity())
-                                );
-                                new_pred_cache.predicate.args[argIdx] = compared_argument;
-                                new_pred_cache.inclusion = inclusion;  // copy on write
-                                grounding.add(new_pred_cache);
+                        int kept_rows = 0;
+                        for (int row = 0; row < table.rows(); row++) {
+                            final int compared_value = table.arg(row, pred_idx, arg_idx);
+                            final InclusionSet inclusion = arg_indices_map.get(compared_value);
+
+                            /* 对应变量在新参数中没有，删除grounding */
+                            if (null != inclusion) {
+                                /* 将对应的值记录在新的谓词中 */
+                                table.copyRow(row, kept_rows);
+                                table.setArg(kept_rows, new_pred_idx, argIdx, compared_value);
+                                table.setInclusion(kept_rows, new_pred_idx, inclusion);  // copy on write
+                                kept_rows++;
                             }
                         }
+                        table.truncate(kept_rows);
                         break;
                     }
                 }
@@ -278,14 +719,10 @@ public class RecalculateCachedRule extends CachedRule {
                     }
                 }
 
-                /* Cache中增加新的谓词 */
-                final Set<Predicate> new_inclusion = kb.getAllFacts(newPredicate.functor);
-                for (List<PredicateCache> grounding: grounding_list) {
-                    grounding.add(new PredicateCache(
-                            new Predicate(newPredicate.functor, newPredicate.arity()),
-                            new_inclusion
-                    ));
-                }
+                /* 新的谓词不受限制 */
+                table.fillInclusion(
+                        new_pred_idx, new InclusionSet(kb.getAllRecords(newPredicate.functor), newPredicate.arity())
+                );
             }
         }
     }
@@ -293,7 +730,10 @@ public class RecalculateCachedRule extends CachedRule {
     @Override
     protected UpdateStatus boundFreeVars2NewVarHandler(int predIdx1, int argIdx1, int predIdx2, int argIdx2) {
         final long time_start = System.nanoTime();
-        boundFreeVars2NewVarUpdateCache(predIdx1, argIdx1, predIdx2, argIdx2, false);
+        final boolean maintain_cache = maintainCache();
+        if (maintain_cache) {
+            boundFreeVars2NewVarUpdateCache(predIdx1, argIdx1, predIdx2, argIdx2, false);
+        }
 
         if (MIN_FACT_COVERAGE >= factCoverage()) {
             final long time_done = System.nanoTime();
@@ -301,7 +741,9 @@ public class RecalculateCachedRule extends CachedRule {
             return UpdateStatus.INSUFFICIENT_COVERAGE;
         }
 
-        boundFreeVars2NewVarUpdateCache(predIdx1, argIdx1, predIdx2, argIdx2, true);
+        if (maintain_cache) {
+            boundFreeVars2NewVarUpdateCache(predIdx1, argIdx1, predIdx2, argIdx2, true);
+        }
         final long time_done = System.nanoTime();
         cacheMonitor.boundNewVarCostInNano += time_done - time_start;
         return UpdateStatus.NORMAL;
@@ -315,126 +757,57 @@ public class RecalculateCachedRule extends CachedRule {
     private void boundFreeVars2NewVarUpdateCache(
             final int predIdx1, final int argIdx1, final int predIdx2, final int argIdx2, final boolean bodyOnly
     ) {
-        final List<List<PredicateCache>> grounding_list;
+        final GroundingTable table;
         if (bodyOnly) {
             if (HEAD_PRED_IDX == predIdx1 && HEAD_PRED_IDX == predIdx2) {
                 /* 修改不涉及body的时候，body的cache不需要更新 */
                 return;
             }
-            grounding_list = groundingsBody;
+            table = groundingsBody;
         } else {
-            grounding_list = groundings;
+            table = groundings;
         }
 
-        ListIterator<List<PredicateCache>> grounding_itr = grounding_list.listIterator();
         if (predIdx1 == predIdx2) {
-            /* 在一张表内进行过滤 */
-            while (grounding_itr.hasNext()) {
-                final List<PredicateCache> grounding = grounding_itr.next();
-                final PredicateCache target_pred_cache = grounding.get(predIdx1);
-                final Map<String, Set<Predicate>> inclusion_map = new HashMap<>();
-                for (Predicate predicate: target_pred_cache.inclusion) {
-                    final Argument argument1 = predicate.args[argIdx1];
-                    final Argument argument2 = predicate.args[argIdx2];
-                    if (argument1.name.equals(argument2.name)) {
-                        inclusion_map.compute(argument1.name, (constant, set) -> {
-                            if (null == set) {
-                                set = new HashSet<>();
-                            }
-                            set.add(predicate);
-                            return set;
-                        });
+            /* 在一张表内进行过滤，每个grounding按新变量的取值展开为多行 */
+            final GroundingTable expanded_table = table.emptyCopy();
+            for (int row = 0; row < table.rows(); row++) {
+                final int arity = structure.get(predIdx1).arity();
+                final Map<Integer, InclusionSet> inclusion_map = new HashMap<>();
+                for (Record record: table.inclusion(row, predIdx1)) {
+                    final int value1 = record.args[argIdx1];
+                    if (value1 == record.args[argIdx2]) {
+                        inclusion_map.computeIfAbsent(
+                                value1, k -> new InclusionSet(new HashSet<>(), arity)
+                        ).records.add(record);
                     }
                 }
 
                 /* 展开原有grounding */
-                grounding_itr.remove();
-                for (Map.Entry<String, Set<Predicate>> entry: inclusion_map.entrySet()) {
-                    final List<PredicateCache> new_grounding = dupGrounding(grounding, bodyOnly);
-                    final PredicateCache new_target_pred_cache = new_grounding.get(predIdx1);
-                    final Constant constant = new Constant(CONSTANT_ARG_ID, entry.getKey());
-                    new_target_pred_cache.predicate.args[argIdx1] = constant;
-                    new_target_pred_cache.predicate.args[argIdx2] = constant;
-                    new_target_pred_cache.inclusion = entry.getValue();
-                    grounding_itr.add(new_grounding);
+                for (Map.Entry<Integer, InclusionSet> entry: inclusion_map.entrySet()) {
+                    final int new_row = expanded_table.appendRow(table, row);
+                    final int constant = entry.getKey();
+                    expanded_table.setArg(new_row, predIdx1, argIdx1, constant);
+                    expanded_table.setArg(new_row, predIdx1, argIdx2, constant);
+                    expanded_table.setInclusion(new_row, predIdx1, entry.getValue());
                 }
             }
+            table.assign(expanded_table);
         } else {
             if (!bodyOnly || (HEAD_PRED_IDX != predIdx1 && HEAD_PRED_IDX != predIdx2)) {
                 /* 两张表一起过滤 */
-                while (grounding_itr.hasNext()) {
-                    final List<PredicateCache> grounding = grounding_itr.next();
-
+                final GroundingTable expanded_table = table.emptyCopy();
+                for (int row = 0; row < table.rows(); row++) {
                     /* 分别找出参数常量值范围 */
-                    final PredicateCache target_pred_cache1 = grounding.get(predIdx1);
-                    final Map<String, Set<Predicate>> inclusion_map1 = new HashMap<>();
-                    for (Predicate predicate : target_pred_cache1.inclusion) {
-                        final Argument argument1 = predicate.args[argIdx1];
-                        inclusion_map1.compute(argument1.name, (constant, set) -> {
-                            if (null == set) {
-                                set = new HashSet<>();
-                            }
-                            set.add(predicate);
-                            return set;
-                        });
-                    }
-
-                    final PredicateCache target_pred_cache2 = grounding.get(predIdx2);
-                    final Map<String, Set<Predicate>> inclusion_map2 = new HashMap<>();
-                    for (Predicate predicate : target_pred_cache2.inclusion) {
-                        final Argument argument2 = predicate.args[argIdx2];
-                        inclusion_map2.compute(argument2.name, (constant, set) -> {
-                            if (null == set) {
-                                set = new HashSet<>();
-                            }
-                            set.add(predicate);
-                            return set;
-                        });
-                    }
+                    final Map<Integer, InclusionSet> inclusion_map1 = table.inclusionSet(row, predIdx1).index(argIdx1);
+                    final Map<Integer, InclusionSet> inclusion_map2 = table.inclusionSet(row, predIdx2).index(argIdx2);
 
                     /* 做交叉 */
-                    final int comparing_pred_idx;
-                    final int comparing_arg_idx;
-                    final Map<String, Set<Predicate>> comparing_map;
-                    final int compared_pred_idx;
-                    final int compared_arg_idx;
-                    final Map<String, Set<Predicate>> compared_map;
-                    if (inclusion_map1.size() <= inclusion_map2.size()) {
-                        comparing_pred_idx = predIdx1;
-                        comparing_arg_idx = argIdx1;
-                        comparing_map = inclusion_map1;
-                        compared_pred_idx = predIdx2;
-                        compared_arg_idx = argIdx2;
-                        compared_map = inclusion_map2;
-                    } else {
-                        comparing_pred_idx = predIdx2;
-                        comparing_arg_idx = argIdx2;
-                        comparing_map = inclusion_map2;
-                        compared_pred_idx = predIdx1;
-                        compared_arg_idx = argIdx1;
-                        compared_map = inclusion_map1;
-                    }
-                    grounding_itr.remove();
-                    for (Map.Entry<String, Set<Predicate>> entry : comparing_map.entrySet()) {
-                        final String constant_symbol = entry.getKey();
-                        final Set<Predicate> compared_inclusion = compared_map.get(constant_symbol);
-                        if (null != compared_inclusion) {
-                            final Set<Predicate> comparing_inclusion = entry.getValue();
-                            final Constant constant = new Constant(CONSTANT_ARG_ID, constant_symbol);
-
-                            final List<PredicateCache> new_grounding = dupGrounding(grounding, bodyOnly);
-                            final PredicateCache comparing_pred_cache = new_grounding.get(comparing_pred_idx);
-                            comparing_pred_cache.predicate.args[comparing_arg_idx] = constant;
-                            comparing_pred_cache.inclusion = comparing_inclusion;
-
-                            final PredicateCache compared_pred_cache = new_grounding.get(compared_pred_idx);
-                            compared_pred_cache.predicate.args[compared_arg_idx] = constant;
-                            compared_pred_cache.inclusion = compared_inclusion;
-
-                            grounding_itr.add(new_grounding);
-                        }
-                    }
+                    expandJoinedRows(
+                            table, row, expanded_table, predIdx1, argIdx1, inclusion_map1, predIdx2, argIdx2, inclusion_map2
+                    );
                 }
+                table.assign(expanded_table);
             } else {
                 /* bodyOnly且只有一个predIdx在body中 */
                 /* 记录一个Body FV */
@@ -455,10 +828,58 @@ public class RecalculateCachedRule extends CachedRule {
         }
     }
 
+    /**
+     * 将table中的一行按两列相等的取值展开，追加到expandedTable中
+     *
+     * @param inclusionMap1 该行中第一列的取值到对应记录的映射
+     * @param inclusionMap2 该行中第二列的取值到对应记录的映射
+     */
+    private static void expandJoinedRows(
+            final GroundingTable table, final int row, final GroundingTable expandedTable,
+            final int predIdx1, final int argIdx1, final Map<Integer, InclusionSet> inclusionMap1,
+            final int predIdx2, final int argIdx2, final Map<Integer, InclusionSet> inclusionMap2
+    ) {
+        final int comparing_pred_idx;
+        final int comparing_arg_idx;
+        final Map<Integer, InclusionSet> comparing_map;
+        final int compared_pred_idx;
+        final int compared_arg_idx;
+        final Map<Integer, InclusionSet> compared_map;
+        if (inclusionMap1.size() <= inclusionMap2.size()) {
+            comparing_pred_idx = predIdx1;
+            comparing_arg_idx = argIdx1;
+            comparing_map = inclusionMap1;
+            compared_pred_idx = predIdx2;
+            compared_arg_idx = argIdx2;
+            compared_map = inclusionMap2;
+        } else {
+            comparing_pred_idx = predIdx2;
+            comparing_arg_idx = argIdx2;
+            comparing_map = inclusionMap2;
+            compared_pred_idx = predIdx1;
+            compared_arg_idx = argIdx1;
+            compared_map = inclusionMap1;
+        }
+        for (Map.Entry<Integer, InclusionSet> entry : comparing_map.entrySet()) {
+            final int constant = entry.getKey();
+            final InclusionSet compared_inclusion = compared_map.get(constant);
+            if (null != compared_inclusion) {
+                final int new_row = expandedTable.appendRow(table, row);
+                expandedTable.setArg(new_row, comparing_pred_idx, comparing_arg_idx, constant);
+                expandedTable.setInclusion(new_row, comparing_pred_idx, entry.getValue());
+                expandedTable.setArg(new_row, compared_pred_idx, compared_arg_idx, constant);
+                expandedTable.setInclusion(new_row, compared_pred_idx, compared_inclusion);
+            }
+        }
+    }
+
     @Override
     protected UpdateStatus boundFreeVars2NewVarHandler(Predicate newPredicate, int argIdx1, int predIdx2, int argIdx2) {
         final long time_start = System.nanoTime();
-        boundFreeVars2NewVarUpdateCache(newPredicate, argIdx1, predIdx2, argIdx2, false);
+        final boolean maintain_cache = maintainCache();
+        if (maintain_cache) {
+            boundFreeVars2NewVarUpdateCache(newPredicate, argIdx1, predIdx2, argIdx2, false);
+        }
 
         if (MIN_FACT_COVERAGE >= factCoverage()) {
             final long time_done = System.nanoTime();
@@ -466,7 +887,9 @@ public class RecalculateCachedRule extends CachedRule {
             return UpdateStatus.INSUFFICIENT_COVERAGE;
         }
 
-        boundFreeVars2NewVarUpdateCache(newPredicate, argIdx1, predIdx2, argIdx2, true);
+        if (maintain_cache) {
+            boundFreeVars2NewVarUpdateCache(newPredicate, argIdx1, predIdx2, argIdx2, true);
+        }
         final long time_done = System.nanoTime();
         cacheMonitor.boundNewVarInNewPredCostInNano += time_done - time_start;
         return UpdateStatus.NORMAL;
@@ -481,102 +904,50 @@ public class RecalculateCachedRule extends CachedRule {
             final Predicate newPredicate, final int argIdx1, final int predIdx2, final int argIdx2, final boolean bodyOnly
     ) {
         final int predIdx1 = structure.size() - 1;
-        final List<List<PredicateCache>> grounding_list;
+        final GroundingTable table;
         if (bodyOnly) {
             /* 修改一定涉及body，predIdx1一定是在body里 */
-            grounding_list = groundingsBody;
+            table = groundingsBody;
         } else {
-            grounding_list = groundings;
+            table = groundings;
         }
 
         /* 而且在这种情况下，predIdx1 != predIdx2 */
-        final ListIterator<List<PredicateCache>> grounding_itr = grounding_list.listIterator();
-        final Map<String, Set<Predicate>> inclusion_map1 = kb.getArgIndices(newPredicate.functor, argIdx1);
+        table.addPredicate(newPredicate.arity());
+        final Map<Integer, InclusionSet> inclusion_map1 = InclusionSet.view(
+                kb.getRecordIndices(newPredicate.functor, argIdx1), newPredicate.arity()
+        );
         if (bodyOnly && HEAD_PRED_IDX == predIdx2) {
             /* body中没有相同的BV，记录一个Body FV */
             bodyFreeVars.put(boundedVars.size() - 1, new BodyFvPos(structure.size() - 1, argIdx1, argIdx2));
 
-            /* Cache中增加新的谓词 */
-            final Set<Predicate> new_inclusion = kb.getAllFacts(newPredicate.functor);
-            for (List<PredicateCache> grounding: grounding_list) {
-                grounding.add(new PredicateCache(
-                        new Predicate(newPredicate.functor, newPredicate.arity()),
-                        new_inclusion
-                ));
-            }
+            /* 新的谓词不受限制 */
+            table.fillInclusion(
+                    predIdx1, new InclusionSet(kb.getAllRecords(newPredicate.functor), newPredicate.arity())
+            );
         } else {
             /* 两张表一起过滤 */
-            while (grounding_itr.hasNext()) {
-                final List<PredicateCache> grounding = grounding_itr.next();
-
+            final GroundingTable expanded_table = table.emptyCopy();
+            for (int row = 0; row < table.rows(); row++) {
                 /* 找出参数常量值范围 */
-                final PredicateCache target_pred_cache2 = grounding.get(predIdx2);
-                final Map<String, Set<Predicate>> inclusion_map2 = new HashMap<>();
-                for (Predicate predicate : target_pred_cache2.inclusion) {
-                    final Argument argument2 = predicate.args[argIdx2];
-                    inclusion_map2.compute(argument2.name, (constant, set) -> {
-                        if (null == set) {
-                            set = new HashSet<>();
-                        }
-                        set.add(predicate);
-                        return set;
-                    });
-                }
+                final Map<Integer, InclusionSet> inclusion_map2 = table.inclusionSet(row, predIdx2).index(argIdx2);
 
                 /* 做交叉 */
-                final int comparing_pred_idx;
-                final int comparing_arg_idx;
-                final Map<String, Set<Predicate>> comparing_map;
-                final int compared_pred_idx;
-                final int compared_arg_idx;
-                final Map<String, Set<Predicate>> compared_map;
-                if (inclusion_map1.size() <= inclusion_map2.size()) {
-                    comparing_pred_idx = predIdx1;
-                    comparing_arg_idx = argIdx1;
-                    comparing_map = inclusion_map1;
-                    compared_pred_idx = predIdx2;
-                    compared_arg_idx = argIdx2;
-                    compared_map = inclusion_map2;
-                } else {
-                    comparing_pred_idx = predIdx2;
-                    comparing_arg_idx = argIdx2;
-                    comparing_map = inclusion_map2;
-                    compared_pred_idx = predIdx1;
-                    compared_arg_idx = argIdx1;
-                    compared_map = inclusion_map1;
-                }
-                grounding_itr.remove();
-                for (Map.Entry<String, Set<Predicate>> entry : comparing_map.entrySet()) {
-                    final String constant_symbol = entry.getKey();
-                    final Set<Predicate> compared_inclusion = compared_map.get(constant_symbol);
-                    if (null != compared_inclusion) {
-                        final Set<Predicate> comparing_inclusion = entry.getValue();
-                        final Constant constant = new Constant(CONSTANT_ARG_ID, constant_symbol);
-
-                        final List<PredicateCache> new_grounding = dupGrounding(grounding, bodyOnly);
-                        new_grounding.add(new PredicateCache(
-                                new Predicate(newPredicate.functor, newPredicate.arity())
-                        ));
-
-                        final PredicateCache comparing_pred_cache = new_grounding.get(comparing_pred_idx);
-                        comparing_pred_cache.predicate.args[comparing_arg_idx] = constant;
-                        comparing_pred_cache.inclusion = comparing_inclusion;
-
-                        final PredicateCache compared_pred_cache = new_grounding.get(compared_pred_idx);
-                        compared_pred_cache.predicate.args[compared_arg_idx] = constant;
-                        compared_pred_cache.inclusion = compared_inclusion;
-
-                        grounding_itr.add(new_grounding);
-                    }
-                }
+                expandJoinedRows(
+                        table, row, expanded_table, predIdx1, argIdx1, inclusion_map1, predIdx2, argIdx2, inclusion_map2
+                );
             }
+            table.assign(expanded_table);
         }
     }
 
     @Override
     protected UpdateStatus boundFreeVar2ConstantHandler(int predIdx, int argIdx, String constantSymbol) {
         final long time_start = System.nanoTime();
-        boundFreeVar2ConstantUpdateCache(predIdx, argIdx, constantSymbol, false);
+        final boolean maintain_cache = maintainCache();
+        if (maintain_cache) {
+            boundFreeVar2ConstantUpdateCache(predIdx, argIdx, constantSymbol, false);
+        }
 
         if (MIN_FACT_COVERAGE >= factCoverage()) {
             final long time_done = System.nanoTime();
@@ -584,7 +955,9 @@ public class RecalculateCachedRule extends CachedRule {
             return UpdateStatus.INSUFFICIENT_COVERAGE;
         }
 
-        boundFreeVar2ConstantUpdateCache(predIdx, argIdx, constantSymbol, true);
+        if (maintain_cache) {
+            boundFreeVar2ConstantUpdateCache(predIdx, argIdx, constantSymbol, true);
+        }
         final long time_done = System.nanoTime();
         cacheMonitor.boundConstCostInNano += time_done - time_start;
         return UpdateStatus.NORMAL;
@@ -598,56 +971,292 @@ public class RecalculateCachedRule extends CachedRule {
     private void boundFreeVar2ConstantUpdateCache(
             final int predIdx, final int argIdx, final String constantSymbol, boolean bodyOnly
     ) {
-        final List<List<PredicateCache>> grounding_list;
+        final GroundingTable table;
         if (bodyOnly) {
             if (HEAD_PRED_IDX == predIdx) {
                 /* 修改不涉及body的时候，body的cache不需要更新 */
                 return;
             }
-            grounding_list = groundingsBody;
+            table = groundingsBody;
         } else {
-            grounding_list = groundings;
+            table = groundings;
+        }
+
+        final int constant = kb.name2Num(constantSymbol);
+        final GroundingTable batch_source = constantBatchSource(predIdx, argIdx, bodyOnly);
+        if (null != batch_source && constantBatch.constants.contains(constant)) {
+            /* 只复制分组中属于该常量的行，结果与逐行过滤相同 */
+            final GroundingTable filtered_table = table.emptyCopy();
+            final int[] rows = constantBatch.rowsOf(batch_source, constant);
+            if (null != rows) {
+                for (int row: rows) {
+                    final int new_row = filtered_table.appendRow(batch_source, row);
+                    filtered_table.setArg(new_row, predIdx, argIdx, constant);
+                    filtered_table.setInclusion(
+                            new_row, predIdx, batch_source.inclusionSet(row, predIdx).select(argIdx, constant)
+                    );
+                }
+            }
+            table.assign(filtered_table);
+            return;
         }
 
         /* 过滤所有grounding */
-        final Constant constant = new Constant(CONSTANT_ARG_ID, constantSymbol);
-        final Iterator<List<PredicateCache>> grounding_itr = grounding_list.iterator();
-        while (grounding_itr.hasNext()) {
-            final List<PredicateCache> grounding = grounding_itr.next();
-            final PredicateCache target_pred_cache = grounding.get(predIdx);
-            final Set<Predicate> filtered_inclusion = new HashSet<>();
-            for (Predicate predicate: target_pred_cache.inclusion) {
-                final Argument argument = predicate.args[argIdx];
-                if (constantSymbol.equals(argument.name)) {
-                    filtered_inclusion.add(predicate);
+        int kept_rows = 0;
+        for (int row = 0; row < table.rows(); row++) {
+            final InclusionSet filtered_inclusion = table.inclusionSet(row, predIdx).select(argIdx, constant);
+            if (null != filtered_inclusion) {
+                table.copyRow(row, kept_rows);
+                table.setArg(kept_rows, predIdx, argIdx, constant);
+                table.setInclusion(kept_rows, predIdx, filtered_inclusion);  // copy on write
+                kept_rows++;
+            }
+        }
+        table.truncate(kept_rows);
+    }
+
+    /**
+     * body成环时(例如p(X,Y):-q(X,Z),r(Z,Y),s(Y,X))，逐对展开grounding会产生大量中间结果，此时丢弃groundings与
+     * groundingsBody，之后由TrieJoin在KB上直接计算：body的投影用于all entailment，整条规则的投影用于正例与grounding。
+     * 在更新cache之前调用，所以成环的这一步也不需要展开。一旦切换，之后的扩展都不再维护这两张表
+     *
+     * @return 是否需要继续更新groundings与groundingsBody
+     */
+    private boolean maintainCache() {
+        if (!joinBody && bodyCyclic()) {
+            joinBody = true;
+            groundings = null;
+            groundingsBody = null;
+        }
+        return !joinBody;
+    }
+
+    /**
+     * 用GYO归约判断body中变量构成的超图是否有环：反复删除只出现在一个predicate中的变量，以及变量集合包含于其他
+     * predicate的predicate，最后不能删空则有环
+     */
+    protected boolean bodyCyclic() {
+        final List<Set<Integer>> edges = new ArrayList<>();
+        for (int pred_idx = FIRST_BODY_PRED_IDX; pred_idx < structure.size(); pred_idx++) {
+            final Set<Integer> vars = new HashSet<>();
+            for (Argument argument: structure.get(pred_idx).args) {
+                if (null != argument && argument.isVar) {
+                    vars.add(argument.id);
                 }
             }
-            if (filtered_inclusion.isEmpty()) {
-                grounding_itr.remove();
-            } else {
-                target_pred_cache.predicate.args[argIdx] = constant;
-                target_pred_cache.inclusion = filtered_inclusion;  // copy on write
+            edges.add(vars);
+        }
+        boolean changed = true;
+        while (changed && 1 < edges.size()) {
+            changed = false;
+            final Map<Integer, Integer> var_edges = new HashMap<>();
+            for (Set<Integer> edge: edges) {
+                for (int var: edge) {
+                    var_edges.merge(var, 1, Integer::sum);
+                }
+            }
+            for (Set<Integer> edge: edges) {
+                changed |= edge.removeIf(var -> 1 == var_edges.get(var));
+            }
+            for (int i = 0; i < edges.size(); i++) {
+                for (int j = 0; j < edges.size(); j++) {
+                    if (i != j && edges.get(j).containsAll(edges.get(i))) {
+                        edges.remove(i);
+                        i--;
+                        changed = true;
+                        break;
+                    }
+                }
             }
         }
+        return 1 < edges.size();
+    }
+
+    /**
+     * @return 同时出现在head与body中的变量编号
+     */
+    private int[] headVarsInBody() {
+        final Set<Integer> body_vars = new HashSet<>();
+        for (int pred_idx = FIRST_BODY_PRED_IDX; pred_idx < structure.size(); pred_idx++) {
+            for (Argument argument: structure.get(pred_idx).args) {
+                if (null != argument && argument.isVar) {
+                    body_vars.add(argument.id);
+                }
+            }
+        }
+        final Set<Integer> head_vars_in_body = new LinkedHashSet<>();
+        for (Argument argument: getHead().args) {
+            if (null != argument && argument.isVar && body_vars.contains(argument.id)) {
+                head_vars_in_body.add(argument.id);
+            }
+        }
+        final int[] var_ids = new int[head_vars_in_body.size()];
+        int i = 0;
+        for (int var_id: head_vars_in_body) {
+            var_ids[i++] = var_id;
+        }
+        return var_ids;
+    }
+
+    private int headRows() {
+        return joinBody ? 0 : groundings.rows();
+    }
+
+    private int bodyRows() {
+        return joinBody ? 0 : groundingsBody.rows();
+    }
+
+    /**
+     * @return body中出现的head变量在body所有满足赋值上的投影
+     */
+    private TrieJoin bodyJoin(int[] headVarsInBody) {
+        return new TrieJoin(kb, structure.subList(FIRST_BODY_PRED_IDX, structure.size()), headVarsInBody);
+    }
+
+    /**
+     * 在整条规则(head与body)上做TrieJoin，对每条被蕴含的head事实调用consumer。head中的空位换成只出现一次的新变量，
+     * 投影到head的所有参数上，所以每个投影就是一条KB中的head事实
+     *
+     * @param witnessBody 为true时body中的空位也换成新变量，consumer可以由witnessBody()取得对应的一组body事实
+     */
+    private void forEachJoinedHead(boolean witnessBody, BiConsumer<Record, TrieJoin> consumer) {
+        final List<Predicate> predicates = joinedStructure(witnessBody);
+        final Predicate head_pred = predicates.get(HEAD_PRED_IDX);
+        final Set<Integer> head_vars = new LinkedHashSet<>();
+        for (Argument argument: head_pred.args) {
+            if (argument.isVar) {
+                head_vars.add(argument.id);
+            }
+        }
+        final int[] projection = new int[head_vars.size()];
+        {
+            int i = 0;
+            for (int var_id: head_vars) {
+                projection[i++] = var_id;
+            }
+        }
+        final TrieJoin join = new TrieJoin(kb, predicates, projection);
+        join.forEachProjection(binding -> consumer.accept(joinedRecord(head_pred, join), join));
+    }
+
+    /**
+     * @return 规则的副本，head中(witnessBody时body中也)的空位换成只出现一次的新变量
+     */
+    private List<Predicate> joinedStructure(boolean witnessBody) {
+        int free_var_id = usedBoundedVars();
+        final List<Predicate> predicates = new ArrayList<>(structure.size());
+        for (int pred_idx = HEAD_PRED_IDX; pred_idx < structure.size(); pred_idx++) {
+            final Predicate predicate = new Predicate(structure.get(pred_idx));
+            if (HEAD_PRED_IDX == pred_idx || witnessBody) {
+                for (int arg_idx = 0; arg_idx < predicate.arity(); arg_idx++) {
+                    if (null == predicate.args[arg_idx]) {
+                        predicate.args[arg_idx] = new Variable(free_var_id++);
+                    }
+                }
+            }
+            predicates.add(predicate);
+        }
+        return predicates;
+    }
+
+    /**
+     * @return 当前见证赋值下predicate对应的事实，predicate的参数中没有空位
+     */
+    private Record joinedRecord(Predicate predicate, TrieJoin join) {
+        final int[] args = new int[predicate.arity()];
+        for (int arg_idx = 0; arg_idx < args.length; arg_idx++) {
+            final Argument argument = predicate.args[arg_idx];
+            args[arg_idx] = argument.isVar ? join.witnessValue(argument.id) : kb.name2Num(argument.name);
+        }
+        return new Record(args);
+    }
+
+    /**
+     * @return 切换到TrieJoin之后被蕴含的head事实编号，估计模式下只保留样本中的
+     */
+    private RoaringBitmap joinedEntailedHead() {
+        final String head_functor = structure.get(HEAD_PRED_IDX).functor;
+        final boolean estimating = 0 < samplingRate;
+        final RoaringBitmap entailed_head = new RoaringBitmap();
+        forEachJoinedHead(false, (head_record, join) -> {
+            final int record_id = kb.recordId(head_functor, head_record);
+            if (!estimating || sampled(record_id)) {
+                entailed_head.add(record_id);
+            }
+        });
+        return entailed_head;
+    }
+
+    /**
+     * 除了父规则的正例数量，head中的每个常量也限制了能被蕴含的记录：只有该列取这个常量的记录
+     */
+    @Override
+    protected double posUpperBound() {
+        double bound = super.posUpperBound();
+        final Predicate head_pred = structure.get(HEAD_PRED_IDX);
+        for (int arg_idx = 0; arg_idx < head_pred.arity(); arg_idx++) {
+            final Argument argument = head_pred.args[arg_idx];
+            if (null != argument && !argument.isVar) {
+                final ColumnIndex column_index = kb.getRecordIndices(head_pred.functor, arg_idx);
+                final int value_idx = column_index.indexOf(kb.name2Num(argument.name));
+                bound = Math.min(bound, (0 > value_idx) ? 0 : column_index.count(value_idx));
+            }
+        }
+
+        /* 批量计算得到的正例数量是精确的，覆盖率不足时仍由handler返回INSUFFICIENT_COVERAGE */
+        final ExistingVarBatch.ColumnStat batch_stat = existingVarBatchStat();
+        if (null != batch_stat && MIN_FACT_COVERAGE < factCoverage(batch_stat.newlyProved)) {
+            bound = Math.min(bound, batch_stat.newlyProved);
+        }
+        return bound;
+    }
+
+    /**
+     * 批量计算得到了精确的eval时，得分本身就是上界
+     */
+    @Override
+    public double evalUpperBound(Eval.EvalMetric metric) {
+        final double bound = super.evalUpperBound(metric);
+        final ExistingVarBatch.ColumnStat batch_stat = existingVarBatchStat();
+        if (null == batch_stat || MIN_FACT_COVERAGE >= factCoverage(batch_stat.newlyProved)) {
+            return bound;
+        }
+        final Eval batch_eval = existingVarBatchEval();
+        return (null == batch_eval) ? bound : Math.min(bound, batch_eval.value(metric));
     }
 
     @Override
     protected double factCoverage() {
-        final Set<Predicate> entailed_head = new HashSet<>();
-        for (final List<PredicateCache> grounding_cache: groundings) {
-            final PredicateCache head_pred_cache = grounding_cache.get(HEAD_PRED_IDX);
-            for (Predicate head_pred: head_pred_cache.inclusion) {
-                if (!kb.hasProved(head_pred)) {
-                    entailed_head.add(head_pred);
+        final String head_functor = structure.get(HEAD_PRED_IDX).functor;
+        final RoaringBitmap entailed_head = joinBody ? joinedEntailedHead() : new RoaringBitmap();
+        final boolean estimating = 0 < samplingRate;
+        for (int row = 0; row < headRows(); row++) {
+            for (Record head_record: groundings.inclusion(row, HEAD_PRED_IDX)) {
+                final int record_id = kb.recordId(head_functor, head_record);
+                if (!estimating || sampled(record_id)) {
+                    entailed_head.add(record_id);
                 }
             }
         }
-        return ((double) entailed_head.size()) /
-                kb.getAllFacts(structure.get(HEAD_PRED_IDX).functor).size();
+        final int newly_proved = entailed_head.cardinality() - kb.countProved(head_functor, entailed_head);
+        return estimating ? newly_proved / samplingRate / kb.getAllRecords(head_functor).size() :
+                factCoverage(newly_proved);
+    }
+
+    private double factCoverage(int newlyProved) {
+        return ((double) newlyProved) / kb.getAllRecords(getHead().functor).size();
     }
 
     @Override
     protected Eval calculateEval() {
+        /* 批量计算已经得到了eval，cache更新之后不需要再统计一遍 */
+        final Eval batch_eval = existingVarBatchEval();
+        if (null != batch_eval) {
+            cacheMonitor.cacheStats.add(new CachedQueryMonitor.CacheStat(headRows(), bodyRows(), 0));
+            cacheMonitor.evalStats.add(batch_eval);
+            return batch_eval;
+        }
+
         /* 统计head中的变量信息 */
         final long time_query_begin = System.nanoTime();
         final Set<Integer> head_vars = new HashSet<>();  // 统计Head only BV
@@ -689,21 +1298,38 @@ public class RecalculateCachedRule extends CachedRule {
         final long time_pre_done = System.nanoTime();
         cacheMonitor.preComputingCostInNano += time_pre_done - time_query_begin;
 
-        /* 计算all entail的数量 */
+        /* 计算all entail的数量，常量编号都在[1, totalConstants]中，每个取值占const_bits位 */
+        final int const_bits = Integer.SIZE - Integer.numberOfLeadingZeros(kb.totalConstants());
+        final boolean estimating = 0 < samplingRate;
+        boolean bindings_sampled = false;  // 估计模式下只有拼接成long的GV binding按样本计数
         int body_gv_fv_bindings_cnt = 0;
         int cartesian_operations = 0;
-        if (bodyFreeVars.isEmpty()) {
-            /* 只需要统计Body GV的binding组合 */
-            final Set<ComparableArray<String>> body_gv_bindings = new HashSet<>();
-            for (final List<PredicateCache> grounding_body: groundingsBody) {
-                final ComparableArray<String> binding = new ComparableArray<>(new String[body_gv_pos.size()]);
-                for (int i = 0; i < body_gv_pos.size(); i++) {
+        if (joinBody) {
+            body_gv_fv_bindings_cnt = bodyJoin(headVarsInBody()).countProjections();
+        } else if (bodyFreeVars.isEmpty() && body_gv_pos.size() * const_bits < Long.SIZE) {
+            /* 只需要统计Body GV的binding组合，binding按位拼接成long计数，不为每个binding创建对象 */
+            final LongHashSet body_gv_bindings = new LongHashSet(groundingsBody.rows());
+            for (int row = 0; row < groundingsBody.rows(); row++) {
+                long binding = 0;
+                for (final PredArgPos pos: body_gv_pos) {
+                    binding = (binding << const_bits) | groundingsBody.arg(row, pos.predIdx, pos.argIdx);
+                }
+                if (!estimating || sampled(binding)) {
+                    body_gv_bindings.add(binding);
+                }
+            }
+            body_gv_fv_bindings_cnt = body_gv_bindings.size();
+            bindings_sampled = estimating;
+        } else if (bodyFreeVars.isEmpty()) {
+            /* binding太长，无法拼接时逐个创建Record */
+            final Set<Record> body_gv_bindings = new HashSet<>();
+            for (int row = 0; row < groundingsBody.rows(); row++) {
+                final int[] binding = new int[body_gv_pos.size()];
+                for (int i = 0; i < binding.length; i++) {
                     final PredArgPos pos = body_gv_pos.get(i);
-                    final Predicate body_pred = grounding_body.get(pos.predIdx).predicate;
-                    final Argument argument = body_pred.args[pos.argIdx];
-                    binding.arr[i] = argument.name;
+                    binding[i] = groundingsBody.arg(row, pos.predIdx, pos.argIdx);
                 }
-                body_gv_bindings.add(binding);
+                body_gv_bindings.add(new Record(binding));
             }
             body_gv_fv_bindings_cnt = body_gv_bindings.size();
         } else {
@@ -716,109 +1342,253 @@ public class RecalculateCachedRule extends CachedRule {
                 arg_idxs.add(bfv_pos.bodyArgIdx);
             }
 
-            /* 统计Body FV与GV一起组合的数量 */
-            final Map<ComparableArray<String>, Set<ComparableArray<ComparableArray<String>>>>
-                    body_gv_bindings_2_fv_bindings = new HashMap<>();
-            for (final List<PredicateCache> grounding_body: groundingsBody) {
-                /* 给Body GV赋值 */
-                final ComparableArray<String> gv_binding = new ComparableArray<>(new String[body_gv_pos.size()]);
-                for (int i = 0; i < body_gv_pos.size(); i++) {
-                    final PredArgPos pos = body_gv_pos.get(i);
-                    final Predicate body_pred = grounding_body.get(pos.predIdx).predicate;
-                    final Argument argument = body_pred.args[pos.argIdx];
-                    gv_binding.arr[i] = argument.name;
+            if (factorizeBodyFvCounting()) {
+                /* 按GV binding分组，记录每组中各行FV所在predicate的inclusion */
+                final int[] fv_pred_idxs = new int[pred_idx_2_arg_idxs_of_bfv.size()];
+                final int[][] fv_arg_idxs = new int[fv_pred_idxs.length][];
+                {
+                    int i = 0;
+                    for (Map.Entry<Integer, List<Integer>> entry: pred_idx_2_arg_idxs_of_bfv.entrySet()) {
+                        fv_pred_idxs[i] = entry.getKey();
+                        fv_arg_idxs[i] = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+                        i++;
+                    }
+                }
+                final boolean pack_gv_binding = body_gv_pos.size() * const_bits < Long.SIZE;
+                final Map<Object, List<InclusionSet[]>> gv_binding_2_inclusions = new HashMap<>();
+                for (int row = 0; row < groundingsBody.rows(); row++) {
+                    final Object gv_binding;
+                    if (pack_gv_binding) {
+                        long packed_binding = 0;
+                        for (final PredArgPos pos: body_gv_pos) {
+                            packed_binding = (packed_binding << const_bits) |
+                                    groundingsBody.arg(row, pos.predIdx, pos.argIdx);
+                        }
+                        gv_binding = packed_binding;
+                    } else {
+                        final int[] binding = new int[body_gv_pos.size()];
+                        for (int i = 0; i < binding.length; i++) {
+                            final PredArgPos pos = body_gv_pos.get(i);
+                            binding[i] = groundingsBody.arg(row, pos.predIdx, pos.argIdx);
+                        }
+                        gv_binding = new Record(binding);
+                    }
+                    final InclusionSet[] inclusions = new InclusionSet[fv_pred_idxs.length];
+                    for (int i = 0; i < inclusions.length; i++) {
+                        inclusions[i] = groundingsBody.inclusionSet(row, fv_pred_idxs[i]);
+                    }
+                    final List<InclusionSet[]> inclusions_list = gv_binding_2_inclusions.computeIfAbsent(
+                            gv_binding, k -> new ArrayList<>(1)
+                    );
+                    if (inclusions_list.isEmpty() ||
+                            !sameInclusions(inclusions_list.get(inclusions_list.size() - 1), inclusions)) {
+                        inclusions_list.add(inclusions);
+                    }
                 }
 
-                /* Body FV 的取值范围不是全部constant，且要按照pred进行组合 */
-                final Set<ComparableArray<String>>[] fv_within_pred_bindings = new Set[pred_idx_2_arg_idxs_of_bfv.size()];
-                {
+                /*
+                 * 同一个GV binding下，不同predicate中FV的取值互相独立。如果这组只有一种inclusion的组合，FV组合的数量
+                 * 就是各个predicate中不同取值数量的乘积；只有一个predicate时是各行取值的并集大小。共享的inclusion
+                 * 只计算一次，所以代价与cache的大小成线性关系。其他情况仍然逐个枚举组合
+                 */
+                final Map<InclusionSet, Integer>[] distinct_value_cnts = new Map[fv_pred_idxs.length];
+                for (int i = 0; i < distinct_value_cnts.length; i++) {
+                    distinct_value_cnts[i] = new IdentityHashMap<>();
+                }
+                for (List<InclusionSet[]> inclusions_list: gv_binding_2_inclusions.values()) {
+                    if (1 == inclusions_list.size()) {
+                        final InclusionSet[] inclusions = inclusions_list.get(0);
+                        int fv_bindings_cnt = 1;
+                        for (int i = 0; i < inclusions.length; i++) {
+                            final int[] arg_idxs = fv_arg_idxs[i];
+                            fv_bindings_cnt *= distinct_value_cnts[i].computeIfAbsent(
+                                    inclusions[i],
+                                    k -> countDistinctValues(Collections.singletonList(k), arg_idxs, const_bits)
+                            );
+                        }
+                        body_gv_fv_bindings_cnt += fv_bindings_cnt;
+                        cartesian_operations += inclusions.length;
+                    } else if (1 == fv_pred_idxs.length) {
+                        final List<InclusionSet> inclusions = new ArrayList<>(inclusions_list.size());
+                        for (InclusionSet[] row_inclusions: inclusions_list) {
+                            inclusions.add(row_inclusions[0]);
+                        }
+                        body_gv_fv_bindings_cnt += countDistinctValues(inclusions, fv_arg_idxs[0], const_bits);
+                        cartesian_operations += inclusions.size();
+                    } else {
+                        final Set<ComparableArray<Record>> fv_bindings = new HashSet<>();
+                        for (InclusionSet[] row_inclusions: inclusions_list) {
+                            final Set<Record>[] fv_within_pred_bindings = new Set[row_inclusions.length];
+                            int delta_cartesian_operations = 1;
+                            for (int i = 0; i < row_inclusions.length; i++) {
+                                final Set<Record> values = new HashSet<>();
+                                for (Record included_record: row_inclusions[i].records) {
+                                    final int[] fv_within_pred_binding = new int[fv_arg_idxs[i].length];
+                                    for (int j = 0; j < fv_within_pred_binding.length; j++) {
+                                        fv_within_pred_binding[j] = included_record.args[fv_arg_idxs[i][j]];
+                                    }
+                                    values.add(new Record(fv_within_pred_binding));
+                                }
+                                fv_within_pred_bindings[i] = values;
+                                delta_cartesian_operations *= values.size();
+                            }
+                            addBodyFvBindings(fv_bindings, fv_within_pred_bindings);
+                            cartesian_operations += delta_cartesian_operations;
+                        }
+                        body_gv_fv_bindings_cnt += fv_bindings.size();
+                    }
+                }
+            } else if ((body_gv_pos.size() + bodyFreeVars.size()) * const_bits < Long.SIZE) {
+                /* GV与各个predicate中FV的取值拼接成一个long，统计不同组合的数量 */
+                final LongHashSet body_gv_fv_bindings = new LongHashSet();
+                final long[][] fv_within_pred_bindings = new long[pred_idx_2_arg_idxs_of_bfv.size()][];
+                final int[] fv_within_pred_shifts = new int[fv_within_pred_bindings.length];
+                for (int row = 0; row < groundingsBody.rows(); row++) {
+                    long gv_binding = 0;
+                    for (final PredArgPos pos: body_gv_pos) {
+                        gv_binding = (gv_binding << const_bits) | groundingsBody.arg(row, pos.predIdx, pos.argIdx);
+                    }
                     int i = 0;
+                    int delta_cartesian_operations = 1;
                     for (Map.Entry<Integer, List<Integer>> entry: pred_idx_2_arg_idxs_of_bfv.entrySet()) {
-                        final int body_pred_idx = entry.getKey();
                         final List<Integer> body_arg_idxs = entry.getValue();
-                        final Set<ComparableArray<String>> values = new HashSet<>();
-                        final PredicateCache pred_cache = grounding_body.get(body_pred_idx);
-                        for (Predicate included_pred : pred_cache.inclusion) {
-                            final String[] fv_within_pred_binding = new String[body_arg_idxs.size()];
-                            for (int j = 0; j < fv_within_pred_binding.length; j++) {
-                                fv_within_pred_binding[j] = included_pred.args[body_arg_idxs.get(j)].name;
+                        final LongHashSet values = new LongHashSet();
+                        for (Record included_record : groundingsBody.inclusion(row, entry.getKey())) {
+                            long fv_within_pred_binding = 0;
+                            for (int arg_idx: body_arg_idxs) {
+                                fv_within_pred_binding = (fv_within_pred_binding << const_bits) |
+                                        included_record.args[arg_idx];
                             }
-                            values.add(new ComparableArray<>(fv_within_pred_binding));
+                            values.add(fv_within_pred_binding);
                         }
-                        fv_within_pred_bindings[i] = values;
+                        fv_within_pred_bindings[i] = values.toArray();
+                        fv_within_pred_shifts[i] = body_arg_idxs.size() * const_bits;
+                        delta_cartesian_operations *= fv_within_pred_bindings[i].length;
                         i++;
                     }
+                    addBodyFvBindings(
+                            body_gv_fv_bindings, fv_within_pred_bindings, fv_within_pred_shifts, 0, gv_binding
+                    );
+                    cartesian_operations += delta_cartesian_operations;
                 }
-                final Set<ComparableArray<ComparableArray<String>>> fv_bindings =
-                        body_gv_bindings_2_fv_bindings.computeIfAbsent(
-                                gv_binding, k -> new HashSet<>()
-                        );
-                addBodyFvBindings(fv_bindings, fv_within_pred_bindings);
-                int delta_cartesian_operations = 1;
-                for (Set<ComparableArray<String>> fv_within_pred_values: fv_within_pred_bindings) {
-                    delta_cartesian_operations *= fv_within_pred_values.size();
+                body_gv_fv_bindings_cnt = body_gv_fv_bindings.size();
+            } else {
+                /* binding太长，无法拼接时按Record组合，统计Body FV与GV一起组合的数量 */
+                final Map<Record, Set<ComparableArray<Record>>> body_gv_bindings_2_fv_bindings = new HashMap<>();
+                for (int row = 0; row < groundingsBody.rows(); row++) {
+                    /* 给Body GV赋值 */
+                    final int[] gv_binding = new int[body_gv_pos.size()];
+                    for (int i = 0; i < gv_binding.length; i++) {
+                        final PredArgPos pos = body_gv_pos.get(i);
+                        gv_binding[i] = groundingsBody.arg(row, pos.predIdx, pos.argIdx);
+                    }
+
+                    /* Body FV 的取值范围不是全部constant，且要按照pred进行组合 */
+                    final Set<Record>[] fv_within_pred_bindings = new Set[pred_idx_2_arg_idxs_of_bfv.size()];
+                    {
+                        int i = 0;
+                        for (Map.Entry<Integer, List<Integer>> entry: pred_idx_2_arg_idxs_of_bfv.entrySet()) {
+                            final int body_pred_idx = entry.getKey();
+                            final List<Integer> body_arg_idxs = entry.getValue();
+                            final Set<Record> values = new HashSet<>();
+                            for (Record included_record : groundingsBody.inclusion(row, body_pred_idx)) {
+                                final int[] fv_within_pred_binding = new int[body_arg_idxs.size()];
+                                for (int j = 0; j < fv_within_pred_binding.length; j++) {
+                                    fv_within_pred_binding[j] = included_record.args[body_arg_idxs.get(j)];
+                                }
+                                values.add(new Record(fv_within_pred_binding));
+                            }
+                            fv_within_pred_bindings[i] = values;
+                            i++;
+                        }
+                    }
+                    final Set<ComparableArray<Record>> fv_bindings = body_gv_bindings_2_fv_bindings.computeIfAbsent(
+                            new Record(gv_binding), k -> new HashSet<>()
+                    );
+                    addBodyFvBindings(fv_bindings, fv_within_pred_bindings);
+                    int delta_cartesian_operations = 1;
+                    for (Set<Record> fv_within_pred_values: fv_within_pred_bindings) {
+                        delta_cartesian_operations *= fv_within_pred_values.size();
+                    }
+                    cartesian_operations += delta_cartesian_operations;
+                }
+                for (Set<ComparableArray<Record>> fv_bindings: body_gv_bindings_2_fv_bindings.values()) {
+                    body_gv_fv_bindings_cnt += fv_bindings.size();
                 }
-                cartesian_operations += delta_cartesian_operations;
-            }
-            for (Set<ComparableArray<ComparableArray<String>>> fv_bindings: body_gv_bindings_2_fv_bindings.values()) {
-                body_gv_fv_bindings_cnt += fv_bindings.size();
             }
         }
-        final double all_entails = body_gv_fv_bindings_cnt * Math.pow(
-                kb.totalConstants(), head_fv_cnt + head_vars.size()
-        );
+        final double head_only_combinations = Math.pow(kb.totalConstants(), head_fv_cnt + head_vars.size());
+        final double body_bindings = bindings_sampled ?
+                body_gv_fv_bindings_cnt / samplingRate : body_gv_fv_bindings_cnt;
+        final double all_entails = body_bindings * head_only_combinations;
         final long time_all_entail_done = System.nanoTime();
         cacheMonitor.allEntailQueryCostInNano += time_all_entail_done - time_pre_done;
 
-        /* 计算new pos entail的数量 */
-        final Set<Predicate> newly_proved = new HashSet<>();
-        final Set<Predicate> already_proved = new HashSet<>();
-        if (0 == head_fv_cnt) {
-            for (final List<PredicateCache> grounding : groundings) {
-                final Predicate predicate = grounding.get(HEAD_PRED_IDX).predicate;
-                if (!kb.hasProved(predicate)) {
-                    newly_proved.add(predicate);
-                } else {
-                    already_proved.add(predicate);
+        /* 计算new pos entail的数量，被蕴含的head按事实编号放入位图，与已经被证明的事实求交集 */
+        final RoaringBitmap entailed_head;
+        if (joinBody) {
+            entailed_head = joinedEntailedHead();
+        } else if (0 == head_fv_cnt) {
+            entailed_head = new RoaringBitmap();
+            for (int row = 0; row < groundings.rows(); row++) {
+                final int record_id = kb.recordId(head_pred.functor, new Record(groundings.args(row, HEAD_PRED_IDX)));
+                if (!estimating || sampled(record_id)) {
+                    entailed_head.add(record_id);
                 }
             }
         } else {
-            for (final List<PredicateCache> grounding: groundings) {
-                for (Predicate predicate: grounding.get(HEAD_PRED_IDX).inclusion) {
-                    if (!kb.hasProved(predicate)) {
-                        newly_proved.add(predicate);
-                    } else {
-                        already_proved.add(predicate);
+            entailed_head = new RoaringBitmap();
+            for (int row = 0; row < groundings.rows(); row++) {
+                for (Record record: groundings.inclusion(row, HEAD_PRED_IDX)) {
+                    final int record_id = kb.recordId(head_pred.functor, record);
+                    if (!estimating || sampled(record_id)) {
+                        entailed_head.add(record_id);
                     }
                 }
             }
         }
+        final int already_proved = kb.countProved(head_pred.functor, entailed_head);
+        final int newly_proved = entailed_head.cardinality() - already_proved;
         final long time_pos_entail_done = System.nanoTime();
         cacheMonitor.posEntailQueryCostInNano += time_pos_entail_done - time_all_entail_done;
 
+        /* 更新eval */
+        /* all entailments中需要刨除已经被证明的，否则这些默认被算作了counter examples的数量 */
+        final Eval new_eval;
+        if (estimating) {
+            /* 样本中的数量按采样率放大，误差范围取ESTIMATION_Z倍标准差 */
+            final double pos_error = ESTIMATION_Z * estimationStdDev(newly_proved);
+            double all_error = ESTIMATION_Z * estimationStdDev(already_proved);
+            if (bindings_sampled) {
+                all_error += ESTIMATION_Z * estimationStdDev(body_gv_fv_bindings_cnt) * head_only_combinations;
+            }
+            new_eval = new EstimatedEval(
+                    eval, newly_proved / samplingRate, all_entails - already_proved / samplingRate, size(),
+                    pos_error, all_error
+            );
+        } else {
+            new_eval = new Eval(
+                    eval, newly_proved, all_entails - already_proved, size()
+            );
+        }
+
         /* 先记录当前的cache信息 */
         cacheMonitor.cacheStats.add(new CachedQueryMonitor.CacheStat(
-                groundings.size(), groundingsBody.size(), cartesian_operations
+                headRows(), bodyRows(), cartesian_operations
         ));
-        cacheMonitor.evalStats.add(new Eval(
-                eval, newly_proved.size(), all_entails - already_proved.size(), size()
-        ));
-
-        /* 更新eval */
-        /* all entailments中需要刨除已经被证明的，否则这些默认被算作了counter examples的数量 */
-        return new Eval(
-                eval, newly_proved.size(), all_entails - already_proved.size(), size()
-        );
+        cacheMonitor.evalStats.add(new_eval);
+        return new_eval;
     }
 
     protected Set<Predicate> findCounterExamples() {
-        final Set<Predicate> counter_example_set = new HashSet<>();
+        final Set<Record> counter_example_set = new HashSet<>();
 
         /* 统计head中的变量信息 */
         final long time_query_start = System.nanoTime();
         final Map<Integer, List<Integer>> head_var_2_loc_map = new HashMap<>();  // Head Only LV Locations
         int uv_id = usedBoundedVars();
         final Predicate head_pred = new Predicate(getHead());
+        final int[] head_args = new int[head_pred.arity()];  // 常量的位置替换为编号，变量的位置之后再赋值
         for (int arg_idx = 0; arg_idx < head_pred.arity(); arg_idx++) {
             final Argument argument = head_pred.args[arg_idx];
             if (null == argument) {
@@ -834,6 +1604,8 @@ public class RecalculateCachedRule extends CachedRule {
                         locs.add(idx);
                         return locs;
                     });
+                } else {
+                    head_args[arg_idx] = kb.name2Num(argument.name);
                 }
             }
         }
@@ -917,123 +1689,150 @@ public class RecalculateCachedRule extends CachedRule {
 
         /* 将HGV的取值迭代在Head中，并对所有HOV进行迭代 */
         int cartesian_operations = 0;
-        final Set<Predicate> head_templates = new HashSet<>();
-        if (body_idx_2_ugv_pos_map.isEmpty()) {
-            for (final List<PredicateCache> grounding : groundingsBody) {
-                final Predicate head_template = new Predicate(head_pred);
+        final Set<Record> head_templates = new HashSet<>();
+        if (joinBody) {
+            final int[] head_vars_in_body = headVarsInBody();
+            bodyJoin(head_vars_in_body).forEachProjection(binding -> {
+                final int[] head_template = head_args.clone();
+                for (int i = 0; i < binding.length; i++) {
+                    for (int loc: head_var_2_loc_map.get(head_vars_in_body[i])) {
+                        head_template[loc] = binding[i];
+                    }
+                }
+                head_templates.add(new Record(head_template));
+            });
+        } else if (body_idx_2_ugv_pos_map.isEmpty()) {
+            for (int row = 0; row < groundingsBody.rows(); row++) {
+                final int[] head_template = head_args.clone();
                 for (final BGVLinkInfo pos : head_gv_pos_list) {
-                    final Predicate body_pred = grounding.get(pos.bodyPredIdx).predicate;
-                    final Argument argument = body_pred.args[pos.bodyArgIdx];
+                    final int value = groundingsBody.arg(row, pos.bodyPredIdx, pos.bodyArgIdx);
                     for (int loc : pos.headVarLocs) {
-                        head_template.args[loc] = argument;
+                        head_template[loc] = value;
                     }
                 }
-                head_templates.add(head_template);
+                head_templates.add(new Record(head_template));
             }
         } else {
             /* 按predicate组合Body FV */
             final Map.Entry<Integer, List<BGVLinkInfo>>[] body_idx_2_ugv_pos_entry_list =
                     body_idx_2_ugv_pos_map.entrySet().toArray(new Map.Entry[0]);
 
-            for (final List<PredicateCache> grounding : groundingsBody) {
+            for (int row = 0; row < groundingsBody.rows(); row++) {
                 /* 给Body GV赋值 */
-                final Predicate head_template = new Predicate(head_pred);
+                final int[] head_template = head_args.clone();
                 for (final BGVLinkInfo pos : head_gv_pos_list) {
-                    final Predicate body_pred = grounding.get(pos.bodyPredIdx).predicate;
-                    final Argument argument = body_pred.args[pos.bodyArgIdx];
+                    final int value = groundingsBody.arg(row, pos.bodyPredIdx, pos.bodyArgIdx);
                     for (int loc : pos.headVarLocs) {
-                        head_template.args[loc] = argument;
+                        head_template[loc] = value;
                     }
                 }
 
                 /* 加上Body Fv */
                 /* Body FV 的取值范围不是全部constant，且要按照pred进行组合 */
-                final Set<ComparableArray<String>>[] uv_within_pred_bindings =
-                        new Set[body_idx_2_ugv_pos_entry_list.length];
+                final Set<Record>[] uv_within_pred_bindings = new Set[body_idx_2_ugv_pos_entry_list.length];
                 for (int i = 0; i < body_idx_2_ugv_pos_entry_list.length; i++) {
                     final Map.Entry<Integer, List<BGVLinkInfo>> entry = body_idx_2_ugv_pos_entry_list[i];
                     final int body_pred_idx = entry.getKey();
                     final List<BGVLinkInfo> bugv_links = entry.getValue();
-                    final Set<ComparableArray<String>> values = new HashSet<>();
-                    final PredicateCache pred_cache = grounding.get(body_pred_idx);
-                    for (Predicate included_pred : pred_cache.inclusion) {
-                        final String[] fv_within_pred_binding = new String[bugv_links.size()];
+                    final Set<Record> values = new HashSet<>();
+                    for (Record included_record : groundingsBody.inclusion(row, body_pred_idx)) {
+                        final int[] fv_within_pred_binding = new int[bugv_links.size()];
                         for (int j = 0; j < fv_within_pred_binding.length; j++) {
-                            fv_within_pred_binding[j] = included_pred.args[bugv_links.get(j).bodyArgIdx].name;
+                            fv_within_pred_binding[j] = included_record.args[bugv_links.get(j).bodyArgIdx];
                         }
-                        values.add(new ComparableArray<>(fv_within_pred_binding));
+                        values.add(new Record(fv_within_pred_binding));
                     }
                     uv_within_pred_bindings[i] = values;
                 }
-                final Set<ComparableArray<ComparableArray<String>>> fv_bindings = new HashSet<>();
+                final Set<ComparableArray<Record>> fv_bindings = new HashSet<>();
                 addBodyFvBindings(fv_bindings, uv_within_pred_bindings);
                 int delta_cartesian_operations = 1;
-                for (Set<ComparableArray<String>> fv_within_pred_values: uv_within_pred_bindings) {
+                for (Set<Record> fv_within_pred_values: uv_within_pred_bindings) {
                     delta_cartesian_operations *= fv_within_pred_values.size();
                 }
                 cartesian_operations += delta_cartesian_operations;
-                for (ComparableArray<ComparableArray<String>> fv_binding: fv_bindings) {
+                for (ComparableArray<Record> fv_binding: fv_bindings) {
                     for (int i = 0; i < body_idx_2_ugv_pos_entry_list.length; i++) {
                         final Map.Entry<Integer, List<BGVLinkInfo>> entry =
                                 body_idx_2_ugv_pos_entry_list[i];
-                        final ComparableArray<String> fv_value_combination = fv_binding.arr[i];
+                        final Record fv_value_combination = fv_binding.arr[i];
                         final List<BGVLinkInfo> bugv_links = entry.getValue();
-                        for (int j = 0; j < fv_value_combination.arr.length; j++) {
+                        for (int j = 0; j < fv_value_combination.args.length; j++) {
                             final BGVLinkInfo bugv_link = bugv_links.get(j);
                             for (int head_arg_idx: bugv_link.headVarLocs) {
-                                head_template.args[head_arg_idx] = new Constant(
-                                        Rule.CONSTANT_ARG_ID, fv_value_combination.arr[j]
-                                );
+                                head_template[head_arg_idx] = fv_value_combination.args[j];
                             }
                         }
                     }
-                    head_templates.add(new Predicate(head_template));
+                    head_templates.add(new Record(head_template.clone()));
                 }
             }
         }
         if (head_ov_pos_list.isEmpty()) {
             /* 不需要替换变量 */
-            for (Predicate head_template : head_templates) {
-                if (!kb.containsFact(head_template)) {
+            for (Record head_template : head_templates) {
+                if (!kb.containsRecord(head_pred.functor, head_template)) {
                     counter_example_set.add(head_template);
                 }
             }
         } else {
             /* 需要替换head中的变量 */
-            for (Predicate head_template: head_templates) {
-                iterate4CounterExamples(counter_example_set, head_template, 0, head_ov_poss);
+            for (Record head_template: head_templates) {
+                iterate4CounterExamples(counter_example_set, head_pred.functor, head_template.args, 0, head_ov_poss);
             }
         }
         final long time_all_entail_done = System.nanoTime();
         cacheMonitor.allEntailQueryCostInNano += time_all_entail_done - time_pre_done;
 
         cacheMonitor.cacheStats.add(new CachedQueryMonitor.CacheStat(
-                groundings.size(), groundingsBody.size(), cartesian_operations
+                headRows(), bodyRows(), cartesian_operations
         ));
 
-        return counter_example_set;
+        /* 将编号还原为常量符号 */
+        final Set<Predicate> counter_examples = new HashSet<>();
+        for (Record record: counter_example_set) {
+            counter_examples.add(record2Predicate(head_pred, record));
+        }
+        return counter_examples;
     }
 
     protected List<Predicate[]> findGroundings() {
         final long pos_entail_begin = System.nanoTime();
         final List<Predicate[]> grounding_list = new ArrayList<>();
-        final Set<Predicate> entailed_head = new HashSet<>();
-        for (final List<PredicateCache> grounding_cache: groundings) {
+        final String head_functor = structure.get(HEAD_PRED_IDX).functor;
+        final Set<Record> entailed_head = new HashSet<>();
+        if (joinBody) {
+            /* 每条新证明的head事实取TrieJoin给出的一组见证赋值 */
+            final List<Predicate> predicates = joinedStructure(true);
+            forEachJoinedHead(true, (head_record, join) -> {
+                if (!kb.hasProved(head_functor, head_record) && entailed_head.add(head_record)) {
+                    final Predicate[] grounding = new Predicate[structure.size()];
+                    grounding[HEAD_PRED_IDX] = kb.toPredicate(head_functor, head_record);
+                    for (int pred_idx = FIRST_BODY_PRED_IDX; pred_idx < structure.size(); pred_idx++) {
+                        final Predicate predicate = predicates.get(pred_idx);
+                        grounding[pred_idx] = kb.toPredicate(predicate.functor, joinedRecord(predicate, join));
+                    }
+                    grounding_list.add(grounding);
+                    kb.proveRecord(head_functor, head_record);
+                }
+            });
+        }
+        for (int row = 0; row < headRows(); row++) {
             /* 找出grounding body */
             final Predicate[] grounding_body = new Predicate[structure.size()];
             for (int pred_idx = FIRST_BODY_PRED_IDX; pred_idx < structure.size(); pred_idx++) {
-                final PredicateCache pred_cache = grounding_cache.get(pred_idx);
-                grounding_body[pred_idx] = pred_cache.inclusion.iterator().next();
+                grounding_body[pred_idx] = kb.toPredicate(
+                        structure.get(pred_idx).functor, groundings.inclusion(row, pred_idx).iterator().next()
+                );
             }
 
             /* 构造其所有的head */
-            final PredicateCache head_pred_cache = grounding_cache.get(HEAD_PRED_IDX);
-            for (Predicate head_pred: head_pred_cache.inclusion) {
-                if (!kb.hasProved(head_pred) && entailed_head.add(head_pred)) {
+            for (Record head_record: groundings.inclusion(row, HEAD_PRED_IDX)) {
+                if (!kb.hasProved(head_functor, head_record) && entailed_head.add(head_record)) {
                     final Predicate[] grounding = dupGrounding(grounding_body, true);
-                    grounding[HEAD_PRED_IDX] = head_pred;
+                    grounding[HEAD_PRED_IDX] = kb.toPredicate(head_functor, head_record);
                     grounding_list.add(grounding);
-                    kb.proveFact(head_pred);
+                    kb.proveRecord(head_functor, head_record);
                 }
             }
         }
@@ -1042,27 +1841,22 @@ public class RecalculateCachedRule extends CachedRule {
         return grounding_list;
     }
 
+    @Override
+    public long cacheBytes() {
+        if (null == groundings) {
+            return 0;
+        }
+        final Set<Object> counted_inclusions = Collections.newSetFromMap(new IdentityHashMap<>());
+        final long body_bytes = joinBody ? 0 : groundingsBody.estimatedBytes(counted_inclusions);
+        return groundings.estimatedBytes(counted_inclusions) + body_bytes;
+    }
+
     @Override
     protected void releaseCache() {
         groundings = null;
         groundingsBody = null;
     }
 
-    private List<PredicateCache> dupGrounding(List<PredicateCache> grounding, boolean bodyOnly) {
-        List<PredicateCache> new_grounding = new ArrayList<>(grounding.size());
-        if (bodyOnly) {
-            new_grounding.add(null);
-            for (int i = FIRST_BODY_PRED_IDX; i < grounding.size(); i++) {
-                new_grounding.add(new PredicateCache(grounding.get(i)));
-            }
-        } else {
-            for (PredicateCache pred_cache: grounding) {
-                new_grounding.add(new PredicateCache(pred_cache));
-            }
-        }
-        return new_grounding;
-    }
-
     private Predicate[] dupGrounding(final Predicate[] grounding, boolean bodyOnly) {
         final Predicate[] new_grounding = new Predicate[grounding.length];
         for (int pred_idx = bodyOnly ? FIRST_BODY_PRED_IDX : HEAD_PRED_IDX; pred_idx < grounding.length; pred_idx++) {
@@ -1071,62 +1865,136 @@ public class RecalculateCachedRule extends CachedRule {
         return new_grounding;
     }
 
+    /**
+     * 将编号形式的head还原为Predicate，规则中的常量直接沿用规则中的参数（该常量可能不在KB中）
+     */
+    private Predicate record2Predicate(final Predicate headPred, final Record record) {
+        final Predicate predicate = new Predicate(headPred.functor, record.args.length);
+        for (int arg_idx = 0; arg_idx < record.args.length; arg_idx++) {
+            final Argument argument = headPred.args[arg_idx];
+            predicate.args[arg_idx] = (null != argument && !argument.isVar) ? argument :
+                    new Constant(CONSTANT_ARG_ID, kb.num2Name(record.args[arg_idx]));
+        }
+        return predicate;
+    }
+
     private void iterate4CounterExamples(
-            final Set<Predicate> counterExamples, final Predicate template, final int idx,
+            final Set<Record> counterExamples, final String functor, final int[] template, final int idx,
             final Integer[][] varLocs
     ) {
         final Integer[] locations = varLocs[idx];
+        final int max_num = kb.getNumerationMap().maxNum();
         if (idx < varLocs.length - 1) {
             /* 递归 */
-            for (String constant_symbol: kb.allConstants()) {
-                final Constant constant = new Constant(CONSTANT_ARG_ID, constant_symbol);
+            for (int constant = 1; constant <= max_num; constant++) {
                 for (int loc: locations) {
-                    template.args[loc] = constant;
+                    template[loc] = constant;
                 }
                 iterate4CounterExamples(
-                        counterExamples, template, idx + 1, varLocs
+                        counterExamples, functor, template, idx + 1, varLocs
                 );
             }
         } else {
             /* 已经到了最后的位置，不递归，完成后检查是否是Counter Example */
-            for (String constant_symbol: kb.allConstants()) {
-                final Constant constant = new Constant(CONSTANT_ARG_ID, constant_symbol);
+            for (int constant = 1; constant <= max_num; constant++) {
                 for (int loc: locations) {
-                    template.args[loc] = constant;
+                    template[loc] = constant;
                 }
-                if (!kb.containsFact(template)) {
-                    counterExamples.add(new Predicate(template));
+                final Record record = new Record(template.clone());
+                if (!kb.containsRecord(functor, record)) {
+                    counterExamples.add(record);
                 }
             }
         }
     }
 
+    /**
+     * 是否按GV binding分组，用各predicate中FV取值数量的乘积计算Body FV的组合数，而不逐个枚举组合
+     */
+    protected boolean factorizeBodyFvCounting() {
+        return true;
+    }
+
+    private static boolean sameInclusions(InclusionSet[] inclusions1, InclusionSet[] inclusions2) {
+        for (int i = 0; i < inclusions1.length; i++) {
+            if (inclusions1[i] != inclusions2[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return inclusions中所有记录在argIdxs上的取值去重后的数量
+     */
+    private static int countDistinctValues(List<InclusionSet> inclusions, int[] argIdxs, int constBits) {
+        if (argIdxs.length * constBits < Long.SIZE) {
+            final LongHashSet values = new LongHashSet();
+            for (InclusionSet inclusion: inclusions) {
+                for (Record record: inclusion.records) {
+                    long value = 0;
+                    for (int arg_idx: argIdxs) {
+                        value = (value << constBits) | record.args[arg_idx];
+                    }
+                    values.add(value);
+                }
+            }
+            return values.size();
+        }
+        final Set<Record> values = new HashSet<>();
+        for (InclusionSet inclusion: inclusions) {
+            for (Record record: inclusion.records) {
+                final int[] value = new int[argIdxs.length];
+                for (int i = 0; i < argIdxs.length; i++) {
+                    value[i] = record.args[argIdxs[i]];
+                }
+                values.add(new Record(value));
+            }
+        }
+        return values.size();
+    }
+
+    /**
+     * 将prefix与values中每个predicate的一组取值依次拼接，加入bindings
+     *
+     * @param shifts 每个predicate中一组取值占用的位数
+     */
+    private void addBodyFvBindings(LongHashSet bindings, long[][] values, int[] shifts, int idx, long prefix) {
+        if (idx == values.length) {
+            bindings.add(prefix);
+            return;
+        }
+        for (long value: values[idx]) {
+            addBodyFvBindings(bindings, values, shifts, idx + 1, (prefix << shifts[idx]) | value);
+        }
+    }
+
     private void addBodyFvBindings(
-            Set<ComparableArray<ComparableArray<String>>> bindings,
-            Set<ComparableArray<String>>[] values
+            Set<ComparableArray<Record>> bindings,
+            Set<Record>[] values
     ) {
         addBodyFvBindingsHandler(
                 bindings,
                 values,
-                new ComparableArray<ComparableArray<String>>(new ComparableArray[values.length]),
+                new ComparableArray<Record>(new Record[values.length]),
                 0
         );
     }
 
     private void addBodyFvBindingsHandler(
-            Set<ComparableArray<ComparableArray<String>>> bindings,
-            Set<ComparableArray<String>>[] values,
-            ComparableArray<ComparableArray<String>> template,
+            Set<ComparableArray<Record>> bindings,
+            Set<Record>[] values,
+            ComparableArray<Record> template,
             int idx
     ) {
-        final Set<ComparableArray<String>> value_set = values[idx];
+        final Set<Record> value_set = values[idx];
         if (idx == values.length - 1) {
-            for (ComparableArray<String> value: value_set) {
+            for (Record value: value_set) {
                 template.arr[idx] = value;
                 bindings.add(new ComparableArray<>(template));
             }
         } else {
-            for (ComparableArray<String> value: value_set) {
+            for (Record value: value_set) {
                 template.arr[idx] = value;
                 addBodyFvBindingsHandler(
                         bindings, values, template, idx + 1
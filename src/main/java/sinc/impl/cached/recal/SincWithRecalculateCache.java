@@ -23,9 +23,15 @@ public class SincWithRecalculateCache extends CachedSinc {
                         config.minColumnSimilarity,
                         config.stopCompressionRate,
                         true,
-                        -1.0,
+                        config.sampling,
+                        config.estimation,
                         false,
-                        false
+                        config.offHeapPath,
+                        config.kbSnapshot,
+                        config.columnSimilaritySketch,
+                        config.columnSimilarityVerification,
+                        config.evictFinishedIndices,
+                        config.concurrentTargets
                 ),
                 kbPath,
                 dumpPath,
@@ -35,7 +41,19 @@ public class SincWithRecalculateCache extends CachedSinc {
 
     @Override
     protected Rule getStartRule(String headFunctor, Set<RuleFingerPrint> cache) {
-        return new RecalculateCachedRule(headFunctor, cache, kb);
+        final RecalculateCachedRule rule = new RecalculateCachedRule(headFunctor, cache, kb);
+        if (config.estimation) {
+            rule.enableEstimation(config.sampling);
+        }
+        return rule;
+    }
+
+    /**
+     * 规则只读取KB中的事实以及head上已证明的事实，不同head的规则互不影响
+     */
+    @Override
+    protected boolean concurrentTargetsSupported() {
+        return true;
     }
 
     @Override
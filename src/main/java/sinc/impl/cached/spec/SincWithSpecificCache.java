@@ -24,7 +24,13 @@ public class SincWithSpecificCache extends CachedSinc {
                         true,
                         -1.0,
                         false,
-                        false
+                        false,
+                        config.offHeapPath,
+                        config.kbSnapshot,
+                        config.columnSimilaritySketch,
+                        config.columnSimilarityVerification,
+                        config.evictFinishedIndices,
+                        config.concurrentTargets
                 ),
                 kbPath,
                 dumpPath,
@@ -4,23 +4,26 @@ import sinc.common.*;
 import sinc.impl.cached.CachedQueryMonitor;
 import sinc.impl.cached.CachedRule;
 import sinc.impl.cached.MemKB;
+import sinc.impl.cached.MemoryEstimator;
+import sinc.impl.cached.Record;
+import sinc.util.RoaringBitmap;
 
 import java.util.*;
 
 public class SpecificCachedRule extends CachedRule {
     /* 记录符合条件的grounding的中间结果 */
     private static class PredicateCache {
-        public final Predicate predicate;
-        public Set<Predicate> inclusion;  /* 对这个Set的操作仅限于读取以及替换，不要向其中添加或删除元素，
-                                             这样可以做到copy on write */
+        public final int[] args;  // 已经确定的参数值，NULL_NUM表示尚未确定
+        public Set<Record> inclusion;  /* 对这个Set的操作仅限于读取以及替换，不要向其中添加或删除元素，
+                                          这样可以做到copy on write */
 
-        public PredicateCache(Predicate predicate) {
-            this.predicate = predicate;
+        public PredicateCache(int arity) {
+            this.args = new int[arity];
             this.inclusion = new HashSet<>();
         }
 
         public PredicateCache(PredicateCache another) {
-            this.predicate = new Predicate(another.predicate);
+            this.args = another.args.clone();
             this.inclusion = another.inclusion;  // copy on write
         }
     }
@@ -33,8 +36,8 @@ public class SpecificCachedRule extends CachedRule {
         this.kb = kb;
 
         /* 把无BV的head加入 */
-        final PredicateCache head_cache = new PredicateCache(new Predicate(headFunctor, getHead().arity()));
-        head_cache.inclusion = kb.getAllFacts(headFunctor);
+        final PredicateCache head_cache = new PredicateCache(getHead().arity());
+        head_cache.inclusion = kb.getAllRecords(headFunctor);
         final List<PredicateCache> grounding = new ArrayList<>();
         grounding.add(head_cache);
         groundings.add(grounding);
@@ -121,23 +124,22 @@ public class SpecificCachedRule extends CachedRule {
                     while (grounding_itr.hasNext()) {
                         final List<PredicateCache> grounding = grounding_itr.next();
                         final PredicateCache compared_pred_cache = grounding.get(pred_idx);
-                        final Argument compared_argument = compared_pred_cache.predicate.args[arg_idx];
+                        final int compared_value = compared_pred_cache.args[arg_idx];
                         final PredicateCache target_pred_cache = grounding.get(predIdx);
-                        final Set<Predicate> filtered_predicates = new HashSet<>();
-                        for (Predicate fv_pred: target_pred_cache.inclusion) {
-                            final Argument fv_arg = fv_pred.args[argIdx];
-                            if (compared_argument.name.equals(fv_arg.name)) {
-                                filtered_predicates.add(fv_pred);
+                        final Set<Record> filtered_records = new HashSet<>();
+                        for (Record fv_record: target_pred_cache.inclusion) {
+                            if (compared_value == fv_record.args[argIdx]) {
+                                filtered_records.add(fv_record);
                             }
                         }
 
-                        if (filtered_predicates.isEmpty()) {
+                        if (filtered_records.isEmpty()) {
                             /* 如果过滤之后FV集合为空，那么说明当前的grounding不能用 */
                             grounding_itr.remove();
                         } else {
                             /* 如果当前grounding仍然满足要求，则更新对应参数 */
-                            target_pred_cache.predicate.args[argIdx] = compared_argument;
-                            target_pred_cache.inclusion = filtered_predicates;  // copy on write
+                            target_pred_cache.args[argIdx] = compared_value;
+                            target_pred_cache.inclusion = filtered_records;  // copy on write
                         }
                     }
                     break;
@@ -152,30 +154,22 @@ public class SpecificCachedRule extends CachedRule {
                 final PredicateCache target_pred_cache = grounding.get(predIdx);
 
                 /* 按目标列的值划分inclusion */
-                final Map<String, Set<Predicate>> inclusion_map = new HashMap<>();
-                for (Predicate predicate: target_pred_cache.inclusion) {
-                    inclusion_map.compute(predicate.args[argIdx].name, (constant, set) -> {
-                        if (null == set) {
-                            set = new HashSet<>();
-                        }
-                        set.add(predicate);
-                        return set;
-                    });
+                final Map<Integer, Set<Record>> inclusion_map = new HashMap<>();
+                for (Record record: target_pred_cache.inclusion) {
+                    inclusion_map.computeIfAbsent(record.args[argIdx], k -> new HashSet<>()).add(record);
                 }
 
                 /* 展开grounding */
                 if (1 == inclusion_map.size()) {
                     /* 目标参数处只有一个值，直接修改grounding中对应参数即可 */
-                    target_pred_cache.predicate.args[argIdx] = new Constant(
-                            CONSTANT_ARG_ID, inclusion_map.keySet().iterator().next()
-                    );
+                    target_pred_cache.args[argIdx] = inclusion_map.keySet().iterator().next();
                 } else {
                     /* 用多个grounding替代原有grounding */
                     grounding_itr.remove();
-                    for (Map.Entry<String, Set<Predicate>> entry: inclusion_map.entrySet()) {
+                    for (Map.Entry<Integer, Set<Record>> entry: inclusion_map.entrySet()) {
                         final List<PredicateCache> new_grounding = dupGrounding(grounding, true);
                         final PredicateCache new_target_pred_cache = new_grounding.get(predIdx);
-                        new_target_pred_cache.predicate.args[argIdx] = new Constant(CONSTANT_ARG_ID, entry.getKey());
+                        new_target_pred_cache.args[argIdx] = entry.getKey();
                         new_target_pred_cache.inclusion = entry.getValue();
                         grounding_itr.add(new_grounding);
                     }
@@ -220,7 +214,7 @@ public class SpecificCachedRule extends CachedRule {
             grounding_list = groundings;
         }
 
-        final Map<String, Set<Predicate>> arg_indices_map = kb.getArgIndices(newPredicate.functor, argIdx);
+        final Map<Integer, Set<Record>> arg_indices_map = kb.getRecordIndices(newPredicate.functor, argIdx);
         boolean found = false;
         final ListIterator<List<PredicateCache>> grounding_itr = grounding_list.listIterator();
         for (int pred_idx = pred_idx_start; pred_idx < structure.size() - 1 && !found; pred_idx++) {  // 不要和刚设置的变量比较
@@ -236,18 +230,16 @@ public class SpecificCachedRule extends CachedRule {
                     while (grounding_itr.hasNext()) {
                         final List<PredicateCache> grounding = grounding_itr.next();
                         final PredicateCache compared_pred_cache = grounding.get(pred_idx);
-                        final Argument compared_argument = compared_pred_cache.predicate.args[arg_idx];
-                        final Set<Predicate> inclusion = arg_indices_map.get(compared_argument.name);
+                        final int compared_value = compared_pred_cache.args[arg_idx];
+                        final Set<Record> inclusion = arg_indices_map.get(compared_value);
 
                         if (null == inclusion) {
                             /* 对应变量在新参数中没有，删除grounding */
                             grounding_itr.remove();
                         } else {
                             /* 将对应的值添加在grounding末尾 */
-                            final PredicateCache new_pred_cache = new PredicateCache(
-                                    new Predicate(newPredicate.functor, newPredicate.arity())
-                            );
-                            new_pred_cache.predicate.args[argIdx] = compared_argument;
+                            final PredicateCache new_pred_cache = new PredicateCache(newPredicate.arity());
+                            new_pred_cache.args[argIdx] = compared_value;
                             new_pred_cache.inclusion = inclusion;  // copy on write
                             grounding.add(new_pred_cache);
                         }
@@ -262,12 +254,10 @@ public class SpecificCachedRule extends CachedRule {
             while (grounding_itr.hasNext()) {
                 final List<PredicateCache> grounding = grounding_itr.next();
                 grounding_itr.remove();
-                for (Map.Entry<String, Set<Predicate>> entry: arg_indices_map.entrySet()) {
+                for (Map.Entry<Integer, Set<Record>> entry: arg_indices_map.entrySet()) {
                     final List<PredicateCache> new_grounding = dupGrounding(grounding, true);
-                    final PredicateCache new_pred_cache = new PredicateCache(
-                            new Predicate(newPredicate.functor, newPredicate.arity())
-                    );
-                    new_pred_cache.predicate.args[argIdx] = new Constant(CONSTANT_ARG_ID, entry.getKey());
+                    final PredicateCache new_pred_cache = new PredicateCache(newPredicate.arity());
+                    new_pred_cache.args[argIdx] = entry.getKey();
                     new_pred_cache.inclusion.addAll(entry.getValue());
                     new_grounding.add(new_pred_cache);
                     grounding_itr.add(new_grounding);
@@ -318,29 +308,22 @@ public class SpecificCachedRule extends CachedRule {
             while (grounding_itr.hasNext()) {
                 final List<PredicateCache> grounding = grounding_itr.next();
                 final PredicateCache target_pred_cache = grounding.get(predIdx1);
-                final Map<String, Set<Predicate>> inclusion_map = new HashMap<>();
-                for (Predicate predicate: target_pred_cache.inclusion) {
-                    final Argument argument1 = predicate.args[argIdx1];
-                    final Argument argument2 = predicate.args[argIdx2];
-                    if (argument1.name.equals(argument2.name)) {
-                        inclusion_map.compute(argument1.name, (constant, set) -> {
-                            if (null == set) {
-                                set = new HashSet<>();
-                            }
-                            set.add(predicate);
-                            return set;
-                        });
+                final Map<Integer, Set<Record>> inclusion_map = new HashMap<>();
+                for (Record record: target_pred_cache.inclusion) {
+                    final int value1 = record.args[argIdx1];
+                    if (value1 == record.args[argIdx2]) {
+                        inclusion_map.computeIfAbsent(value1, k -> new HashSet<>()).add(record);
                     }
                 }
 
                 /* 展开原有grounding */
                 grounding_itr.remove();
-                for (Map.Entry<String, Set<Predicate>> entry: inclusion_map.entrySet()) {
+                for (Map.Entry<Integer, Set<Record>> entry: inclusion_map.entrySet()) {
                     final List<PredicateCache> new_grounding = dupGrounding(grounding, bodyOnly);
                     final PredicateCache new_target_pred_cache = new_grounding.get(predIdx1);
-                    final Constant constant = new Constant(CONSTANT_ARG_ID, entry.getKey());
-                    new_target_pred_cache.predicate.args[argIdx1] = constant;
-                    new_target_pred_cache.predicate.args[argIdx2] = constant;
+                    final int constant = entry.getKey();
+                    new_target_pred_cache.args[argIdx1] = constant;
+                    new_target_pred_cache.args[argIdx2] = constant;
                     grounding_itr.add(new_grounding);
                 }
             }
@@ -352,38 +335,24 @@ public class SpecificCachedRule extends CachedRule {
 
                     /* 分别找出参数常量值范围 */
                     final PredicateCache target_pred_cache1 = grounding.get(predIdx1);
-                    final Map<String, Set<Predicate>> inclusion_map1 = new HashMap<>();
-                    for (Predicate predicate : target_pred_cache1.inclusion) {
-                        final Argument argument1 = predicate.args[argIdx1];
-                        inclusion_map1.compute(argument1.name, (constant, set) -> {
-                            if (null == set) {
-                                set = new HashSet<>();
-                            }
-                            set.add(predicate);
-                            return set;
-                        });
+                    final Map<Integer, Set<Record>> inclusion_map1 = new HashMap<>();
+                    for (Record record : target_pred_cache1.inclusion) {
+                        inclusion_map1.computeIfAbsent(record.args[argIdx1], k -> new HashSet<>()).add(record);
                     }
 
                     final PredicateCache target_pred_cache2 = grounding.get(predIdx2);
-                    final Map<String, Set<Predicate>> inclusion_map2 = new HashMap<>();
-                    for (Predicate predicate : target_pred_cache2.inclusion) {
-                        final Argument argument2 = predicate.args[argIdx2];
-                        inclusion_map2.compute(argument2.name, (constant, set) -> {
-                            if (null == set) {
-                                set = new HashSet<>();
-                            }
-                            set.add(predicate);
-                            return set;
-                        });
+                    final Map<Integer, Set<Record>> inclusion_map2 = new HashMap<>();
+                    for (Record record : target_pred_cache2.inclusion) {
+                        inclusion_map2.computeIfAbsent(record.args[argIdx2], k -> new HashSet<>()).add(record);
                     }
 
                     /* 做交叉 */
                     final int comparing_pred_idx;
                     final int comparing_arg_idx;
-                    final Map<String, Set<Predicate>> comparing_map;
+                    final Map<Integer, Set<Record>> comparing_map;
                     final int compared_pred_idx;
                     final int compared_arg_idx;
-                    final Map<String, Set<Predicate>> compared_map;
+                    final Map<Integer, Set<Record>> compared_map;
                     if (inclusion_map1.size() <= inclusion_map2.size()) {
                         comparing_pred_idx = predIdx1;
                         comparing_arg_idx = argIdx1;
@@ -400,20 +369,19 @@ public class SpecificCachedRule extends CachedRule {
                         compared_map = inclusion_map1;
                     }
                     grounding_itr.remove();
-                    for (Map.Entry<String, Set<Predicate>> entry : comparing_map.entrySet()) {
-                        final String constant_symbol = entry.getKey();
-                        final Set<Predicate> compared_inclusion = compared_map.get(constant_symbol);
+                    for (Map.Entry<Integer, Set<Record>> entry : comparing_map.entrySet()) {
+                        final int constant = entry.getKey();
+                        final Set<Record> compared_inclusion = compared_map.get(constant);
                         if (null != compared_inclusion) {
-                            final Set<Predicate> comparing_inclusion = entry.getValue();
-                            final Constant constant = new Constant(CONSTANT_ARG_ID, constant_symbol);
+                            final Set<Record> comparing_inclusion = entry.getValue();
 
                             final List<PredicateCache> new_grounding = dupGrounding(grounding, bodyOnly);
                             final PredicateCache comparing_pred_cache = new_grounding.get(comparing_pred_idx);
-                            comparing_pred_cache.predicate.args[comparing_arg_idx] = constant;
+                            comparing_pred_cache.args[comparing_arg_idx] = constant;
                             comparing_pred_cache.inclusion = comparing_inclusion;
 
                             final PredicateCache compared_pred_cache = new_grounding.get(compared_pred_idx);
-                            compared_pred_cache.predicate.args[compared_arg_idx] = constant;
+                            compared_pred_cache.args[compared_arg_idx] = constant;
                             compared_pred_cache.inclusion = compared_inclusion;
 
                             grounding_itr.add(new_grounding);
@@ -436,28 +404,19 @@ public class SpecificCachedRule extends CachedRule {
                     final List<PredicateCache> grounding = grounding_itr.next();
                     final PredicateCache target_pred_cache = grounding.get(pred_idx);
 
-                    final Map<String, Set<Predicate>> inclusion_map = new HashMap<>();
-                    for (Predicate predicate: target_pred_cache.inclusion) {
-                        final Argument argument = predicate.args[arg_idx];
-                        inclusion_map.compute(argument.name, (constant, set) -> {
-                            if (null == set) {
-                                set = new HashSet<>();
-                            }
-                            set.add(predicate);
-                            return set;
-                        });
+                    final Map<Integer, Set<Record>> inclusion_map = new HashMap<>();
+                    for (Record record: target_pred_cache.inclusion) {
+                        inclusion_map.computeIfAbsent(record.args[arg_idx], k -> new HashSet<>()).add(record);
                     }
 
                     if (1 == inclusion_map.size()) {
-                        target_pred_cache.predicate.args[arg_idx] = new Constant(
-                                CONSTANT_ARG_ID, inclusion_map.keySet().iterator().next()
-                        );
+                        target_pred_cache.args[arg_idx] = inclusion_map.keySet().iterator().next();
                     } else {
                         grounding_itr.remove();
-                        for (Map.Entry<String, Set<Predicate>> entry : inclusion_map.entrySet()) {
+                        for (Map.Entry<Integer, Set<Record>> entry : inclusion_map.entrySet()) {
                             final List<PredicateCache> new_grounding = dupGrounding(grounding, true);
                             final PredicateCache new_target_pred_cache = new_grounding.get(pred_idx);
-                            new_target_pred_cache.predicate.args[arg_idx] = new Constant(CONSTANT_ARG_ID, entry.getKey());
+                            new_target_pred_cache.args[arg_idx] = entry.getKey();
                             new_target_pred_cache.inclusion = entry.getValue();
                             grounding_itr.add(new_grounding);
                         }
@@ -503,18 +462,16 @@ public class SpecificCachedRule extends CachedRule {
 
         /* 而且在这种情况下，predIdx1 != predIdx2 */
         final ListIterator<List<PredicateCache>> grounding_itr = grounding_list.listIterator();
-        final Map<String, Set<Predicate>> inclusion_map1 = kb.getArgIndices(newPredicate.functor, argIdx1);
+        final Map<Integer, Set<Record>> inclusion_map1 = kb.getRecordIndices(newPredicate.functor, argIdx1);
         if (bodyOnly && HEAD_PRED_IDX == predIdx2) {
             /* 按值直接扩展 */
             while (grounding_itr.hasNext()) {
                 final List<PredicateCache> grounding = grounding_itr.next();
                 grounding_itr.remove();
-                for (Map.Entry<String, Set<Predicate>> entry: inclusion_map1.entrySet()) {
+                for (Map.Entry<Integer, Set<Record>> entry: inclusion_map1.entrySet()) {
                     final List<PredicateCache> new_grounding = dupGrounding(grounding, true);
-                    final PredicateCache new_pred_cache = new PredicateCache(
-                            new Predicate(newPredicate.functor, newPredicate.arity())
-                    );
-                    new_pred_cache.predicate.args[argIdx1] = new Constant(CONSTANT_ARG_ID, entry.getKey());
+                    final PredicateCache new_pred_cache = new PredicateCache(newPredicate.arity());
+                    new_pred_cache.args[argIdx1] = entry.getKey();
                     new_pred_cache.inclusion = entry.getValue();  // copy on write
                     new_grounding.add(new_pred_cache);
                     grounding_itr.add(new_grounding);
@@ -527,25 +484,18 @@ public class SpecificCachedRule extends CachedRule {
 
                 /* 找出参数常量值范围 */
                 final PredicateCache target_pred_cache2 = grounding.get(predIdx2);
-                final Map<String, Set<Predicate>> inclusion_map2 = new HashMap<>();
-                for (Predicate predicate : target_pred_cache2.inclusion) {
-                    final Argument argument2 = predicate.args[argIdx2];
-                    inclusion_map2.compute(argument2.name, (constant, set) -> {
-                        if (null == set) {
-                            set = new HashSet<>();
-                        }
-                        set.add(predicate);
-                        return set;
-                    });
+                final Map<Integer, Set<Record>> inclusion_map2 = new HashMap<>();
+                for (Record record : target_pred_cache2.inclusion) {
+                    inclusion_map2.computeIfAbsent(record.args[argIdx2], k -> new HashSet<>()).add(record);
                 }
 
                 /* 做交叉 */
                 final int comparing_pred_idx;
                 final int comparing_arg_idx;
-                final Map<String, Set<Predicate>> comparing_map;
+                final Map<Integer, Set<Record>> comparing_map;
                 final int compared_pred_idx;
                 final int compared_arg_idx;
-                final Map<String, Set<Predicate>> compared_map;
+                final Map<Integer, Set<Record>> compared_map;
                 if (inclusion_map1.size() <= inclusion_map2.size()) {
                     comparing_pred_idx = predIdx1;
                     comparing_arg_idx = argIdx1;
@@ -562,24 +512,21 @@ public class SpecificCachedRule extends CachedRule {
                     compared_map = inclusion_map1;
                 }
                 grounding_itr.remove();
-                for (Map.Entry<String, Set<Predicate>> entry : comparing_map.entrySet()) {
-                    final String constant_symbol = entry.getKey();
-                    final Set<Predicate> compared_inclusion = compared_map.get(constant_symbol);
+                for (Map.Entry<Integer, Set<Record>> entry : comparing_map.entrySet()) {
+                    final int constant = entry.getKey();
+                    final Set<Record> compared_inclusion = compared_map.get(constant);
                     if (null != compared_inclusion) {
-                        final Set<Predicate> comparing_inclusion = entry.getValue();
-                        final Constant constant = new Constant(CONSTANT_ARG_ID, constant_symbol);
+                        final Set<Record> comparing_inclusion = entry.getValue();
 
                         final List<PredicateCache> new_grounding = dupGrounding(grounding, bodyOnly);
-                        new_grounding.add(new PredicateCache(
-                                new Predicate(newPredicate.functor, newPredicate.arity())
-                        ));
+                        new_grounding.add(new PredicateCache(newPredicate.arity()));
 
                         final PredicateCache comparing_pred_cache = new_grounding.get(comparing_pred_idx);
-                        comparing_pred_cache.predicate.args[comparing_arg_idx] = constant;
+                        comparing_pred_cache.args[comparing_arg_idx] = constant;
                         comparing_pred_cache.inclusion = comparing_inclusion;
 
                         final PredicateCache compared_pred_cache = new_grounding.get(compared_pred_idx);
-                        compared_pred_cache.predicate.args[compared_arg_idx] = constant;
+                        compared_pred_cache.args[compared_arg_idx] = constant;
                         compared_pred_cache.inclusion = compared_inclusion;
 
                         grounding_itr.add(new_grounding);
@@ -626,22 +573,21 @@ public class SpecificCachedRule extends CachedRule {
         }
 
         /* 过滤所有grounding */
-        final Constant constant = new Constant(CONSTANT_ARG_ID, constantSymbol);
+        final int constant = kb.name2Num(constantSymbol);
         final Iterator<List<PredicateCache>> grounding_itr = grounding_list.iterator();
         while (grounding_itr.hasNext()) {
             final List<PredicateCache> grounding = grounding_itr.next();
             final PredicateCache target_pred_cache = grounding.get(predIdx);
-            final Set<Predicate> filtered_inclusion = new HashSet<>();
-            for (Predicate predicate: target_pred_cache.inclusion) {
-                final Argument argument = predicate.args[argIdx];
-                if (constantSymbol.equals(argument.name)) {
-                    filtered_inclusion.add(predicate);
+            final Set<Record> filtered_inclusion = new HashSet<>();
+            for (Record record: target_pred_cache.inclusion) {
+                if (constant == record.args[argIdx]) {
+                    filtered_inclusion.add(record);
                 }
             }
             if (filtered_inclusion.isEmpty()) {
                 grounding_itr.remove();
             } else {
-                target_pred_cache.predicate.args[argIdx] = constant;
+                target_pred_cache.args[argIdx] = constant;
                 target_pred_cache.inclusion = filtered_inclusion;  // copy on write
             }
         }
@@ -649,17 +595,16 @@ public class SpecificCachedRule extends CachedRule {
 
     @Override
     protected double factCoverage() {
-        final Set<Predicate> entailed_head = new HashSet<>();
+        final String head_functor = structure.get(HEAD_PRED_IDX).functor;
+        final RoaringBitmap entailed_head = new RoaringBitmap();
         for (final List<PredicateCache> grounding_cache: groundings) {
             final PredicateCache head_pred_cache = grounding_cache.get(HEAD_PRED_IDX);
-            for (Predicate head_pred: head_pred_cache.inclusion) {
-                if (!kb.hasProved(head_pred)) {
-                    entailed_head.add(head_pred);
-                }
+            for (Record head_record: head_pred_cache.inclusion) {
+                entailed_head.add(kb.recordId(head_functor, head_record));
             }
         }
-        return ((double) entailed_head.size()) /
-                kb.getAllFacts(structure.get(HEAD_PRED_IDX).functor).size();
+        final int newly_proved = entailed_head.cardinality() - kb.countProved(head_functor, entailed_head);
+        return ((double) newly_proved) / kb.getAllRecords(head_functor).size();
     }
 
     @Override
@@ -703,15 +648,14 @@ public class SpecificCachedRule extends CachedRule {
         cacheMonitor.preComputingCostInNano += time_pre_done - time_query_begin;
 
         /* 计算all entail的数量 */
-        final Set<ArrayList<String>> body_bv_bindings = new HashSet<>();
+        final Set<Record> body_bv_bindings = new HashSet<>();
         for (final List<PredicateCache> grounding_body: groundingsBody) {
-            final ArrayList<String> binding = new ArrayList<>(body_gv_pos.size());
-            for (final PredArgPos pos: body_gv_pos) {
-                final Predicate body_pred = grounding_body.get(pos.predIdx).predicate;
-                final Argument argument = body_pred.args[pos.argIdx];
-                binding.add(argument.name);
+            final int[] binding = new int[body_gv_pos.size()];
+            for (int i = 0; i < binding.length; i++) {
+                final PredArgPos pos = body_gv_pos.get(i);
+                binding[i] = grounding_body.get(pos.predIdx).args[pos.argIdx];
             }
-            body_bv_bindings.add(binding);
+            body_bv_bindings.add(new Record(binding));
         }
         final double all_entails = body_bv_bindings.size() * Math.pow(
                 kb.totalConstants(), head_fv_cnt + head_vars.size()
@@ -719,29 +663,21 @@ public class SpecificCachedRule extends CachedRule {
         final long time_all_entail_done = System.nanoTime();
         cacheMonitor.allEntailQueryCostInNano += time_all_entail_done - time_pre_done;
 
-        /* 计算new pos entail的数量 */
-        final Set<Predicate> newly_proved = new HashSet<>();
-        final Set<Predicate> already_proved = new HashSet<>();
+        /* 计算new pos entail的数量，被蕴含的head按事实编号放入位图，与已经被证明的事实求交集 */
+        final RoaringBitmap entailed_head = new RoaringBitmap();
         if (0 == head_fv_cnt) {
             for (final List<PredicateCache> grounding : groundings) {
-                final Predicate predicate = grounding.get(HEAD_PRED_IDX).predicate;
-                if (!kb.hasProved(predicate)) {
-                    newly_proved.add(predicate);
-                } else {
-                    already_proved.add(predicate);
-                }
+                entailed_head.add(kb.recordId(head_pred.functor, new Record(grounding.get(HEAD_PRED_IDX).args)));
             }
         } else {
             for (final List<PredicateCache> grounding: groundings) {
-                for (Predicate predicate: grounding.get(HEAD_PRED_IDX).inclusion) {
-                    if (!kb.hasProved(predicate)) {
-                        newly_proved.add(predicate);
-                    } else {
-                        already_proved.add(predicate);
-                    }
+                for (Record record: grounding.get(HEAD_PRED_IDX).inclusion) {
+                    entailed_head.add(kb.recordId(head_pred.functor, record));
                 }
             }
         }
+        final int already_proved = kb.countProved(head_pred.functor, entailed_head);
+        final int newly_proved = entailed_head.cardinality() - already_proved;
         final long time_pos_entail_done = System.nanoTime();
         cacheMonitor.posEntailQueryCostInNano += time_pos_entail_done - time_all_entail_done;
 
@@ -749,7 +685,7 @@ public class SpecificCachedRule extends CachedRule {
                 groundings.size(), groundingsBody.size(), 0
         ));
         cacheMonitor.evalStats.add(new Eval(
-                eval, newly_proved.size(), all_entails - already_proved.size(), size()
+                eval, newly_proved, all_entails - already_proved, size()
         ));
 
 //        /* 用HC剪枝 */
@@ -761,7 +697,7 @@ public class SpecificCachedRule extends CachedRule {
         /* 更新eval */
         /* all entailments中需要刨除已经被证明的，否则这些默认被算作了counter examples的数量 */
         return new Eval(
-                eval, newly_proved.size(), all_entails - already_proved.size(), size()
+                eval, newly_proved, all_entails - already_proved, size()
         );
     }
 
@@ -777,7 +713,7 @@ public class SpecificCachedRule extends CachedRule {
                 this.headVarLocs = headVarLocs;
             }
         }
-        final Set<Predicate> counter_example_set = new HashSet<>();
+        final Set<Record> counter_example_set = new HashSet<>();
 
         /* 统计head中的变量信息 */
         /* 如果是FV，则创建具体变量，方便替换 */
@@ -785,6 +721,7 @@ public class SpecificCachedRule extends CachedRule {
         final Map<Integer, List<Integer>> head_var_2_loc_map = new HashMap<>();
         int fv_id = boundedVars.size();
         final Predicate head_pred = new Predicate(getHead());
+        final int[] head_args = new int[head_pred.arity()];  // 常量的位置替换为编号，变量的位置之后再赋值
         for (int arg_idx = 0; arg_idx < head_pred.arity(); arg_idx++) {
             final Argument argument = head_pred.args[arg_idx];
             if (null == argument) {
@@ -800,6 +737,8 @@ public class SpecificCachedRule extends CachedRule {
                         locs.add(idx);
                         return locs;
                     });
+                } else {
+                    head_args[arg_idx] = kb.name2Num(argument.name);
                 }
             }
         }
@@ -836,40 +775,42 @@ public class SpecificCachedRule extends CachedRule {
             /* 没有body */
             if (0 == head_only_var_locs.length) {
                 /* head中全是常量 */
-                if (!kb.containsFact(head_pred)) {
-                    counter_example_set.add(head_pred);
+                final Record head_record = new Record(head_args);
+                if (!kb.containsRecord(head_pred.functor, head_record)) {
+                    counter_example_set.add(head_record);
                 }
             } else {
                 /* head中有变量，而且全部当做自由变量处理 */
-                iterate4CounterExamples(counter_example_set, head_pred, 0, head_only_var_locs);
+                iterate4CounterExamples(counter_example_set, head_pred.functor, head_args, 0, head_only_var_locs);
             }
         } else {
             /* 找到所有head template */
-            final Set<Predicate> head_templates = new HashSet<>();
+            final Set<Record> head_templates = new HashSet<>();
             for (final List<PredicateCache> grounding_body : groundingsBody) {
-                final Predicate head_template = new Predicate(head_pred);
+                final int[] head_template = head_args.clone();
                 for (final GVBindingInfo pos : body_gv_pos) {
-                    final Predicate body_pred = grounding_body.get(pos.bodyPredIdx).predicate;
-                    final Argument argument = body_pred.args[pos.bodyArgIdx];
+                    final int value = grounding_body.get(pos.bodyPredIdx).args[pos.bodyArgIdx];
                     for (int loc: pos.headVarLocs) {
-                        head_template.args[loc] = argument;
+                        head_template[loc] = value;
                     }
                 }
-                head_templates.add(head_template);
+                head_templates.add(new Record(head_template));
             }
 
             /* 遍历head template 找反例 */
             if (0 == head_only_var_locs.length) {
                 /* 不需要替换变量 */
-                for (Predicate head_template : head_templates) {
-                    if (!kb.containsFact(head_template)) {
+                for (Record head_template : head_templates) {
+                    if (!kb.containsRecord(head_pred.functor, head_template)) {
                         counter_example_set.add(head_template);
                     }
                 }
             } else {
                 /* 需要替换head中的变量 */
-                for (Predicate head_template: head_templates) {
-                    iterate4CounterExamples(counter_example_set, head_template, 0, head_only_var_locs);
+                for (Record head_template: head_templates) {
+                    iterate4CounterExamples(
+                            counter_example_set, head_pred.functor, head_template.args, 0, head_only_var_locs
+                    );
                 }
             }
         }
@@ -880,29 +821,37 @@ public class SpecificCachedRule extends CachedRule {
                 groundings.size(), groundingsBody.size(), 0
         ));
 
-        return counter_example_set;
+        /* 将编号还原为常量符号 */
+        final Set<Predicate> counter_examples = new HashSet<>();
+        for (Record record: counter_example_set) {
+            counter_examples.add(record2Predicate(head_pred, record));
+        }
+        return counter_examples;
     }
 
     protected List<Predicate[]> findGroundings() {
         final long pos_entail_begin = System.nanoTime();
         final List<Predicate[]> grounding_list = new ArrayList<>();
-        final Set<Predicate> entailed_head = new HashSet<>();
+        final String head_functor = structure.get(HEAD_PRED_IDX).functor;
+        final Set<Record> entailed_head = new HashSet<>();
         for (final List<PredicateCache> grounding_cache: groundings) {
             /* 找出grounding body */
             final Predicate[] grounding_body = new Predicate[structure.size()];
             for (int pred_idx = FIRST_BODY_PRED_IDX; pred_idx < structure.size(); pred_idx++) {
                 final PredicateCache pred_cache = grounding_cache.get(pred_idx);
-                grounding_body[pred_idx] = pred_cache.inclusion.iterator().next();
+                grounding_body[pred_idx] = kb.toPredicate(
+                        structure.get(pred_idx).functor, pred_cache.inclusion.iterator().next()
+                );
             }
 
             /* 构造其所有的head */
             final PredicateCache head_pred_cache = grounding_cache.get(HEAD_PRED_IDX);
-            for (Predicate head_pred: head_pred_cache.inclusion) {
-                if (!kb.hasProved(head_pred) && entailed_head.add(head_pred)) {
+            for (Record head_record: head_pred_cache.inclusion) {
+                if (!kb.hasProved(head_functor, head_record) && entailed_head.add(head_record)) {
                     final Predicate[] grounding = dupGrounding(grounding_body, true);
-                    grounding[HEAD_PRED_IDX] = head_pred;
+                    grounding[HEAD_PRED_IDX] = kb.toPredicate(head_functor, head_record);
                     grounding_list.add(grounding);
-                    kb.proveFact(head_pred);
+                    kb.proveRecord(head_functor, head_record);
                 }
             }
         }
@@ -911,6 +860,37 @@ public class SpecificCachedRule extends CachedRule {
         return grounding_list;
     }
 
+    @Override
+    public long cacheBytes() {
+        if (null == groundings) {
+            return 0;
+        }
+        final Set<Set<Record>> counted_inclusions = Collections.newSetFromMap(new IdentityHashMap<>());
+        return groundingsBytes(groundings, counted_inclusions) + groundingsBytes(groundingsBody, counted_inclusions);
+    }
+
+    private static long groundingsBytes(
+            List<List<PredicateCache>> groundingList, Set<Set<Record>> countedInclusions
+    ) {
+        final long node_bytes = MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 3 * MemoryEstimator.REFERENCE);
+        final long cache_bytes = MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 2 * MemoryEstimator.REFERENCE);
+        long bytes = 0;
+        for (List<PredicateCache> grounding: groundingList) {
+            bytes += node_bytes + MemoryEstimator.align(MemoryEstimator.OBJECT_HEADER + 2 * Integer.BYTES + MemoryEstimator.REFERENCE) +
+                    MemoryEstimator.referenceArrayBytes(grounding.size());
+            for (PredicateCache pred_cache: grounding) {
+                if (null == pred_cache) {
+                    continue;  // groundingsBody中head的位置
+                }
+                bytes += cache_bytes + MemoryEstimator.intArrayBytes(pred_cache.args.length);
+                if (countedInclusions.add(pred_cache.inclusion)) {
+                    bytes += MemoryEstimator.recordSetBytes(pred_cache.inclusion, pred_cache.args.length);
+                }
+            }
+        }
+        return bytes;
+    }
+
     @Override
     protected void releaseCache() {
         groundings = null;
@@ -940,33 +920,46 @@ public class SpecificCachedRule extends CachedRule {
         return new_grounding;
     }
 
+    /**
+     * 将编号形式的head还原为Predicate，规则中的常量直接沿用规则中的参数（该常量可能不在KB中）
+     */
+    private Predicate record2Predicate(final Predicate headPred, final Record record) {
+        final Predicate predicate = new Predicate(headPred.functor, record.args.length);
+        for (int arg_idx = 0; arg_idx < record.args.length; arg_idx++) {
+            final Argument argument = headPred.args[arg_idx];
+            predicate.args[arg_idx] = (null != argument && !argument.isVar) ? argument :
+                    new Constant(CONSTANT_ARG_ID, kb.num2Name(record.args[arg_idx]));
+        }
+        return predicate;
+    }
+
     private void iterate4CounterExamples(
-            final Set<Predicate> counterExamples, final Predicate template, final int idx,
+            final Set<Record> counterExamples, final String functor, final int[] template, final int idx,
             final Integer[][] varLocs
     ) {
         final Integer[] locations = varLocs[idx];
+        final int max_num = kb.getNumerationMap().maxNum();
         if (idx < varLocs.length - 1) {
             /* 递归 */
-            for (String constant_symbol: kb.allConstants()) {
-                final Constant constant = new Constant(CONSTANT_ARG_ID, constant_symbol);
+            for (int constant = 1; constant <= max_num; constant++) {
                 for (int loc: locations) {
-                    template.args[loc] = constant;
+                    template[loc] = constant;
                 }
                 iterate4CounterExamples(
-                        counterExamples, template, idx + 1, varLocs
+                        counterExamples, functor, template, idx + 1, varLocs
                 );
             }
         } else {
             /* 已经到了最后的位置，不递归，完成后检查是否是Counter Example */
-            for (String constant_symbol: kb.allConstants()) {
-                final Constant constant = new Constant(CONSTANT_ARG_ID, constant_symbol);
+            for (int constant = 1; constant <= max_num; constant++) {
                 for (int loc: locations) {
-                    template.args[loc] = constant;
+                    template[loc] = constant;
                 }
-                if (!kb.containsFact(template)) {
-                    counterExamples.add(new Predicate(template));
+                final Record record = new Record(template.clone());
+                if (!kb.containsRecord(functor, record)) {
+                    counterExamples.add(record);
                 }
             }
         }
     }
-}
\ No newline at end of file
+}
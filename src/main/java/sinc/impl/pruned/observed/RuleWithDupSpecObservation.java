@@ -5,6 +5,7 @@ import sinc.common.Rule;
 import sinc.common.RuleFingerPrint;
 import sinc.impl.cached.MemKB;
 import sinc.impl.pruned.tabu.TabuAwareRule;
+import sinc.impl.pruned.tabu.TabuAwareRuleMonitor;
 import sinc.util.MultiSet;
 
 import java.io.PrintWriter;
@@ -23,9 +24,10 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
 
     public RuleWithDupSpecObservation(
             String headFunctor, Map<RuleFingerPrint, Rule> cache, MemKB kb, Map<MultiSet<String>,
-            Set<RuleFingerPrint>> category2TabuSetMap, PrintWriter dupRuleWriter, PrintWriter specRuleWriter
+            Set<RuleFingerPrint>> category2TabuSetMap, TabuAwareRuleMonitor tabuAwareMonitor,
+            PrintWriter dupRuleWriter, PrintWriter specRuleWriter
     ) {
-        super(headFunctor, uselessCache, kb, category2TabuSetMap);
+        super(headFunctor, uselessCache, kb, category2TabuSetMap, tabuAwareMonitor);
         this.searchedFingerprints = cache;
         this.dupRuleWriter = dupRuleWriter;
         this.specRuleWriter = specRuleWriter;
@@ -47,6 +49,12 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         return r;
     }
 
+    @Override
+    public boolean rollbackSupported() {
+        /* 修改时会把自身放入searchedFingerprints，必须在clone出的规则上修改 */
+        return false;
+    }
+
     public UpdateStatus boundFreeVar2ExistingVar(
             final int predIdx, final int argIdx, final int varId
     ) {
@@ -54,7 +62,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVar2ExistingVarUpdateStructure(predIdx, argIdx, varId);
         long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        tabuAwareMonitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
         Rule dup_rule = searchedFingerprints.get(fingerPrint);
@@ -65,7 +73,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
             searchedFingerprints.put(fingerPrint, this);
         }
         long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        tabuAwareMonitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (null != dup_rule) {
             return UpdateStatus.DUPLICATED;
         }
@@ -73,7 +81,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        tabuAwareMonitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
@@ -81,15 +89,20 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 检查是否被tabu剪枝 */
         boolean tabu_hit = tabuHit();
         long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
+        tabuAwareMonitor.tabuCheckCostInNano.add(time_tabu_checked_nano - time_valid_checked_nano);
         if (tabu_hit) {
             return UpdateStatus.TABU_PRUNED;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVar2ExistingVarHandler(predIdx, argIdx, varId);
         long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
+        tabuAwareMonitor.updateHandlerTimeNano.add(time_updated_nano - time_tabu_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -97,7 +110,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        tabuAwareMonitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -108,7 +121,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVar2ExistingVarUpdateStructure(functor, arity, argIdx, varId);
         long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        tabuAwareMonitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
         Rule dup_rule = searchedFingerprints.get(fingerPrint);
@@ -119,7 +132,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
             searchedFingerprints.put(fingerPrint, this);
         }
         long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        tabuAwareMonitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (null != dup_rule) {
             return UpdateStatus.DUPLICATED;
         }
@@ -127,7 +140,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        tabuAwareMonitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
@@ -135,15 +148,20 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 检查是否被tabu剪枝 */
         boolean tabu_hit = tabuHit();
         long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
+        tabuAwareMonitor.tabuCheckCostInNano.add(time_tabu_checked_nano - time_valid_checked_nano);
         if (tabu_hit) {
             return UpdateStatus.TABU_PRUNED;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVar2ExistingVarHandler(structure.get(structure.size() - 1), argIdx, varId);
         long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
+        tabuAwareMonitor.updateHandlerTimeNano.add(time_updated_nano - time_tabu_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -151,7 +169,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        tabuAwareMonitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -162,7 +180,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVars2NewVarUpdateStructure(predIdx1, argIdx1, predIdx2, argIdx2);
         long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        tabuAwareMonitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
         Rule dup_rule = searchedFingerprints.get(fingerPrint);
@@ -173,7 +191,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
             searchedFingerprints.put(fingerPrint, this);
         }
         long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        tabuAwareMonitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (null != dup_rule) {
             return UpdateStatus.DUPLICATED;
         }
@@ -181,7 +199,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        tabuAwareMonitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
@@ -189,15 +207,20 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 检查是否被tabu剪枝 */
         boolean tabu_hit = tabuHit();
         long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
+        tabuAwareMonitor.tabuCheckCostInNano.add(time_tabu_checked_nano - time_valid_checked_nano);
         if (tabu_hit) {
             return UpdateStatus.TABU_PRUNED;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVars2NewVarHandler(predIdx1, argIdx1, predIdx2, argIdx2);
         long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
+        tabuAwareMonitor.updateHandlerTimeNano.add(time_updated_nano - time_tabu_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -205,7 +228,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        tabuAwareMonitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -216,7 +239,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVars2NewVarUpdateStructure(functor, arity, argIdx1, predIdx2, argIdx2);
         long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        tabuAwareMonitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
         Rule dup_rule = searchedFingerprints.get(fingerPrint);
@@ -227,7 +250,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
             searchedFingerprints.put(fingerPrint, this);
         }
         long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        tabuAwareMonitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (null != dup_rule) {
             return UpdateStatus.DUPLICATED;
         }
@@ -235,7 +258,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        tabuAwareMonitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
@@ -243,17 +266,22 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 检查是否被tabu剪枝 */
         boolean tabu_hit = tabuHit();
         long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
+        tabuAwareMonitor.tabuCheckCostInNano.add(time_tabu_checked_nano - time_valid_checked_nano);
         if (tabu_hit) {
             return UpdateStatus.TABU_PRUNED;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVars2NewVarHandler(
                 structure.get(structure.size() - 1), argIdx1, predIdx2, argIdx2
         );
         long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
+        tabuAwareMonitor.updateHandlerTimeNano.add(time_updated_nano - time_tabu_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -261,7 +289,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        tabuAwareMonitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -270,7 +298,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVar2ConstantUpdateStructure(predIdx, argIdx, constantSymbol);
         long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        tabuAwareMonitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
         Rule dup_rule = searchedFingerprints.get(fingerPrint);
@@ -281,7 +309,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
             searchedFingerprints.put(fingerPrint, this);
         }
         long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        tabuAwareMonitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (null != dup_rule) {
             return UpdateStatus.DUPLICATED;
         }
@@ -289,7 +317,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        tabuAwareMonitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
@@ -297,15 +325,20 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 检查是否被tabu剪枝 */
         boolean tabu_hit = tabuHit();
         long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
+        tabuAwareMonitor.tabuCheckCostInNano.add(time_tabu_checked_nano - time_valid_checked_nano);
         if (tabu_hit) {
             return UpdateStatus.TABU_PRUNED;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVar2ConstantHandler(predIdx, argIdx, constantSymbol);
         long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
+        tabuAwareMonitor.updateHandlerTimeNano.add(time_updated_nano - time_tabu_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -313,7 +346,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        tabuAwareMonitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -324,7 +357,7 @@ public class RuleWithDupSpecObservation extends TabuAwareRule {
                 final Set<RuleFingerPrint> tabu_set = category2TabuSetMap.get(category_subset);
                 if (null == tabu_set) continue;
                 for (RuleFingerPrint rfp : tabu_set) {
-                    tabuAwareMonitor.tabuCompares++;
+                    tabuAwareMonitor.tabuCompares.increment();
                     if (rfp.predecessorOf(this.fingerPrint)) {
                         specRuleWriter.println(this.toDumpString());
                         specRuleWriter.println(toDumpString(rfp.rule));
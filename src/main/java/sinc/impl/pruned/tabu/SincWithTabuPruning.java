@@ -13,19 +13,29 @@ public class SincWithTabuPruning extends SincWithRecalculateCache {
     /* 每次迭代只保留下次生成的长度的tabu rules */
     protected Map<MultiSet<String>, Set<RuleFingerPrint>> category2TabuSetMap = new HashMap<>();
     protected final TabuMonitor tabuMonitor = new TabuMonitor();
+    protected final TabuAwareRuleMonitor tabuAwareMonitor = new TabuAwareRuleMonitor();
 
     public SincWithTabuPruning(SincConfig config, String kbPath, String dumpPath, String logPath) {
         super(config, kbPath, dumpPath, logPath);
-        TabuAwareRule.tabuAwareMonitor = new TabuAwareRuleMonitor();
     }
 
     @Override
     protected Rule getStartRule(String headFunctor, Set<RuleFingerPrint> cache) {
-        return new TabuAwareRule(headFunctor, cache, kb, category2TabuSetMap);
+        return new TabuAwareRule(headFunctor, cache, kb, category2TabuSetMap, tabuAwareMonitor);
+    }
+
+    /**
+     * tabu set在不同head之间共享，并且在每个head结束之后重置，只能顺序搜索
+     */
+    @Override
+    protected boolean concurrentTargetsSupported() {
+        return false;
     }
 
     @Override
     protected void targetDone(String functor) {
+        super.targetDone(functor);
+
         /* 在每个Head变换之后都需要Change Tabu set */
         int total_tabus = 0;
         for (Set<RuleFingerPrint> tabu_set: category2TabuSetMap.values()) {
@@ -57,7 +67,7 @@ public class SincWithTabuPruning extends SincWithRecalculateCache {
     protected void showMonitor() {
         super.showMonitor();
         tabuMonitor.show(logger);
-        TabuAwareRule.tabuAwareMonitor.show(logger);
+        tabuAwareMonitor.show(logger);
     }
 
     @Override
@@ -11,21 +11,29 @@ import java.util.Set;
 
 public class TabuAwareRule extends RecalculateCachedRule {
 
-    public static TabuAwareRuleMonitor tabuAwareMonitor = new TabuAwareRuleMonitor();
-
     protected final Map<MultiSet<String>, Set<RuleFingerPrint>> category2TabuSetMap;
+    protected final TabuAwareRuleMonitor tabuAwareMonitor;
 
     public TabuAwareRule(
             String headFunctor, Set<RuleFingerPrint> cache, MemKB kb,
             Map<MultiSet<String>, Set<RuleFingerPrint>> category2TabuSetMap
+    ) {
+        this(headFunctor, cache, kb, category2TabuSetMap, new TabuAwareRuleMonitor());
+    }
+
+    public TabuAwareRule(
+            String headFunctor, Set<RuleFingerPrint> cache, MemKB kb,
+            Map<MultiSet<String>, Set<RuleFingerPrint>> category2TabuSetMap, TabuAwareRuleMonitor tabuAwareMonitor
     ) {
         super(headFunctor, cache, kb);
         this.category2TabuSetMap = category2TabuSetMap;
+        this.tabuAwareMonitor = tabuAwareMonitor;
     }
 
     public TabuAwareRule(TabuAwareRule another) {
         super(another);
         this.category2TabuSetMap = another.category2TabuSetMap;
+        this.tabuAwareMonitor = another.tabuAwareMonitor;
     }
 
     @Override
@@ -37,6 +45,14 @@ public class TabuAwareRule extends RecalculateCachedRule {
         return r;
     }
 
+    /**
+     * tabu set在搜索过程中会被修改(见SincWithTabuPruning.recordRuleStatus)，只能顺序地评估扩展
+     */
+    @Override
+    public boolean concurrentEvaluationSupported() {
+        return false;
+    }
+
     protected boolean tabuHit() {
         boolean hit = false;
         for (int subset_size = 0; subset_size < structure.size(); subset_size++) {
@@ -44,7 +60,7 @@ public class TabuAwareRule extends RecalculateCachedRule {
                 final Set<RuleFingerPrint> tabu_set = category2TabuSetMap.get(category_subset);
                 if (null == tabu_set) continue;
                 for (RuleFingerPrint rfp : tabu_set) {
-                    tabuAwareMonitor.tabuCompares++;
+                    tabuAwareMonitor.tabuCompares.increment();
                     if (rfp.predecessorOf(this.fingerPrint)) {
                         hit = true;
                         break;
@@ -87,12 +103,12 @@ public class TabuAwareRule extends RecalculateCachedRule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVar2ExistingVarUpdateStructure(predIdx, argIdx, varId);
         long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        tabuAwareMonitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
         boolean cache_hit = !searchedFingerprints.add(fingerPrint);
         long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        tabuAwareMonitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (cache_hit) {
             return UpdateStatus.DUPLICATED;
         }
@@ -100,7 +116,7 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        tabuAwareMonitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
@@ -108,15 +124,20 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 检查是否被tabu剪枝 */
         boolean tabu_hit = tabuHit();
         long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
+        tabuAwareMonitor.tabuCheckCostInNano.add(time_tabu_checked_nano - time_valid_checked_nano);
         if (tabu_hit) {
             return UpdateStatus.TABU_PRUNED;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVar2ExistingVarHandler(predIdx, argIdx, varId);
         long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
+        tabuAwareMonitor.updateHandlerTimeNano.add(time_updated_nano - time_tabu_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -124,7 +145,7 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        tabuAwareMonitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -135,12 +156,12 @@ public class TabuAwareRule extends RecalculateCachedRule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVar2ExistingVarUpdateStructure(functor, arity, argIdx, varId);
         long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        tabuAwareMonitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
         boolean cache_hit = !searchedFingerprints.add(fingerPrint);
         long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        tabuAwareMonitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (cache_hit) {
             return UpdateStatus.DUPLICATED;
         }
@@ -148,7 +169,7 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        tabuAwareMonitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
@@ -156,15 +177,20 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 检查是否被tabu剪枝 */
         boolean tabu_hit = tabuHit();
         long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
+        tabuAwareMonitor.tabuCheckCostInNano.add(time_tabu_checked_nano - time_valid_checked_nano);
         if (tabu_hit) {
             return UpdateStatus.TABU_PRUNED;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVar2ExistingVarHandler(structure.get(structure.size() - 1), argIdx, varId);
         long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
+        tabuAwareMonitor.updateHandlerTimeNano.add(time_updated_nano - time_tabu_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -172,7 +198,7 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        tabuAwareMonitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -183,12 +209,12 @@ public class TabuAwareRule extends RecalculateCachedRule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVars2NewVarUpdateStructure(predIdx1, argIdx1, predIdx2, argIdx2);
         long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        tabuAwareMonitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
         boolean cache_hit = !searchedFingerprints.add(fingerPrint);
         long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        tabuAwareMonitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (cache_hit) {
             return UpdateStatus.DUPLICATED;
         }
@@ -196,7 +222,7 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        tabuAwareMonitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
@@ -204,15 +230,20 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 检查是否被tabu剪枝 */
         boolean tabu_hit = tabuHit();
         long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
+        tabuAwareMonitor.tabuCheckCostInNano.add(time_tabu_checked_nano - time_valid_checked_nano);
         if (tabu_hit) {
             return UpdateStatus.TABU_PRUNED;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVars2NewVarHandler(predIdx1, argIdx1, predIdx2, argIdx2);
         long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
+        tabuAwareMonitor.updateHandlerTimeNano.add(time_updated_nano - time_tabu_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -220,7 +251,7 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        tabuAwareMonitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -231,12 +262,12 @@ public class TabuAwareRule extends RecalculateCachedRule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVars2NewVarUpdateStructure(functor, arity, argIdx1, predIdx2, argIdx2);
         long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        tabuAwareMonitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
         boolean cache_hit = !searchedFingerprints.add(fingerPrint);
         long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        tabuAwareMonitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (cache_hit) {
             return UpdateStatus.DUPLICATED;
         }
@@ -244,7 +275,7 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        tabuAwareMonitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
@@ -252,17 +283,22 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 检查是否被tabu剪枝 */
         boolean tabu_hit = tabuHit();
         long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
+        tabuAwareMonitor.tabuCheckCostInNano.add(time_tabu_checked_nano - time_valid_checked_nano);
         if (tabu_hit) {
             return UpdateStatus.TABU_PRUNED;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVars2NewVarHandler(
                 structure.get(structure.size() - 1), argIdx1, predIdx2, argIdx2
         );
         long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
+        tabuAwareMonitor.updateHandlerTimeNano.add(time_updated_nano - time_tabu_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -270,7 +306,7 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        tabuAwareMonitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 
@@ -279,12 +315,12 @@ public class TabuAwareRule extends RecalculateCachedRule {
         long time_start_nano = System.nanoTime();
         fingerPrint = boundFreeVar2ConstantUpdateStructure(predIdx, argIdx, constantSymbol);
         long time_fp_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateFingerPrintTimeNano += time_fp_updated_nano - time_start_nano;
+        tabuAwareMonitor.updateFingerPrintTimeNano.add(time_fp_updated_nano - time_start_nano);
 
         /* 检查是否命中Cache */
         boolean cache_hit = !searchedFingerprints.add(fingerPrint);
         long time_cache_checked_nano = System.nanoTime();
-        tabuAwareMonitor.dupCheckTimeNano += time_cache_checked_nano - time_fp_updated_nano;
+        tabuAwareMonitor.dupCheckTimeNano.add(time_cache_checked_nano - time_fp_updated_nano);
         if (cache_hit) {
             return UpdateStatus.DUPLICATED;
         }
@@ -292,7 +328,7 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 检查合法性 */
         boolean invalid = isInvalid();
         long time_valid_checked_nano = System.nanoTime();
-        tabuAwareMonitor.validCheckTimeNano += time_valid_checked_nano - time_cache_checked_nano;
+        tabuAwareMonitor.validCheckTimeNano.add(time_valid_checked_nano - time_cache_checked_nano);
         if (invalid) {
             return UpdateStatus.INVALID;
         }
@@ -300,15 +336,20 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 检查是否被tabu剪枝 */
         boolean tabu_hit = tabuHit();
         long time_tabu_checked_nano = System.nanoTime();
-        tabuAwareMonitor.tabuCheckCostInNano += time_tabu_checked_nano - time_valid_checked_nano;
+        tabuAwareMonitor.tabuCheckCostInNano.add(time_tabu_checked_nano - time_valid_checked_nano);
         if (tabu_hit) {
             return UpdateStatus.TABU_PRUNED;
         }
 
+        /* 分支定界：乐观估计的得分也不能超过阈值的扩展不再更新cache */
+        if (boundPruned()) {
+            return UpdateStatus.BOUND_PRUNED;
+        }
+
         /* 执行handler */
         final UpdateStatus status = boundFreeVar2ConstantHandler(predIdx, argIdx, constantSymbol);
         long time_updated_nano = System.nanoTime();
-        tabuAwareMonitor.updateHandlerTimeNano += time_updated_nano - time_tabu_checked_nano;
+        tabuAwareMonitor.updateHandlerTimeNano.add(time_updated_nano - time_tabu_checked_nano);
         if (UpdateStatus.NORMAL != status) {
             return status;
         }
@@ -316,7 +357,7 @@ public class TabuAwareRule extends RecalculateCachedRule {
         /* 更新Eval */
         this.eval = calculateEval();
         long time_evaluated_nano = System.nanoTime();
-        tabuAwareMonitor.evalTimeNano += time_evaluated_nano - time_updated_nano;
+        tabuAwareMonitor.evalTimeNano.add(time_evaluated_nano - time_updated_nano);
         return UpdateStatus.NORMAL;
     }
 }
@@ -1,21 +1,25 @@
 package sinc.impl.pruned.tabu;
 
 import java.io.PrintWriter;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * 由一个SincWithTabuPruning对象所有，多个线程中的规则可以同时记录
+ */
 public class TabuAwareRuleMonitor {
 
     private static final int NANOS_PER_MILLI = 1000000;
 
     /* Rule Update Cost */
-    public long updateFingerPrintTimeNano = 0;
-    public long dupCheckTimeNano = 0;
-    public long validCheckTimeNano = 0;
-    public long tabuCheckCostInNano = 0;
-    public long updateHandlerTimeNano = 0;
-    public long evalTimeNano = 0;
+    public final LongAdder updateFingerPrintTimeNano = new LongAdder();
+    public final LongAdder dupCheckTimeNano = new LongAdder();
+    public final LongAdder validCheckTimeNano = new LongAdder();
+    public final LongAdder tabuCheckCostInNano = new LongAdder();
+    public final LongAdder updateHandlerTimeNano = new LongAdder();
+    public final LongAdder evalTimeNano = new LongAdder();
 
     /* Statistics */
-    public int tabuCompares = 0;
+    public final LongAdder tabuCompares = new LongAdder();
 
     public void show(PrintWriter writer) {
         writer.println("### Monitored Tabu Aware Rule Info ###\n");
@@ -26,13 +30,13 @@ public class TabuAwareRuleMonitor {
         );
         writer.printf(
                 "     %10d %10d %10d %10d %10d %10d %10d\n\n",
-                updateFingerPrintTimeNano / NANOS_PER_MILLI,
-                dupCheckTimeNano / NANOS_PER_MILLI,
-                validCheckTimeNano / NANOS_PER_MILLI,
-                tabuCheckCostInNano / NANOS_PER_MILLI,
-                updateHandlerTimeNano / NANOS_PER_MILLI,
-                evalTimeNano / NANOS_PER_MILLI,
-                tabuCompares
+                updateFingerPrintTimeNano.sum() / NANOS_PER_MILLI,
+                dupCheckTimeNano.sum() / NANOS_PER_MILLI,
+                validCheckTimeNano.sum() / NANOS_PER_MILLI,
+                tabuCheckCostInNano.sum() / NANOS_PER_MILLI,
+                updateHandlerTimeNano.sum() / NANOS_PER_MILLI,
+                evalTimeNano.sum() / NANOS_PER_MILLI,
+                tabuCompares.sum()
         );
     }
 }
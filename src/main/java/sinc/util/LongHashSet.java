@@ -0,0 +1,129 @@
+package sinc.util;
+
+import java.util.Arrays;
+
+/**
+ * long的哈希集合，开放地址(线性探测)存储在一个long数组中，不为每个元素创建对象。
+ *
+ * 数组中0表示空位，元素0单独用一个标记记录。装载因子超过1/2时容量翻倍。
+ */
+public class LongHashSet {
+    protected static final int DEFAULT_CAPACITY = 16;
+
+    protected long[] table;
+    protected int mask;
+    protected int size = 0;  // 不包括元素0
+    protected boolean containsZero = false;
+
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize 预计的元素数量，用于确定初始容量
+     */
+    public LongHashSet(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < 2L * expectedSize && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        table = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * MurmurHash3的64位finalizer，打散按位拼接得到的元素
+     */
+    protected static int slotOf(long x, int mask) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return (int) x & mask;
+    }
+
+    /**
+     * @return 是否是新加入的元素
+     */
+    public boolean add(long x) {
+        if (0 == x) {
+            final boolean added = !containsZero;
+            containsZero = true;
+            return added;
+        }
+        int slot = slotOf(x, mask);
+        while (0 != table[slot]) {
+            if (x == table[slot]) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = x;
+        size++;
+        if (2 * size > table.length) {
+            grow();
+        }
+        return true;
+    }
+
+    protected void grow() {
+        final long[] old_table = table;
+        table = new long[old_table.length * 2];
+        mask = table.length - 1;
+        for (long x: old_table) {
+            if (0 != x) {
+                int slot = slotOf(x, mask);
+                while (0 != table[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = x;
+            }
+        }
+    }
+
+    public boolean contains(long x) {
+        if (0 == x) {
+            return containsZero;
+        }
+        int slot = slotOf(x, mask);
+        while (0 != table[slot]) {
+            if (x == table[slot]) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size + (containsZero ? 1 : 0);
+    }
+
+    public boolean isEmpty() {
+        return 0 == size();
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        size = 0;
+        containsZero = false;
+    }
+
+    /**
+     * @return 所有元素，顺序不确定
+     */
+    public long[] toArray() {
+        final long[] array = new long[size()];
+        int i = 0;
+        if (containsZero) {
+            array[i++] = 0;
+        }
+        for (long x: table) {
+            if (0 != x) {
+                array[i++] = x;
+            }
+        }
+        return array;
+    }
+}
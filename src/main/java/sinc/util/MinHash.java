@@ -0,0 +1,100 @@
+package sinc.util;
+
+import java.util.Arrays;
+
+/**
+ * MinHash签名以及LSH分段。
+ *
+ * 签名的每一位是一组哈希函数在集合所有元素上的最小值，两个签名相同位置相等的比例是两个集合Jaccard相似度的无偏估计。
+ * 多重集中出现c次的元素v展开为(v,0)...(v,c-1)这c个元素，这样估计的就是多重集的Jaccard相似度(交集取较小次数，
+ * 并集取较大次数)。
+ *
+ * LSH把签名分成bands段，每段rows位，只要有一段完全相同就作为候选。相似度为s的两个集合成为候选的概率是
+ * 1-(1-s^rows)^bands，在(1/bands)^(1/rows)附近陡增。
+ */
+public class MinHash {
+    protected final long[] seeds;
+
+    public MinHash(int numHashes, long seed) {
+        seeds = new long[numHashes];
+        long state = seed;
+        for (int i = 0; i < numHashes; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            seeds[i] = mix(state);
+        }
+    }
+
+    public int numHashes() {
+        return seeds.length;
+    }
+
+    public long[] newSignature() {
+        final long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        return signature;
+    }
+
+    public void update(long[] signature, long element) {
+        for (int i = 0; i < seeds.length; i++) {
+            final long hash = mix(element ^ seeds[i]);
+            if (hash < signature[i]) {
+                signature[i] = hash;
+            }
+        }
+    }
+
+    /**
+     * 将多重集中出现count次的元素加入签名
+     */
+    public void update(long[] signature, int element, int count) {
+        for (int j = 0; j < count; j++) {
+            update(signature, (((long) element) << 32) | j);
+        }
+    }
+
+    public static double estimate(long[] signature1, long[] signature2) {
+        int equals = 0;
+        for (int i = 0; i < signature1.length; i++) {
+            if (signature1[i] == signature2[i]) {
+                equals++;
+            }
+        }
+        return ((double) equals) / signature1.length;
+    }
+
+    /**
+     * 为给定的签名长度选择LSH的分段方式，使得候选概率陡增的位置不高于相似度阈值
+     *
+     * @return {bands, rows}，bands * rows <= numHashes
+     */
+    public static int[] chooseBands(int numHashes, double threshold) {
+        int best_rows = 1;
+        for (int rows = 1; rows <= numHashes; rows++) {
+            final int bands = numHashes / rows;
+            if (Math.pow(1.0 / bands, 1.0 / rows) <= threshold) {
+                best_rows = rows;
+            } else {
+                break;
+            }
+        }
+        return new int[]{numHashes / best_rows, best_rows};
+    }
+
+    /**
+     * @return 签名中第band段的哈希值
+     */
+    public static long bandKey(long[] signature, int band, int rows) {
+        long key = band;
+        for (int i = band * rows; i < (band + 1) * rows; i++) {
+            key = mix(key * 31 + signature[i]);
+        }
+        return key;
+    }
+
+    /* SplitMix64 */
+    protected static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
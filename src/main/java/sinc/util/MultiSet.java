@@ -28,6 +28,11 @@ public class MultiSet<T> {
         size++;
     }
 
+    public void add(T element, int count) {
+        cntMap.compute(element, (k, v) -> (null == v) ? count : v + count);
+        size += count;
+    }
+
     public void addAll(MultiSet<T> another) {
         for (Map.Entry<T, Integer> entry: another.cntMap.entrySet()) {
             this.cntMap.compute(entry.getKey(), (k, v) -> (null == v) ? entry.getValue() : v + entry.getValue());
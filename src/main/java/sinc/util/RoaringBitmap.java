@@ -0,0 +1,450 @@
+package sinc.util;
+
+import java.util.Arrays;
+
+/**
+ * 非负int集合的压缩位图(Roaring)。
+ *
+ * 元素按高16位分桶，每个桶是一个容器：元素不超过4096个时是有序的char数组，否则是长度为1024的long位图。桶按高16位
+ * 排序存放。求交集、差集以及它们的大小时按桶归并，同为位图的两个桶逐个long做与运算并用bitCount计数。
+ */
+public class RoaringBitmap {
+    protected static final int ARRAY_MAX_SIZE = 4096;
+    protected static final int BITMAP_WORDS = 1 << 10;
+
+    /**
+     * 一个桶中的低16位
+     */
+    protected static abstract class Container {
+        int cardinality = 0;
+
+        /**
+         * @return 添加后的容器，可能转换为另一种形式
+         */
+        abstract Container add(char low);
+
+        abstract boolean contains(char low);
+
+        abstract Container copy();
+
+        abstract int andCardinality(Container another);
+
+        /**
+         * @return 交集，空集返回null
+         */
+        abstract Container and(Container another);
+
+        /**
+         * @return 差集，空集返回null
+         */
+        abstract Container andNot(Container another);
+
+        abstract int toArray(int high, int[] array, int offset);
+    }
+
+    protected static class ArrayContainer extends Container {
+        char[] content;
+
+        ArrayContainer(char[] content, int cardinality) {
+            this.content = content;
+            this.cardinality = cardinality;
+        }
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        @Override
+        Container add(char low) {
+            int idx = Arrays.binarySearch(content, 0, cardinality, low);
+            if (0 <= idx) {
+                return this;
+            }
+            if (ARRAY_MAX_SIZE <= cardinality) {
+                return toBitmap().add(low);
+            }
+            idx = -idx - 1;
+            if (cardinality == content.length) {
+                content = Arrays.copyOf(content, Math.min(ARRAY_MAX_SIZE, content.length * 2));
+            }
+            System.arraycopy(content, idx, content, idx + 1, cardinality - idx);
+            content[idx] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return 0 <= Arrays.binarySearch(content, 0, cardinality, low);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(content, Math.max(cardinality, 1)), cardinality);
+        }
+
+        BitmapContainer toBitmap() {
+            final BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.set(content[i]);
+            }
+            return bitmap;
+        }
+
+        @Override
+        int andCardinality(Container another) {
+            int cnt = 0;
+            if (another instanceof ArrayContainer) {
+                final ArrayContainer array = (ArrayContainer) another;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (content[i] < array.content[j]) {
+                        i++;
+                    } else if (content[i] > array.content[j]) {
+                        j++;
+                    } else {
+                        cnt++;
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (another.contains(content[i])) {
+                        cnt++;
+                    }
+                }
+            }
+            return cnt;
+        }
+
+        @Override
+        Container and(Container another) {
+            final char[] result = new char[cardinality];
+            int cnt = 0;
+            if (another instanceof ArrayContainer) {
+                final ArrayContainer array = (ArrayContainer) another;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality) {
+                    if (content[i] < array.content[j]) {
+                        i++;
+                    } else if (content[i] > array.content[j]) {
+                        j++;
+                    } else {
+                        result[cnt++] = content[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (another.contains(content[i])) {
+                        result[cnt++] = content[i];
+                    }
+                }
+            }
+            return (0 == cnt) ? null : new ArrayContainer(result, cnt);
+        }
+
+        @Override
+        Container andNot(Container another) {
+            final char[] result = new char[cardinality];
+            int cnt = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (!another.contains(content[i])) {
+                    result[cnt++] = content[i];
+                }
+            }
+            return (0 == cnt) ? null : new ArrayContainer(result, cnt);
+        }
+
+        @Override
+        int toArray(int high, int[] array, int offset) {
+            for (int i = 0; i < cardinality; i++) {
+                array[offset++] = (high << 16) | content[i];
+            }
+            return offset;
+        }
+    }
+
+    protected static class BitmapContainer extends Container {
+        final long[] words;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS], 0);
+        }
+
+        void set(char low) {
+            final long mask = 1L << low;
+            if (0 == (words[low >>> 6] & mask)) {
+                words[low >>> 6] |= mask;
+                cardinality++;
+            }
+        }
+
+        @Override
+        Container add(char low) {
+            set(low);
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return 0 != (words[low >>> 6] & (1L << low));
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        int andCardinality(Container another) {
+            if (another instanceof BitmapContainer) {
+                final long[] another_words = ((BitmapContainer) another).words;
+                int cnt = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    cnt += Long.bitCount(words[i] & another_words[i]);
+                }
+                return cnt;
+            }
+            return another.andCardinality(this);
+        }
+
+        @Override
+        Container and(Container another) {
+            if (another instanceof BitmapContainer) {
+                final long[] another_words = ((BitmapContainer) another).words;
+                final long[] result = new long[BITMAP_WORDS];
+                int cnt = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    result[i] = words[i] & another_words[i];
+                    cnt += Long.bitCount(result[i]);
+                }
+                return shrink(result, cnt);
+            }
+            return another.and(this);
+        }
+
+        @Override
+        Container andNot(Container another) {
+            final long[] result = words.clone();
+            int cnt = cardinality;
+            if (another instanceof BitmapContainer) {
+                final long[] another_words = ((BitmapContainer) another).words;
+                cnt = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    result[i] &= ~another_words[i];
+                    cnt += Long.bitCount(result[i]);
+                }
+            } else {
+                final ArrayContainer array = (ArrayContainer) another;
+                for (int i = 0; i < array.cardinality; i++) {
+                    final char low = array.content[i];
+                    final long mask = 1L << low;
+                    if (0 != (result[low >>> 6] & mask)) {
+                        result[low >>> 6] &= ~mask;
+                        cnt--;
+                    }
+                }
+            }
+            return shrink(result, cnt);
+        }
+
+        /**
+         * 元素较少时转换为数组形式
+         */
+        static Container shrink(long[] words, int cardinality) {
+            if (0 == cardinality) {
+                return null;
+            }
+            if (ARRAY_MAX_SIZE < cardinality) {
+                return new BitmapContainer(words, cardinality);
+            }
+            final char[] content = new char[cardinality];
+            int cnt = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (0 != word) {
+                    content[cnt++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(content, cardinality);
+        }
+
+        @Override
+        int toArray(int high, int[] array, int offset) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words[i];
+                while (0 != word) {
+                    array[offset++] = (high << 16) | ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return offset;
+        }
+    }
+
+    protected char[] keys = new char[4];
+    protected Container[] containers = new Container[4];
+    protected int size = 0;  // 桶的数量
+
+    public RoaringBitmap() {}
+
+    public RoaringBitmap(RoaringBitmap another) {
+        keys = Arrays.copyOf(another.keys, Math.max(another.size, 1));
+        containers = new Container[keys.length];
+        for (int i = 0; i < another.size; i++) {
+            containers[i] = another.containers[i].copy();
+        }
+        size = another.size;
+    }
+
+    protected int bucketOf(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    protected void append(char high, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        keys[size] = high;
+        containers[size] = container;
+        size++;
+    }
+
+    /**
+     * @return 是否是新加入的元素
+     */
+    public boolean add(int x) {
+        final char high = (char) (x >>> 16);
+        final char low = (char) x;
+        int idx = bucketOf(high);
+        if (0 > idx) {
+            idx = -idx - 1;
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            System.arraycopy(keys, idx, keys, idx + 1, size - idx);
+            System.arraycopy(containers, idx, containers, idx + 1, size - idx);
+            keys[idx] = high;
+            containers[idx] = new ArrayContainer();
+            size++;
+        }
+        final Container container = containers[idx];
+        final int old_cardinality = container.cardinality;
+        containers[idx] = container.add(low);
+        return containers[idx].cardinality != old_cardinality;
+    }
+
+    public boolean contains(int x) {
+        final int idx = bucketOf((char) (x >>> 16));
+        return 0 <= idx && containers[idx].contains((char) x);
+    }
+
+    public int cardinality() {
+        int cnt = 0;
+        for (int i = 0; i < size; i++) {
+            cnt += containers[i].cardinality;
+        }
+        return cnt;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    public int andCardinality(RoaringBitmap another) {
+        int cnt = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < another.size) {
+            if (keys[i] < another.keys[j]) {
+                i++;
+            } else if (keys[i] > another.keys[j]) {
+                j++;
+            } else {
+                cnt += containers[i].andCardinality(another.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return cnt;
+    }
+
+    public int andNotCardinality(RoaringBitmap another) {
+        return cardinality() - andCardinality(another);
+    }
+
+    public RoaringBitmap and(RoaringBitmap another) {
+        final RoaringBitmap result = new RoaringBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < another.size) {
+            if (keys[i] < another.keys[j]) {
+                i++;
+            } else if (keys[i] > another.keys[j]) {
+                j++;
+            } else {
+                final Container container = containers[i].and(another.containers[j]);
+                if (null != container) {
+                    result.append(keys[i], container);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public RoaringBitmap andNot(RoaringBitmap another) {
+        final RoaringBitmap result = new RoaringBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < another.size && another.keys[j] < keys[i]) {
+                j++;
+            }
+            final Container container = (j < another.size && another.keys[j] == keys[i]) ?
+                    containers[i].andNot(another.containers[j]) : containers[i].copy();
+            if (null != container) {
+                result.append(keys[i], container);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return 占用的堆内存(字节)的估计值
+     */
+    public long estimatedBytes() {
+        long bytes = 16 + 2L * (16 + 4L * keys.length);
+        for (int i = 0; i < size; i++) {
+            final Container container = containers[i];
+            bytes += 24 + ((container instanceof ArrayContainer) ?
+                    16 + 2L * ((ArrayContainer) container).content.length : 16 + 8L * BITMAP_WORDS);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return 按升序排列的所有元素
+     */
+    public int[] toArray() {
+        final int[] array = new int[cardinality()];
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            offset = containers[i].toArray(keys[i], array, offset);
+        }
+        return array;
+    }
+}
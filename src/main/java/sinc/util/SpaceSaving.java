@@ -0,0 +1,68 @@
+package sinc.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 用固定数量的计数器在数据流中找出高频元素(SpaceSaving)。
+ *
+ * 计数器满了之后，新元素替换当前计数最小的元素并继承其计数加一，所以每个计数都是真实次数的上界，误差不超过被替换时
+ * 的最小计数。流长度为N时，出现次数大于N/capacity的元素一定被保留，但保留的元素不一定都满足条件，需要再验证一次。
+ */
+public class SpaceSaving {
+    protected final int capacity;
+    protected final Map<Integer, Integer> counters = new HashMap<>();
+    protected int total = 0;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return 能保证找出所有占比大于proportion的元素的计数器数量
+     */
+    public static int capacityFor(double proportion) {
+        return (int) Math.ceil(1.0 / proportion) + 1;
+    }
+
+    public void add(int element) {
+        total++;
+        final Integer count = counters.get(element);
+        if (null != count) {
+            counters.put(element, count + 1);
+        } else if (counters.size() < capacity) {
+            counters.put(element, 1);
+        } else {
+            int min_element = 0;
+            int min_count = Integer.MAX_VALUE;
+            for (Map.Entry<Integer, Integer> entry: counters.entrySet()) {
+                if (entry.getValue() < min_count) {
+                    min_element = entry.getKey();
+                    min_count = entry.getValue();
+                }
+            }
+            counters.remove(min_element);
+            counters.put(element, min_count + 1);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int total() {
+        return total;
+    }
+
+    /**
+     * @return 计数的上界，没有被保留的元素返回0
+     */
+    public int estimate(int element) {
+        return counters.getOrDefault(element, 0);
+    }
+
+    public Set<Integer> candidates() {
+        return counters.keySet();
+    }
+}
@@ -0,0 +1,72 @@
+package sinc.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 多个线程同时追加元素的列表。每个线程写入自己的缓冲区，读取时按线程第一次写入的顺序拼接所有缓冲区，
+ * 同一个线程写入的元素保持写入顺序。
+ *
+ * 缓冲区只在写入它的线程和读取时加锁，锁几乎不会发生竞争。
+ */
+public class ThreadLocalBuffer<T> {
+    protected final List<List<T>> buffers = new ArrayList<>();
+    protected final ThreadLocal<List<T>> localBuffer = ThreadLocal.withInitial(this::register);
+
+    protected List<T> register() {
+        final List<T> buffer = new ArrayList<>();
+        synchronized (buffers) {
+            buffers.add(buffer);
+        }
+        return buffer;
+    }
+
+    public void add(T element) {
+        final List<T> buffer = localBuffer.get();
+        synchronized (buffer) {
+            buffer.add(element);
+        }
+    }
+
+    public void addAll(Collection<? extends T> elements) {
+        if (elements.isEmpty()) {
+            return;
+        }
+        final List<T> buffer = localBuffer.get();
+        synchronized (buffer) {
+            buffer.addAll(elements);
+        }
+    }
+
+    /**
+     * @return 当前所有元素的副本
+     */
+    public List<T> snapshot() {
+        final List<T> elements = new ArrayList<>();
+        synchronized (buffers) {
+            for (List<T> buffer: buffers) {
+                synchronized (buffer) {
+                    elements.addAll(buffer);
+                }
+            }
+        }
+        return elements;
+    }
+
+    public int size() {
+        int size = 0;
+        synchronized (buffers) {
+            for (List<T> buffer: buffers) {
+                synchronized (buffer) {
+                    size += buffer.size();
+                }
+            }
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size();
+    }
+}
@@ -260,10 +260,10 @@ class SInCTest {
         expected_branch_infos.add(new PerformanceMonitor.BranchInfo(1, 20, 0));
         expected_branch_infos.add(new PerformanceMonitor.BranchInfo(2, 27, 0));
         expected_branch_infos.add(new PerformanceMonitor.BranchInfo(2, 9, 0));
-        assertEquals(expected_branch_infos, monitor.branchProgress);
-        assertEquals(22, monitor.invalidSearches);
-        assertEquals(2, monitor.duplications);
-        assertEquals(0, monitor.fcFilteredRules);
+        assertEquals(expected_branch_infos, monitor.branchProgress.snapshot());
+        assertEquals(22, monitor.invalidSearches.intValue());
+        assertEquals(2, monitor.duplications.intValue());
+        assertEquals(0, monitor.fcFilteredRules.intValue());
         assertEquals(29, monitor.totalConstantSubstitutions);
         assertEquals(4, monitor.actualConstantSubstitutions);
     }
@@ -295,10 +295,10 @@ class SInCTest {
         expected_branch_infos.add(new PerformanceMonitor.BranchInfo(1, 5, 0));
         expected_branch_infos.add(new PerformanceMonitor.BranchInfo(2, 10, 0));
         expected_branch_infos.add(new PerformanceMonitor.BranchInfo(2, 3, 0));
-        assertEquals(expected_branch_infos, monitor.branchProgress);
-        assertEquals(22, monitor.invalidSearches);
-        assertEquals(2, monitor.duplications);
-        assertEquals(57, monitor.fcFilteredRules);
+        assertEquals(expected_branch_infos, monitor.branchProgress.snapshot());
+        assertEquals(22, monitor.invalidSearches.intValue());
+        assertEquals(2, monitor.duplications.intValue());
+        assertEquals(57, monitor.fcFilteredRules.intValue());
         assertEquals(29, monitor.totalConstantSubstitutions);
         assertEquals(4, monitor.actualConstantSubstitutions);
     }
@@ -330,11 +330,11 @@ class SInCTest {
         expected_branch_infos.add(new PerformanceMonitor.BranchInfo(1, 5, 0));
         expected_branch_infos.add(new PerformanceMonitor.BranchInfo(2, 3, 0));
         expected_branch_infos.add(new PerformanceMonitor.BranchInfo(2, 9, 0));
-        assertEquals(22, monitor.invalidSearches);
-        assertEquals(6, monitor.duplications);
-        assertEquals(56, monitor.fcFilteredRules);
+        assertEquals(22, monitor.invalidSearches.intValue());
+        assertEquals(6, monitor.duplications.intValue());
+        assertEquals(56, monitor.fcFilteredRules.intValue());
         assertEquals(29, monitor.totalConstantSubstitutions);
         assertEquals(4, monitor.actualConstantSubstitutions);
-        assertEquals(expected_branch_infos, monitor.branchProgress);
+        assertEquals(expected_branch_infos, monitor.branchProgress.snapshot());
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package sinc.common;
 
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -34,4 +35,44 @@ class EvalTest {
             assertTrue(evs[2].useful(type));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testEstimatedEvalBounds() {
+        final Eval previous = new Eval(null, 40, 200, 1);
+        final EstimatedEval exact = new EstimatedEval(previous, 30, 80, 2, 0, 0);
+        final EstimatedEval estimated = new EstimatedEval(previous, 30, 80, 2, 6, 15);
+        for (Eval.EvalMetric type: Eval.EvalMetric.values()) {
+            assertEquals(exact.value(type), exact.lowerBound(type));
+            assertEquals(exact.value(type), exact.upperBound(type));
+            assertEquals(exact.value(type), estimated.value(type));
+
+            /* 误差范围内的任何取值都在上下界之中 */
+            for (double pos = 24; pos <= 36; pos += 3) {
+                for (double all = 65; all <= 95; all += 5) {
+                    final double value = new Eval(previous, pos, all, 2).value(type);
+                    assertTrue(estimated.lowerBound(type) <= value);
+                    assertTrue(value <= estimated.upperBound(type));
+                }
+            }
+        }
+        assertTrue(estimated.lowerBound(Eval.EvalMetric.CompressionCapacity) <
+                estimated.upperBound(Eval.EvalMetric.CompressionCapacity));
+    }
+
+    @Test
+    public void testSpecializationUpperBound() {
+        final Eval previous = new Eval(new Eval(null, 50, 400, 0), 40, 200, 1);
+        for (Eval.EvalMetric type: Eval.EvalMetric.values()) {
+            /* 正例不超过上限的任何特化结果都不超过上界 */
+            for (double pos = 0; pos <= 30; pos += 5) {
+                for (double all = Math.max(pos, 1); all <= 200; all += 13) {
+                    final double value = new Eval(previous, pos, all, 2).value(type);
+                    assertTrue(value <= Eval.specializationUpperBound(previous, 30, type));
+                }
+            }
+        }
+        assertEquals(30.0, Eval.specializationUpperBound(previous, 30, Eval.EvalMetric.CompressionCapacity));
+        assertEquals(0.0, Eval.specializationUpperBound(previous, 0, Eval.EvalMetric.InfoGain));
+        assertEquals(0.0, Eval.specializationUpperBound(null, 30, Eval.EvalMetric.InfoGain));
+    }
+}
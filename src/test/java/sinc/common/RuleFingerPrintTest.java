@@ -237,6 +237,81 @@ class RuleFingerPrintTest {
         assertNotEquals(finger_print3, finger_print4);
     }
 
+    @Test
+    public void testRepeatedFunctors() {
+        /* #1: p(X,Y) :- f(X,X), f(?,Y) */
+        final Predicate p11 = new Predicate("p", 2);
+        p11.args[0] = new Variable(0);
+        p11.args[1] = new Variable(1);
+        final Predicate p12 = new Predicate("f", 2);
+        p12.args[0] = new Variable(0);
+        p12.args[1] = new Variable(0);
+        final Predicate p13 = new Predicate("f", 2);
+        p13.args[1] = new Variable(1);
+        final RuleFingerPrint finger_print1 = new RuleFingerPrint(new ArrayList<>(Arrays.asList(p11, p12, p13)));
+
+        /* #2: p(X,Y) :- f(X,Y), f(?,X) */
+        final Predicate p21 = new Predicate("p", 2);
+        p21.args[0] = new Variable(0);
+        p21.args[1] = new Variable(1);
+        final Predicate p22 = new Predicate("f", 2);
+        p22.args[0] = new Variable(0);
+        p22.args[1] = new Variable(1);
+        final Predicate p23 = new Predicate("f", 2);
+        p23.args[1] = new Variable(0);
+        final RuleFingerPrint finger_print2 = new RuleFingerPrint(new ArrayList<>(Arrays.asList(p21, p22, p23)));
+
+        /* #3: p(X,Y) :- f(X,?), f(Z,Y), f(?,Z) */
+        final Predicate p31 = new Predicate("p", 2);
+        p31.args[0] = new Variable(0);
+        p31.args[1] = new Variable(1);
+        final Predicate p32 = new Predicate("f", 2);
+        p32.args[0] = new Variable(0);
+        final Predicate p33 = new Predicate("f", 2);
+        p33.args[0] = new Variable(2);
+        p33.args[1] = new Variable(1);
+        final Predicate p34 = new Predicate("f", 2);
+        p34.args[1] = new Variable(2);
+        final RuleFingerPrint finger_print3 = new RuleFingerPrint(new ArrayList<>(Arrays.asList(p31, p32, p33, p34)));
+
+        /* #4: p(X,Y) :- f(X,Z), f(?,Y), f(Z,?) */
+        final Predicate p41 = new Predicate("p", 2);
+        p41.args[0] = new Variable(0);
+        p41.args[1] = new Variable(1);
+        final Predicate p42 = new Predicate("f", 2);
+        p42.args[0] = new Variable(0);
+        p42.args[1] = new Variable(2);
+        final Predicate p43 = new Predicate("f", 2);
+        p43.args[1] = new Variable(1);
+        final Predicate p44 = new Predicate("f", 2);
+        p44.args[0] = new Variable(2);
+        final RuleFingerPrint finger_print4 = new RuleFingerPrint(new ArrayList<>(Arrays.asList(p41, p42, p43, p44)));
+
+        /* #5: p(Y,X) :- f(?,Z), f(Z,X), f(Y,?)，与#3只有变量名和body顺序不同 */
+        final Predicate p51 = new Predicate("p", 2);
+        p51.args[0] = new Variable(2);
+        p51.args[1] = new Variable(0);
+        final Predicate p52 = new Predicate("f", 2);
+        p52.args[1] = new Variable(1);
+        final Predicate p53 = new Predicate("f", 2);
+        p53.args[0] = new Variable(1);
+        p53.args[1] = new Variable(0);
+        final Predicate p54 = new Predicate("f", 2);
+        p54.args[0] = new Variable(2);
+        final RuleFingerPrint finger_print5 = new RuleFingerPrint(new ArrayList<>(Arrays.asList(p51, p52, p53, p54)));
+
+        assertNotEquals(finger_print1, finger_print2);
+        assertNotEquals(finger_print3, finger_print4);
+        assertEquals(finger_print3, finger_print5);
+        assertEquals(finger_print3.hashCode(), finger_print5.hashCode());
+        assertEquals(finger_print3.longHash(), finger_print5.longHash());
+
+        /* 等价类与原来的定义一致 */
+        assertArrayEquals(finger_print3.getHeadEquivClasses(), finger_print5.getHeadEquivClasses());
+        assertEquals(finger_print3.getOtherEquivClasses(), finger_print4.getOtherEquivClasses());
+        assertTrue(finger_print3.predecessorOf(finger_print5));
+    }
+
     private String rule2String(List<Predicate> rule) {
         StringBuilder builder = new StringBuilder();
         builder.append(rule.get(0).toString()).append(":-");
@@ -2,9 +2,7 @@ package sinc.common;
 
 import org.junit.jupiter.api.Test;
 
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -298,6 +296,50 @@ public class RuleTest {
         structureIdentityCheck(expected_rule, actual_rule);
     }
 
+    @Test
+    void testBeamOrder() {
+        /* 所有规则的得分相同(Eval.MIN)，顺序只由长度和fingerprint决定 */
+        final RuleImpl r1 = new RuleImpl("h", 2, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, r1.boundFreeVars2NewVar("p", 2, 0, 0, 0));  // h(X,?):-p(X,?)
+        final RuleImpl r2 = new RuleImpl("h", 2, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, r2.boundFreeVars2NewVar("p", 2, 1, 0, 0));  // h(X,?):-p(?,X)
+        final RuleImpl r3 = new RuleImpl("h", 2, new HashSet<>());
+        assertEquals(Rule.UpdateStatus.NORMAL, r3.boundFreeVars2NewVar("q", 2, 0, 0, 1));  // h(?,X):-q(X,?)
+        final RuleImpl r4 = r1.clone();
+        assertEquals(Rule.UpdateStatus.NORMAL, r4.boundFreeVar2Constant(0, 1, "c"));  // h(X,c):-p(X,?)
+        final List<Rule> rules = new ArrayList<>(Arrays.asList(r1, r2, r3, r4));
+
+        final Comparator<Rule> order = Rule.beamOrder(Eval.EvalMetric.CompressionCapacity);
+        for (Rule rule1: rules) {
+            for (Rule rule2: rules) {
+                final int cmp = order.compare(rule1, rule2);
+                assertEquals(-Integer.signum(cmp), Integer.signum(order.compare(rule2, rule1)));
+                assertEquals(rule1 == rule2, 0 == cmp);
+                if (rule1.size() == rule2.size()) {
+                    assertEquals(
+                            Integer.signum(rule1.getFingerPrint().compareTo(rule2.getFingerPrint())),
+                            Integer.signum(cmp)
+                    );
+                }
+            }
+        }
+        assertTrue(0 > order.compare(r1, r4));
+
+        /* 排序结果与加入的顺序无关 */
+        final List<Rule> expected = new ArrayList<>(rules);
+        expected.sort(order);
+        for (long seed = 0; seed < 10; seed++) {
+            Collections.shuffle(rules, new Random(seed));
+            final PriorityQueue<Rule> queue = new PriorityQueue<>(order);
+            queue.addAll(rules);
+            final List<Rule> actual = new ArrayList<>();
+            while (!queue.isEmpty()) {
+                actual.add(queue.poll());
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
     void structureIdentityCheck(RuleImpl expected, RuleImpl actual) {
         assertEquals(expected.structure, actual.structure);
         assertEquals(expected.boundedVars, actual.boundedVars);
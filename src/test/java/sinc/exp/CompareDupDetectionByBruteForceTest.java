@@ -212,7 +212,7 @@ class CompareDupDetectionByBruteForceTest {
 
     @Test
     void testRuleMatch5() {
-        /* FP */
+        /* 原来基于等价类的fingerprint会把这两条规则误判为相同 */
         /* parent(X, Y) :- father(X, X), father(?, Y) */
         /* parent(X, Y) :- father(X, Y), father(?, X) */
         Predicate head1 = new Predicate("parent", 2);
@@ -243,13 +243,13 @@ class CompareDupDetectionByBruteForceTest {
         rule2.add(body22);
         RuleFingerPrint fp2 = new RuleFingerPrint(rule2);
 
-        assertEquals(fp1, fp2);
+        assertNotEquals(fp1, fp2);
         assertFalse(CompareDupDetectionByBruteForce.matchRules(rule1, rule2));
     }
 
     @Test
     void testRuleMatch6() {
-        /* FP */
+        /* 原来基于等价类的fingerprint会把这两条规则误判为相同 */
         /* parent(X, Y) :- parent(X, Z), father(Z, W), father(?, R), mother(W, R) */
         /* parent(X, Y) :- parent(X, Z), father(Z, R), father(?, W), mother(W, R) */
         Predicate head1 = new Predicate("parent", 2);
@@ -296,7 +296,7 @@ class CompareDupDetectionByBruteForceTest {
         rule2.add(body24);
         RuleFingerPrint fp2 = new RuleFingerPrint(rule2);
 
-        assertEquals(fp1, fp2);
+        assertNotEquals(fp1, fp2);
         assertFalse(CompareDupDetectionByBruteForce.matchRules(rule1, rule2));
     }
 
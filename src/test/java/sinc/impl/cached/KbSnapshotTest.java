@@ -0,0 +1,122 @@
+package sinc.impl.cached;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KbSnapshotTest {
+    static final double MIN_CONSTANT_COVERAGE = 0.25;
+    static final double MIN_COLUMN_SIMILARITY = 0.1;
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        final File snapshot_file = Files.createTempFile("sinc_kb", KbSnapshot.SUFFIX).toFile();
+        snapshot_file.deleteOnExit();
+        final MemKB kb = MemKBTest.kbFamily();
+        kb.calculatePromisingConstants(MIN_CONSTANT_COVERAGE);
+        kb.calculateSimilarColumnPairs(MIN_COLUMN_SIMILARITY);
+        KbSnapshot.write(kb, snapshot_file, 1234L, MIN_CONSTANT_COVERAGE, MIN_COLUMN_SIMILARITY, 0, false);
+
+        final MemKB loaded_kb = new MemKB();
+        assertTrue(KbSnapshot.read(loaded_kb, snapshot_file, 1234L, MIN_CONSTANT_COVERAGE, MIN_COLUMN_SIMILARITY, 0, false));
+        assertEquals(kb.totalFacts(), loaded_kb.totalFacts());
+        assertEquals(kb.totalConstants(), loaded_kb.totalConstants());
+        assertEquals(kb.getFunctor2ArityMap(), loaded_kb.getFunctor2ArityMap());
+        assertEquals(kb.getOriginalKB(), loaded_kb.getOriginalKB());
+        assertEquals(kb.similarColumnPairs(), loaded_kb.similarColumnPairs());
+        assertEquals(kb.getTotalConstantSubstitutions(), loaded_kb.getTotalConstantSubstitutions());
+        assertEquals(kb.getActualConstantSubstitutions(), loaded_kb.getActualConstantSubstitutions());
+        for (String constant: kb.getAllConstants()) {
+            assertEquals(kb.name2Num(constant), loaded_kb.name2Num(constant));
+        }
+        for (Map.Entry<String, Integer> entry: kb.getFunctor2ArityMap().entrySet()) {
+            final String functor = entry.getKey();
+            assertEquals(kb.getAllRecords(functor), loaded_kb.getAllRecords(functor));
+            final List<String>[] promising_constants = kb.getFunctor2PromisingConstantMap().get(functor);
+            final List<String>[] loaded_promising_constants = loaded_kb.getFunctor2PromisingConstantMap().get(functor);
+            assertEquals(Arrays.asList(promising_constants), Arrays.asList(loaded_promising_constants));
+            for (int i = 0; i < entry.getValue(); i++) {
+                assertEquals(kb.getRecordIndices(functor, i), loaded_kb.getRecordIndices(functor, i));
+                for (Map.Entry<String, Integer> entry2: kb.getFunctor2ArityMap().entrySet()) {
+                    for (int j = 0; j < entry2.getValue(); j++) {
+                        assertEquals(
+                                kb.columnsSimilar(functor, i, entry2.getKey(), j),
+                                loaded_kb.columnsSimilar(functor, i, entry2.getKey(), j)
+                        );
+                    }
+                }
+            }
+        }
+
+        /* 加载后仍然可以添加新的事实 */
+        assertTrue(loaded_kb.addFact(MemKBTest.FUNCTOR_FATHER, new String[]{"f5", "s5"}));
+        assertFalse(loaded_kb.addFact(MemKBTest.FUNCTOR_FATHER, new String[]{"f2", "s2"}));
+        assertEquals(6, loaded_kb.getAllRecords(MemKBTest.FUNCTOR_FATHER).size());
+    }
+
+    @Test
+    void testInvalidSnapshot() throws IOException {
+        final File snapshot_file = Files.createTempFile("sinc_kb", KbSnapshot.SUFFIX).toFile();
+        snapshot_file.deleteOnExit();
+        final MemKB kb = MemKBTest.kbFamily();
+        kb.calculatePromisingConstants(MIN_CONSTANT_COVERAGE);
+        kb.calculateSimilarColumnPairs(MIN_COLUMN_SIMILARITY);
+        KbSnapshot.write(kb, snapshot_file, 1234L, MIN_CONSTANT_COVERAGE, MIN_COLUMN_SIMILARITY, 0, false);
+
+        final MemKB loaded_kb = new MemKB();
+        assertFalse(KbSnapshot.read(loaded_kb, snapshot_file, 4321L, MIN_CONSTANT_COVERAGE, MIN_COLUMN_SIMILARITY, 0, false));
+        assertFalse(KbSnapshot.read(loaded_kb, snapshot_file, 1234L, 0.5, MIN_COLUMN_SIMILARITY, 0, false));
+        assertFalse(KbSnapshot.read(loaded_kb, snapshot_file, 1234L, MIN_CONSTANT_COVERAGE, MIN_COLUMN_SIMILARITY, 64, true));
+        assertFalse(KbSnapshot.read(loaded_kb, new File(snapshot_file.getPath() + ".none"), 1234L, MIN_CONSTANT_COVERAGE, MIN_COLUMN_SIMILARITY, 0, false));
+        assertEquals(0, loaded_kb.totalFacts());
+        assertTrue(loaded_kb.getAllFunctors().isEmpty());
+    }
+
+    @Test
+    void testDamagedSnapshot() throws IOException {
+        final File dir = Files.createTempDirectory("sinc_snapshot").toFile();
+        dir.deleteOnExit();
+        final File snapshot_file = new File(dir, "kb" + KbSnapshot.SUFFIX);
+        snapshot_file.deleteOnExit();
+        final MemKB kb = MemKBTest.kbFamily();
+        kb.calculatePromisingConstants(MIN_CONSTANT_COVERAGE);
+        kb.calculateSimilarColumnPairs(MIN_COLUMN_SIMILARITY);
+        KbSnapshot.write(kb, snapshot_file, 1234L, MIN_CONSTANT_COVERAGE, MIN_COLUMN_SIMILARITY, 0, false);
+
+        /* 写入时使用的临时文件已经被替换掉 */
+        assertArrayEquals(new File[]{snapshot_file}, dir.listFiles());
+
+        /* 写入中断的快照在修改kb之前就被识别 */
+        final byte[] bytes = Files.readAllBytes(snapshot_file.toPath());
+        for (int length: new int[]{0, 20, bytes.length / 2, bytes.length - 1}) {
+            Files.write(snapshot_file.toPath(), Arrays.copyOf(bytes, length));
+            final MemKB loaded_kb = new MemKB();
+            assertFalse(KbSnapshot.read(loaded_kb, snapshot_file, 1234L, MIN_CONSTANT_COVERAGE, MIN_COLUMN_SIMILARITY, 0, false));
+            assertEquals(0, loaded_kb.totalConstants());
+            assertTrue(loaded_kb.getAllFunctors().isEmpty());
+        }
+
+        /* 长度完整但内容损坏时抛出IOException，而不是越过文件末尾 */
+        final byte[] damaged_bytes = bytes.clone();
+        final int header_bytes = Integer.BYTES * 4 + Long.BYTES + Double.BYTES * 2;
+        damaged_bytes[header_bytes] = 0x7f;
+        Files.write(snapshot_file.toPath(), damaged_bytes);
+        assertThrows(IOException.class, () -> KbSnapshot.read(
+                new MemKB(), snapshot_file, 1234L, MIN_CONSTANT_COVERAGE, MIN_COLUMN_SIMILARITY, 0, false
+        ));
+
+        /* 重新写入时替换损坏的快照 */
+        KbSnapshot.write(kb, snapshot_file, 1234L, MIN_CONSTANT_COVERAGE, MIN_COLUMN_SIMILARITY, 0, false);
+        final MemKB loaded_kb = new MemKB();
+        assertTrue(KbSnapshot.read(loaded_kb, snapshot_file, 1234L, MIN_CONSTANT_COVERAGE, MIN_COLUMN_SIMILARITY, 0, false));
+        assertEquals(kb.getOriginalKB(), loaded_kb.getOriginalKB());
+        assertArrayEquals(new File[]{snapshot_file}, dir.listFiles());
+    }
+}
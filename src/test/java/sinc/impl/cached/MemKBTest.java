@@ -3,8 +3,14 @@ package sinc.impl.cached;
 import org.junit.jupiter.api.Test;
 import sinc.common.Constant;
 import sinc.common.Predicate;
+import sinc.util.RoaringBitmap;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntConsumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -19,8 +25,10 @@ class MemKBTest {
     static final int CONST_ID = -1;
 
     static MemKB kbFamily() {
-        final MemKB kb = new MemKB();
+        return kbFamily(new MemKB());
+    }
 
+    static MemKB kbFamily(MemKB kb) {
         /* father(X, Y):
          *   f1, s1
          *   f2, s2
@@ -262,4 +270,411 @@ class MemKBTest {
             assertFalse(kb.hasProved(p));
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testNumeration() {
+        final MemKB kb = kbFamily();
+        final NumerationMap num_map = kb.getNumerationMap();
+        assertEquals(16, num_map.totalMappings());
+        assertEquals(16, num_map.maxNum());
+        for (String constant: kb.allConstants()) {
+            final int num = kb.name2Num(constant);
+            assertTrue(NumerationMap.NULL_NUM < num && num <= num_map.maxNum());
+            assertEquals(constant, kb.num2Name(num));
+        }
+        assertEquals(NumerationMap.NULL_NUM, kb.name2Num("nobody"));
+        assertNull(kb.num2Name(NumerationMap.NULL_NUM));
+
+        final int f2 = kb.name2Num("f2");
+        final int s2 = kb.name2Num("s2");
+        final int d2 = kb.name2Num("d2");
+        final Record father2 = new Record(new int[]{f2, s2});
+        final Record father3 = new Record(new int[]{f2, d2});
+        assertEquals(5, kb.getAllRecords(FUNCTOR_FATHER).size());
+        assertTrue(kb.containsRecord(FUNCTOR_FATHER, father2));
+        assertFalse(kb.containsRecord(FUNCTOR_PARENT, new Record(new int[]{s2, f2})));
+        assertEquals(new HashSet<>(Arrays.asList(father2, father3)), kb.getRecordIndices(FUNCTOR_FATHER, 0).get(f2));
+
+        Predicate father2_pred = new Predicate(FUNCTOR_FATHER, ARITY_FATHER);
+        father2_pred.args[0] = new Constant(CONST_ID, "f2");
+        father2_pred.args[1] = new Constant(CONST_ID, "s2");
+        assertEquals(father2, kb.toRecord(father2_pred));
+        assertEquals(father2_pred, kb.toPredicate(FUNCTOR_FATHER, father2));
+        father2_pred.args[1] = new Constant(CONST_ID, "nobody");
+        assertNull(kb.toRecord(father2_pred));
+        assertFalse(kb.containsFact(father2_pred));
+
+        assertFalse(kb.hasProved(FUNCTOR_FATHER, father3));
+        kb.proveRecord(FUNCTOR_FATHER, father3);
+        assertTrue(kb.hasProved(FUNCTOR_FATHER, father3));
+        assertTrue(kb.hasProved(kb.toPredicate(FUNCTOR_FATHER, father3)));
+        assertFalse(kb.hasProved(FUNCTOR_FATHER, father2));
+    }
+
+    @Test
+    void testColumnarRelation() {
+        final MemKB kb = kbFamily();
+        final int f2 = kb.name2Num("f2");
+        final int s2 = kb.name2Num("s2");
+        final int d2 = kb.name2Num("d2");
+
+        /* 所有行按字典序排列 */
+        final RecordRange father_records = kb.getAllRecords(FUNCTOR_FATHER);
+        for (int i = 1; i < father_records.size(); i++) {
+            final Record prev = father_records.get(i - 1);
+            final Record cur = father_records.get(i);
+            assertTrue(prev.args[0] < cur.args[0] || (prev.args[0] == cur.args[0] && prev.args[1] < cur.args[1]));
+        }
+
+        /* 列索引中的每一段都只包含该值对应的行 */
+        final ColumnIndex father_index0 = kb.getRecordIndices(FUNCTOR_FATHER, 0);
+        int total_rows = 0;
+        for (int k = 0; k < father_index0.totalValues(); k++) {
+            final int value = father_index0.valueAt(k);
+            final RecordRange range = father_index0.range(value);
+            for (int i = 0; i < range.size(); i++) {
+                assertEquals(value, range.value(i, 0));
+                assertTrue(range.contains(range.get(i)));
+            }
+            total_rows += range.size();
+        }
+        assertEquals(father_records.size(), total_rows);
+        assertNull(father_index0.range(s2));
+        assertFalse(father_index0.range(f2).contains(new Record(new int[]{s2, d2})));
+
+        /* 查询之后再添加的事实在下一次查询时合并进列存储，已经取出的Range不受影响 */
+        assertTrue(kb.addFact(FUNCTOR_FATHER, new String[]{"f2", "d2x"}));
+        assertFalse(kb.addFact(FUNCTOR_FATHER, new String[]{"f2", "d2x"}));
+        assertFalse(kb.addFact(FUNCTOR_FATHER, new String[]{"f2", "s2"}));
+        assertEquals(5, father_records.size());
+        assertEquals(2, father_index0.get(f2).size());
+        assertEquals(6, kb.getAllRecords(FUNCTOR_FATHER).size());
+        assertEquals(3, kb.getRecordIndices(FUNCTOR_FATHER, 0).get(f2).size());
+        assertTrue(kb.containsRecord(FUNCTOR_FATHER, new Record(new int[]{f2, kb.name2Num("d2x")})));
+        assertEquals(6, kb.getAllFacts(FUNCTOR_FATHER).size());
+    }
+
+    @Test
+    void testProvedRecords() {
+        final MemKB kb = kbFamily();
+        final Record f2s2 = new Record(new int[]{kb.name2Num("f2"), kb.name2Num("s2")});
+        final Record f3s3 = new Record(new int[]{kb.name2Num("f3"), kb.name2Num("s3")});
+        kb.proveRecord(FUNCTOR_FATHER, f2s2);
+        kb.proveRecord(FUNCTOR_FATHER, new Record(new int[]{kb.name2Num("f2"), kb.name2Num("f2")}));
+        assertTrue(kb.hasProved(FUNCTOR_FATHER, f2s2));
+        assertFalse(kb.hasProved(FUNCTOR_FATHER, f3s3));
+        assertEquals(1, kb.getRelation(FUNCTOR_FATHER).totalProved());
+
+        /* 编号与列存储中的行号一致，统计已证明的数量 */
+        final RoaringBitmap ids = new RoaringBitmap();
+        ids.add(kb.recordId(FUNCTOR_FATHER, f2s2));
+        ids.add(kb.recordId(FUNCTOR_FATHER, f3s3));
+        assertEquals(f2s2, kb.getAllRecords(FUNCTOR_FATHER).get(kb.recordId(FUNCTOR_FATHER, f2s2)));
+        assertEquals(1, kb.countProved(FUNCTOR_FATHER, ids));
+
+        /* 添加新的事实之后行号变化，已经被证明的事实不变 */
+        assertTrue(kb.addFact(FUNCTOR_FATHER, new String[]{"f1", "a1"}));
+        assertTrue(kb.addFact(FUNCTOR_FATHER, new String[]{"f0", "a0"}));
+        assertTrue(kb.hasProved(FUNCTOR_FATHER, f2s2));
+        assertFalse(kb.hasProved(FUNCTOR_FATHER, f3s3));
+        assertEquals(1, kb.getRelation(FUNCTOR_FATHER).totalProved());
+        assertEquals(f2s2, kb.getAllRecords(FUNCTOR_FATHER).get(kb.recordId(FUNCTOR_FATHER, f2s2)));
+    }
+
+    @Test
+    void testLazyIndices() {
+        final MemKB kb = kbFamily();
+        kb.calculatePromisingConstants(0.25);
+        kb.calculateSimilarColumnPairs(0.2);
+        kb.getTotalConstantSubstitutions();
+        final KbRelation father = kb.getRelation(FUNCTOR_FATHER);
+        assertEquals(0, father.builtIndices());
+
+        /* 统计值与索引中的一致 */
+        final int f2 = kb.name2Num("f2");
+        final int s2 = kb.name2Num("s2");
+        final ValueCounts counts = father.valueCounts(0);
+        final Map<Integer, Integer> expected_counts = new HashMap<>();
+        expected_counts.put(f2, 2);
+        expected_counts.put(s2, 0);
+        assertEquals(0, father.builtIndices());
+        assertEquals(2, counts.count(f2));
+        assertEquals(0, counts.count(s2));
+        assertEquals(father.totalRecords(), counts.total);
+        assertEquals(
+                expected_counts,
+                father.countValues(0, new HashSet<>(Arrays.asList(f2, s2)))
+        );
+
+        /* 第一次查询时才建立索引，释放之后可以重新建立 */
+        final ColumnIndex index = kb.getRecordIndices(FUNCTOR_FATHER, 0);
+        assertEquals(1, father.builtIndices());
+        assertSame(index, kb.getRecordIndices(FUNCTOR_FATHER, 0));
+        assertEquals(counts.distinctValues(), index.totalValues());
+        assertEquals(counts.count(f2), father.valueCounts(0).count(f2));
+        assertEquals(
+                expected_counts,
+                father.countValues(0, new HashSet<>(Arrays.asList(f2, s2)))
+        );
+        kb.evictIndices(FUNCTOR_FATHER);
+        assertEquals(0, father.builtIndices());
+        assertEquals(index, kb.getRecordIndices(FUNCTOR_FATHER, 0));
+        assertEquals(1, father.builtIndices());
+    }
+
+    static KbRelation relationOfRows(int rows) {
+        final KbRelation relation = new KbRelation("r", 1, 2);
+        for (int i = 0; i < rows; i++) {
+            relation.addRecord(new Record(new int[]{i + 1, i % 97 + 1}));
+        }
+        return relation;
+    }
+
+    static void runConcurrently(int threads, IntConsumer task) throws InterruptedException {
+        final Thread[] workers = new Thread[threads];
+        final Throwable[] errors = new Throwable[threads];
+        for (int i = 0; i < threads; i++) {
+            final int thread_idx = i;
+            workers[i] = new Thread(() -> {
+                try {
+                    task.accept(thread_idx);
+                } catch (Throwable e) {
+                    errors[thread_idx] = e;
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker: workers) {
+            worker.join(60000);
+            assertFalse(worker.isAlive());
+        }
+        for (Throwable error: errors) {
+            assertNull(error);
+        }
+    }
+
+    @Test
+    void testConcurrentReaders() throws InterruptedException {
+        /* 并发评估候选规则时，多个线程同时查询同一个relation。合并之后读操作不需要锁，即使锁被其他线程持有 */
+        final int rows = 20000;
+        final KbRelation relation = relationOfRows(rows);
+        final RoaringBitmap all_rows = new RoaringBitmap();
+        for (int row = 0; row < rows; row++) {
+            all_rows.add(row);
+        }
+        relation.proveRecord(new Record(new int[]{1, 1}));
+        relation.proveRecord(new Record(new int[]{2, 2}));
+        assertEquals(2, relation.totalProved());
+        final Set<ColumnIndex> indices = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        final Set<int[][]> tries = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        synchronized (relation) {
+            runConcurrently(8, thread_idx -> {
+                for (int i = 0; i < rows; i += 7) {
+                    final Record record = new Record(new int[]{i + 1, i % 97 + 1});
+                    assertEquals(i, relation.rowOf(record));
+                    assertTrue(relation.hasRecord(record));
+                    assertEquals(i < 2, relation.hasProved(record));
+                }
+                indices.add(relation.getArgIndices(1));
+                tries.add(relation.trieLevels(new int[]{-1, 0}, new int[]{NumerationMap.NULL_NUM, NumerationMap.NULL_NUM}));
+                assertEquals(rows, relation.getRecords().size());
+                assertEquals(2, relation.countProved(all_rows));
+                assertEquals(rows, relation.totalRecords());
+            });
+        }
+
+        /* 同时构建的索引只有一个被保留 */
+        assertEquals(1, indices.size());
+        assertEquals(1, tries.size());
+        assertSame(relation.getArgIndices(1), indices.iterator().next());
+        assertEquals(97, relation.getArgIndices(1).totalValues());
+        assertEquals(97, tries.iterator().next()[0].length);
+        assertEquals(1, relation.builtIndices());
+    }
+
+    @Test
+    void testConcurrentProving() throws InterruptedException {
+        /* 并发挖掘不同的head functor时，证明事实的线程与查询已证明数量的线程同时进行 */
+        final int rows = 20000;
+        final KbRelation relation = relationOfRows(rows);
+        final RoaringBitmap all_rows = new RoaringBitmap();
+        for (int row = 0; row < rows; row++) {
+            all_rows.add(row);
+        }
+        final int provers = 4;
+        final CountDownLatch proving = new CountDownLatch(provers);
+        runConcurrently(provers * 2, thread_idx -> {
+            if (thread_idx < provers) {
+                try {
+                    for (int i = thread_idx; i < rows; i += provers) {
+                        final Record record = new Record(new int[]{i + 1, i % 97 + 1});
+                        relation.proveRecord(record);
+                        assertTrue(relation.hasProved(record));
+                    }
+                } finally {
+                    proving.countDown();
+                }
+            } else {
+                /* 已证明的数量只增不减 */
+                int last_proved = 0;
+                while (0 < proving.getCount()) {
+                    final int proved = relation.countProved(all_rows);
+                    assertTrue(last_proved <= proved);
+                    assertTrue(proved <= relation.totalProved());
+                    last_proved = proved;
+                }
+            }
+        });
+        assertEquals(rows, relation.totalProved());
+        assertTrue(relation.hasProved(new Record(new int[]{rows, (rows - 1) % 97 + 1})));
+    }
+
+    @Test
+    void testMemoryFootprint() {
+        final MemKB kb = kbFamily();
+        final Map<String, Long> footprint = kb.memoryFootprint();
+        assertEquals(
+                Arrays.asList("Columns", "Indices", "Pending", "Proved", "Views", "Similar Pairs", "Dictionary"),
+                new ArrayList<>(footprint.keySet())
+        );
+        assertTrue(0 < footprint.get("Pending"));  // 还没有合并进列存储
+        assertEquals(0L, (long) footprint.get("Indices"));
+
+        /* 合并以及构建索引之后，对应部分的大小变化 */
+        kb.getRecordIndices(FUNCTOR_FATHER, 0);
+        kb.proveRecord(FUNCTOR_FATHER, kb.getAllRecords(FUNCTOR_FATHER).get(0));
+        final Map<String, Long> footprint2 = kb.memoryFootprint();
+        assertTrue(footprint.get("Columns") < footprint2.get("Columns"));
+        assertTrue(0 < footprint2.get("Indices"));
+        assertTrue(footprint.get("Proved") < footprint2.get("Proved"));
+        assertEquals(footprint.get("Dictionary"), footprint2.get("Dictionary"));
+        kb.evictIndices(FUNCTOR_FATHER);
+        assertEquals(0L, (long) kb.memoryFootprint().get("Indices"));
+    }
+
+    @Test
+    void testOffHeap() throws IOException {
+        final File dir = Files.createTempDirectory("sinc_mem_kb").toFile();
+        dir.deleteOnExit();
+        final MemKB heap_kb = kbFamily();
+        final MemKB mapped_kb = kbFamily(new MemKB(dir));
+        assertTrue(mapped_kb.getRelation(FUNCTOR_FATHER) instanceof MappedKbRelation);
+        assertEquals(heap_kb.totalFacts(), mapped_kb.totalFacts());
+        assertEquals(heap_kb.getOriginalKB(), mapped_kb.getOriginalKB());
+        for (String functor: heap_kb.getAllFunctors()) {
+            assertEquals(heap_kb.getAllRecords(functor), mapped_kb.getAllRecords(functor));
+            for (int i = 0; i < heap_kb.getFunctor2ArityMap().get(functor); i++) {
+                assertEquals(heap_kb.getRecordIndices(functor, i), mapped_kb.getRecordIndices(functor, i));
+            }
+        }
+
+        /* 未合并的事实超过阈值时提前合并进映射文件 */
+        final MappedKbRelation relation = new MappedKbRelation("r", 1, 2, dir, 2);
+        assertTrue(relation.addRecord(new Record(new int[]{3, 1})));
+        assertTrue(relation.addRecord(new Record(new int[]{1, 2})));
+        assertEquals(0, relation.pendingRecords.size());
+        assertFalse(relation.addRecord(new Record(new int[]{3, 1})));
+        assertTrue(relation.addRecord(new Record(new int[]{1, 1})));
+        assertEquals(3, relation.totalRecords());
+        assertEquals(new Record(new int[]{1, 1}), relation.getRecords().get(0));
+        assertEquals(2, relation.getArgIndices(0).get(1).size());
+        assertTrue(relation.hasRecord(new Record(new int[]{1, 2})));
+        assertEquals(0, Objects.requireNonNull(dir.listFiles((d, name) -> name.endsWith(".col"))).length);
+    }
+
+    @Test
+    void testSpillRuns() throws IOException {
+        final File dir = Files.createTempDirectory("sinc_spill").toFile();
+        dir.deleteOnExit();
+        final MappedKbRelation relation = new MappedKbRelation("r", 1, 2, dir, 4);
+        final KbRelation heap_relation = new KbRelation("r", 1, 2);
+        final Random random = new Random(7);
+        int added = 0;
+        for (int i = 0; i < 200; i++) {
+            final Record record = new Record(new int[]{random.nextInt(20) + 1, random.nextInt(20) + 1});
+            final boolean is_new = heap_relation.addRecord(record);
+            assertEquals(is_new, relation.addRecord(record));
+            added += is_new ? 1 : 0;
+
+            /* 段数保持在对数级别，重复的事实在加载过程中就能判断 */
+            assertTrue(relation.spillRuns.size() <= 32 - Integer.numberOfLeadingZeros(added / 4 + 1));
+            assertTrue(relation.hasRecord(record));
+            assertEquals(added, relation.totalRecords());
+        }
+        assertTrue(relation.addRecord(new Record(new int[]{21, 21})));
+        assertTrue(heap_relation.addRecord(new Record(new int[]{21, 21})));
+        assertFalse(relation.spillRuns.isEmpty());
+
+        /* 第一次查询时所有的段一次归并进列存储并释放 */
+        relation.proveRecord(new Record(new int[]{21, 21}));
+        assertTrue(relation.spillRuns.isEmpty());
+        assertEquals(heap_relation.totalRecords(), relation.totalRecords());
+        for (int row = 0; row < heap_relation.totalRecords(); row++) {
+            assertEquals(heap_relation.getRecords().get(row), relation.getRecords().get(row));
+        }
+
+        /* 之后添加的事实同样经过spill run合并，已经被证明的事实不变 */
+        for (int i = 0; i < 10; i++) {
+            relation.addRecord(new Record(new int[]{30 + i, 1}));
+        }
+        assertFalse(relation.spillRuns.isEmpty());
+        assertTrue(relation.hasProved(new Record(new int[]{21, 21})));
+        assertTrue(relation.spillRuns.isEmpty());
+        assertEquals(1, relation.totalProved());
+        assertEquals(heap_relation.totalRecords() + 10, relation.totalRecords());
+        assertEquals(0, Objects.requireNonNull(dir.listFiles((d, name) -> name.endsWith(".col"))).length);
+    }
+
+    @Test
+    void testSketchSimilarColumns() {
+        final MemKB exact_kb = kbFamily();
+        exact_kb.calculateSimilarColumnPairs(0.1);
+        final MemKB verified_kb = kbFamily();
+        verified_kb.calculateSimilarColumnPairs(0.1, 256, true);
+        final MemKB estimated_kb = kbFamily();
+        estimated_kb.calculateSimilarColumnPairs(0.1, 256, false);
+        final MemKB disabled_kb = kbFamily();
+        disabled_kb.calculateSimilarColumnPairs(0.1, 0, false);
+
+        /* 验证模式下的结果是精确结果的子集，阈值很低时LSH几乎不会漏掉候选 */
+        assertEquals(exact_kb.similarColumnPairs, verified_kb.similarColumnPairs);
+        assertEquals(exact_kb.similarColumnPairs, disabled_kb.similarColumnPairs);
+        assertTrue(estimated_kb.columnsSimilar(FUNCTOR_FATHER, 0, FUNCTOR_PARENT, 0));
+        assertTrue(estimated_kb.columnsSimilar(FUNCTOR_PARENT, 0, FUNCTOR_FATHER, 0));
+        assertTrue(estimated_kb.columnsSimilar(FUNCTOR_GRANDPARENT, 1, FUNCTOR_GRANDPARENT, 1));
+    }
+
+    @Test
+    void testConstantSketch() {
+        final MemKB exact_kb = new MemKB();
+        final MemKB sketch_kb = new MemKB();
+        sketch_kb.enableConstantSketch(0.1);
+        final Random random = new Random(11);
+        for (int i = 0; i < 2000; i++) {
+            final String[] args = new String[]{
+                    "e" + i, (0 == i % 4) ? "hot" : (0 == i % 7) ? "warm" : "c" + random.nextInt(300)
+            };
+            exact_kb.addFact("rel", args);
+            sketch_kb.addFact("rel", args);
+        }
+        for (double threshold: new double[]{0.1, 0.12, 0.2, 0.5}) {
+            exact_kb.calculatePromisingConstants(threshold);
+            sketch_kb.calculatePromisingConstants(threshold);
+            assertEquals(
+                    Arrays.asList(exact_kb.getFunctor2PromisingConstantMap().get("rel")),
+                    Arrays.asList(sketch_kb.getFunctor2PromisingConstantMap().get("rel"))
+            );
+        }
+        sketch_kb.calculatePromisingConstants(0.2);
+        assertEquals(Collections.singletonList("hot"), sketch_kb.getFunctor2PromisingConstantMap().get("rel")[1]);
+
+        /* 阈值低于统计时使用的阈值时检查所有常量 */
+        exact_kb.calculatePromisingConstants(0.05);
+        sketch_kb.calculatePromisingConstants(0.05);
+        assertEquals(Arrays.asList("hot", "warm"), sketch_kb.getFunctor2PromisingConstantMap().get("rel")[1]);
+        assertEquals(
+                Arrays.asList(exact_kb.getFunctor2PromisingConstantMap().get("rel")),
+                Arrays.asList(sketch_kb.getFunctor2PromisingConstantMap().get("rel"))
+        );
+    }
+}
@@ -0,0 +1,149 @@
+package sinc.impl.cached;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelKbLoaderTest {
+
+    static File kbFile() throws IOException {
+        final File file = Files.createTempFile("sinc_kb", ".tsv").toFile();
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int i = 0; i < 200; i++) {
+                writer.printf("father\tf%d\ts%d\n", i, i);
+                writer.printf("mother\tm%d\ts%d\r\n", i, i);
+                writer.printf("parent\tf%d\ts%d\n", i, i);
+                writer.printf("gender\ts%d\t%s\n", i, (0 == i % 3) ? "female" : "male");
+                if (0 == i % 7) {
+                    writer.printf("father\tf%d\ts%d\n", i, i);  // 重复的事实
+                }
+            }
+            writer.print("parent\tm0\ts0");  // 最后一行没有换行符
+        }
+        return file;
+    }
+
+    static MemKB loadSequentially(File file) throws IOException {
+        final MemKB kb = new MemKB();
+        for (String line: Files.readAllLines(file.toPath())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            final String[] components = line.split("\t");
+            kb.addFact(components[0], Arrays.copyOfRange(components, 1, components.length));
+        }
+        return kb;
+    }
+
+    static void assertSameKb(MemKB expectedKb, MemKB kb) {
+        assertEquals(expectedKb.totalFacts(), kb.totalFacts());
+        assertEquals(expectedKb.totalConstants(), kb.totalConstants());
+        assertEquals(expectedKb.getFunctor2ArityMap(), kb.getFunctor2ArityMap());
+        assertEquals(expectedKb.getTotalConstantSubstitutions(), kb.getTotalConstantSubstitutions());
+
+        /* 编号与单线程加载完全一致 */
+        for (String constant: expectedKb.getAllConstants()) {
+            assertEquals(expectedKb.name2Num(constant), kb.name2Num(constant));
+        }
+        for (Map.Entry<String, Integer> entry: expectedKb.getFunctor2ArityMap().entrySet()) {
+            final String functor = entry.getKey();
+            assertEquals(expectedKb.getRelation(functor).id, kb.getRelation(functor).id);
+            assertEquals(expectedKb.getAllRecords(functor), kb.getAllRecords(functor));
+        }
+    }
+
+    @Test
+    void testSplitChunks() throws IOException {
+        final File file = kbFile();
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        final long[] boundaries = ParallelKbLoader.splitChunks(file, 8);
+        assertEquals(0, boundaries[0]);
+        assertEquals(bytes.length, boundaries[boundaries.length - 1]);
+        for (int i = 1; i < boundaries.length - 1; i++) {
+            assertTrue(boundaries[i - 1] < boundaries[i]);
+            assertEquals('\n', bytes[(int) boundaries[i] - 1]);
+        }
+        assertArrayEquals(new long[]{0, bytes.length}, ParallelKbLoader.splitChunks(file, 1));
+    }
+
+    @Test
+    void testLoad() throws IOException {
+        final File file = kbFile();
+        final MemKB expected_kb = loadSequentially(file);
+        for (int threads: new int[]{1, 2, 4, 8}) {
+            final MemKB kb = new MemKB();
+            ParallelKbLoader.load(kb, file, threads);
+            assertSameKb(expected_kb, kb);
+
+            expected_kb.calculatePromisingConstants(0.25);
+            kb.calculatePromisingConstants(0.25);
+            assertEquals(expected_kb.getActualConstantSubstitutions(), kb.getActualConstantSubstitutions());
+        }
+    }
+
+    @Test
+    void testTinyFile() throws IOException {
+        final File file = Files.createTempFile("sinc_kb", ".tsv").toFile();
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.print("p\ta");
+        }
+        assertArrayEquals(new long[]{0, 3}, ParallelKbLoader.splitChunks(file, 4));
+        assertArrayEquals(new long[]{0, 3}, ParallelKbLoader.splitChunks(file, 3));
+
+        final MemKB kb = new MemKB();
+        ParallelKbLoader.load(kb, file, 4);
+        assertSameKb(loadSequentially(file), kb);
+        assertEquals(1, kb.totalFacts());
+    }
+
+    @Test
+    void testArityMismatch() throws IOException {
+        final File file = Files.createTempFile("sinc_kb", ".tsv").toFile();
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file)) {
+            for (int i = 0; i < 200; i++) {
+                writer.printf("father\tf%d\ts%d\n", i, i);
+                if (0 == i % 50) {
+                    writer.printf("father\tx%d\n", i);  // 参数个数不一致，忽略
+                }
+                if (150 == i) {
+                    writer.print("\n");
+                    writer.printf("mother\ty%d\ty%d\ty%d\n", i, i, i);  // 在后面的段中首次出现
+                }
+                if (150 < i) {
+                    writer.printf("mother\tm%d\ts%d\n", i, i);  // 与第一次出现时不一致，忽略
+                }
+            }
+        }
+
+        final MemKB expected_kb = loadSequentially(file);
+        assertEquals(201, expected_kb.totalFacts());
+        assertEquals(3, expected_kb.getArity("mother"));
+        assertEquals(NumerationMap.NULL_NUM, expected_kb.name2Num("x0"));
+        assertEquals(NumerationMap.NULL_NUM, expected_kb.name2Num("m160"));
+        for (int threads: new int[]{1, 2, 4, 8}) {
+            final MemKB kb = new MemKB();
+            ParallelKbLoader.load(kb, file, threads);
+            assertSameKb(expected_kb, kb);
+        }
+
+        /* 没有冲突的段不会退回单线程加载 */
+        final ParallelKbLoader.Partial partial = new ParallelKbLoader.Partial();
+        final byte[] line = "father\ta".getBytes();
+        ParallelKbLoader.parseLine(partial, line, line.length);
+        assertFalse(partial.arityConflict);
+        final byte[] mismatched_line = "father\ta\tb".getBytes();
+        ParallelKbLoader.parseLine(partial, mismatched_line, mismatched_line.length);
+        assertTrue(partial.arityConflict);
+        assertEquals(1, partial.relations.get("father").rows);
+    }
+}
@@ -0,0 +1,267 @@
+package sinc.impl.cached;
+
+import org.junit.jupiter.api.Test;
+import sinc.common.Constant;
+import sinc.common.Predicate;
+import sinc.common.Variable;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrieJoinTest {
+
+    static final int CONST_ID = -1;
+
+    static MemKB randomKb(long seed, int constants, int factsPerFunctor, String... functors) {
+        final Random random = new Random(seed);
+        final MemKB kb = new MemKB();
+        for (String functor: functors) {
+            for (int i = 0; i < factsPerFunctor; i++) {
+                kb.addFact(functor, new String[]{
+                        "c" + random.nextInt(constants), "c" + random.nextInt(constants)
+                });
+            }
+        }
+        return kb;
+    }
+
+    static Predicate atom(String functor, Object... args) {
+        final Predicate predicate = new Predicate(functor, args.length);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof Integer) {
+                predicate.args[i] = new Variable((Integer) args[i]);
+            } else if (args[i] instanceof String) {
+                predicate.args[i] = new Constant(CONST_ID, (String) args[i]);
+            }
+        }
+        return predicate;
+    }
+
+    /**
+     * 逐个predicate枚举所有赋值，作为对照
+     */
+    static Set<List<Integer>> bruteForce(MemKB kb, List<Predicate> body, int[] projection) {
+        final Set<List<Integer>> results = new HashSet<>();
+        bruteForceHandler(kb, body, 0, new HashMap<>(), projection, results);
+        return results;
+    }
+
+    static void bruteForceHandler(
+            MemKB kb, List<Predicate> body, int predIdx, Map<Integer, Integer> binding, int[] projection,
+            Set<List<Integer>> results
+    ) {
+        if (predIdx >= body.size()) {
+            final List<Integer> projected = new ArrayList<>();
+            for (int var_id: projection) {
+                projected.add(binding.get(var_id));
+            }
+            results.add(projected);
+            return;
+        }
+        final Predicate predicate = body.get(predIdx);
+        for (Record record: kb.getAllRecords(predicate.functor)) {
+            final Map<Integer, Integer> new_binding = new HashMap<>(binding);
+            boolean matched = true;
+            for (int arg_idx = 0; arg_idx < predicate.arity() && matched; arg_idx++) {
+                if (null == predicate.args[arg_idx]) {
+                    continue;
+                }
+                if (predicate.args[arg_idx].isVar) {
+                    final Integer value = new_binding.putIfAbsent(predicate.args[arg_idx].id, record.args[arg_idx]);
+                    matched = null == value || value == record.args[arg_idx];
+                } else {
+                    matched = kb.name2Num(predicate.args[arg_idx].name) == record.args[arg_idx];
+                }
+            }
+            if (matched) {
+                bruteForceHandler(kb, body, predIdx + 1, new_binding, projection, results);
+            }
+        }
+    }
+
+    static Set<List<Integer>> join(MemKB kb, List<Predicate> body, int[] projection) {
+        final Set<List<Integer>> results = new HashSet<>();
+        new TrieJoin(kb, body, projection).forEachProjection(binding -> {
+            final List<Integer> projected = new ArrayList<>();
+            for (int value: binding) {
+                projected.add(value);
+            }
+            assertTrue(results.add(projected));  // 每个投影只输出一次
+        });
+        return results;
+    }
+
+    @Test
+    void testTriangle() {
+        final MemKB kb = new MemKB();
+        kb.addFact("q", new String[]{"a", "b"});
+        kb.addFact("q", new String[]{"a", "c"});
+        kb.addFact("q", new String[]{"d", "b"});
+        kb.addFact("r", new String[]{"b", "e"});
+        kb.addFact("r", new String[]{"c", "e"});
+        kb.addFact("r", new String[]{"b", "f"});
+        kb.addFact("s", new String[]{"e", "a"});
+        kb.addFact("s", new String[]{"f", "d"});
+
+        /* q(X,Z), r(Z,Y), s(Y,X) */
+        final List<Predicate> body = Arrays.asList(atom("q", 0, 2), atom("r", 2, 1), atom("s", 1, 0));
+        final TrieJoin join = new TrieJoin(kb, body, new int[]{0, 1});
+        assertEquals(2, join.countProjections());
+        final Set<List<Integer>> expected = new HashSet<>();
+        expected.add(Arrays.asList(kb.name2Num("a"), kb.name2Num("e")));
+        expected.add(Arrays.asList(kb.name2Num("d"), kb.name2Num("f")));
+        assertEquals(expected, join(kb, body, new int[]{0, 1}));
+
+        /* 只判断是否存在 */
+        assertEquals(1, new TrieJoin(kb, body, new int[0]).countProjections());
+        assertEquals(0, new TrieJoin(kb, Arrays.asList(
+                atom("q", 0, 2), atom("r", 2, 1), atom("s", 1, "c")
+        ), new int[0]).countProjections());
+
+        /* 不存在的常量 */
+        assertEquals(0, new TrieJoin(kb, Collections.singletonList(atom("q", 0, "zz")), new int[]{0}).countProjections());
+    }
+
+    @Test
+    void testRandomBodies() {
+        for (long seed = 0; seed < 20; seed++) {
+            final MemKB kb = randomKb(seed, 8, 30, "q", "r", "s");
+            final List<List<Predicate>> bodies = Arrays.asList(
+                    Arrays.asList(atom("q", 0, 2), atom("r", 2, 1), atom("s", 1, 0)),
+                    Arrays.asList(atom("q", 0, 0), atom("r", 0, null)),
+                    Arrays.asList(atom("q", 0, 1), atom("q", 1, 2), atom("r", 2, 0)),
+                    Arrays.asList(atom("q", 0, "c1"), atom("s", 1, 0)),
+                    Arrays.asList(atom("q", 0, null), atom("r", null, 1), atom("s", 0, 1))
+            );
+            for (List<Predicate> body: bodies) {
+                final Set<Integer> body_vars = new HashSet<>();
+                for (Predicate predicate: body) {
+                    for (int arg_idx = 0; arg_idx < predicate.arity(); arg_idx++) {
+                        if (null != predicate.args[arg_idx] && predicate.args[arg_idx].isVar) {
+                            body_vars.add(predicate.args[arg_idx].id);
+                        }
+                    }
+                }
+                for (int[] projection: new int[][]{new int[]{0, 1}, new int[]{1}, new int[]{0}, new int[0]}) {
+                    if (!body_vars.containsAll(Arrays.asList(Arrays.stream(projection).boxed().toArray(Integer[]::new)))) {
+                        continue;
+                    }
+                    assertEquals(bruteForce(kb, body, projection), join(kb, body, projection));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testTrieLevels() {
+        final Random random = new Random(7);
+        final MemKB kb = new MemKB();
+        for (int i = 0; i < 200; i++) {
+            kb.addFact("t", new String[]{
+                    "c" + random.nextInt(5), "c" + random.nextInt(5), "c" + random.nextInt(5)
+            });
+        }
+        final KbRelation relation = kb.getRelation("t");
+        final int c2 = kb.name2Num("c2");
+        final int[][][] patterns = new int[][][]{
+                /* {layers, constants} */
+                {{0, 1, 2}, {0, 0, 0}},
+                {{2, 1, 0}, {0, 0, 0}},
+                {{1, -1, 0}, {0, 0, 0}},
+                {{0, 0, 1}, {0, 0, 0}},
+                {{-1, 0, -1}, {0, 0, 0}},
+                {{-1, 1, 0}, {c2, 0, 0}},
+                {{0, -1, 0}, {0, c2, 0}}
+        };
+        for (int[][] pattern: patterns) {
+            final int[] layers = pattern[0];
+            final int[] constants = pattern[1];
+            final int[][] levels = relation.trieLevels(layers, constants);
+            assertEquals(bruteForceLevels(kb, layers, constants), levelsToList(levels));
+
+            /* 没有常量条件时缓存，有常量条件时每次重新构造 */
+            final boolean constrained = Arrays.stream(constants).anyMatch(c -> 0 != c);
+            assertEquals(!constrained, levels == relation.trieLevels(layers, constants));
+        }
+
+        /* 添加事实或者释放索引之后缓存失效 */
+        final int[] layers = new int[]{1, 0, -1};
+        final int[] constants = new int[3];
+        final int[][] levels = relation.trieLevels(layers, constants);
+        relation.evictIndices();
+        assertNotSame(levels, relation.trieLevels(layers, constants));
+        kb.addFact("t", new String[]{"c9", "c9", "c9"});
+        final int[][] new_levels = relation.trieLevels(layers, constants);
+        assertEquals(bruteForceLevels(kb, layers, constants), levelsToList(new_levels));
+        assertEquals(levels[0].length + 1, new_levels[0].length);
+    }
+
+    static List<List<Integer>> bruteForceLevels(MemKB kb, int[] layers, int[] constants) {
+        final int depths = Arrays.stream(layers).max().orElse(-1) + 1;
+        final SortedSet<List<Integer>> tuples = new TreeSet<>((t1, t2) -> {
+            for (int i = 0; i < t1.size(); i++) {
+                final int cmp = Integer.compare(t1.get(i), t2.get(i));
+                if (0 != cmp) {
+                    return cmp;
+                }
+            }
+            return 0;
+        });
+        for (Record record: kb.getAllRecords("t")) {
+            final Integer[] tuple = new Integer[depths];
+            boolean matched = true;
+            for (int col = 0; col < layers.length && matched; col++) {
+                if (0 != constants[col]) {
+                    matched = constants[col] == record.args[col];
+                } else if (0 <= layers[col]) {
+                    if (null == tuple[layers[col]]) {
+                        tuple[layers[col]] = record.args[col];
+                    } else {
+                        matched = tuple[layers[col]] == record.args[col];
+                    }
+                }
+            }
+            if (matched) {
+                tuples.add(Arrays.asList(tuple));
+            }
+        }
+        return new ArrayList<>(tuples);
+    }
+
+    static List<List<Integer>> levelsToList(int[][] levels) {
+        final List<List<Integer>> tuples = new ArrayList<>();
+        for (int row = 0; row < levels[0].length; row++) {
+            final List<Integer> tuple = new ArrayList<>();
+            for (int[] level: levels) {
+                tuple.add(level[row]);
+            }
+            tuples.add(tuple);
+        }
+        return tuples;
+    }
+
+    @Test
+    void testWitness() {
+        for (long seed = 0; seed < 10; seed++) {
+            final MemKB kb = randomKb(seed, 8, 30, "q", "r", "s");
+            final List<Predicate> body = Arrays.asList(atom("q", 0, 2), atom("r", 2, 1), atom("s", 1, 3));
+            final TrieJoin join = new TrieJoin(kb, body, new int[]{0});
+            final int[] projections = new int[]{0};
+            join.forEachProjection(binding -> {
+                projections[0]++;
+                assertEquals(binding[0], join.witnessValue(0));
+
+                /* 见证赋值满足所有predicate */
+                for (Predicate predicate: body) {
+                    final int[] args = new int[predicate.arity()];
+                    for (int arg_idx = 0; arg_idx < args.length; arg_idx++) {
+                        args[arg_idx] = join.witnessValue(predicate.args[arg_idx].id);
+                    }
+                    assertTrue(kb.containsRecord(predicate.functor, new Record(args)));
+                }
+            });
+            assertEquals(bruteForce(kb, body, new int[]{0}).size(), projections[0]);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package sinc.impl.cached.recal;
+
+import org.junit.jupiter.api.Test;
+import sinc.impl.cached.Record;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GroundingTableTest {
+
+    static Set<Record> records(int... values) {
+        final Set<Record> set = new HashSet<>();
+        for (int value: values) {
+            set.add(new Record(new int[]{value, value}));
+        }
+        return set;
+    }
+
+    @Test
+    void testFilterAndExpand() {
+        final GroundingTable table = new GroundingTable();
+        table.addPlaceholder();
+        table.addPredicate(2);
+        final InclusionSet shared = new InclusionSet(records(1, 2, 3), 2);
+        for (int i = 0; i < 40; i++) {
+            final int row = table.appendRow();
+            table.setArg(row, 1, 0, i);
+            table.setInclusion(row, 1, shared);
+        }
+        assertEquals(40, table.rows());
+        assertEquals(2, table.predicates());
+
+        /* 过滤：只保留偶数行，保留的行依次前移 */
+        int kept_rows = 0;
+        for (int row = 0; row < table.rows(); row++) {
+            if (0 == table.arg(row, 1, 0) % 2) {
+                table.copyRow(row, kept_rows);
+                kept_rows++;
+            }
+        }
+        table.truncate(kept_rows);
+        assertEquals(20, table.rows());
+        for (int row = 0; row < table.rows(); row++) {
+            assertEquals(row * 2, table.arg(row, 1, 0));
+            assertSame(shared, table.inclusionSet(row, 1));
+        }
+
+        /* 增加新的谓词并展开：每行展开为两行 */
+        table.addPredicate(1);
+        table.fillInclusion(2, new InclusionSet(records(7), 1));
+        final GroundingTable expanded_table = table.emptyCopy();
+        for (int row = 0; row < table.rows(); row++) {
+            for (int value = 0; value < 2; value++) {
+                final int new_row = expanded_table.appendRow(table, row);
+                expanded_table.setArg(new_row, 2, 0, value);
+            }
+        }
+        table.assign(expanded_table);
+        assertEquals(40, table.rows());
+        assertArrayEquals(new int[]{4, 0}, table.args(4, 1));
+        assertArrayEquals(new int[]{1}, table.args(5, 2));
+        assertEquals(records(7), table.inclusion(39, 2));
+
+        /* 复制之后互不影响，inclusion集合共享 */
+        final GroundingTable copy = new GroundingTable(table);
+        copy.setArg(0, 1, 0, 100);
+        copy.truncate(1);
+        assertEquals(0, table.arg(0, 1, 0));
+        assertEquals(40, table.rows());
+        assertSame(table.inclusionSet(0, 1), copy.inclusionSet(0, 1));
+        final Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        assertTrue(0 < table.estimatedBytes(counted));
+        assertEquals(9, counted.size());
+    }
+
+    @Test
+    void testCopyOnWriteChunks() {
+        final GroundingTable table = new GroundingTable();
+        table.addPredicate(1);
+        final InclusionSet inclusion = new InclusionSet(records(1), 2);
+        final int rows = GroundingTable.CHUNK_SIZE * 3 + 5;
+        for (int i = 0; i < rows; i++) {
+            final int row = table.appendRow();
+            table.setArg(row, 0, 0, i);
+            table.setInclusion(row, 0, inclusion);
+        }
+        assertEquals(4, table.argChunks[0][0].length);
+
+        /* 复制时共享所有的块 */
+        final GroundingTable copy = new GroundingTable(table);
+        for (int chunk_idx = 0; chunk_idx < 4; chunk_idx++) {
+            assertSame(table.argChunks[0][0][chunk_idx], copy.argChunks[0][0][chunk_idx]);
+            assertSame(table.inclusionChunks[0][chunk_idx], copy.inclusionChunks[0][chunk_idx]);
+        }
+
+        /* 只复制被修改的块，双方互不影响 */
+        final int modified_row = GroundingTable.CHUNK_SIZE + 7;
+        copy.setArg(modified_row, 0, 0, -1);
+        assertEquals(-1, copy.arg(modified_row, 0, 0));
+        assertEquals(modified_row, table.arg(modified_row, 0, 0));
+        assertSame(table.argChunks[0][0][0], copy.argChunks[0][0][0]);
+        assertNotSame(table.argChunks[0][0][1], copy.argChunks[0][0][1]);
+        assertSame(table.argChunks[0][0][2], copy.argChunks[0][0][2]);
+
+        /* 原表修改共享的块时也需要复制 */
+        table.setArg(0, 0, 0, -2);
+        assertEquals(0, copy.arg(0, 0, 0));
+        assertEquals(-2, table.arg(0, 0, 0));
+
+        /* 过滤：只保留偶数行 */
+        int kept_rows = 0;
+        for (int row = 0; row < copy.rows(); row++) {
+            if (0 == copy.arg(row, 0, 0) % 2) {
+                copy.copyRow(row, kept_rows);
+                kept_rows++;
+            }
+        }
+        copy.truncate(kept_rows);
+        assertEquals((rows + 1) / 2, copy.rows());
+        assertEquals(rows, table.rows());
+        for (int row = 1; row < rows; row++) {
+            assertEquals(row, table.arg(row, 0, 0));
+            assertSame(inclusion, table.inclusionSet(row, 0));
+        }
+        for (int row = 0; row < copy.rows(); row++) {
+            assertEquals(row * 2, copy.arg(row, 0, 0));
+            assertSame(inclusion, copy.inclusionSet(row, 0));
+        }
+    }
+}
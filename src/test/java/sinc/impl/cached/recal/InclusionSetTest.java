@@ -0,0 +1,86 @@
+package sinc.impl.cached.recal;
+
+import org.junit.jupiter.api.Test;
+import sinc.impl.cached.Record;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InclusionSetTest {
+
+    static Set<Record> records(int[][] args) {
+        final Set<Record> set = new HashSet<>();
+        for (int[] arg: args) {
+            set.add(new Record(arg));
+        }
+        return set;
+    }
+
+    @Test
+    void testSelect() {
+        final Set<Record> records = records(new int[][]{
+                new int[]{1, 2}, new int[]{1, 3}, new int[]{2, 3}, new int[]{4, 4}, new int[]{1, 5}
+        });
+        final InclusionSet inclusion = new InclusionSet(records, 2);
+        assertEquals(5, inclusion.size());
+
+        /* 与逐条扫描过滤的结果相同，包括迭代顺序 */
+        for (int value = 0; value < 6; value++) {
+            final Set<Record> filtered = new HashSet<>();
+            for (Record record: records) {
+                if (value == record.args[0]) {
+                    filtered.add(record);
+                }
+            }
+            final InclusionSet selected = inclusion.select(0, value);
+            if (filtered.isEmpty()) {
+                assertNull(selected);
+            } else {
+                assertEquals(filtered, selected.records);
+                assertEquals(new ArrayList<>(filtered), new ArrayList<>(selected.records));
+            }
+        }
+
+        /* 索引只构建一次，子集上可以继续建立索引 */
+        assertSame(inclusion.index(1), inclusion.index(1));
+        assertSame(inclusion.select(0, 1), inclusion.select(0, 1));
+        assertEquals(
+                records(new int[][]{new int[]{1, 3}}), inclusion.select(0, 1).select(1, 3).records
+        );
+        assertNull(inclusion.select(0, 1).select(1, 4));
+    }
+
+    @Test
+    void testView() {
+        final Map<Integer, Set<Record>> kb_index = new TreeMap<>();
+        kb_index.put(3, records(new int[][]{new int[]{3, 1}}));
+        kb_index.put(1, records(new int[][]{new int[]{1, 1}, new int[]{1, 2}}));
+        final Map<Integer, InclusionSet> view = InclusionSet.view(kb_index, 2);
+        assertEquals(2, view.size());
+        assertNull(view.get(2));
+        assertSame(kb_index.get(1), view.get(1).records);
+        assertSame(view.get(1), view.get(1));
+
+        final List<Integer> keys = new ArrayList<>();
+        for (Map.Entry<Integer, InclusionSet> entry: view.entrySet()) {
+            keys.add(entry.getKey());
+            assertSame(view.get(entry.getKey()), entry.getValue());
+        }
+        assertEquals(Arrays.asList(1, 3), keys);
+    }
+
+    @Test
+    void testSharedAcrossCopies() {
+        final InclusionSet inclusion = new InclusionSet(records(new int[][]{new int[]{1, 2}, new int[]{2, 2}}), 2);
+        final GroundingTable table = new GroundingTable();
+        table.addPredicate(2);
+        table.setInclusion(table.appendRow(), 0, inclusion);
+        final GroundingTable copy = new GroundingTable(table);
+        assertSame(table.inclusionSet(0, 0).index(0), copy.inclusionSet(0, 0).index(0));
+
+        final Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+        assertTrue(0 < table.estimatedBytes(counted));
+        assertEquals(0, inclusion.estimatedBytes(counted));
+    }
+}
@@ -1205,6 +1205,531 @@ class RecalculateCachedRuleTest {
         assertEquals(6, cache.size());
     }
 
+    @Test
+    void testCheckpointRollback() {
+        final MemKB kb = kbFamily();
+        final Set<RuleFingerPrint> cache = new HashSet<>();
+
+        /* grandParent(X, ?) :- parent(X, ?) */
+        final RecalculateCachedRule rule = new RecalculateCachedRule(FUNCTOR_GRANDPARENT, cache, kb);
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar(FUNCTOR_PARENT, ARITY_PARENT, 0, 0, 0));
+        assertTrue(rule.rollbackSupported());
+        final String rule_str = rule.toString();
+        final RuleFingerPrint fingerprint = rule.getFingerPrint();
+        final Eval eval = rule.getEval();
+        assertEquals(2, cache.size());
+
+        /* 试探：grandParent(X, ?) :- parent(X, Y), father(Y, ?)，撤销后与原来相同 */
+        rule.checkpoint();
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar(FUNCTOR_FATHER, ARITY_FATHER, 0, 1, 1));
+        assertTrue(rule.toString().contains("grandParent(X0,?):-parent(X0,X1),father(X1,?)"));
+        assertEquals(new Eval(null, 2, 3 * 16, 2), rule.getEval());
+        final RecalculateCachedRule survivor = (RecalculateCachedRule) rule.clone();
+        rule.rollback();
+        assertEquals(rule_str, rule.toString());
+        assertSame(fingerprint, rule.getFingerPrint());
+        assertSame(eval, rule.getEval());
+        assertEquals(1, rule.usedBoundedVars());
+        assertEquals(2, rule.length());
+        assertEquals(3, cache.size());
+
+        /* 试探过的扩展仍然记录为已搜索 */
+        rule.checkpoint();
+        assertEquals(Rule.UpdateStatus.DUPLICATED, rule.boundFreeVars2NewVar(FUNCTOR_FATHER, ARITY_FATHER, 0, 1, 1));
+        rule.rollback();
+        assertEquals(rule_str, rule.toString());
+
+        /* 撤销后继续修改，与clone之后修改的结果相同 */
+        final RecalculateCachedRule copy = new RecalculateCachedRule(rule);
+        assertEquals(Rule.UpdateStatus.NORMAL, copy.boundFreeVar2Constant(1, 1, "d2"));
+        rule.checkpoint();
+        assertEquals(Rule.UpdateStatus.DUPLICATED, rule.boundFreeVar2Constant(1, 1, "d2"));
+        rule.rollback();
+        final RecalculateCachedRule another = new RecalculateCachedRule(FUNCTOR_GRANDPARENT, new HashSet<>(), kb);
+        assertEquals(Rule.UpdateStatus.NORMAL, another.boundFreeVars2NewVar(FUNCTOR_PARENT, ARITY_PARENT, 0, 0, 0));
+        another.checkpoint();
+        assertEquals(Rule.UpdateStatus.NORMAL, another.boundFreeVar2Constant(1, 1, "d2"));
+        assertEquals(copy.toString(), another.toString());
+        assertEquals(copy.getEval(), another.getEval());
+        another.rollback();
+
+        /* 试探中clone出的规则不受撤销影响 */
+        assertEquals(Rule.UpdateStatus.NORMAL, survivor.boundFreeVars2NewVar(2, 1, 0, 1));
+        assertTrue(survivor.toString().contains("grandParent(X0,X2):-parent(X0,X1),father(X1,X2)"));
+        assertEquals(new Eval(null, 2, 4, 3), survivor.getEval());
+    }
+
+    /**
+     * 不切换到TrieJoin，始终维护groundingsBody，作为对照
+     */
+    static class PairwiseBodyRule extends RecalculateCachedRule {
+        PairwiseBodyRule(String headFunctor, Set<RuleFingerPrint> cache, MemKB kb) {
+            super(headFunctor, cache, kb);
+        }
+
+        @Override
+        protected boolean bodyCyclic() {
+            return false;
+        }
+    }
+
+    static void extendToTriangle(RecalculateCachedRule rule) {
+        /* p(X0,X1) :- q(X0,X2), r(X2,X1), s(X1,X0) */
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("q", 2, 0, 0, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("s", 2, 0, 0, 1));
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2ExistingVar(2, 1, 0));
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("r", 2, 0, 1, 1));
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVar2ExistingVar(3, 1, 1));
+        assertTrue(rule.toString().contains("p(X0,X1):-q(X0,X2),s(X1,X0),r(X2,X1)"));
+    }
+
+    static MemKB kbCyclic(long seed) {
+        final Random random = new Random(seed);
+        final MemKB kb = new MemKB();
+        for (String functor: new String[]{"p", "q", "r", "s"}) {
+            for (int i = 0; i < 40; i++) {
+                kb.addFact(functor, new String[]{"c" + random.nextInt(6), "c" + random.nextInt(6)});
+            }
+        }
+        return kb;
+    }
+
+    /**
+     * @return grounding中同一个变量的所有位置取值相同，并且body中的事实都在KB中
+     */
+    static boolean groundingSatisfied(MemKB kb, Rule rule, Predicate[] grounding) {
+        final Map<Integer, String> var_values = new HashMap<>();
+        for (int pred_idx = Rule.HEAD_PRED_IDX; pred_idx < rule.length(); pred_idx++) {
+            final Predicate predicate = rule.getPredicate(pred_idx);
+            if (Rule.HEAD_PRED_IDX != pred_idx && !kb.containsFact(grounding[pred_idx])) {
+                return false;
+            }
+            for (int arg_idx = 0; arg_idx < predicate.arity(); arg_idx++) {
+                final Argument argument = predicate.args[arg_idx];
+                final String value = grounding[pred_idx].args[arg_idx].name;
+                if (null != argument && (argument.isVar ?
+                        !value.equals(var_values.computeIfAbsent(argument.id, k -> value)) :
+                        !value.equals(argument.name))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Test
+    void testCyclicBodyJoin() {
+        for (long seed = 0; seed < 10; seed++) {
+            final MemKB kb = kbCyclic(seed);
+            final RecalculateCachedRule rule = new RecalculateCachedRule("p", new HashSet<>(), kb);
+            final RecalculateCachedRule expected_rule = new PairwiseBodyRule("p", new HashSet<>(), kb);
+            extendToTriangle(rule);
+            extendToTriangle(expected_rule);
+            assertTrue(rule.bodyCyclic());
+            assertEquals(expected_rule.getEval(), rule.getEval());
+            assertEquals(expected_rule.findCounterExamples(), rule.findCounterExamples());
+            assertEquals(0, rule.cacheBytes());  // 两张表都已经丢弃
+            assertTrue(0 < expected_rule.cacheBytes());
+
+            /* 每条新证明的head事实都有一组满足规则的grounding，证明之后在KB中标记 */
+            final MemKB expected_kb = kbCyclic(seed);
+            final RecalculateCachedRule expected_rule3 = new PairwiseBodyRule("p", new HashSet<>(), expected_kb);
+            extendToTriangle(expected_rule3);
+            final Set<Predicate> expected_heads = new HashSet<>();
+            for (Predicate[] grounding: expected_rule3.findGroundings()) {
+                expected_heads.add(grounding[Rule.HEAD_PRED_IDX]);
+            }
+            final Set<Predicate> heads = new HashSet<>();
+            for (Predicate[] grounding: rule.findGroundings()) {
+                assertTrue(heads.add(grounding[Rule.HEAD_PRED_IDX]));
+                assertTrue(groundingSatisfied(kb, rule, grounding));
+                assertTrue(kb.hasProved(grounding[Rule.HEAD_PRED_IDX]));
+            }
+            assertEquals(expected_heads, heads);
+            assertTrue(rule.findGroundings().isEmpty());
+
+            /* 成环之后继续扩展 */
+            final RecalculateCachedRule rule2 = new RecalculateCachedRule(rule);
+            final RecalculateCachedRule expected_rule2 = new PairwiseBodyRule("p", new HashSet<>(), kb);
+            extendToTriangle(expected_rule2);
+            Rule.UpdateStatus status = rule2.boundFreeVar2ExistingVar("q", 2, 0, 1);
+            assertEquals(expected_rule2.boundFreeVar2ExistingVar("q", 2, 0, 1), status);
+            if (Rule.UpdateStatus.NORMAL == status) {
+                status = rule2.boundFreeVar2Constant(4, 1, "c1");
+                assertEquals(expected_rule2.boundFreeVar2Constant(4, 1, "c1"), status);
+            }
+            if (Rule.UpdateStatus.NORMAL == status) {
+                assertEquals(expected_rule2.getEval(), rule2.getEval());
+                assertEquals(expected_rule2.findCounterExamples(), rule2.findCounterExamples());
+            }
+        }
+    }
+
+    static class EnumeratingFvRule extends RecalculateCachedRule {
+        EnumeratingFvRule(String headFunctor, Set<RuleFingerPrint> cache, MemKB kb) {
+            super(headFunctor, cache, kb);
+        }
+
+        @Override
+        protected boolean factorizeBodyFvCounting() {
+            return false;
+        }
+    }
+
+    interface RuleExtension {
+        Rule.UpdateStatus apply(Rule rule);
+    }
+
+    static void assertSameFvCounting(MemKB kb, String headFunctor, RuleExtension... extensions) {
+        final RecalculateCachedRule rule = new RecalculateCachedRule(headFunctor, new HashSet<>(), kb);
+        final RecalculateCachedRule expected_rule = new EnumeratingFvRule(headFunctor, new HashSet<>(), kb);
+        for (RuleExtension extension: extensions) {
+            final Rule.UpdateStatus status = extension.apply(rule);
+            assertEquals(extension.apply(expected_rule), status);
+            if (Rule.UpdateStatus.NORMAL != status) {
+                return;
+            }
+            assertEquals(expected_rule.toString(), rule.toString());
+            assertEquals(expected_rule.getEval(), rule.getEval());
+        }
+    }
+
+    @Test
+    void testFactorizedFvCounting() {
+        for (long seed = 0; seed < 10; seed++) {
+            final Random random = new Random(seed);
+            final MemKB kb = new MemKB();
+            for (String functor: new String[]{"p", "q", "r"}) {
+                for (int i = 0; i < 40; i++) {
+                    kb.addFact(functor, new String[]{"c" + random.nextInt(8), "c" + random.nextInt(8)});
+                }
+            }
+            for (int i = 0; i < 30; i++) {
+                kb.addFact("t", new String[]{
+                        "c" + random.nextInt(8), "c" + random.nextInt(8), "c" + random.nextInt(8)
+                });
+            }
+
+            /* p(X0,X1) :- q(X0,?), r(X1,?) 以及 p(X0,X1) :- q(X0,X2), r(X1,X2) */
+            assertSameFvCounting(
+                    kb, "p",
+                    rule -> rule.boundFreeVars2NewVar("q", 2, 0, 0, 0),
+                    rule -> rule.boundFreeVars2NewVar("r", 2, 0, 0, 1),
+                    rule -> rule.boundFreeVars2NewVar(1, 1, 2, 1)
+            );
+
+            /* t(X1,X0,X2) :- q(X1,X0), r(X0,X2)，以及再加入q(?,X2) */
+            assertSameFvCounting(
+                    kb, "t",
+                    rule -> rule.boundFreeVars2NewVar("q", 2, 1, 0, 1),
+                    rule -> rule.boundFreeVars2NewVar(0, 0, 1, 0),
+                    rule -> rule.boundFreeVar2ExistingVar("r", 2, 0, 0),
+                    rule -> rule.boundFreeVars2NewVar(0, 2, 2, 1),
+                    rule -> rule.boundFreeVar2ExistingVar("q", 2, 1, 2)
+            );
+        }
+    }
+
+    @Test
+    void testEstimation() {
+        final Random random = new Random(11);
+        final MemKB kb = new MemKB();
+        for (int i = 0; i < 3000; i++) {
+            final String[] args = new String[]{"c" + random.nextInt(300), "c" + random.nextInt(300)};
+            kb.addFact("q", args);
+            kb.addFact("p", (0 == random.nextInt(2)) ? args : new String[]{
+                    "c" + random.nextInt(300), "c" + random.nextInt(300)
+            });
+        }
+
+        final RecalculateCachedRule rule = new RecalculateCachedRule("p", new HashSet<>(), kb);
+        final RecalculateCachedRule expected_rule = new RecalculateCachedRule("p", new HashSet<>(), kb);
+        rule.enableEstimation(0.3);
+        assertFalse(rule.evalEstimated());
+
+        /* p(X0,?) :- q(X0,?)，然后 p(X0,X1) :- q(X0,X1) */
+        final RuleExtension[] extensions = new RuleExtension[]{
+                r -> r.boundFreeVars2NewVar("q", 2, 0, 0, 0),
+                r -> r.boundFreeVars2NewVar(0, 1, 1, 1)
+        };
+        RecalculateCachedRule estimated_rule = rule;
+        for (RuleExtension extension: extensions) {
+            estimated_rule = new RecalculateCachedRule(estimated_rule);
+            assertEquals(Rule.UpdateStatus.NORMAL, extension.apply(estimated_rule));
+            assertEquals(Rule.UpdateStatus.NORMAL, extension.apply(expected_rule));
+            assertTrue(estimated_rule.evalEstimated());
+
+            /* 精确值在误差范围之内 */
+            final EstimatedEval estimated_eval = (EstimatedEval) estimated_rule.getEval();
+            final Eval expected_eval = expected_rule.getEval();
+            assertTrue(
+                    Math.abs(estimated_eval.getPosCnt() - expected_eval.getPosCnt()) <= estimated_eval.getPosError()
+            );
+            assertTrue(
+                    Math.abs(estimated_eval.getAllCnt() - expected_eval.getAllCnt()) <= estimated_eval.getAllError()
+            );
+            for (Eval.EvalMetric metric: Eval.EvalMetric.values()) {
+                if (Eval.EvalMetric.CumulatedInfo != metric) {
+                    assertTrue(estimated_eval.lowerBound(metric) <= expected_eval.value(metric));
+                    assertTrue(expected_eval.value(metric) <= estimated_eval.upperBound(metric));
+                }
+            }
+
+            /* 重新精确计算 */
+            final RecalculateCachedRule exact_rule = new RecalculateCachedRule(estimated_rule);
+            exact_rule.updateExactEval();
+            assertFalse(exact_rule.evalEstimated());
+            assertEquals(expected_eval, exact_rule.getEval());
+        }
+    }
+
+    @Test
+    void testBoundPruning() {
+        final Random random = new Random(13);
+        final MemKB kb = new MemKB();
+        final Set<String> p_facts_of_c5 = new HashSet<>();
+        for (int i = 0; i < 3000; i++) {
+            final String[] args = new String[]{"c" + random.nextInt(100), "c" + random.nextInt(100)};
+            kb.addFact("q", args);
+            final String[] p_args = (0 == random.nextInt(2)) ? args : new String[]{
+                    "c" + random.nextInt(100), "c" + random.nextInt(100)
+            };
+            kb.addFact("p", p_args);
+            if ("c5".equals(p_args[1])) {
+                p_facts_of_c5.add(p_args[0]);
+            }
+        }
+
+        final RuleExtension[] extensions = new RuleExtension[]{
+                r -> r.boundFreeVars2NewVar(0, 1, 1, 1),
+                r -> r.boundFreeVar2ExistingVar("q", 2, 1, 0),
+                r -> r.boundFreeVars2NewVar("q", 2, 0, 0, 1),
+                r -> r.boundFreeVar2Constant(0, 1, "c7"),
+                r -> r.boundFreeVar2Constant(1, 1, "c7")
+        };
+        for (Eval.EvalMetric metric: Eval.EvalMetric.values()) {
+            for (RuleExtension extension: extensions) {
+                final RecalculateCachedRule expected_rule = boundPruningBase(kb);
+                assertEquals(Rule.UpdateStatus.NORMAL, extension.apply(expected_rule));
+
+                /* 乐观估计不低于精确得分，阈值低于精确得分时不能剪枝 */
+                final RecalculateCachedRule rule = boundPruningBase(kb);
+                rule.setPruningThreshold(metric, expected_rule.getEval().value(metric) - 1e-6);
+                assertEquals(Rule.UpdateStatus.NORMAL, extension.apply(rule));
+                assertEquals(expected_rule.getEval(), rule.getEval());
+            }
+        }
+
+        /* 父规则的正例数量是特化后δ的上界 */
+        final RecalculateCachedRule rule = boundPruningBase(kb);
+        rule.setPruningThreshold(Eval.EvalMetric.CompressionCapacity, rule.getEval().getPosCnt());
+        assertEquals(Rule.UpdateStatus.BOUND_PRUNED, rule.boundFreeVars2NewVar(0, 1, 1, 1));
+
+        /* 剪枝之前已经记录了fingerprint */
+        final RecalculateCachedRule rule2 = boundPruningBase(kb);
+        final RecalculateCachedRule rule3 = new RecalculateCachedRule(rule2);
+        rule2.setPruningThreshold(Eval.EvalMetric.CompressionCapacity, rule2.getEval().getPosCnt());
+        assertEquals(Rule.UpdateStatus.BOUND_PRUNED, rule2.boundFreeVar2ExistingVar("q", 2, 1, 0));
+        assertEquals(Rule.UpdateStatus.DUPLICATED, rule3.boundFreeVar2ExistingVar("q", 2, 1, 0));
+
+        /* head中的常量限制了能蕴含的记录：p(X0,c5)最多蕴含p中第二列是c5的记录 */
+        final RecalculateCachedRule rule4 = boundPruningBase(kb);
+        assertTrue(p_facts_of_c5.size() < rule4.getEval().getPosCnt());
+        rule4.setPruningThreshold(Eval.EvalMetric.CompressionCapacity, p_facts_of_c5.size());
+        assertEquals(Rule.UpdateStatus.BOUND_PRUNED, rule4.boundFreeVar2Constant(0, 1, "c5"));
+        assertEquals((double) p_facts_of_c5.size(), rule4.evalUpperBound(Eval.EvalMetric.CompressionCapacity));
+    }
+
+    @Test
+    void testConstantBatch() {
+        final Random random = new Random(17);
+        final MemKB kb = new MemKB();
+        for (int i = 0; i < 2000; i++) {
+            kb.addFact("q", new String[]{"c" + random.nextInt(60), "c" + random.nextInt(60)});
+            kb.addFact("p", new String[]{"c" + random.nextInt(60), "c" + random.nextInt(60)});
+        }
+        final List<String> constants = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            constants.add("c" + i);
+        }
+        constants.add("unknown");
+
+        /* head和body中的空位，body中的常量还要更新只包含body的cache */
+        final int[][] vacancies = new int[][]{{0, 1}, {1, 1}};
+        for (int[] vacancy: vacancies) {
+            final RecalculateCachedRule batch_rule = boundPruningBase(kb);
+            batch_rule.beginConstantBatch(vacancy[0], vacancy[1], constants);
+            for (String constant: constants) {
+                final RecalculateCachedRule expected_rule = boundPruningBase(kb);
+                final Rule.UpdateStatus expected_status = expected_rule.boundFreeVar2Constant(
+                        vacancy[0], vacancy[1], constant
+                );
+                batch_rule.checkpoint();
+                try {
+                    assertEquals(expected_status, batch_rule.boundFreeVar2Constant(vacancy[0], vacancy[1], constant));
+                    if (Rule.UpdateStatus.NORMAL != expected_status) {
+                        continue;
+                    }
+                    assertEquals(expected_rule.getEval(), batch_rule.getEval());
+
+                    /* 复制出的规则继续扩展，cache也相同 */
+                    final Rule materialized_rule = batch_rule.clone();
+                    assertEquals(
+                            expected_rule.boundFreeVar2ExistingVar("q", 2, 1, 0),
+                            materialized_rule.boundFreeVar2ExistingVar("q", 2, 1, 0)
+                    );
+                    assertEquals(expected_rule.getEval(), materialized_rule.getEval());
+                } finally {
+                    batch_rule.rollback();
+                }
+            }
+            batch_rule.endConstantBatch();
+        }
+    }
+
+    @Test
+    void testExistingVarBatch() {
+        final Random random = new Random(19);
+        final MemKB kb = new MemKB();
+        for (int i = 0; i < 2000; i++) {
+            kb.addFact("q", new String[]{"c" + random.nextInt(60), "c" + random.nextInt(60)});
+            kb.addFact("p", new String[]{"c" + random.nextInt(60), "c" + random.nextInt(60)});
+        }
+        for (int i = 0; i < 30; i++) {
+            kb.addFact("r", new String[]{"c" + random.nextInt(20), "c" + random.nextInt(120), "c" + i});
+        }
+        final String[] functors = new String[]{"p", "q", "r"};
+
+        /* 不同的覆盖率要求与剪枝阈值下，结果都与逐个扩展相同(剪枝只会去掉得分不超过阈值的扩展) */
+        final double[] fact_coverages = new double[]{-1.0, 0.3};
+        for (double fact_coverage: fact_coverages) {
+            Rule.MIN_FACT_COVERAGE = fact_coverage;
+            for (boolean pruning: new boolean[]{false, true}) {
+                final RecalculateCachedRule batch_rule = boundPruningBase(kb);
+                final double threshold = 500;  // 低于父规则的正例数量，只有批量计算的上界能剪枝
+                batch_rule.beginExistingVarBatch(0);
+                for (String functor: functors) {
+                    for (int arg_idx = 0; arg_idx < kb.getArity(functor); arg_idx++) {
+                        final int tmp_arg_idx = arg_idx;
+                        final RuleExtension extension = r -> r.boundFreeVar2ExistingVar(
+                                functor, kb.getArity(functor), tmp_arg_idx, 0
+                        );
+                        final RecalculateCachedRule expected_rule = boundPruningBase(kb);
+                        final Rule.UpdateStatus expected_status = extension.apply(expected_rule);
+
+                        batch_rule.checkpoint();
+                        if (pruning) {
+                            batch_rule.setPruningThreshold(Eval.EvalMetric.CompressionCapacity, threshold);
+                        }
+                        try {
+                            final Rule.UpdateStatus status = extension.apply(batch_rule);
+                            if (Rule.UpdateStatus.BOUND_PRUNED == status) {
+                                assertTrue(pruning);
+                                assertEquals(Rule.UpdateStatus.NORMAL, expected_status);
+                                assertTrue(
+                                        expected_rule.getEval().value(Eval.EvalMetric.CompressionCapacity) <= threshold
+                                );
+                            } else {
+                                assertEquals(expected_status, status);
+                                if (Rule.UpdateStatus.NORMAL == status) {
+                                    assertEquals(expected_rule.getEval(), batch_rule.getEval());
+                                }
+                            }
+                        } finally {
+                            batch_rule.setPruningThreshold(null, Double.NEGATIVE_INFINITY);
+                            batch_rule.rollback();
+                        }
+                    }
+                }
+                batch_rule.endExistingVarBatch();
+            }
+        }
+    }
+
+    @Test
+    void testExistingVarBatchEval() {
+        final Random random = new Random(23);
+        final MemKB kb = new MemKB();
+        for (int i = 0; i < 2000; i++) {
+            kb.addFact("q", new String[]{"c" + random.nextInt(60), "c" + random.nextInt(60)});
+            kb.addFact("p", new String[]{"c" + random.nextInt(60), "c" + random.nextInt(60)});
+        }
+        for (int i = 0; i < 30; i++) {
+            kb.addFact("r", new String[]{"c" + random.nextInt(20), "c" + random.nextInt(120), "c" + i});
+        }
+        final String[] functors = new String[]{"p", "q", "r"};
+
+        /*
+         * p(X0,?) :- q(X0,?)                  X0是Body FV，扩展之后成为GV
+         * p(X0,?) :- q(X0,X1), q(X1,X0)       X0是GV
+         * p(X0,?) :- q(X0,X1), q(X1,X0)       X1只在body中出现
+         * p(X0,X1) :- q(X0,?), q(?,X1)        还有其他Body FV，不能批量计算all entailment
+         */
+        final RuleExtension cyclic_base = r -> {
+            assertEquals(Rule.UpdateStatus.NORMAL, r.boundFreeVars2NewVar("q", 2, 0, 1, 1));
+            return r.boundFreeVar2ExistingVar(2, 1, 0);
+        };
+        final RuleExtension[] bases = new RuleExtension[]{
+                r -> Rule.UpdateStatus.NORMAL,
+                cyclic_base,
+                cyclic_base,
+                r -> r.boundFreeVars2NewVar("q", 2, 1, 0, 1)
+        };
+        final int[] var_ids = new int[]{0, 0, 1, 0};
+        final boolean[] batch_evaluated = new boolean[]{true, true, true, false};
+        for (int i = 0; i < bases.length; i++) {
+            final RuleExtension base = bases[i];
+            final RecalculateCachedRule batch_rule = boundPruningBase(kb);
+            assertEquals(Rule.UpdateStatus.NORMAL, base.apply(batch_rule));
+            batch_rule.beginExistingVarBatch(var_ids[i]);
+            for (String functor: functors) {
+                for (int arg_idx = 0; arg_idx < kb.getArity(functor); arg_idx++) {
+                    final int tmp_arg_idx = arg_idx;
+                    final int tmp_var_id = var_ids[i];
+                    final RuleExtension extension = r -> r.boundFreeVar2ExistingVar(
+                            functor, kb.getArity(functor), tmp_arg_idx, tmp_var_id
+                    );
+                    final RecalculateCachedRule expected_rule = boundPruningBase(kb);
+                    assertEquals(Rule.UpdateStatus.NORMAL, base.apply(expected_rule));
+                    final Rule.UpdateStatus expected_status = extension.apply(expected_rule);
+
+                    /* 批量计算的eval与逐个扩展之后计算的相同 */
+                    batch_rule.checkpoint();
+                    try {
+                        assertEquals(expected_status, extension.apply(batch_rule));
+                        if (Rule.UpdateStatus.NORMAL != expected_status) {
+                            continue;
+                        }
+                        final Eval batch_eval = batch_rule.existingVarBatchEval();
+                        if (batch_evaluated[i]) {
+                            assertEquals(expected_rule.getEval(), batch_eval);
+                        } else {
+                            assertNull(batch_eval);
+                        }
+                        assertEquals(expected_rule.getEval(), batch_rule.getEval());
+                        for (Eval.EvalMetric metric: Eval.EvalMetric.values()) {
+                            assertEquals(
+                                    expected_rule.getEval().value(metric), batch_rule.getEval().value(metric)
+                            );
+                        }
+                    } finally {
+                        batch_rule.rollback();
+                    }
+                }
+            }
+            batch_rule.endExistingVarBatch();
+        }
+    }
+
+    /**
+     * p(X0,?) :- q(X0,?)
+     */
+    private RecalculateCachedRule boundPruningBase(MemKB kb) {
+        final RecalculateCachedRule rule = new RecalculateCachedRule("p", new HashSet<>(), kb);
+        assertEquals(Rule.UpdateStatus.NORMAL, rule.boundFreeVars2NewVar("q", 2, 0, 0, 0));
+        return rule;
+    }
+
     @Test
     void testFamilyWithCopy2() {
         final MemKB kb = kbFamily();
@@ -250,6 +250,171 @@ class SincWithRecalculateCacheTest {
         deleteFile(tmp_bk_file_path);
     }
 
+    @Test
+    void testEstimation() {
+        /* 估计模式下找到的规则都经过精确计算，压缩结果仍然可以完整恢复 */
+        UUID id = UUID.randomUUID();
+        final String tmp_bk_file_path = id + "_bk";
+        checkFile(tmp_bk_file_path);
+
+        try {
+            FamilyRelationGenerator.generateSimple(tmp_bk_file_path, 100, 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail();
+        }
+
+        final SincConfig config = new SincConfig(
+                1,
+                false,
+                false,
+                3,
+                true,
+                Eval.EvalMetric.CompressionCapacity,
+                0.05,
+                0.25,
+                0,
+                1,
+                false,
+                0.5,
+                true,
+                false
+        );
+
+        SincWithRecalculateCache sinc = new SincWithRecalculateCache(
+                config,
+                tmp_bk_file_path,
+                null,
+                null
+        );
+        sinc.run();
+        assertTrue(sinc.recover());
+        assertFalse(sinc.getHypothesis().isEmpty());
+        for (Rule rule: sinc.getHypothesis()) {
+            assertFalse(rule.evalEstimated());
+        }
+
+        deleteFile(tmp_bk_file_path);
+    }
+
+    @Test
+    void testConcurrentEvaluation() {
+        /* 多线程评估扩展时找到的规则与单线程相同 */
+        UUID id = UUID.randomUUID();
+        final String tmp_bk_file_path = id + "_bk";
+        checkFile(tmp_bk_file_path);
+
+        try {
+            FamilyRelationGenerator.generateSimple(tmp_bk_file_path, 100, 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail();
+        }
+
+        final List<List<String>> hypotheses = new ArrayList<>();
+        final List<Long> bound_pruned = new ArrayList<>();
+        for (int threads: new int[]{1, 4}) {
+            final SincConfig config = new SincConfig(
+                    threads,
+                    false,
+                    false,
+                    3,
+                    true,
+                    Eval.EvalMetric.CompressionCapacity,
+                    0.05,
+                    0.25,
+                    0,
+                    1,
+                    false,
+                    -1.0,
+                    false,
+                    false
+            );
+            SincWithRecalculateCache sinc = new SincWithRecalculateCache(
+                    config,
+                    tmp_bk_file_path,
+                    null,
+                    null
+            );
+            sinc.run();
+            assertTrue(sinc.recover());
+            final List<String> hypothesis = new ArrayList<>();
+            for (Rule rule: sinc.getHypothesis()) {
+                hypothesis.add(rule.toString());
+            }
+            hypotheses.add(hypothesis);
+            bound_pruned.add(sinc.getPerformanceMonitor().boundPruned.sum());
+        }
+        assertFalse(hypotheses.get(0).isEmpty());
+        assertEquals(hypotheses.get(0), hypotheses.get(1));
+        /* 并发评估同样按beam中的得分剪枝 */
+        assertTrue(0 < bound_pruned.get(0));
+        assertTrue(0 < bound_pruned.get(1));
+
+        deleteFile(tmp_bk_file_path);
+    }
+
+    @Test
+    void testConcurrentTargets() {
+        /* 同时搜索多个head functor时找到的规则及其顺序与顺序搜索相同，释放索引不影响结果 */
+        UUID id = UUID.randomUUID();
+        final String tmp_bk_file_path = id + "_bk";
+        checkFile(tmp_bk_file_path);
+
+        try {
+            FamilyRelationGenerator.generateSimple(tmp_bk_file_path, 100, 0);
+        } catch (IOException e) {
+            e.printStackTrace();
+            fail();
+        }
+
+        final List<List<String>> hypotheses = new ArrayList<>();
+        final List<Integer> counter_examples = new ArrayList<>();
+        for (boolean concurrent_targets: new boolean[]{false, true}) {
+            final SincConfig config = new SincConfig(
+                    concurrent_targets ? 4 : 1,
+                    false,
+                    false,
+                    3,
+                    true,
+                    Eval.EvalMetric.CompressionCapacity,
+                    0.05,
+                    0.25,
+                    0,
+                    1,
+                    false,
+                    -1.0,
+                    false,
+                    false,
+                    null,
+                    false,
+                    0,
+                    false,
+                    true,
+                    concurrent_targets
+            );
+            SincWithRecalculateCache sinc = new SincWithRecalculateCache(
+                    config,
+                    tmp_bk_file_path,
+                    null,
+                    null
+            );
+            sinc.run();
+            assertTrue(sinc.recover());
+            final List<String> hypothesis = new ArrayList<>();
+            for (Rule rule: sinc.getHypothesis()) {
+                hypothesis.add(rule.toString());
+            }
+            hypotheses.add(hypothesis);
+            counter_examples.add(sinc.getCounterExamples().size());
+        }
+        assertTrue(hypotheses.get(0).size() > 1);
+        assertEquals(hypotheses.get(0), hypotheses.get(1));
+        assertEquals(counter_examples.get(0), counter_examples.get(1));
+
+        deleteFile(tmp_bk_file_path);
+    }
+
     @Test
     void test1() {
         final SincConfig config = new SincConfig(
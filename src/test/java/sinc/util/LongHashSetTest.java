@@ -0,0 +1,57 @@
+package sinc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongHashSetTest {
+
+    @Test
+    void testAddAndContains() {
+        final LongHashSet set = new LongHashSet();
+        final Set<Long> expected = new HashSet<>();
+        final Random random = new Random(7);
+        for (int i = 0; i < 50000; i++) {
+            /* 包含0、负数以及只有高位不同的元素 */
+            final long x;
+            switch (i % 4) {
+                case 0: x = random.nextInt(1000); break;
+                case 1: x = -random.nextInt(1000); break;
+                case 2: x = ((long) random.nextInt(1000)) << 40; break;
+                default: x = random.nextLong(); break;
+            }
+            assertEquals(expected.add(x), set.add(x));
+        }
+        assertEquals(expected.size(), set.size());
+        for (int i = 0; i < 20000; i++) {
+            final long x = (0 == i % 2) ? random.nextInt(2000) - 1000 : ((long) random.nextInt(2000)) << 40;
+            assertEquals(expected.contains(x), set.contains(x));
+        }
+
+        final long[] array = set.toArray();
+        Arrays.sort(array);
+        final long[] expected_array = expected.stream().mapToLong(Long::longValue).sorted().toArray();
+        assertArrayEquals(expected_array, array);
+
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(0));
+        assertEquals(0, set.toArray().length);
+    }
+
+    @Test
+    void testZero() {
+        final LongHashSet set = new LongHashSet(0);
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+        assertEquals(1, set.size());
+        assertArrayEquals(new long[]{0}, set.toArray());
+    }
+}
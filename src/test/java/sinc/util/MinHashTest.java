@@ -0,0 +1,43 @@
+package sinc.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MinHashTest {
+    @Test
+    void testEstimate() {
+        final MinHash min_hash = new MinHash(512, 42);
+        final long[] signature1 = min_hash.newSignature();
+        final long[] signature2 = min_hash.newSignature();
+        final long[] signature3 = min_hash.newSignature();
+        final MultiSet<Integer> set1 = new MultiSet<>();
+        final MultiSet<Integer> set2 = new MultiSet<>();
+        for (int i = 0; i < 1000; i++) {
+            min_hash.update(signature1, i, 1 + i % 3);
+            min_hash.update(signature3, i, 1 + i % 3);
+            set1.add(i, 1 + i % 3);
+        }
+        for (int i = 500; i < 1500; i++) {
+            min_hash.update(signature2, i, 2);
+            set2.add(i, 2);
+        }
+        assertEquals(1.0, MinHash.estimate(signature1, signature3));
+        assertEquals(set1.jaccardSimilarity(set2), MinHash.estimate(signature1, signature2), 0.08);
+    }
+
+    @Test
+    void testChooseBands() {
+        final int[] banding = MinHash.chooseBands(128, 0.5);
+        assertTrue(banding[0] * banding[1] <= 128);
+        assertTrue(Math.pow(1.0 / banding[0], 1.0 / banding[1]) <= 0.5);
+        final int[] next = new int[]{128 / (banding[1] + 1), banding[1] + 1};
+        assertTrue(Math.pow(1.0 / next[0], 1.0 / next[1]) > 0.5);
+        assertArrayEquals(new int[]{128, 1}, MinHash.chooseBands(128, 0.001));
+
+        final long[] signature1 = new long[]{1, 2, 3, 4};
+        final long[] signature2 = new long[]{1, 2, 3, 5};
+        assertEquals(MinHash.bandKey(signature1, 0, 2), MinHash.bandKey(signature2, 0, 2));
+        assertNotEquals(MinHash.bandKey(signature1, 1, 2), MinHash.bandKey(signature2, 1, 2));
+    }
+}
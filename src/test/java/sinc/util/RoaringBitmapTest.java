@@ -0,0 +1,76 @@
+package sinc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoaringBitmapTest {
+
+    static int[] toArray(TreeSet<Integer> set) {
+        final int[] array = new int[set.size()];
+        int i = 0;
+        for (int x: set) {
+            array[i] = x;
+            i++;
+        }
+        return array;
+    }
+
+    @Test
+    void testAddAndContains() {
+        final RoaringBitmap bitmap = new RoaringBitmap();
+        final TreeSet<Integer> expected = new TreeSet<>();
+        final Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            /* 前一部分稠密(转换为位图容器)，后一部分稀疏 */
+            final int x = (0 == i % 2) ? random.nextInt(10000) : random.nextInt(1 << 24);
+            assertEquals(expected.add(x), bitmap.add(x));
+        }
+        assertEquals(expected.size(), bitmap.cardinality());
+        assertArrayEquals(toArray(expected), bitmap.toArray());
+        for (int i = 0; i < 20000; i++) {
+            final int x = random.nextInt(1 << 24);
+            assertEquals(expected.contains(x), bitmap.contains(x));
+        }
+        assertTrue(new RoaringBitmap().isEmpty());
+        assertEquals(0, new RoaringBitmap().toArray().length);
+    }
+
+    @Test
+    void testAndAndNot() {
+        final Random random = new Random(5);
+        for (int bound: new int[]{3000, 70000, 1 << 20}) {
+            final RoaringBitmap bitmap1 = new RoaringBitmap();
+            final RoaringBitmap bitmap2 = new RoaringBitmap();
+            final TreeSet<Integer> set1 = new TreeSet<>();
+            final TreeSet<Integer> set2 = new TreeSet<>();
+            for (int i = 0; i < 30000; i++) {
+                final int x = random.nextInt(bound);
+                bitmap1.add(x);
+                set1.add(x);
+                final int y = random.nextInt(bound / 2);
+                bitmap2.add(y);
+                set2.add(y);
+            }
+            final TreeSet<Integer> intersection = new TreeSet<>(set1);
+            intersection.retainAll(set2);
+            final TreeSet<Integer> difference = new TreeSet<>(set1);
+            difference.removeAll(set2);
+
+            assertEquals(intersection.size(), bitmap1.andCardinality(bitmap2));
+            assertEquals(intersection.size(), bitmap2.andCardinality(bitmap1));
+            assertEquals(difference.size(), bitmap1.andNotCardinality(bitmap2));
+            assertArrayEquals(toArray(intersection), bitmap1.and(bitmap2).toArray());
+            assertArrayEquals(toArray(difference), bitmap1.andNot(bitmap2).toArray());
+
+            /* 复制后互不影响 */
+            final RoaringBitmap copy = new RoaringBitmap(bitmap1);
+            copy.add(bound + 1);
+            assertFalse(bitmap1.contains(bound + 1));
+            assertEquals(set1.size() + 1, copy.cardinality());
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package sinc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpaceSavingTest {
+    @Test
+    void testHeavyHitters() {
+        final double proportion = 0.1;
+        final SpaceSaving sketch = new SpaceSaving(SpaceSaving.capacityFor(proportion));
+        final Map<Integer, Integer> counts = new HashMap<>();
+        final Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            /* 1、2两个元素各占约20%，其余均匀分布 */
+            final int r = random.nextInt(10);
+            final int element = (2 > r) ? r + 1 : 100 + random.nextInt(1000);
+            sketch.add(element);
+            counts.merge(element, 1, Integer::sum);
+        }
+        assertEquals(10000, sketch.total());
+        assertTrue(sketch.candidates().size() <= sketch.capacity());
+        for (Map.Entry<Integer, Integer> entry: counts.entrySet()) {
+            if (entry.getValue() > sketch.total() * proportion) {
+                assertTrue(sketch.candidates().contains(entry.getKey()));
+            }
+            assertTrue(sketch.estimate(entry.getKey()) >= (sketch.candidates().contains(entry.getKey()) ? entry.getValue() : 0));
+        }
+        assertTrue(sketch.candidates().contains(1));
+        assertTrue(sketch.candidates().contains(2));
+    }
+
+    @Test
+    void testSmallStream() {
+        final SpaceSaving sketch = new SpaceSaving(2);
+        sketch.add(1);
+        sketch.add(2);
+        sketch.add(1);
+        sketch.add(3);  // 替换计数最小的2
+        assertEquals(2, sketch.estimate(1));
+        assertEquals(0, sketch.estimate(2));
+        assertEquals(2, sketch.estimate(3));
+    }
+}
@@ -0,0 +1,60 @@
+package sinc.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThreadLocalBufferTest {
+    @Test
+    void testSingleThread() {
+        final ThreadLocalBuffer<Integer> buffer = new ThreadLocalBuffer<>();
+        assertTrue(buffer.isEmpty());
+        buffer.add(3);
+        buffer.add(1);
+        buffer.addAll(Arrays.asList(4, 1, 5));
+        buffer.addAll(new ArrayList<>());
+        assertEquals(5, buffer.size());
+        assertFalse(buffer.isEmpty());
+        assertEquals(Arrays.asList(3, 1, 4, 1, 5), buffer.snapshot());
+
+        /* snapshot是副本 */
+        buffer.snapshot().clear();
+        assertEquals(5, buffer.size());
+    }
+
+    @Test
+    void testMultipleThreads() throws InterruptedException {
+        final int threads = 8;
+        final int elements_per_thread = 10000;
+        final ThreadLocalBuffer<Integer> buffer = new ThreadLocalBuffer<>();
+        final Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int base = i * elements_per_thread;
+            workers[i] = new Thread(() -> {
+                for (int j = 0; j < elements_per_thread; j++) {
+                    buffer.add(base + j);
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker: workers) {
+            worker.join();
+        }
+
+        final List<Integer> elements = buffer.snapshot();
+        assertEquals(threads * elements_per_thread, buffer.size());
+        assertEquals(threads * elements_per_thread, elements.size());
+        assertEquals(threads * elements_per_thread, new HashSet<>(elements).size());
+
+        /* 同一线程写入的元素保持写入顺序 */
+        final int[] last = new int[threads];
+        Arrays.fill(last, -1);
+        for (int element: elements) {
+            final int thread_idx = element / elements_per_thread;
+            assertTrue(last[thread_idx] < element);
+            last[thread_idx] = element;
+        }
+    }
+}